@@ -0,0 +1,29 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LineOffsetsTest {
+
+    @Test
+    public void offsetsOfLines() {
+        LineOffsets offsets = new LineOffsets("a\nbc\r\nd\re");
+        Assert.assertEquals(0, offsets.offsetOf(1, 1));
+        Assert.assertEquals(3, offsets.offsetOf(2, 2));
+        Assert.assertEquals(6, offsets.offsetOf(3, 1));
+        Assert.assertEquals(8, offsets.offsetOf(4, 1));
+    }
+
+    @Test
+    public void positionsBeyondSourceAreClamped() {
+        LineOffsets offsets = new LineOffsets("ab\ncd");
+        Assert.assertEquals(0, offsets.offsetOf(0, 5));
+        Assert.assertEquals(5, offsets.offsetOf(2, 10));
+        Assert.assertEquals(5, offsets.offsetOf(7, 1));
+        Assert.assertEquals(3, offsets.offsetOf(2, 0));
+    }
+}
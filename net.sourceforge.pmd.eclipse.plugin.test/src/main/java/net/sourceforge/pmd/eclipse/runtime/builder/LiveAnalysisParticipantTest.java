@@ -0,0 +1,80 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisSession;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.rule.XPathRule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+
+public class LiveAnalysisParticipantTest {
+    private static final String SOURCE = "class Foo {\n  void bar() {\n    int unused = 0;\n  }\n}\n";
+
+    private IProject testProject;
+    private IFile sourceFile;
+    private List<RuleViolation> violations;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createJavaProject("LiveAnalysisParticipantTest");
+        sourceFile = EclipseUtils.createTestSourceFile(testProject, "/src/Foo.java", SOURCE);
+
+        XPathRule rule = new XPathRule(XPathVersion.XPATH_2_0, "//LocalVariableDeclaration");
+        rule.setName("LocalVariable");
+        rule.setLanguage(LanguageRegistry.getLanguage("Java"));
+        rule.setMessage("Local variable");
+        AnalysisSession session = AnalysisSession.forProject(testProject);
+        violations = session.analyze(SOURCE, sourceFile.getRawLocation().toFile(), rule);
+        Assert.assertEquals(1, violations.size());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    @Test
+    public void problemsAreMappedToSource() throws Exception {
+        CategorizedProblem[] problems = LiveAnalysisParticipant.problemsOf(sourceFile, SOURCE, violations);
+        Assert.assertEquals(1, problems.length);
+        Assert.assertEquals(3, problems[0].getSourceLineNumber());
+        Assert.assertEquals(SOURCE.indexOf("int unused"), problems[0].getSourceStart());
+        Assert.assertTrue(problems[0].getMessage().startsWith("LocalVariable: "));
+    }
+
+    @Test
+    public void violationsOfOlderContentAreClamped() throws Exception {
+        String newerSource = "class Foo {\n}\n";
+        CategorizedProblem[] problems = LiveAnalysisParticipant.problemsOf(sourceFile, newerSource, violations);
+        Assert.assertEquals(1, problems.length);
+        Assert.assertEquals(newerSource.length(), problems[0].getSourceStart());
+        Assert.assertEquals(newerSource.length(), problems[0].getSourceEnd());
+    }
+
+    @Test
+    public void markedViolationsAreSkipped() throws Exception {
+        IMarker marker = sourceFile.createMarker(PMDRuntimeConstants.PMD_MARKER);
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "LocalVariable");
+        marker.setAttribute(IMarker.LINE_NUMBER, 3);
+
+        Assert.assertEquals(0, LiveAnalysisParticipant.problemsOf(sourceFile, SOURCE, violations).length);
+    }
+}
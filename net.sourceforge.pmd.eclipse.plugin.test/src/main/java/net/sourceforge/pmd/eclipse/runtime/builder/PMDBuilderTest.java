@@ -0,0 +1,79 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.runtime.jobs.Job;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.WaitingMonitor;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.IncrementalReviewScheduler;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+
+public class PMDBuilderTest {
+    private IProject testProject;
+    private boolean oldAsyncBuilderEnabled;
+    private boolean oldCheckAfterSaveEnabled;
+
+    @Before
+    public void setUp() throws Exception {
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
+        oldAsyncBuilderEnabled = preferences.isAsyncBuilderEnabled();
+        oldCheckAfterSaveEnabled = preferences.isCheckAfterSaveEnabled();
+        preferences.setAsyncBuilderEnabled(true);
+        preferences.isCheckAfterSaveEnabled(true);
+
+        testProject = EclipseUtils.createJavaProject("PMDBuilderTest");
+        EclipseUtils.createTestSourceFile(testProject);
+        PMDNature.addPMDNature(testProject, null);
+        PMDPlugin.getDefault().getPropertiesManager().loadProjectProperties(testProject).setPmdEnabled(true);
+        build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
+        preferences.setAsyncBuilderEnabled(oldAsyncBuilderEnabled);
+        preferences.isCheckAfterSaveEnabled(oldCheckAfterSaveEnabled);
+
+        if (testProject != null && testProject.exists() && testProject.isAccessible()) {
+            EclipseUtils.removePMDNature(testProject);
+            testProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+            testProject.delete(true, true, null);
+            testProject = null;
+        }
+    }
+
+    private void build() throws Exception {
+        WaitingMonitor monitor = new WaitingMonitor();
+        testProject.build(IncrementalProjectBuilder.INCREMENTAL_BUILD, monitor);
+        monitor.await();
+        Job.getJobManager().join(IncrementalReviewScheduler.FAMILY, null);
+    }
+
+    /**
+     * In the asynchronous builder mode, the changed files are analyzed by the background review.
+     */
+    @Test
+    public void asyncBuilderQueuesChangedFiles() throws Exception {
+        IFile sourceFile = testProject.getFile("/src/Test.java");
+        sourceFile.deleteMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_ZERO);
+        sourceFile.touch(null);
+
+        build();
+        Assert.assertEquals(0, IncrementalReviewScheduler.getInstance().getQueueDepth());
+        Assert.assertTrue("The changed file has not been analyzed",
+                sourceFile.findMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_ZERO).length > 0);
+    }
+}
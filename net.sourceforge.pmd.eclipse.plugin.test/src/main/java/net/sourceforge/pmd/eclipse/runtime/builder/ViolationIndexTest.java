@@ -0,0 +1,92 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
+public class ViolationIndexTest {
+    private final ViolationIndex index = new ViolationIndex();
+    private IProject testProject;
+    private IFolder folder;
+    private IFile sourceFile;
+    private IFile otherFile;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createJavaProject("ViolationIndexTest");
+        sourceFile = EclipseUtils.createTestSourceFile(testProject, "/src/Foo.java", "class Foo { }");
+        otherFile = EclipseUtils.createTestSourceFile(testProject, "/src/Bar.java", "class Bar { }");
+        folder = testProject.getFolder("src");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    private IMarker createMarker(IFile file, int line) throws Exception {
+        IMarker marker = file.createMarker(PMDRuntimeConstants.PMD_MARKER_1);
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "SomeRule");
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_PRIORITY, 1);
+        marker.setAttribute(IMarker.LINE_NUMBER, line);
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_LINE2, line);
+        marker.setAttribute(IMarker.MESSAGE, "SomeRule: some violation");
+        return marker;
+    }
+
+    @Test
+    public void filesWithViolationsAreIndexedPerContainer() throws Exception {
+        createMarker(sourceFile, 1);
+
+        Assert.assertEquals(Collections.singletonList(sourceFile), index.getFilesWithViolations(folder));
+        Assert.assertEquals(Collections.singletonList(sourceFile), index.getFilesWithViolations(testProject));
+        Assert.assertEquals(Collections.singletonList(sourceFile), index.getFilesWithViolations(sourceFile));
+        Assert.assertTrue(index.getFilesWithViolations(otherFile).isEmpty());
+        Assert.assertTrue(index.getFilesWithViolations(testProject.getWorkspace().getRoot()).contains(sourceFile));
+    }
+
+    @Test
+    public void filesWithoutMarkersAreRemovedFromContainers() throws Exception {
+        createMarker(sourceFile, 1);
+        Assert.assertEquals(1, index.getFilesWithViolations(testProject).size());
+
+        sourceFile.deleteMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_ZERO);
+        createMarker(otherFile, 1);
+        index.refresh(Arrays.asList(sourceFile, otherFile));
+        Assert.assertEquals(Collections.singletonList(otherFile), index.getFilesWithViolations(folder));
+    }
+
+    @Test
+    public void markerUpdatedInPlaceChangesViolations() throws Exception {
+        IMarker marker = createMarker(sourceFile, 1);
+        ViolationIndex.FileViolations violations = index.getViolations(sourceFile);
+
+        // a violation, that only moved, keeps its marker
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_LINE2, 2);
+        index.refresh(Collections.singletonList(sourceFile));
+        ViolationIndex.FileViolations updatedViolations = index.getViolations(sourceFile);
+        Assert.assertEquals(violations.getMarkerId(0), updatedViolations.getMarkerId(0));
+        Assert.assertFalse(violations.sameMarkersAs(updatedViolations));
+
+        index.refresh(Collections.singletonList(sourceFile));
+        Assert.assertTrue(updatedViolations.sameMarkersAs(index.getViolations(sourceFile)));
+    }
+}
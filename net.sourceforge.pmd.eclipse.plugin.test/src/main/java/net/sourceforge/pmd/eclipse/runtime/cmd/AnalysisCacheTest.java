@@ -0,0 +1,108 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.RuleSet;
+
+public class AnalysisCacheTest {
+    private File classFolder;
+
+    @Before
+    public void setUp() throws IOException {
+        classFolder = Files.createTempDirectory("pmd-analysis-cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : classFolder.listFiles()) {
+            file.delete();
+        }
+        classFolder.delete();
+    }
+
+    private String fingerprint() throws IOException {
+        try (URLClassLoader auxClasspath = new URLClassLoader(new URL[] { classFolder.toURI().toURL() })) {
+            return AnalysisCache.fingerprintOf(Collections.<RuleSet>emptyList(), null, false, auxClasspath);
+        }
+    }
+
+    @Test
+    public void fingerprintIsStable() throws IOException {
+        Files.write(new File(classFolder, "Foo.class").toPath(), new byte[] { 1 });
+        Assert.assertEquals(fingerprint(), fingerprint());
+    }
+
+    @Test
+    public void recompiledClassChangesFingerprint() throws IOException {
+        File classFile = new File(classFolder, "Foo.class");
+        Files.write(classFile.toPath(), new byte[] { 1 });
+        classFile.setLastModified(10000L);
+        String fingerprint = fingerprint();
+
+        // a supertype of another file might have changed
+        classFile.setLastModified(20000L);
+        Assert.assertNotEquals(fingerprint, fingerprint());
+    }
+
+    @Test
+    public void addedClassChangesFingerprint() throws IOException {
+        File classFile = new File(classFolder, "Foo.class");
+        Files.write(classFile.toPath(), new byte[] { 1 });
+        classFile.setLastModified(20000L);
+        String fingerprint = fingerprint();
+
+        File otherClassFile = new File(classFolder, "Bar.class");
+        Files.write(otherClassFile.toPath(), new byte[] { 2 });
+        otherClassFile.setLastModified(10000L);
+        Assert.assertNotEquals(fingerprint, fingerprint());
+    }
+
+    @Test
+    public void classesHashCoversNestedTypes() throws IOException {
+        Files.write(new File(classFolder, "Foo.class").toPath(), new byte[] { 1 });
+        String classesHash = AnalysisCache.classesHashOf(classFolder, "Foo");
+
+        Files.write(new File(classFolder, "Foo$Inner.class").toPath(), new byte[] { 2 });
+        Assert.assertNotEquals(classesHash, AnalysisCache.classesHashOf(classFolder, "Foo"));
+    }
+
+    @Test
+    public void classesHashIgnoresOtherTypes() throws IOException {
+        Files.write(new File(classFolder, "Foo.class").toPath(), new byte[] { 1 });
+        String classesHash = AnalysisCache.classesHashOf(classFolder, "Foo");
+
+        Files.write(new File(classFolder, "Bar.class").toPath(), new byte[] { 2 });
+        Files.write(new File(classFolder, "FooBar.class").toPath(), new byte[] { 3 });
+        Assert.assertEquals(classesHash, AnalysisCache.classesHashOf(classFolder, "Foo"));
+    }
+
+    @Test
+    public void rebuiltClassKeepsClassesHash() throws IOException {
+        File classFile = new File(classFolder, "Foo.class");
+        Files.write(classFile.toPath(), new byte[] { 1 });
+        classFile.setLastModified(10000L);
+        String classesHash = AnalysisCache.classesHashOf(classFolder, "Foo");
+
+        // a Clean deletes the class file, the build creates the same class file again
+        classFile.delete();
+        Files.write(classFile.toPath(), new byte[] { 1 });
+        Assert.assertEquals(classesHash, AnalysisCache.classesHashOf(classFolder, "Foo"));
+
+        Files.write(classFile.toPath(), new byte[] { 2 });
+        Assert.assertNotEquals(classesHash, AnalysisCache.classesHashOf(classFolder, "Foo"));
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.rule.XPathRule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+
+public class AnalysisSessionTest {
+    private static final String SOURCE = "class Foo {\n  void bar() {\n    int unused = 0;\n  }\n}\n";
+
+    private static Language java() {
+        return LanguageRegistry.getLanguage("Java");
+    }
+
+    private static LanguageVersion javaVersion() {
+        return java().getDefaultVersion();
+    }
+
+    @Test
+    public void reusesSessionOfLanguageVersion() {
+        Assert.assertSame(AnalysisSession.forLanguageVersion(javaVersion()),
+                AnalysisSession.forLanguageVersion(javaVersion()));
+    }
+
+    @Test
+    public void parsesSource() {
+        AnalysisSession session = AnalysisSession.forLanguageVersion(javaVersion());
+        Assert.assertNotNull(session.parse(SOURCE, "Foo.java"));
+
+        // the session is warm, the next source is parsed the same way
+        Assert.assertNotNull(session.parse(SOURCE.replace("Foo", "Bar"), "Bar.java"));
+    }
+
+    @Test
+    public void returnsNullForInvalidSource() {
+        Assert.assertNull(AnalysisSession.forLanguageVersion(javaVersion()).parse("class {", "Invalid.java"));
+    }
+
+    @Test
+    public void analyzesSourceWithSingleRule() {
+        AnalysisSession session = AnalysisSession.forLanguageVersion(javaVersion());
+        XPathRule rule = new XPathRule(XPathVersion.XPATH_2_0, "//LocalVariableDeclaration");
+        rule.setLanguage(java());
+        rule.setMessage("Local variable");
+        List<RuleViolation> violations = session.analyze(SOURCE, new File("Foo.java"), rule);
+        Assert.assertNotNull(violations);
+        Assert.assertEquals(1, violations.size());
+        Assert.assertEquals(3, violations.get(0).getBeginLine());
+    }
+
+    @Test
+    public void appliesRuleSetToParsedTree() {
+        AnalysisSession session = AnalysisSession.forLanguageVersion(javaVersion());
+        Node compilationUnit = session.parse(SOURCE, "Foo.java");
+        XPathRule rule = new XPathRule(XPathVersion.XPATH_2_0, "//LocalVariableDeclaration");
+        rule.setLanguage(java());
+        rule.setMessage("Local variable");
+
+        File file = new File("Foo.java");
+        List<RuleViolation> violations = session.apply(RuleSetUtil.newSingle(rule), compilationUnit, file);
+        Assert.assertEquals(1, violations.size());
+        Assert.assertEquals(3, violations.get(0).getBeginLine());
+        Assert.assertEquals(file.getPath(), violations.get(0).getFilename());
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AuxClasspathPoolTest {
+    private final AuxClasspathPool pool = AuxClasspathPool.getInstance();
+
+    @After
+    public void tearDown() {
+        pool.dispose();
+    }
+
+    @Test
+    public void sameLibrariesShareClassLoader() throws Exception {
+        List<URL> libraries = Arrays.asList(new File("lib1.jar").toURI().toURL(),
+                new File("lib2.jar").toURI().toURL());
+        List<URL> otherLibraries = Arrays.asList(new File("lib1.jar").toURI().toURL());
+        ClassLoader parent = AuxClasspathPoolTest.class.getClassLoader();
+        int loaderCount = pool.getLoaderCount();
+
+        URLClassLoader loader1 = pool.acquire(libraries, parent);
+        URLClassLoader loader2 = pool.acquire(libraries, parent);
+        URLClassLoader loader3 = pool.acquire(otherLibraries, parent);
+        Assert.assertSame(loader1, loader2);
+        Assert.assertNotSame(loader1, loader3);
+        Assert.assertEquals(loaderCount + 2, pool.getLoaderCount());
+
+        pool.release(loader1);
+        pool.release(loader2);
+        pool.release(loader3);
+        // unused class loaders are kept open for reuse
+        Assert.assertSame(loader1, pool.acquire(libraries, parent));
+        pool.release(loader1);
+
+        pool.dispose();
+        Assert.assertEquals(0, pool.getLoaderCount() - pool.getUsedLoaderCount());
+    }
+
+    @Test
+    public void usageIncludesCachedClassFiles() throws Exception {
+        List<URL> libraries = Arrays.asList(new File("lib1.jar").toURI().toURL());
+        URLClassLoader loader = pool.acquire(libraries, AuxClasspathPoolTest.class.getClassLoader());
+        long size = pool.getCachedClassSize();
+
+        TypeResolutionCache.getInstance().put(loader, "foo/Bar.class", 0L, new byte[2048]);
+        Assert.assertEquals(size + 2048, pool.getCachedClassSize());
+        pool.release(loader);
+
+        // the cached class files are removed with the closed class loader
+        pool.dispose();
+        Assert.assertEquals(0, TypeResolutionCache.getInstance().getSize(loader));
+    }
+
+    @Test
+    public void differentParentsDontShareClassLoader() throws Exception {
+        List<URL> libraries = Arrays.asList(new File("lib1.jar").toURI().toURL());
+        ClassLoader parent = AuxClasspathPoolTest.class.getClassLoader();
+        try (URLClassLoader otherParent = new URLClassLoader(new URL[0], parent)) {
+            URLClassLoader loader1 = pool.acquire(libraries, parent);
+            URLClassLoader loader2 = pool.acquire(libraries, otherParent);
+            Assert.assertNotSame(loader1, loader2);
+            Assert.assertSame(parent, loader1.getParent());
+            Assert.assertSame(otherParent, loader2.getParent());
+
+            pool.release(loader1);
+            pool.release(loader2);
+        }
+    }
+}
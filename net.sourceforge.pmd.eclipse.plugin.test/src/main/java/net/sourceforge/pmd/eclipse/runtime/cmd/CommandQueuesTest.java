@@ -0,0 +1,128 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CommandQueuesTest {
+    private static final long STARVATION_MILLIS = 10000;
+
+    private final CommandQueues<String> queues = new CommandQueues<>(4, 3, STARVATION_MILLIS);
+
+    @Test
+    public void identicalCommandIsFound() {
+        queues.add(CommandKind.BUILDER, "A", "key", 0);
+        queues.add(CommandKind.BUILDER, "B", null, 0);
+
+        Assert.assertEquals("A", queues.pendingWithKey(CommandKind.BUILDER, "key"));
+        Assert.assertNull(queues.pendingWithKey(CommandKind.BUILDER, null));
+        Assert.assertNull(queues.pendingWithKey(CommandKind.BACKGROUND, "key"));
+
+        // a running command is not identical anymore
+        Assert.assertEquals("A", queues.startNext(0));
+        Assert.assertNull(queues.pendingWithKey(CommandKind.BUILDER, "key"));
+    }
+
+    @Test
+    public void supersededCommandIsDropped() {
+        queues.add(CommandKind.BUILDER, "A", null, 0);
+        queues.add(CommandKind.BUILDER, "B", null, 0);
+
+        Assert.assertTrue(queues.drop(CommandKind.BUILDER, "A"));
+        Assert.assertFalse(queues.drop(CommandKind.BUILDER, "A"));
+        Assert.assertEquals(Collections.singletonList("B"), queues.getPending(CommandKind.BUILDER));
+        Assert.assertEquals(1, queues.getCanceledCount(CommandKind.BUILDER));
+    }
+
+    @Test
+    public void kindIsBusyWithTooManyPendingCommands() {
+        queues.add(CommandKind.BACKGROUND, "A", null, 0);
+        queues.add(CommandKind.BACKGROUND, "B", null, 0);
+        Assert.assertFalse(queues.isBusy(CommandKind.BACKGROUND));
+
+        queues.add(CommandKind.BACKGROUND, "C", null, 0);
+        Assert.assertTrue(queues.isBusy(CommandKind.BACKGROUND));
+        Assert.assertFalse(queues.isBusy(CommandKind.BUILDER));
+
+        queues.startNext(0);
+        Assert.assertFalse(queues.isBusy(CommandKind.BACKGROUND));
+    }
+
+    @Test
+    public void commandsAreStartedByPriority() {
+        queues.add(CommandKind.BACKGROUND, "report", null, 0);
+        queues.add(CommandKind.BUILDER, "build", null, 0);
+        queues.add(CommandKind.INTERACTIVE, "check", null, 0);
+
+        Assert.assertEquals("check", queues.startNext(0));
+        Assert.assertEquals("build", queues.startNext(0));
+        Assert.assertEquals("report", queues.startNext(0));
+        Assert.assertNull(queues.startNext(0));
+    }
+
+    @Test
+    public void starvingCommandIsStartedFirst() {
+        queues.add(CommandKind.BACKGROUND, "report", null, 0);
+        queues.add(CommandKind.BUILDER, "build", null, 1000);
+
+        Assert.assertEquals("build", queues.startNext(STARVATION_MILLIS - 1));
+        queues.add(CommandKind.BUILDER, "build2", null, 1000);
+        Assert.assertEquals("report", queues.startNext(STARVATION_MILLIS));
+    }
+
+    @Test
+    public void lastSlotIsReservedForInteractiveCommands() {
+        for (String command : Arrays.asList("build1", "build2", "build3", "build4")) {
+            queues.add(CommandKind.BUILDER, command, null, 0);
+        }
+        queues.add(CommandKind.BACKGROUND, "report", null, 0);
+
+        // the builder commands take up to 3 slots, the background commands must not take the last one
+        Assert.assertEquals("build1", queues.startNext(0));
+        Assert.assertEquals("build2", queues.startNext(0));
+        Assert.assertEquals("build3", queues.startNext(0));
+        Assert.assertNull(queues.startNext(STARVATION_MILLIS));
+
+        queues.add(CommandKind.INTERACTIVE, "check", null, 0);
+        Assert.assertEquals("check", queues.startNext(0));
+        Assert.assertNull(queues.startNext(0));
+    }
+
+    @Test
+    public void builderAndBackgroundCommandsShareTheirSlots() {
+        queues.add(CommandKind.BACKGROUND, "report1", null, 0);
+        queues.add(CommandKind.BACKGROUND, "report2", null, 0);
+        queues.add(CommandKind.BACKGROUND, "report3", null, 0);
+        queues.add(CommandKind.BUILDER, "build1", null, 0);
+        queues.add(CommandKind.BUILDER, "build2", null, 0);
+
+        Assert.assertEquals("build1", queues.startNext(0));
+        Assert.assertEquals("build2", queues.startNext(0));
+        Assert.assertEquals("report1", queues.startNext(0));
+        Assert.assertNull(queues.startNext(0));
+
+        queues.finished(CommandKind.BUILDER, "build1", false, 100);
+        // the background commands are limited to half of the slots
+        Assert.assertEquals("report2", queues.startNext(100));
+        Assert.assertNull(queues.startNext(100));
+        Assert.assertEquals(2, queues.getRunningCount(CommandKind.BACKGROUND));
+    }
+
+    @Test
+    public void finishedCommandsAreMeasured() {
+        queues.add(CommandKind.INTERACTIVE, "A", null, 0);
+        Assert.assertEquals("A", queues.startNext(40));
+        Assert.assertTrue(queues.finished(CommandKind.INTERACTIVE, "A", false, 100));
+        Assert.assertFalse(queues.finished(CommandKind.INTERACTIVE, "A", false, 100));
+
+        Assert.assertEquals(40, queues.getAverageWaitMillis(CommandKind.INTERACTIVE), 0.001);
+        Assert.assertEquals(60, queues.getAverageRunMillis(CommandKind.INTERACTIVE), 0.001);
+        Assert.assertEquals(0, queues.getRunningCount(CommandKind.INTERACTIVE));
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CpdTileIndexTest {
+    private static final String DUPLICATE = "a b c d e f g h i j k l";
+
+    private static String[] imagesOf(String tokens) {
+        return tokens.split(" ");
+    }
+
+    /**
+     * Puts five tokens on each line.
+     */
+    private static int[] linesOf(String[] images) {
+        int[] lines = new int[images.length];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = i / 5 + 1;
+        }
+        return lines;
+    }
+
+    private static void put(CpdTileIndex<String> index, String key, String tokens) {
+        String[] images = imagesOf(tokens);
+        index.put(key, images, linesOf(images));
+    }
+
+    @Test
+    public void findsDuplicateInOtherFile() {
+        CpdTileIndex<String> index = new CpdTileIndex<>(10);
+        put(index, "first", "x y z " + DUPLICATE + " q r");
+        put(index, "second", "m n " + DUPLICATE + " s t u");
+
+        List<CpdTileIndex.Duplication<String>> duplications = index.duplicationsOf("first");
+        Assert.assertEquals(1, duplications.size());
+        CpdTileIndex.Duplication<String> duplication = duplications.get(0);
+        Assert.assertEquals("first", duplication.getFile());
+        Assert.assertEquals("second", duplication.getOtherFile());
+        Assert.assertEquals(12, duplication.getTokenCount());
+        Assert.assertEquals(1, duplication.getBeginLine());
+        Assert.assertEquals(3, duplication.getEndLine());
+        Assert.assertEquals(1, duplication.getOtherBeginLine());
+        Assert.assertEquals(3, duplication.getOtherEndLine());
+    }
+
+    @Test
+    public void findsDuplicateWithinFile() {
+        CpdTileIndex<String> index = new CpdTileIndex<>(10);
+        put(index, "file", "w " + DUPLICATE + " o " + DUPLICATE);
+
+        List<CpdTileIndex.Duplication<String>> duplications = index.duplicationsOf("file");
+        Assert.assertEquals(1, duplications.size());
+        Assert.assertEquals("file", duplications.get(0).getOtherFile());
+        Assert.assertEquals(12, duplications.get(0).getTokenCount());
+    }
+
+    @Test
+    public void ignoresDuplicatesBelowMinimumTileSize() {
+        CpdTileIndex<String> index = new CpdTileIndex<>(13);
+        put(index, "first", "x y z " + DUPLICATE + " q r");
+        put(index, "second", "m n " + DUPLICATE + " s t u");
+
+        Assert.assertTrue(index.duplicationsOf("first").isEmpty());
+    }
+
+    @Test
+    public void updatesOnlyChangedFile() {
+        CpdTileIndex<String> index = new CpdTileIndex<>(10);
+        put(index, "first", "x y z " + DUPLICATE + " q r");
+        put(index, "second", "m n " + DUPLICATE + " s t u");
+
+        put(index, "second", "m n o p q r s t u v w x y z");
+        Assert.assertTrue(index.duplicationsOf("first").isEmpty());
+
+        put(index, "third", DUPLICATE);
+        Assert.assertEquals(1, index.duplicationsOf("first").size());
+
+        index.remove("third");
+        Assert.assertEquals(2, index.size());
+        Assert.assertTrue(index.duplicationsOf("first").isEmpty());
+    }
+
+    @Test
+    public void removesUnusedImages() {
+        CpdTileIndex<String> index = new CpdTileIndex<>(10);
+        put(index, "first", "x y z " + DUPLICATE);
+        put(index, "second", "m n " + DUPLICATE);
+        Assert.assertEquals(17, index.getImageCount());
+
+        index.remove("second");
+        Assert.assertEquals(15, index.getImageCount());
+        put(index, "first", DUPLICATE);
+        Assert.assertEquals(12, index.getImageCount());
+
+        // the ids of the removed images are reused
+        put(index, "second", "m n o " + DUPLICATE);
+        Assert.assertEquals(15, index.getImageCount());
+        Assert.assertEquals(1, index.duplicationsOf("first").size());
+        index.remove("first");
+        index.remove("second");
+        Assert.assertEquals(0, index.getImageCount());
+    }
+}
@@ -4,20 +4,30 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
+import java.io.File;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import net.sourceforge.pmd.cpd.CPD;
+import net.sourceforge.pmd.cpd.CPDConfiguration;
+import net.sourceforge.pmd.cpd.LanguageFactory;
 import net.sourceforge.pmd.cpd.SimpleRenderer;
 import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
 
 /**
@@ -109,6 +119,87 @@ public class DetectCutAndPasteCmdTest {
         Assert.assertFalse(reportFile.exists());
     }
 
+    /**
+     * The tokens of the checked files are cached in the working location of the project.
+     */
+    @Test
+    public void testDetectCutAndPasteCmdCachesTokens() throws CoreException {
+        final File cacheFile = this.testProject.getWorkingLocation(PMDPlugin.PLUGIN_ID)
+                .append("cpd-tokens.cache").toFile();
+        for (int run = 0; run < 2; run++) {
+            final DetectCutAndPasteCmd cmd = new DetectCutAndPasteCmd();
+            cmd.setProject(this.testProject);
+            cmd.setCreateReport(false);
+            cmd.setLanguage("java");
+            cmd.setMinTileSize(10);
+            cmd.performExecute();
+            cmd.join();
+
+            if (run == 0) {
+                Assert.assertTrue(cacheFile.isFile());
+                cacheFile.setLastModified(10000L);
+            }
+        }
+        // the file has not been tokenized again, so the cache has not been written again
+        Assert.assertEquals(10000L, cacheFile.lastModified());
+
+        final CpdTokenCache cache = CpdTokenCache.load(this.testProject, LanguageFactory.createLanguage("java"), true);
+        Assert.assertEquals(1, cache.size());
+        final IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        Assert.assertTrue(cache.update(Collections.singletonList(sourceFile), 0, null));
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * The CPD runs of a project share one persistent token cache.
+     */
+    @Test
+    public void testTokenCacheIsSharedPerProject() {
+        final CpdTokenCache cache = CpdTokenCache.forProject(this.testProject, LanguageFactory.createLanguage("java"),
+                true);
+        Assert.assertSame(cache,
+                CpdTokenCache.forProject(this.testProject, LanguageFactory.createLanguage("java"), true));
+        Assert.assertNotSame(cache,
+                CpdTokenCache.forProject(this.testProject, LanguageFactory.createLanguage("java"), false));
+    }
+
+    /**
+     * Token images longer than 64 KB are cached as well.
+     */
+    @Test
+    public void testTokenCacheKeepsLongImages() throws Exception {
+        final StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < 70000; i++) {
+            literal.append((char) ('a' + i % 26));
+        }
+        literal.append('"');
+        final IFile sourceFile = EclipseUtils.createTestSourceFile(this.testProject, "/src/Long.java",
+                "class Long {\n  String s = " + literal + ";\n}\n");
+        final CpdTokenCache cache = CpdTokenCache.load(this.testProject, LanguageFactory.createLanguage("java"), false);
+        Assert.assertTrue(cache.update(Collections.singletonList(sourceFile), 0, null));
+
+        final CpdTokenCache.CachedTokens tokens = cache.tokensOf(sourceFile);
+        Assert.assertNotNull("The file has not been tokenized", tokens);
+        Assert.assertTrue(Arrays.asList(tokens.getImages()).contains(literal.toString()));
+    }
+
+    /**
+     * A canceled CPD run stops, when the next file is added, instead of replaying all the cached tokens.
+     */
+    @Test(expected = OperationCanceledException.class)
+    public void testTokenReplayStopsWhenCanceled() throws Exception {
+        final IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        final CpdTokenCache cache = CpdTokenCache.load(this.testProject, LanguageFactory.createLanguage("java"), false);
+        Assert.assertTrue(cache.update(Collections.singletonList(sourceFile), 0, null));
+
+        final IProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled(true);
+        final CPDConfiguration config = new CPDConfiguration();
+        config.setMinimumTileSize(10);
+        config.setLanguage(cache.replayingLanguage(monitor));
+        new CPD(config).add(sourceFile.getLocation().toFile());
+    }
+
     /**
      * Test robustness #1
      */
@@ -0,0 +1,125 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+
+public class JavaProjectClassLoaderTest {
+    private static final String NAME = "foo/Bar.class";
+    private static final String OTHER_NAME = "foo/Baz.class";
+    private static final byte[] CLASS_FILE = { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 51 };
+
+    private final TypeResolutionCache cache = TypeResolutionCache.getInstance();
+    private IProject testProject;
+    private JavaProjectClassLoader classLoader;
+    private long oldMaximumSize;
+
+    @Before
+    public void setUp() throws Exception {
+        oldMaximumSize = cache.getMaximumSize();
+
+        testProject = EclipseUtils.createJavaProject("JavaProjectClassLoaderTest");
+        IFolder outputFolder = testProject.getWorkspace().getRoot()
+                .getFolder(JavaCore.create(testProject).getOutputLocation());
+        IFolder packageFolder = outputFolder.getFolder("foo");
+        if (!outputFolder.exists()) {
+            outputFolder.create(true, true, null);
+        }
+        packageFolder.create(true, true, null);
+        for (String name : new String[] { "Bar.class", "Baz.class" }) {
+            IFile classFile = packageFolder.getFile(name);
+            classFile.create(new ByteArrayInputStream(CLASS_FILE), true, null);
+        }
+        testProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+
+        classLoader = new JavaProjectClassLoader(getClass().getClassLoader(), testProject);
+        cache.dispose();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.setMaximumSize((int) (oldMaximumSize / (1024 * 1024)));
+        if (classLoader != null) {
+            classLoader.close();
+        }
+        cache.dispose();
+        if (testProject != null && testProject.exists()) {
+            testProject.delete(true, true, null);
+        }
+    }
+
+    private byte[] load(String name) throws IOException {
+        InputStream stream = classLoader.getResourceAsStream(name);
+        Assert.assertNotNull("The class file has not been found", stream);
+        return TypeResolutionCache.readFully(stream);
+    }
+
+    @Test
+    public void classFileIsReadFromCache() throws IOException {
+        Assert.assertArrayEquals(CLASS_FILE, load(NAME));
+        Assert.assertEquals(1, cache.getClassCount());
+        Assert.assertEquals(CLASS_FILE.length, cache.getSize());
+        Assert.assertEquals(0.0, cache.getHitRatio(), 0.0);
+
+        Assert.assertArrayEquals(CLASS_FILE, load(NAME));
+        Assert.assertTrue("The second load has not been a cache hit", cache.getHitRatio() > 0.0);
+        Assert.assertEquals(1, cache.getClassCount());
+    }
+
+    @Test
+    public void classFileOfProjectShadowsLibrary() throws Exception {
+        byte[] libraryClassFile = Arrays.copyOf(CLASS_FILE, CLASS_FILE.length + 1);
+        File jar = testProject.getLocation().append("lib.jar").toFile();
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry(NAME));
+            out.write(libraryClassFile);
+            out.closeEntry();
+        }
+        IJavaProject javaProject = JavaCore.create(testProject);
+        List<IClasspathEntry> entries = new ArrayList<>(Arrays.asList(javaProject.getRawClasspath()));
+        entries.add(JavaCore.newLibraryEntry(new Path(jar.getAbsolutePath()), null, null));
+        javaProject.setRawClasspath(entries.toArray(new IClasspathEntry[0]), null);
+
+        classLoader.close();
+        classLoader = new JavaProjectClassLoader(getClass().getClassLoader(), testProject);
+        Assert.assertArrayEquals(CLASS_FILE, load(NAME));
+    }
+
+    @Test
+    public void changedMaximumSizeAppliesToNextClassFile() throws IOException {
+        load(NAME);
+        Assert.assertEquals(1, cache.getClassCount());
+
+        // the next cached class file evicts the class files, that don't fit anymore
+        cache.setMaximumSize(0);
+        load(OTHER_NAME);
+        Assert.assertEquals(0, cache.getClassCount());
+        Assert.assertEquals(0, cache.getSize());
+    }
+}
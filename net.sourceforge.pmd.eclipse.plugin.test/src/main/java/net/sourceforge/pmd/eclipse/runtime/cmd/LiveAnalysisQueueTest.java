@@ -0,0 +1,90 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.RuleViolation;
+
+public class LiveAnalysisQueueTest {
+    private static final List<RuleViolation> NO_VIOLATIONS = Collections.emptyList();
+
+    private final LiveAnalysisQueue<String, Object> queue = new LiveAnalysisQueue<>(2);
+
+    @Test
+    public void typingIsDebounced() {
+        Assert.assertTrue(queue.request("A", null, "c"));
+        Assert.assertTrue(queue.request("A", null, "cl"));
+        Assert.assertTrue(queue.request("A", null, "cla"));
+        // the same content is not requested again
+        Assert.assertFalse(queue.request("A", null, "cla"));
+
+        Assert.assertEquals(1, queue.getPendingCount());
+        Assert.assertEquals("cla", queue.next().getSource());
+    }
+
+    @Test
+    public void newerContentSupersedesRunningAnalysis() {
+        queue.request("A", null, "class");
+        LiveAnalysisQueue.Request<String, Object> running = queue.next();
+        // the running content is not requested again
+        Assert.assertFalse(queue.request("A", null, "class"));
+        Assert.assertFalse(running.isSuperseded());
+
+        Assert.assertTrue(queue.request("A", null, "class A"));
+        Assert.assertTrue(running.isSuperseded());
+        Assert.assertFalse(queue.put(running, NO_VIOLATIONS));
+        Assert.assertFalse(queue.isAnalyzed("A", "class"));
+        Assert.assertEquals("class A", queue.next().getSource());
+    }
+
+    @Test
+    public void otherFilesDontSupersedeRunningAnalysis() {
+        queue.request("A", null, "class A");
+        LiveAnalysisQueue.Request<String, Object> running = queue.next();
+
+        queue.request("B", null, "class B");
+        Assert.assertFalse(running.isSuperseded());
+        Assert.assertTrue(queue.put(running, NO_VIOLATIONS));
+        Assert.assertTrue(queue.isAnalyzed("A", "class A"));
+    }
+
+    @Test
+    public void lastResultIsKeptWhileNewerContentIsPending() {
+        queue.request("A", null, "class");
+        queue.put(queue.next(), NO_VIOLATIONS);
+
+        queue.request("A", null, "class A");
+        Assert.assertFalse(queue.isAnalyzed("A", "class A"));
+        Assert.assertSame(NO_VIOLATIONS, queue.lastViolationsOf("A"));
+    }
+
+    @Test
+    public void removedFileIsForgotten() {
+        queue.request("A", null, "class");
+        queue.put(queue.next(), NO_VIOLATIONS);
+        queue.request("A", null, "class A");
+        LiveAnalysisQueue.Request<String, Object> running = queue.next();
+
+        queue.remove("A");
+        Assert.assertNull(queue.lastViolationsOf("A"));
+        Assert.assertTrue(running.isSuperseded());
+        Assert.assertNull(queue.next());
+    }
+
+    @Test
+    public void onlyRecentResultsAreKept() {
+        for (String file : new String[] { "A", "B", "C" }) {
+            queue.request(file, null, "class " + file);
+            queue.put(queue.next(), NO_VIOLATIONS);
+        }
+        Assert.assertEquals(2, queue.getResultCount());
+        Assert.assertNull(queue.lastViolationsOf("A"));
+    }
+}
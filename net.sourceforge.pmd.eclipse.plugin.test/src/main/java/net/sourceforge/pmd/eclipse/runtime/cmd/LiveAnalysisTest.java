@@ -0,0 +1,49 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.rule.XPathRule;
+import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
+
+public class LiveAnalysisTest {
+    private static final String SOURCE = "class Foo {\n  void bar() {\n    int unused = 0;\n"
+            + "    int reviewed = 0;\n  }\n}\n";
+
+    private static List<RuleViolation> analyze(String source) {
+        XPathRule rule = new XPathRule(XPathVersion.XPATH_2_0, "//LocalVariableDeclaration");
+        rule.setName("LocalVariable");
+        rule.setLanguage(LanguageRegistry.getLanguage("Java"));
+        rule.setMessage("Local variable");
+        AnalysisSession session = AnalysisSession.forLanguageVersion(rule.getLanguage().getDefaultVersion());
+        return session.analyze(source, new File("Foo.java"), rule);
+    }
+
+    @Test
+    public void violationsWithoutReviewAreKept() {
+        List<RuleViolation> violations = analyze(SOURCE);
+        Assert.assertEquals(2, violations.size());
+        Assert.assertEquals(violations, LiveAnalysis.withoutReviewed(violations, SOURCE));
+    }
+
+    @Test
+    public void reviewedViolationsAreRemoved() {
+        String source = SOURCE.replace("    int reviewed",
+                "    // @PMD:REVIEWED:LocalVariable: by user on 2026-10-18\n    int reviewed");
+        List<RuleViolation> violations = analyze(source);
+        Assert.assertEquals(2, violations.size());
+
+        List<RuleViolation> remaining = LiveAnalysis.withoutReviewed(violations, source);
+        Assert.assertEquals(1, remaining.size());
+        Assert.assertEquals(3, remaining.get(0).getBeginLine());
+    }
+}
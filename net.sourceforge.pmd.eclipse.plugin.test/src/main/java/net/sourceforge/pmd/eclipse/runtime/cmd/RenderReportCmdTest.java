@@ -6,6 +6,7 @@ package net.sourceforge.pmd.eclipse.runtime.cmd;
 
 import java.io.InputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
@@ -19,6 +20,7 @@ import org.junit.Test;
 import net.sourceforge.pmd.eclipse.EclipseUtils;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
 import net.sourceforge.pmd.renderers.HTMLRenderer;
+import net.sourceforge.pmd.renderers.XMLRenderer;
 
 /**
  * Test the report rendering
@@ -91,6 +93,35 @@ public class RenderReportCmdTest {
         }
     }
 
+    /**
+     * All the registered renderers write their report. The reports are rendered in parallel.
+     */
+    @Test
+    public void testRenderReportCmdMultipleRenderers() throws Exception {
+        final ReviewCodeCmd reviewCmd = new ReviewCodeCmd();
+        reviewCmd.addResource(this.testProject);
+        reviewCmd.performExecute();
+
+        final RenderReportsCmd cmd = new RenderReportsCmd();
+        cmd.setProject(this.testProject);
+        cmd.registerRenderer(new HTMLRenderer(), PMDRuntimeConstants.HTML_REPORT_NAME);
+        cmd.registerRenderer(new XMLRenderer(), "pmd-report.xml");
+        cmd.performExecute();
+        cmd.join();
+
+        final IFolder reportFolder = this.testProject.getFolder(PMDRuntimeConstants.REPORT_FOLDER);
+        Assert.assertTrue(reportFolder.getFile(PMDRuntimeConstants.HTML_REPORT_NAME).exists());
+        final IFile xmlReport = reportFolder.getFile("pmd-report.xml");
+        Assert.assertTrue(xmlReport.exists());
+        Assert.assertFalse(reportFolder.getFile("pmd-report.xml.tmp").exists());
+
+        try (InputStream contents = xmlReport.getContents()) {
+            String xml = IOUtils.toString(contents, xmlReport.getCharset());
+            Assert.assertTrue(xml.contains("Test.java"));
+            Assert.assertTrue(xml.contains("<violation"));
+        }
+    }
+
     /**
      * Test robustness #1
      */
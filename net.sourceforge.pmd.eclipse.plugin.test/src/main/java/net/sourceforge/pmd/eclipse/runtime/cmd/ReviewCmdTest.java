@@ -5,10 +5,15 @@
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
 import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -18,6 +23,8 @@ import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ResourcesPlugin;
@@ -34,6 +41,7 @@ import net.sourceforge.pmd.eclipse.LoggingRule;
 import net.sourceforge.pmd.eclipse.WaitingMonitor;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
@@ -114,6 +122,211 @@ public class ReviewCmdTest {
         }
     }
 
+    /**
+     * The violation index must be updated with the markers of a review.
+     */
+    @Test
+    public void testReviewCmdUpdatesViolationIndex() throws CoreException {
+        final ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.addResource(this.testProject);
+        cmd.performExecute();
+        cmd.join();
+
+        final IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        int markerCount = 0;
+        for (String markerType : PMDRuntimeConstants.RULE_MARKER_TYPES) {
+            markerCount += sourceFile.findMarkers(markerType, false, IResource.DEPTH_ZERO).length;
+        }
+        Assert.assertTrue(markerCount > 0);
+
+        ViolationIndex index = PMDPlugin.getDefault().getViolationIndex();
+        Assert.assertEquals(markerCount, index.getViolations(sourceFile).size());
+        Assert.assertEquals(markerCount, index.getViolationCount(sourceFile));
+        Assert.assertTrue(index.getViolationCount(this.testProject) >= markerCount);
+        Assert.assertTrue(index.getFilesWithViolations(this.testProject).contains(sourceFile));
+    }
+
+    /**
+     * Reviewing an unchanged file again must keep the existing markers instead of recreating them.
+     */
+    @Test
+    public void testReviewCmdKeepsUnchangedMarkers() throws CoreException {
+        ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.addResource(this.testProject);
+        cmd.performExecute();
+        cmd.join();
+
+        final IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        Set<Long> markerIds = new HashSet<>();
+        for (IMarker marker : sourceFile.findMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_ONE)) {
+            markerIds.add(marker.getId());
+        }
+        Assert.assertFalse(markerIds.isEmpty());
+
+        cmd = new ReviewCodeCmd();
+        cmd.addResource(this.testProject);
+        cmd.performExecute();
+        cmd.join();
+
+        Set<Long> newMarkerIds = new HashSet<>();
+        for (IMarker marker : sourceFile.findMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_ONE)) {
+            newMarkerIds.add(marker.getId());
+        }
+        Assert.assertEquals(markerIds, newMarkerIds);
+    }
+
+    /**
+     * The markers of a file, that can't be parsed, must be kept.
+     */
+    @Test
+    public void testReviewCmdKeepsMarkersOfUnparsableFile() throws Exception {
+        IFile sourceFile = EclipseUtils.createTestSourceFile(this.testProject, "/src/Broken.java", "class Broken {");
+        IMarker marker = sourceFile.createMarker(PMDRuntimeConstants.PMD_MARKER_1);
+        marker.setAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "SomeRule");
+
+        ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.addResource(sourceFile);
+        cmd.performExecute();
+        cmd.join();
+
+        Assert.assertTrue("The markers of the unparsable file have been removed", marker.exists());
+    }
+
+    /**
+     * Violations, that have been reviewed with a plugin style review comment, must not be marked.
+     */
+    @Test
+    public void testReviewCmdIgnoresReviewedViolations() throws Exception {
+        String source = "class Reviewed {\r\n"
+                + "  void run() {\r\n"
+                + "    try { run(); } catch (RuntimeException e) { }\r\n"
+                + "  }\r\n"
+                + "}";
+        IFile sourceFile = EclipseUtils.createTestSourceFile(testProject, "/src/Reviewed.java", source);
+        testProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+
+        ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.addResource(sourceFile);
+        cmd.performExecute();
+        cmd.join();
+        Set<MarkerInfo2> markers = cmd.getMarkers().get(sourceFile);
+        Assert.assertFalse("No violations found", markers.isEmpty());
+
+        MarkerInfo2 marker = markers.iterator().next();
+        String ruleName = (String) marker.getAttributes().get(PMDRuntimeConstants.KEY_MARKERATT_RULENAME);
+        int line = (Integer) marker.getAttributes().get(IMarker.LINE_NUMBER);
+        String[] lines = source.split("\r\n");
+        StringBuilder reviewed = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            if (i == line - 1) {
+                reviewed.append(PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT).append(ruleName)
+                    .append(": by tester on 01/01/22 12:00\r\n");
+            }
+            reviewed.append(lines[i]).append("\r\n");
+        }
+        EclipseUtils.createTestSourceFile(testProject, "/src/Reviewed.java", reviewed.toString());
+
+        cmd = new ReviewCodeCmd();
+        cmd.addResource(sourceFile);
+        cmd.performExecute();
+        cmd.join();
+        for (MarkerInfo2 newMarker : cmd.getMarkers().get(sourceFile)) {
+            Assert.assertFalse("Reviewed violation is still reported",
+                    ruleName.equals(newMarker.getAttributes().get(PMDRuntimeConstants.KEY_MARKERATT_RULENAME))
+                    && Integer.valueOf(line + 1).equals(newMarker.getAttributes().get(IMarker.LINE_NUMBER)));
+        }
+    }
+
+    /**
+     * All files of a project are analyzed together, multi-threaded analysis must find the same violations.
+     * The analysis cache is disabled, so that both runs really analyze the files.
+     */
+    @Test
+    public void testReviewCmdMultiThreaded() throws Exception {
+        EclipseUtils.createTestSourceFile(testProject, "/src/Test2.java",
+                "class Test2 {\n"
+              + "  void run() {\n"
+              + "    try { run(); } catch (RuntimeException e) { }\n"
+              + "  }\n"
+              + "}");
+        testProject.refreshLocal(IResource.DEPTH_INFINITE, null);
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
+        int oldThreads = preferences.getAnalysisThreads();
+        boolean oldCacheEnabled = preferences.isAnalysisCacheEnabled();
+
+        try {
+            preferences.setAnalysisCacheEnabled(false);
+            int hitCount = AnalysisCache.forProject(testProject).getHitCount();
+
+            preferences.setAnalysisThreads(0);
+            ReviewCodeCmd cmd = new ReviewCodeCmd();
+            cmd.addResource(this.testProject);
+            cmd.performExecute();
+            cmd.join();
+            Map<IFile, Set<MarkerInfo2>> singleThreaded = cmd.getMarkers();
+
+            preferences.setAnalysisThreads(2);
+            cmd = new ReviewCodeCmd();
+            cmd.addResource(this.testProject);
+            cmd.performExecute();
+            cmd.join();
+            Map<IFile, Set<MarkerInfo2>> multiThreaded = cmd.getMarkers();
+
+            // no markers have been replayed from the cache
+            Assert.assertEquals(hitCount, AnalysisCache.forProject(testProject).getHitCount());
+            Assert.assertEquals(2, cmd.getFileCount());
+            Assert.assertEquals(singleThreaded.keySet(), multiThreaded.keySet());
+            for (IFile file : singleThreaded.keySet()) {
+                Assert.assertFalse("No violations found in " + file, singleThreaded.get(file).isEmpty());
+                Assert.assertEquals(identitiesOf(singleThreaded.get(file)), identitiesOf(multiThreaded.get(file)));
+            }
+        } finally {
+            preferences.setAnalysisThreads(oldThreads);
+            preferences.setAnalysisCacheEnabled(oldCacheEnabled);
+        }
+    }
+
+    private static List<String> identitiesOf(Set<MarkerInfo2> markers) {
+        List<String> identities = new ArrayList<>(markers.size());
+        for (MarkerInfo2 marker : markers) {
+            identities.add(marker.identity());
+        }
+        Collections.sort(identities);
+        return identities;
+    }
+
+    @Test
+    public void testReviewCmdUsesAnalysisCache() throws Exception {
+        boolean oldCacheEnabled = PMDPlugin.getDefault().loadPreferences().isAnalysisCacheEnabled();
+
+        try {
+            PMDPlugin.getDefault().loadPreferences().setAnalysisCacheEnabled(true);
+            ReviewCodeCmd cmd = new ReviewCodeCmd();
+            cmd.addResource(this.testProject);
+            cmd.performExecute();
+            cmd.join();
+            Map<IFile, Set<MarkerInfo2>> analyzed = cmd.getMarkers();
+            AnalysisCache cache = AnalysisCache.forProject(testProject);
+            Assert.assertEquals(1, cache.size());
+            int hitCount = cache.getHitCount();
+
+            cmd = new ReviewCodeCmd();
+            cmd.addResource(this.testProject);
+            cmd.performExecute();
+            cmd.join();
+            Map<IFile, Set<MarkerInfo2>> cached = cmd.getMarkers();
+
+            // the unchanged file has not been analyzed again
+            Assert.assertEquals(hitCount + 1, cache.getHitCount());
+            Assert.assertEquals(analyzed.keySet(), cached.keySet());
+            for (IFile file : analyzed.keySet()) {
+                Assert.assertEquals(analyzed.get(file).size(), cached.get(file).size());
+            }
+        } finally {
+            PMDPlugin.getDefault().loadPreferences().setAnalysisCacheEnabled(oldCacheEnabled);
+        }
+    }
+
     private IFile createMissingOverrideTestCase(IProject project) throws Exception {
         EclipseUtils.createTestSourceFile(project, "/src/MyInterface.java", "public interface MyInterface { void run(); }");
         IFile sourceFile = EclipseUtils.createTestSourceFile(project, "/src/Foo.java",
@@ -234,13 +447,49 @@ public class ReviewCmdTest {
     }
 
     /**
-     * The ReviewCodeCmd must also work on a ResourceDelta
+     * The ReviewCodeCmd must also work on a ResourceDelta. The generations of the changed
+     * files, that are analyzed right away, are forgotten after their analysis.
      */
     @Test
-    public void testReviewCmdDelta() {
-        // Don't know how to test that yet
-        // How to instantiate a ResourceDelta ?
-        // Let's comment for now
+    public void testReviewCmdDelta() throws CoreException {
+        IFile sourceFile = this.testProject.getFile("/src/Test.java");
+        IncrementalReviewScheduler scheduler = IncrementalReviewScheduler.getInstance();
+        int generationCount = scheduler.getGenerationCount();
+
+        ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.setResourceDelta(changedDeltaOf(sourceFile));
+        cmd.performExecute();
+        cmd.join();
+
+        Assert.assertTrue("The changed file has not been analyzed",
+                sourceFile.findMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_ZERO).length > 0);
+        Assert.assertEquals(generationCount, scheduler.getGenerationCount());
+    }
+
+    /**
+     * @return a delta, that only contains the changed content of the file
+     */
+    private static IResourceDelta changedDeltaOf(final IFile file) {
+        return (IResourceDelta) Proxy.newProxyInstance(ReviewCmdTest.class.getClassLoader(),
+                new Class<?>[] { IResourceDelta.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        switch (method.getName()) {
+                        case "getResource":
+                            return file;
+                        case "getKind":
+                            return IResourceDelta.CHANGED;
+                        case "getFlags":
+                            return IResourceDelta.CONTENT;
+                        case "accept":
+                            return ((IResourceDeltaVisitor) args[0]).visit((IResourceDelta) proxy);
+                        case "getAffectedChildren":
+                            return new IResourceDelta[0];
+                        default:
+                            return method.getReturnType() == boolean.class ? (Object) false : null;
+                        }
+                    }
+                });
     }
 
     /**
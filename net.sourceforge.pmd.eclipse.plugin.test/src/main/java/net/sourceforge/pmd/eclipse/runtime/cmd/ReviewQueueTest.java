@@ -0,0 +1,125 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReviewQueueTest {
+    private final Collection<String> deletedFiles = new HashSet<>();
+
+    private final ReviewQueue<String> queue = new ReviewQueue<String>() {
+        @Override
+        protected boolean exists(String file) {
+            return !deletedFiles.contains(file);
+        }
+    };
+
+    private void enqueue(String... files) {
+        queue.supersede(Arrays.asList(files));
+        queue.prepend(Arrays.asList(files));
+    }
+
+    @Test
+    public void supersedeDropsQueuedFiles() {
+        enqueue("A", "B");
+        queue.supersede(Arrays.asList("A"));
+
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals(Arrays.asList("B"), new ArrayList<>(queue.startSlice(10).keySet()));
+    }
+
+    @Test
+    public void supersedeOfRunningSlice() {
+        enqueue("A", "B");
+        Map<String, Integer> slice = queue.startSlice(10);
+
+        Assert.assertFalse(queue.supersede(Arrays.asList("C")));
+        Assert.assertTrue(queue.supersede(Arrays.asList("B")));
+        Assert.assertTrue(queue.isCurrent("A", slice.get("A")));
+        Assert.assertFalse(queue.isCurrent("B", slice.get("B")));
+    }
+
+    @Test
+    public void slicesAreLimited() {
+        enqueue("A", "B", "C");
+
+        Map<String, Integer> slice = queue.startSlice(2);
+        Assert.assertEquals(Arrays.asList("A", "B"), new ArrayList<>(slice.keySet()));
+        Assert.assertEquals(3, queue.size());
+        queue.finishSlice(slice, false);
+
+        Assert.assertEquals(Arrays.asList("C"), new ArrayList<>(queue.startSlice(2).keySet()));
+    }
+
+    @Test
+    public void newFilesAreQueuedInFront() {
+        enqueue("A");
+        enqueue("B");
+        queue.supersede(Arrays.asList("C"));
+        queue.append(Arrays.asList("C"));
+
+        Assert.assertEquals(Arrays.asList("B", "A", "C"), new ArrayList<>(queue.startSlice(10).keySet()));
+    }
+
+    @Test
+    public void canceledSliceIsRequeued() {
+        enqueue("A", "B", "C");
+        Map<String, Integer> slice = queue.startSlice(2);
+        queue.supersede(Arrays.asList("B"));
+
+        queue.finishSlice(slice, true);
+        // the superseded file is not requeued
+        Assert.assertEquals(Arrays.asList("A", "C"), new ArrayList<>(queue.startSlice(10).keySet()));
+    }
+
+    @Test
+    public void generationsAreForgottenAfterReview() {
+        enqueue("A", "B");
+        Map<String, Integer> slice = queue.startSlice(1);
+        queue.finishSlice(slice, false);
+        Assert.assertEquals(1, queue.getGenerationCount());
+
+        queue.finishSlice(queue.startSlice(1), false);
+        Assert.assertEquals(0, queue.getGenerationCount());
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void generationsOfQueuedFilesAreKept() {
+        queue.supersede(Arrays.asList("A", "B"));
+        queue.append(Arrays.asList("B"));
+
+        queue.reviewed(Arrays.asList("A", "B"));
+        Assert.assertEquals(1, queue.getGenerationCount());
+        Assert.assertTrue(queue.isCurrent("B", queue.startSlice(1).get("B")));
+    }
+
+    @Test
+    public void deletedFilesAreForgotten() {
+        enqueue("A", "B");
+        deletedFiles.add("A");
+
+        Assert.assertEquals(Arrays.asList("B"), new ArrayList<>(queue.startSlice(10).keySet()));
+        Assert.assertEquals(1, queue.getGenerationCount());
+    }
+
+    @Test
+    public void forgottenGenerationIsNotReused() {
+        enqueue("A");
+        Map<String, Integer> slice = queue.startSlice(1);
+        queue.finishSlice(slice, false);
+        Assert.assertEquals(0, queue.getGenerationCount());
+
+        queue.supersede(Arrays.asList("A"));
+        Assert.assertFalse(queue.isCurrent("A", slice.get("A")));
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+
+public class TypeResolutionCacheTest {
+    private static final String NAME = "foo/Bar.class";
+
+    private final TypeResolutionCache cache = TypeResolutionCache.getInstance();
+
+    @After
+    public void tearDown() {
+        cache.setMaximumSize(IPreferences.TYPE_RESOLUTION_CACHE_SIZE_DEFAULT);
+        cache.dispose();
+    }
+
+    @Test
+    public void classFilesAreCachedPerScope() {
+        Object scope = new Object();
+        byte[] bytes = { 1, 2, 3 };
+        Assert.assertNull(cache.get(scope, NAME, 0L));
+
+        cache.put(scope, NAME, 0L, bytes);
+        Assert.assertSame(bytes, cache.get(scope, NAME, 0L));
+        Assert.assertNull(cache.get(new Object(), NAME, 0L));
+        Assert.assertEquals(3, cache.getSize());
+    }
+
+    @Test
+    public void modifiedClassFileIsReadAgain() {
+        Object scope = new Object();
+        cache.put(scope, NAME, 1L, new byte[] { 1 });
+        cache.put(scope, "foo/Other.class", 1L, new byte[] { 2 });
+
+        Assert.assertNull(cache.get(scope, NAME, 2L));
+        // the other classes stay cached
+        Assert.assertNotNull(cache.get(scope, "foo/Other.class", 1L));
+        Assert.assertEquals(1, cache.getClassCount());
+    }
+
+    @Test
+    public void removeScope() {
+        Object scope = new Object();
+        Object otherScope = new Object();
+        cache.put(scope, NAME, 0L, new byte[] { 1 });
+        cache.put(otherScope, NAME, 0L, new byte[] { 2 });
+
+        cache.removeScope(scope);
+        Assert.assertNull(cache.get(scope, NAME, 0L));
+        Assert.assertNotNull(cache.get(otherScope, NAME, 0L));
+        Assert.assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void reducedMaximumSizeAppliesToNextPut() {
+        Object scope = new Object();
+        cache.put(scope, NAME, 0L, new byte[] { 1 });
+
+        cache.setMaximumSize(0);
+        Assert.assertEquals(1, cache.getClassCount());
+        cache.put(scope, "foo/Other.class", 0L, new byte[] { 2 });
+        Assert.assertEquals(0, cache.getClassCount());
+        Assert.assertEquals(0, cache.getSize());
+    }
+}
@@ -516,6 +516,46 @@ public class ProjectPropertiesModelTest {
         mgr.loadProjectProperties(this.testProject);
     }
 
+    /**
+     * The indexed project properties are updated, when the properties file is changed,
+     * and the listeners are notified about the change.
+     */
+    @Test
+    public void testPropertiesChangedOnDisk() throws PropertiesException, CoreException {
+        final IProjectPropertiesManager mgr = PMDPlugin.getDefault().getPropertiesManager();
+        IProjectProperties model = mgr.loadProjectProperties(this.testProject);
+        model.setFullBuildEnabled(false);
+        model.sync();
+        Assert.assertSame(model, mgr.loadProjectProperties(this.testProject));
+
+        final Set<IProject> changedProjects = new HashSet<>();
+        IProjectPropertiesListener listener = new IProjectPropertiesListener() {
+            @Override
+            public void projectPropertiesChanged(IProject project) {
+                changedProjects.add(project);
+            }
+        };
+        mgr.addProjectPropertiesListener(listener);
+        try {
+            final IFile file = this.testProject.getFile(".pmd");
+            String propertiesContent = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<pmd>\n"
+                + "    <useProjectRuleSet>false</useProjectRuleSet>\n"
+                + "    <includeDerivedFiles>false</includeDerivedFiles>\n"
+                + "    <violationsAsErrors>true</violationsAsErrors>\n"
+                + "    <fullBuildEnabled>true</fullBuildEnabled>\n"
+                + "</pmd>\n";
+            InputStream propertiesStream = new ByteArrayInputStream(propertiesContent.getBytes(StandardCharsets.UTF_8));
+            file.setContents(propertiesStream, 0, null);
+        } finally {
+            mgr.removeProjectPropertiesListener(listener);
+        }
+
+        Assert.assertTrue(changedProjects.contains(this.testProject));
+        model = mgr.loadProjectProperties(this.testProject);
+        Assert.assertTrue(model.isFullBuildEnabled());
+    }
+
     private void dumpRuleSet(final RuleSet ruleSet) {
         System.out.println("Dumping rule set:" + ruleSet.getName());
         for (final Rule rule : ruleSet.getRules()) {
@@ -0,0 +1,101 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.sourceforge.pmd.eclipse.EclipseUtils;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.cmd.ReviewCodeCmd;
+
+public class PrioritySummaryCacheTest {
+    private final PrioritySummaryCache cache = new PrioritySummaryCache();
+
+    private final IResourceChangeListener listener = new IResourceChangeListener() {
+        @Override
+        public void resourceChanged(IResourceChangeEvent event) {
+            cache.removed(event.getDelta());
+        }
+    };
+
+    private IProject testProject;
+    private IFolder folder;
+    private IFile sourceFile;
+    private IFile otherFile;
+
+    @Before
+    public void setUp() throws Exception {
+        testProject = EclipseUtils.createJavaProject("PrioritySummaryCacheTest");
+        sourceFile = EclipseUtils.createTestSourceFile(testProject);
+        otherFile = EclipseUtils.createTestSourceFile(testProject, "/src/Other.java", "class Other { }");
+        folder = testProject.getFolder("src");
+        PMDPlugin.getDefault().getPropertiesManager().loadProjectProperties(testProject).setPmdEnabled(true);
+
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(listener, IResourceChangeEvent.POST_CHANGE);
+        for (IResource resource : new IResource[] { sourceFile, otherFile, folder, testProject }) {
+            cache.summaryOf(resource);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(listener);
+        if (testProject.exists()) {
+            if (testProject.isOpen()) {
+                EclipseUtils.removePMDNature(testProject);
+            }
+            testProject.delete(true, true, null);
+        }
+    }
+
+    @Test
+    public void updateOfContainerRecomputesMembers() throws Exception {
+        Assert.assertNull(cache.summaryOf(sourceFile).getHighestPriority());
+
+        ReviewCodeCmd cmd = new ReviewCodeCmd();
+        cmd.addResource(sourceFile);
+        cmd.performExecute();
+        cmd.join();
+
+        Set<IResource> changed = cache.update(Collections.singleton(folder));
+        Assert.assertTrue(changed.contains(sourceFile));
+        Assert.assertTrue(changed.contains(folder));
+        Assert.assertTrue(changed.contains(testProject));
+        // the summary of the other file didn't change
+        Assert.assertFalse(changed.contains(otherFile));
+        Assert.assertNotNull(cache.summaryOf(sourceFile).getHighestPriority());
+    }
+
+    @Test
+    public void removedResourcesAreForgotten() throws Exception {
+        Assert.assertEquals(4, cache.size());
+
+        otherFile.delete(true, null);
+        Assert.assertEquals(3, cache.size());
+
+        folder.delete(true, null);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void membersOfClosedProjectsAreForgotten() throws Exception {
+        testProject.close(null);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.update(Collections.singleton(testProject)).isEmpty());
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.model;
+
+import java.io.StringReader;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LinesOfCodeCounterTest {
+    private static final String SOURCE = "package foo;\n"
+            + "import java.util.List;\n"
+            + "/** A class. */\n"
+            + "public class Foo {\n"
+            + "    // a line comment\n"
+            + "    /*\n"
+            + "     * a block comment\n"
+            + "     */\n"
+            + "    private int x;\n"
+            + "\n"
+            + "    void bar()\n"
+            + "    {\n"
+            + "        x = 1; /* trailing */\n"
+            + "    }\n"
+            + "    /** a block comment at the start of a line hides the code */ void baz() {}\n"
+            + "}\n";
+
+    @Test
+    public void countsLinesOfCode() throws Exception {
+        Assert.assertEquals(3, LinesOfCodeCounter.count(new StringReader(SOURCE), true));
+        Assert.assertEquals(6, LinesOfCodeCounter.count(new StringReader(SOURCE), false));
+    }
+
+    @Test
+    public void countsWindowsLineEndings() throws Exception {
+        Assert.assertEquals(3, LinesOfCodeCounter.count(new StringReader(SOURCE.replace("\n", "\r\n")), true));
+    }
+
+    @Test
+    public void countsNothingWithoutBody() throws Exception {
+        Assert.assertEquals(0, LinesOfCodeCounter.count(new StringReader("package foo;\n"), true));
+        Assert.assertEquals(0, FileRecord.linesOfCodeIn("", true));
+    }
+}
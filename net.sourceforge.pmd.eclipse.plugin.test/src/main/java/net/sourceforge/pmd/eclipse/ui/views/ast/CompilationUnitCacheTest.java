@@ -0,0 +1,101 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.views.ast;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+
+public class CompilationUnitCacheTest {
+    private final CompilationUnitCache cache = CompilationUnitCache.getInstance();
+    private final LanguageVersion version = XPathEvaluator.INSTANCE.getLanguageVersion();
+    private final IDocument document = new Document("class Foo { void bar() { } }");
+
+    @After
+    public void tearDown() {
+        cache.remove(document);
+    }
+
+    private Node parse() throws InterruptedException {
+        RecordingListener listener = new RecordingListener();
+        cache.request(document, version, listener);
+        Assert.assertTrue("The document has not been parsed", listener.await());
+        return listener.compilationUnit;
+    }
+
+    @Test
+    public void documentIsParsedInBackground() throws InterruptedException {
+        Assert.assertNull(cache.getIfCurrent(document, version));
+
+        Node compilationUnit = parse();
+        Assert.assertNotNull(compilationUnit);
+        Assert.assertSame(compilationUnit, cache.getIfCurrent(document, version));
+    }
+
+    @Test
+    public void currentTreeIsNotifiedRightAway() throws InterruptedException {
+        Node compilationUnit = parse();
+
+        RecordingListener listener = new RecordingListener();
+        cache.request(document, version, listener);
+        // notified in the calling thread, without parsing again
+        Assert.assertEquals(0, listener.notified.getCount());
+        Assert.assertSame(compilationUnit, listener.compilationUnit);
+    }
+
+    @Test
+    public void changedDocumentIsParsedAgain() throws InterruptedException {
+        Node compilationUnit = parse();
+
+        document.set("class Foo { }");
+        Assert.assertNull(cache.getIfCurrent(document, version));
+
+        Node newCompilationUnit = parse();
+        Assert.assertNotNull(newCompilationUnit);
+        Assert.assertNotSame(compilationUnit, newCompilationUnit);
+    }
+
+    @Test
+    public void treeIsOnlyCurrentForItsLanguageVersion() throws InterruptedException {
+        parse();
+
+        LanguageVersion otherVersion = LanguageRegistry.getLanguage(JavaLanguageModule.NAME).getVersion("1.4");
+        Assert.assertNotEquals(version, otherVersion);
+        Assert.assertNull(cache.getIfCurrent(document, otherVersion));
+    }
+
+    @Test
+    public void removedTreeIsForgotten() throws InterruptedException {
+        parse();
+
+        cache.remove(document);
+        Assert.assertNull(cache.getIfCurrent(document, version));
+    }
+
+    private static class RecordingListener implements CompilationUnitCache.CompilationUnitListener {
+        private final CountDownLatch notified = new CountDownLatch(1);
+        private volatile Node compilationUnit;
+
+        @Override
+        public void compilationUnitParsed(IDocument document, Node compilationUnit) {
+            this.compilationUnit = compilationUnit;
+            notified.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return notified.await(30, TimeUnit.SECONDS);
+        }
+    }
+}
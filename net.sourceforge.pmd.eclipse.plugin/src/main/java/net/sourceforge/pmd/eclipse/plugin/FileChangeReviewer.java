@@ -4,7 +4,10 @@
 
 package net.sourceforge.pmd.eclipse.plugin;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
@@ -19,11 +22,14 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.sourceforge.pmd.eclipse.runtime.cmd.ReviewCodeCmd;
+import net.sourceforge.pmd.eclipse.runtime.cmd.IncrementalReviewScheduler;
 
 /**
- * Monitors for changes in the workspace and initiates the ReviewCodeCmd when
- * suitable file changes in some meaningful way.
+ * Monitors for changes in the workspace and queues the files for the background
+ * review, when suitable file changes in some meaningful way. The review doesn't
+ * block the notification: the files are analyzed by the job of the
+ * {@link IncrementalReviewScheduler}. A file, that changes again while it is
+ * queued, is analyzed only once.
  * 
  * @author Brian Remedios
  */
@@ -92,18 +98,22 @@ public class FileChangeReviewer implements IResourceChangeListener {
             return;
         }
 
-        ReviewCodeCmd cmd = new ReviewCodeCmd(); // separate one for each thread
-        cmd.reset();
-
+        Set<IFile> changedFiles = new LinkedHashSet<>();
         for (ResourceChange chg : itemsChanged) {
-            cmd.addResource(chg.file);
+            if (!chg.file.isDerived()) {
+                changedFiles.add(chg.file);
+            }
         }
-
-        try {
-            cmd.performExecute();
-        } catch (RuntimeException e) {
-            LOG.error("Error processing code review upon file changes: {}", e.toString(), e);
+        if (changedFiles.isEmpty()) {
+            return;
         }
+
+        // older queued changes of these files are dropped, so each file is analyzed once
+        List<IFile> files = new ArrayList<>(changedFiles);
+        IncrementalReviewScheduler scheduler = IncrementalReviewScheduler.getInstance();
+        scheduler.supersede(files);
+        scheduler.enqueue(files);
+        LOG.debug("Queued {} changed files for review, queue depth is {}", files.size(), scheduler.getQueueDepth());
     }
 
     private void changed(Set<ResourceChange> itemsChanged, IResourceDelta delta, IProgressMonitor monitor) {
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -17,7 +18,6 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
@@ -29,6 +29,7 @@ import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.jdt.core.ElementChangedEvent;
 import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
@@ -63,12 +64,23 @@ import net.sourceforge.pmd.eclipse.core.IRuleSetManager;
 import net.sourceforge.pmd.eclipse.core.ext.RuleSetsExtensionProcessor;
 import net.sourceforge.pmd.eclipse.core.impl.RuleSetManagerImpl;
 import net.sourceforge.pmd.eclipse.logging.internal.LogbackConfiguration;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
+import net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisCache;
+import net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisSession;
+import net.sourceforge.pmd.eclipse.runtime.cmd.AuxClasspathPool;
+import net.sourceforge.pmd.eclipse.runtime.cmd.ContinuousCpd;
+import net.sourceforge.pmd.eclipse.runtime.cmd.EffectiveRuleSets;
+import net.sourceforge.pmd.eclipse.runtime.cmd.IncrementalReviewScheduler;
 import net.sourceforge.pmd.eclipse.runtime.cmd.JavaProjectClassLoader;
+import net.sourceforge.pmd.eclipse.runtime.cmd.JobCommandProcessor;
+import net.sourceforge.pmd.eclipse.runtime.cmd.LiveAnalysis;
+import net.sourceforge.pmd.eclipse.runtime.cmd.TypeResolutionCache;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferencesFactory;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferencesManager;
 import net.sourceforge.pmd.eclipse.runtime.preferences.impl.PreferencesFactoryImpl;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesListener;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesManager;
 import net.sourceforge.pmd.eclipse.runtime.properties.IPropertiesFactory;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
@@ -79,10 +91,12 @@ import net.sourceforge.pmd.eclipse.runtime.writer.impl.WriterFactoryImpl;
 import net.sourceforge.pmd.eclipse.ui.RuleLabelDecorator;
 import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
 import net.sourceforge.pmd.eclipse.ui.actions.internal.InternalRuleSetUtil;
+import net.sourceforge.pmd.eclipse.ui.model.CodeMetricsCache;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 import net.sourceforge.pmd.eclipse.ui.nls.StringTable;
 import net.sourceforge.pmd.eclipse.ui.priority.PriorityDescriptorCache;
 import net.sourceforge.pmd.eclipse.ui.views.PriorityFilter;
+import net.sourceforge.pmd.eclipse.ui.views.ast.CompilationUnitCache;
 import net.sourceforge.pmd.eclipse.util.ResourceManager;
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
@@ -114,6 +128,8 @@ public class PMDPlugin extends AbstractUIPlugin {
 
     private FileChangeReviewer changeReviewer;
 
+    private final ViolationIndex violationIndex = new ViolationIndex();
+
     private Map<RGB, Color> coloursByRgb = new HashMap<>();
 
     private StringTable stringTable; // NOPMD by Herlin on 11/10/06 00:22
@@ -237,6 +253,9 @@ public class PMDPlugin extends AbstractUIPlugin {
         IPreferences prefs = loadPreferences();
         logbackConfiguration.applyLogPreferences(prefs.getLogFileName(), prefs.getLogLevelName());
         registerAdditionalRuleSets();
+
+        // the index needs to be updated before any other listener queries it
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(violationIndex, IResourceChangeEvent.POST_CHANGE);
         fileChangeListenerEnabled(prefs.isCheckAfterSaveEnabled());
 
         // if a project is deleted, remove the cached project properties
@@ -245,10 +264,27 @@ public class PMDPlugin extends AbstractUIPlugin {
             public void resourceChanged(IResourceChangeEvent arg0) {
                 if (arg0.getType() == IResourceChangeEvent.PRE_DELETE && arg0.getResource() instanceof IProject) {
                     getPropertiesManager().removeProjectProperties((IProject) arg0.getResource());
+                    AnalysisCache.remove((IProject) arg0.getResource());
+                    EffectiveRuleSets.remove((IProject) arg0.getResource());
+                    AnalysisSession.remove((IProject) arg0.getResource());
+                    LiveAnalysis.getInstance().forget((IProject) arg0.getResource());
                 }
             }
         });
 
+        // the effective rulesets, the analysis sessions and the live rules depend on the project properties
+        getPropertiesManager().addProjectPropertiesListener(new IProjectPropertiesListener() {
+            @Override
+            public void projectPropertiesChanged(IProject project) {
+                EffectiveRuleSets.remove(project);
+                AnalysisSession.remove(project);
+                LiveAnalysis.getInstance().forget(project);
+            }
+        });
+
+        // the live results of a file are forgotten, when its editor is closed
+        JavaCore.addElementChangedListener(LiveAnalysis.getInstance(), ElementChangedEvent.POST_CHANGE);
+
         // the initialization can only take place, after the plugin has been started.
         // otherwise the preferences are not available yet.
         PriorityFilter.getInstance().initialize();
@@ -365,7 +401,22 @@ public class PMDPlugin extends AbstractUIPlugin {
     @Override
     public void stop(BundleContext context) throws Exception {
         fileChangeListenerEnabled(false);
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(violationIndex);
+        if (propertiesFactory instanceof PropertiesFactoryImpl) {
+            ((PropertiesFactoryImpl) propertiesFactory).dispose();
+        }
 
+        JobCommandProcessor.getInstance().dispose();
+        IncrementalReviewScheduler.getInstance().dispose();
+        ContinuousCpd.getInstance().dispose();
+        JavaCore.removeElementChangedListener(LiveAnalysis.getInstance());
+        LiveAnalysis.getInstance().dispose();
+        AnalysisSession.removeAll();
+        AnalysisCache.persistAll();
+        AuxClasspathPool.getInstance().dispose();
+        TypeResolutionCache.getInstance().dispose();
+        CodeMetricsCache.getInstance().dispose();
+        CompilationUnitCache.getInstance().dispose();
         disposeResources();
         ResourceManager.dispose();
         PriorityDescriptorCache.INSTANCE.dispose();
@@ -500,6 +551,13 @@ public class PMDPlugin extends AbstractUIPlugin {
         return preferencesFactory.getPreferencesManager();
     }
 
+    /**
+     * @return the index of the PMD markers of the workspace
+     */
+    public ViolationIndex getViolationIndex() {
+        return violationIndex;
+    }
+
     /**
      * @return the plugin project properties manager
      */
@@ -628,6 +686,11 @@ public class PMDPlugin extends AbstractUIPlugin {
         return (RuleLabelDecorator) mgr.getBaseLabelProvider(RuleLabelDecorator.ID);
     }
 
+    /**
+     * Updates the rule label decorations of the given files and their parents, whose
+     * violations might have changed. Only the resources, whose highest priority or number
+     * of violations actually changed, are decorated again.
+     */
     public void changedFiles(Collection<IFile> changedFiles) {
 
         RuleLabelDecorator rld = ruleLabelDecorator();
@@ -635,71 +698,14 @@ public class PMDPlugin extends AbstractUIPlugin {
             return;
         }
 
-        Collection<IResource> withParents = new HashSet<>(changedFiles.size() * 2);
-        withParents.addAll(changedFiles);
-        for (IFile file : changedFiles) {
-            IResource parent = file.getParent();
-            while (parent != null) {
-                withParents.add(parent);
-                parent = parent.getParent();
-            }
-        }
-
-        rld.changed(withParents);
-    }
-
-    private void addFilesTo(IResource resource, Collection<IResource> allKids) {
-
-        if (resource instanceof IFile) {
-            allKids.add(resource);
-            return;
-        }
-
-        if (resource instanceof IFolder) {
-            IFolder folder = (IFolder) resource;
-            IResource[] kids = null;
-            try {
-                kids = folder.members();
-            } catch (CoreException e) {
-                e.printStackTrace();
-            }
-            addKids(allKids, kids);
-
-            allKids.add(folder);
-            return;
-        }
-
-        if (resource instanceof IProject) {
-            IProject project = (IProject) resource;
-            IResource[] kids = null;
-            try {
-                kids = project.members();
-            } catch (CoreException e) {
-                e.printStackTrace();
-            }
-            addKids(allKids, kids);
-            allKids.add(project);
-            return;
-        }
-    }
-
-    private void addKids(Collection<IResource> allKids, IResource[] kids) {
-
-        if (kids == null) {
-            return;
-        }
-
-        for (IResource irc : kids) {
-            if (irc instanceof IFile) {
-                allKids.add(irc);
-                continue;
-            }
-            if (irc instanceof IFolder) {
-                addFilesTo(irc, allKids);
-            }
-        }
+        violationIndex.refresh(changedFiles);
+        rld.violationsChanged(changedFiles);
     }
 
+    /**
+     * Updates the rule label decorations after the markers of the resource and its members
+     * have been removed.
+     */
     public void removedMarkersIn(IResource resource) {
 
         RuleLabelDecorator decorator = ruleLabelDecorator();
@@ -707,10 +713,7 @@ public class PMDPlugin extends AbstractUIPlugin {
             return;
         }
 
-        Collection<IResource> changes = new ArrayList<>();
-
-        addFilesTo(resource, changes);
-
-        decorator.changed(changes);
+        violationIndex.refresh(violationIndex.getFilesWithViolations(resource));
+        decorator.violationsChanged(Collections.singleton(resource));
     }
 }
@@ -25,6 +25,8 @@ public final class PMDRuntimeConstants {
 
     public static final String PMD_DFA_MARKER = PMDPlugin.PLUGIN_ID + ".pmdDFAMarker";
     public static final String PMD_TASKMARKER = PMDPlugin.PLUGIN_ID + ".pmdTaskMarker";
+    /** The duplicated code, that is found by the continuous CPD. It is not a PMD marker. */
+    public static final String PMD_CPD_MARKER = PMDPlugin.PLUGIN_ID + ".pmdCpdMarker";
     public static final String[] RULE_MARKER_TYPES = new String[] { PMD_MARKER_1, PMD_MARKER_2,
         PMD_MARKER_3, PMD_MARKER_4, PMD_MARKER_5 };
     public static final String[] ALL_MARKER_TYPES = new String[] { PMD_MARKER, PMD_DFA_MARKER, PMD_TASKMARKER,
@@ -51,6 +53,10 @@ public final class PMDRuntimeConstants {
      * contain both rule name + message.
      */
     public static final String KEY_MARKERATT_MESSAGE = "pmd_message";
+    /**
+     * The full path of the file, that contains the other copy of the duplicated code of a CPD marker.
+     */
+    public static final String KEY_MARKERATT_CPD_DUPLICATE = "cpd_duplicate";
 
     public static final String PLUGIN_STYLE_REVIEW_COMMENT = "// @PMD:REVIEWED:";
     public static final String PMD_STYLE_REVIEW_COMMENT = "// NOPMD";
@@ -67,6 +73,7 @@ public final class PMDRuntimeConstants {
 
     public static final int PROPERTY_CPD = 1111;
     public static final int PROPERTY_REVIEW = 1112;
+    public static final int PROPERTY_CPD_UPDATE = 1113;
 
     /**
      * This class is not meant to be instantiated.
@@ -0,0 +1,50 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the lines and columns of the violations to character offsets within a source. Lines may end
+ * with <code>\n</code>, <code>\r\n</code> or <code>\r</code>. Positions beyond the source, e.g. of the
+ * violations of older content, are clamped to the source.
+ */
+public final class LineOffsets {
+    private final String source;
+    private final int[] lineOffsets;
+
+    public LineOffsets(String source) {
+        this.source = source;
+
+        List<Integer> offsets = new ArrayList<>();
+        offsets.add(0);
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == source.length() || source.charAt(i + 1) != '\n')) {
+                offsets.add(i + 1);
+            }
+        }
+        lineOffsets = new int[offsets.size()];
+        for (int i = 0; i < lineOffsets.length; i++) {
+            lineOffsets[i] = offsets.get(i);
+        }
+    }
+
+    /**
+     * @param line the line, starting with 1
+     * @param column the column, starting with 1
+     * @return the character offset within the source
+     */
+    public int offsetOf(int line, int column) {
+        if (line < 1) {
+            return 0;
+        }
+        if (line > lineOffsets.length) {
+            return source.length();
+        }
+        return Math.min(source.length(), lineOffsets[line - 1] + Math.max(0, column - 1));
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.core.compiler.CompilationParticipant;
+import org.eclipse.jdt.core.compiler.ReconcileContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.LiveAnalysis;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+
+/**
+ * Reports the violations of the unsaved content of the java editors, when the working copies are
+ * reconciled. The analysis itself is done by {@link LiveAnalysis} in the background, the reconcile
+ * only looks up its results, so that typing is never delayed.
+ *
+ * <p>While the current content is being analyzed, the violations of the last analyzed content are
+ * reported, so that the annotations don't flicker while typing. Violations, that are already shown by
+ * a marker of the last analysis of the saved file, are not reported again. The analysis of the saved
+ * file confirms the violations as markers.
+ */
+public class LiveAnalysisParticipant extends CompilationParticipant {
+    private static final Logger LOG = LoggerFactory.getLogger(LiveAnalysisParticipant.class);
+
+    @Override
+    public boolean isActive(IJavaProject project) {
+        if (!PMDPlugin.getDefault().loadPreferences().isLiveAnalysisEnabled()) {
+            return false;
+        }
+        try {
+            return project.getProject().hasNature(PMDNature.PMD_NATURE);
+        } catch (CoreException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void reconcile(ReconcileContext context) {
+        ICompilationUnit workingCopy = context.getWorkingCopy();
+        IResource resource = workingCopy.getResource();
+        if (!(resource instanceof IFile) || !resource.isAccessible()) {
+            return;
+        }
+        IFile file = (IFile) resource;
+
+        try {
+            String source = workingCopy.getSource();
+            List<RuleViolation> violations = LiveAnalysis.getInstance().violationsOf(file, workingCopy, source);
+            if (violations != null && !violations.isEmpty()) {
+                context.putProblems(PMDRuntimeConstants.PMD_MARKER, problemsOf(file, source, violations));
+            }
+        } catch (JavaModelException e) {
+            LOG.debug("Could not read the working copy of {}: {}", file, e.toString());
+        } catch (CoreException | PropertiesException e) {
+            LOG.debug("Could not report the live violations of {}: {}", file, e.toString());
+        }
+    }
+
+    /**
+     * Converts the violations of a working copy to problems. The positions of the violations are
+     * mapped to the given source, the violations with a marker of the same rule at the same line
+     * are skipped.
+     *
+     * @param source the current content of the working copy
+     */
+    public static CategorizedProblem[] problemsOf(IFile file, String source, List<RuleViolation> violations)
+            throws CoreException, PropertiesException {
+        Set<String> markedViolations = new HashSet<>();
+        for (IMarker marker : file.findMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_ZERO)) {
+            markedViolations.add(keyOf(marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, ""),
+                    marker.getAttribute(IMarker.LINE_NUMBER, 0)));
+        }
+
+        boolean violationsAsErrors = PMDPlugin.getDefault().loadProjectProperties(file.getProject())
+                .violationsAsErrors();
+        LineOffsets lineOffsets = new LineOffsets(source);
+        char[] fileName = file.getFullPath().toString().toCharArray();
+        List<CategorizedProblem> problems = new ArrayList<>(violations.size());
+        for (RuleViolation violation : violations) {
+            String ruleName = violation.getRule().getName();
+            if (markedViolations.contains(keyOf(ruleName, violation.getBeginLine()))) {
+                continue;
+            }
+
+            int start = lineOffsets.offsetOf(violation.getBeginLine(), violation.getBeginColumn());
+            // the end column is inclusive, like the source end of a problem
+            int end = Math.max(start, lineOffsets.offsetOf(violation.getEndLine(), violation.getEndColumn()));
+
+            boolean error;
+            boolean warning;
+            switch (violation.getRule().getPriority()) {
+            case HIGH:
+            case MEDIUM_HIGH:
+                error = violationsAsErrors;
+                warning = !violationsAsErrors;
+                break;
+            case MEDIUM:
+            case MEDIUM_LOW:
+                error = false;
+                warning = true;
+                break;
+            case LOW:
+            default:
+                error = false;
+                warning = false;
+                break;
+            }
+
+            problems.add(new LiveAnalysisProblem(fileName, ruleName + ": " + violation.getDescription(), error,
+                    warning, start, end, violation.getBeginLine()));
+        }
+        return problems.toArray(new CategorizedProblem[0]);
+    }
+
+    private static String keyOf(String ruleName, int line) {
+        return ruleName + ':' + line;
+    }
+}
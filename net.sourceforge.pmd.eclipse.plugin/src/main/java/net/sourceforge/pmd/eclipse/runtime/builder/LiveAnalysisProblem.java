@@ -0,0 +1,107 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.core.compiler.IProblem;
+
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
+/**
+ * A violation of the unsaved content of a java editor. It is reported to the java editor,
+ * which shows it as an annotation, but it is never stored as marker.
+ */
+class LiveAnalysisProblem extends CategorizedProblem {
+    private static final String[] NO_ARGUMENTS = new String[0];
+
+    private final char[] fileName;
+    private final String message;
+    private final boolean error;
+    private final boolean warning;
+    private int sourceStart;
+    private int sourceEnd;
+    private int lineNumber;
+
+    LiveAnalysisProblem(char[] fileName, String message, boolean error, boolean warning, int sourceStart,
+            int sourceEnd, int lineNumber) {
+        this.fileName = fileName;
+        this.message = message;
+        this.error = error;
+        this.warning = warning;
+        this.sourceStart = sourceStart;
+        this.sourceEnd = sourceEnd;
+        this.lineNumber = lineNumber;
+    }
+
+    @Override
+    public int getCategoryID() {
+        return CAT_UNSPECIFIED;
+    }
+
+    @Override
+    public String getMarkerType() {
+        return PMDRuntimeConstants.PMD_MARKER;
+    }
+
+    @Override
+    public String[] getArguments() {
+        return NO_ARGUMENTS;
+    }
+
+    @Override
+    public int getID() {
+        return IProblem.ExternalProblemNotFixable;
+    }
+
+    @Override
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public char[] getOriginatingFileName() {
+        return fileName;
+    }
+
+    @Override
+    public int getSourceStart() {
+        return sourceStart;
+    }
+
+    @Override
+    public int getSourceEnd() {
+        return sourceEnd;
+    }
+
+    @Override
+    public int getSourceLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public boolean isError() {
+        return error;
+    }
+
+    @Override
+    public boolean isWarning() {
+        return warning;
+    }
+
+    @Override
+    public void setSourceEnd(int sourceEnd) {
+        this.sourceEnd = sourceEnd;
+    }
+
+    @Override
+    public void setSourceLineNumber(int lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    @Override
+    public void setSourceStart(int sourceStart) {
+        this.sourceStart = sourceStart;
+    }
+}
@@ -19,7 +19,6 @@ import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
-import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.runtime.CoreException;
 
@@ -47,45 +46,7 @@ public final class MarkerUtil {
     }
 
     public static boolean hasAnyRuleMarkers(IResource resource) throws CoreException {
-
-        final boolean[] foundOne = new boolean[] { false };
-
-        IResourceVisitor ruleMarkerFinder = new IResourceVisitor() {
-            @Override
-            public boolean visit(IResource resource) {
-
-                if (foundOne[0]) {
-                    return false;
-                }
-
-                if (resource instanceof IFile) {
-
-                    for (String markerType : PMDRuntimeConstants.RULE_MARKER_TYPES) {
-                        IMarker[] ruleMarkers = null;
-                        try {
-                            ruleMarkers = resource.findMarkers(markerType, true, IResource.DEPTH_INFINITE);
-                        } catch (CoreException ignored) {
-                            // what do to?
-                        }
-                        if (ruleMarkers != null && ruleMarkers.length > 0) {
-                            foundOne[0] = true;
-                            return false;
-                        }
-                    }
-                }
-
-                return true;
-            }
-        };
-
-        try {
-            resource.accept(ruleMarkerFinder);
-        } catch (CoreException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
-
-        return foundOne[0];
+        return PMDPlugin.getDefault().getViolationIndex().hasViolations(resource);
     }
 
     private static IProject projectFor(IResource resource) {
@@ -4,10 +4,15 @@
 
 package net.sourceforge.pmd.eclipse.runtime.builder;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -17,6 +22,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.CommandKind;
+import net.sourceforge.pmd.eclipse.runtime.cmd.ContinuousCpd;
+import net.sourceforge.pmd.eclipse.runtime.cmd.IncrementalReviewScheduler;
 import net.sourceforge.pmd.eclipse.runtime.cmd.ReviewCodeCmd;
 
 /**
@@ -33,6 +42,9 @@ public class PMDBuilder extends IncrementalProjectBuilder {
 
     public static final IProject[] EMPTY_PROJECT_ARRAY = new IProject[0];
 
+    private static final int CHANGED_FILE_FLAGS = IResourceDelta.CONTENT | IResourceDelta.ENCODING
+            | IResourceDelta.REPLACED;
+
     /**
      * @see org.eclipse.core.resources.IncrementalProjectBuilder#build(int,
      *      java.util.Map, org.eclipse.core.runtime.IProgressMonitor)
@@ -66,6 +78,8 @@ public class PMDBuilder extends IncrementalProjectBuilder {
     @Override
     protected void clean(IProgressMonitor monitor) throws CoreException {
         MarkerUtil.deleteAllMarkersIn(getProject());
+        MarkerUtil.deleteMarkersIn(getProject(), PMDRuntimeConstants.PMD_CPD_MARKER);
+        ContinuousCpd.getInstance().forget(getProject());
     }
 
     /**
@@ -85,7 +99,14 @@ public class PMDBuilder extends IncrementalProjectBuilder {
      * @param monitor
      *            a progress monitor.
      */
-    private void buildIncremental(IProject project, IProgressMonitor monitor) {
+    private void buildIncremental(IProject project, IProgressMonitor monitor) throws CoreException {
+        IResourceDelta resourceDelta = this.getDelta(project);
+
+        // The continuous CPD is independent of the "Check code after saving" preference
+        if (resourceDelta != null && PMDPlugin.getDefault().loadPreferences().isContinuousCpdEnabled()) {
+            ContinuousCpd.getInstance().enqueue(project, changedFilesIn(resourceDelta, true));
+        }
+
         // Check the user preference to see if the user wants to run PMD on a save
         // If the preference "Check code after saving" is NOT enabled, then we don't
         // execute this incremental build request.
@@ -94,20 +115,64 @@ public class PMDBuilder extends IncrementalProjectBuilder {
             return;
         }
 
-        IResourceDelta resourceDelta = this.getDelta(project);
-        if (resourceDelta != null && resourceDelta.getAffectedChildren().length != 0) {
+        if (resourceDelta == null || resourceDelta.getAffectedChildren().length == 0) {
+            LOG.debug("No change reported. Performing no build");
+        } else if (PMDPlugin.getDefault().loadPreferences().isAsyncBuilderEnabled()) {
+            queueChangedFiles(resourceDelta);
+        } else {
             ReviewCodeCmd cmd = new ReviewCodeCmd();
             cmd.setResourceDelta(resourceDelta);
+            cmd.setKind(CommandKind.BUILDER);
             cmd.setMonitor(monitor);
             // a builder is always asynchronous;
             // execute a command synchronously
             // whatever its processor
             cmd.performExecute();
-        } else {
-            LOG.debug("No change reported. Performing no build");
         }
     }
 
+    /**
+     * Asynchronous builder mode: only collect the changed files and let the background review analyze them.
+     * Files, that are still queued or analyzed from a previous build, are superseded.
+     *
+     * @param resourceDelta the delta of the build
+     */
+    private void queueChangedFiles(IResourceDelta resourceDelta) throws CoreException {
+        List<IFile> changedFiles = changedFilesIn(resourceDelta, false);
+
+        IncrementalReviewScheduler scheduler = IncrementalReviewScheduler.getInstance();
+        scheduler.supersede(changedFiles);
+        scheduler.enqueue(changedFiles);
+        LOG.debug("Queued {} changed files, queue depth is {}", changedFiles.size(), scheduler.getQueueDepth());
+    }
+
+    /**
+     * Collects the added and changed files of a delta, that are not derived.
+     *
+     * @param resourceDelta the delta of the build
+     * @param includeRemoved whether the removed files are collected, too
+     */
+    private static List<IFile> changedFilesIn(IResourceDelta resourceDelta, final boolean includeRemoved)
+            throws CoreException {
+        final List<IFile> changedFiles = new ArrayList<>();
+        resourceDelta.accept(new IResourceDeltaVisitor() {
+            @Override
+            public boolean visit(IResourceDelta delta) {
+                IResource resource = delta.getResource();
+                if (resource.isDerived()) {
+                    return false;
+                }
+                if (resource instanceof IFile && (delta.getKind() == IResourceDelta.ADDED
+                        || delta.getKind() == IResourceDelta.CHANGED && (delta.getFlags() & CHANGED_FILE_FLAGS) != 0
+                        || delta.getKind() == IResourceDelta.REMOVED && includeRemoved)) {
+                    changedFiles.add((IFile) resource);
+                }
+                return true;
+            }
+        });
+        return changedFiles;
+    }
+
     /**
      * Process all files in the project.
      * 
@@ -117,6 +182,7 @@ public class PMDBuilder extends IncrementalProjectBuilder {
     private void processProjectFiles(IProject project, IProgressMonitor monitor) {
         ReviewCodeCmd cmd = new ReviewCodeCmd();
         cmd.addResource(project);
+        cmd.setKind(CommandKind.BUILDER);
         cmd.setMonitor(monitor);
         // a builder is always asynchronous; execute a command synchronously whatever its processor
         cmd.performExecute(); 
@@ -0,0 +1,434 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.RulePriority;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
+/**
+ * In-memory index of the PMD markers of the workspace. For each file, the violations are
+ * stored in compact arrays. For each container (folder, project and the workspace root),
+ * the number of rule violations per priority is aggregated, so that decorators and views
+ * can answer "has this folder any violations" and "what is the highest priority" without
+ * walking the resource tree and reading the markers. Likewise the files with markers are
+ * indexed per container.
+ *
+ * <p>The markers of a project are read once, when the project is queried for the first time.
+ * Afterwards the index is kept up to date with the marker deltas of the resource change events.
+ * The index must therefore be registered as {@link IResourceChangeEvent#POST_CHANGE} listener
+ * before any other listener, that queries it.
+ */
+public final class ViolationIndex implements IResourceChangeListener {
+    private static final Logger LOG = LoggerFactory.getLogger(ViolationIndex.class);
+
+    /**
+     * The counts are indexed by priority, index 0 is unused.
+     */
+    private static final int PRIORITY_SLOTS = RulePriority.LOW.getPriority() + 1;
+
+    private static final Set<String> RULE_MARKER_TYPES = new HashSet<>(
+            Arrays.asList(PMDRuntimeConstants.RULE_MARKER_TYPES));
+
+    private final Set<IProject> loadedProjects = new HashSet<>();
+    private final Map<IFile, FileViolations> violationsByFile = new HashMap<>();
+    private final Map<IPath, int[]> countsByContainer = new HashMap<>();
+    private final Map<IPath, Set<IFile>> filesByContainer = new HashMap<>();
+    private final StringTable strings = new StringTable();
+
+    /**
+     * @return the number of rule violations of the resource and its members, indexed by priority
+     */
+    public synchronized int[] getPriorityCounts(IResource resource) {
+        int[] counts;
+        if (resource instanceof IFile) {
+            ensureLoaded(resource.getProject());
+            counts = getViolations((IFile) resource).priorityCounts;
+        } else {
+            ensureLoaded(resource);
+            counts = countsByContainer.get(resource.getFullPath());
+        }
+        return counts == null ? new int[PRIORITY_SLOTS] : counts.clone();
+    }
+
+    /**
+     * @return the number of rule violations of the resource and its members
+     */
+    public int getViolationCount(IResource resource) {
+        int count = 0;
+        for (int priorityCount : getPriorityCounts(resource)) {
+            count += priorityCount;
+        }
+        return count;
+    }
+
+    /**
+     * @return <code>true</code> if the resource or any of its members has rule violations
+     */
+    public boolean hasViolations(IResource resource) {
+        return getViolationCount(resource) > 0;
+    }
+
+    /**
+     * @return the violations of the file, including the markers, that are not rule violations
+     */
+    public synchronized FileViolations getViolations(IFile file) {
+        ensureLoaded(file.getProject());
+        FileViolations violations = violationsByFile.get(file);
+        return violations == null ? FileViolations.EMPTY : violations;
+    }
+
+    /**
+     * @return the files within the resource, that have markers
+     */
+    public synchronized List<IFile> getFilesWithViolations(IResource resource) {
+        ensureLoaded(resource);
+        if (resource instanceof IFile) {
+            return violationsByFile.containsKey(resource) ? Collections.singletonList((IFile) resource)
+                    : Collections.<IFile>emptyList();
+        }
+        Set<IFile> files = filesByContainer.get(resource.getFullPath());
+        return files == null ? new ArrayList<IFile>() : new ArrayList<>(files);
+    }
+
+    /**
+     * Reads the markers of the given files again. This is only necessary, if the index is queried
+     * before the marker deltas are delivered, e.g. within a workspace operation.
+     */
+    public synchronized void refresh(Collection<IFile> files) {
+        for (IFile file : files) {
+            if (loadedProjects.contains(file.getProject())) {
+                update(file, readViolations(file));
+            }
+        }
+    }
+
+    /**
+     * Forgets all the indexed markers. They are read again on the next query.
+     */
+    public synchronized void clear() {
+        loadedProjects.clear();
+        violationsByFile.clear();
+        countsByContainer.clear();
+        filesByContainer.clear();
+    }
+
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        IResourceDelta delta = event.getDelta();
+        if (delta == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (loadedProjects.isEmpty()) {
+                return;
+            }
+
+            for (IResourceDelta projectDelta : delta.getAffectedChildren()) {
+                IProject project = (IProject) projectDelta.getResource();
+                if (projectDelta.getKind() == IResourceDelta.REMOVED
+                        || (projectDelta.getFlags() & IResourceDelta.OPEN) != 0) {
+                    unload(project);
+                }
+            }
+
+            Set<IFile> changedFiles = new HashSet<>();
+            for (IMarkerDelta markerDelta : event.findMarkerDeltas(PMDRuntimeConstants.PMD_MARKER, true)) {
+                IResource resource = markerDelta.getResource();
+                if (resource instanceof IFile && loadedProjects.contains(resource.getProject())) {
+                    changedFiles.add((IFile) resource);
+                }
+            }
+            for (IFile file : changedFiles) {
+                update(file, readViolations(file));
+            }
+        }
+    }
+
+    private void ensureLoaded(IResource resource) {
+        if (resource instanceof IWorkspaceRoot) {
+            for (IProject project : ((IWorkspaceRoot) resource).getProjects()) {
+                ensureLoaded(project);
+            }
+        } else if (!loadedProjects.contains(resource.getProject()) && resource.getProject().isAccessible()) {
+            load(resource.getProject());
+        }
+    }
+
+    private void load(IProject project) {
+        loadedProjects.add(project);
+        Map<IFile, List<IMarker>> markersByFile = new HashMap<>();
+        try {
+            for (IMarker marker : project.findMarkers(PMDRuntimeConstants.PMD_MARKER, true,
+                    IResource.DEPTH_INFINITE)) {
+                if (marker.getResource() instanceof IFile) {
+                    IFile file = (IFile) marker.getResource();
+                    List<IMarker> markers = markersByFile.get(file);
+                    if (markers == null) {
+                        markers = new ArrayList<>();
+                        markersByFile.put(file, markers);
+                    }
+                    markers.add(marker);
+                }
+            }
+        } catch (CoreException e) {
+            LOG.warn("Could not read the PMD markers of project {}: {}", project.getName(), e.toString(), e);
+        }
+
+        for (Map.Entry<IFile, List<IMarker>> entry : markersByFile.entrySet()) {
+            update(entry.getKey(), toViolations(entry.getValue()));
+        }
+        LOG.debug("Indexed the PMD markers of {} files of project {}", markersByFile.size(), project.getName());
+    }
+
+    private void unload(IProject project) {
+        if (!loadedProjects.remove(project)) {
+            return;
+        }
+        Iterator<Map.Entry<IFile, FileViolations>> entries = violationsByFile.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<IFile, FileViolations> entry = entries.next();
+            if (project.equals(entry.getKey().getProject())) {
+                addCounts(entry.getKey(), entry.getValue().priorityCounts, -1);
+                removeFromContainers(entry.getKey());
+                entries.remove();
+            }
+        }
+    }
+
+    private void update(IFile file, FileViolations violations) {
+        FileViolations previous = violations.size() == 0 ? violationsByFile.remove(file)
+                : violationsByFile.put(file, violations);
+        if (previous != null) {
+            addCounts(file, previous.priorityCounts, -1);
+        }
+        addCounts(file, violations.priorityCounts, 1);
+
+        if (previous == null && violations.size() > 0) {
+            for (IResource container = file.getParent(); container != null; container = container.getParent()) {
+                Set<IFile> files = filesByContainer.get(container.getFullPath());
+                if (files == null) {
+                    files = new HashSet<>();
+                    filesByContainer.put(container.getFullPath(), files);
+                }
+                files.add(file);
+            }
+        } else if (previous != null && violations.size() == 0) {
+            removeFromContainers(file);
+        }
+    }
+
+    private void removeFromContainers(IFile file) {
+        for (IResource container = file.getParent(); container != null; container = container.getParent()) {
+            Set<IFile> files = filesByContainer.get(container.getFullPath());
+            if (files != null && files.remove(file) && files.isEmpty()) {
+                filesByContainer.remove(container.getFullPath());
+            }
+        }
+    }
+
+    private void addCounts(IFile file, int[] counts, int sign) {
+        boolean empty = true;
+        for (int count : counts) {
+            empty &= count == 0;
+        }
+        if (empty) {
+            return;
+        }
+
+        for (IResource container = file.getParent(); container != null; container = container.getParent()) {
+            IPath path = container.getFullPath();
+            int[] containerCounts = countsByContainer.get(path);
+            if (containerCounts == null) {
+                containerCounts = new int[PRIORITY_SLOTS];
+                countsByContainer.put(path, containerCounts);
+            }
+            int total = 0;
+            for (int priority = 0; priority < PRIORITY_SLOTS; priority++) {
+                containerCounts[priority] += sign * counts[priority];
+                total += containerCounts[priority];
+            }
+            if (total == 0) {
+                countsByContainer.remove(path);
+            }
+        }
+    }
+
+    private FileViolations readViolations(IFile file) {
+        if (!file.isAccessible()) {
+            return FileViolations.EMPTY;
+        }
+        try {
+            return toViolations(Arrays.asList(file.findMarkers(PMDRuntimeConstants.PMD_MARKER, true,
+                    IResource.DEPTH_ZERO)));
+        } catch (CoreException e) {
+            LOG.warn("Could not read the PMD markers of file {}: {}", file, e.toString(), e);
+            return FileViolations.EMPTY;
+        }
+    }
+
+    private FileViolations toViolations(List<IMarker> markers) {
+        if (markers.isEmpty()) {
+            return FileViolations.EMPTY;
+        }
+
+        int size = markers.size();
+        FileViolations violations = new FileViolations(strings, size);
+        for (int i = 0; i < size; i++) {
+            IMarker marker = markers.get(i);
+            String type = typeOf(marker);
+            int priority = RULE_MARKER_TYPES.contains(type)
+                    ? MarkerUtil.rulePriorityFor(marker, RulePriority.LOW.getPriority()) : 0;
+            if (priority < 1 || priority >= PRIORITY_SLOTS) {
+                priority = RULE_MARKER_TYPES.contains(type) ? RulePriority.LOW.getPriority() : 0;
+            }
+
+            violations.markerIds[i] = marker.getId();
+            violations.typeIds[i] = strings.idOf(type);
+            violations.ruleIds[i] = strings.idOf(MarkerUtil.ruleNameFor(marker));
+            violations.priorities[i] = (byte) priority;
+            violations.lines[i] = marker.getAttribute(IMarker.LINE_NUMBER, 0);
+            violations.endLines[i] = marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_LINE2, 0);
+            violations.messages[i] = marker.getAttribute(IMarker.MESSAGE, "");
+            violations.priorityCounts[priority]++;
+        }
+        // only the rule violations are counted
+        violations.priorityCounts[0] = 0;
+        return violations;
+    }
+
+    private static String typeOf(IMarker marker) {
+        try {
+            return marker.getType();
+        } catch (CoreException e) {
+            return PMDRuntimeConstants.PMD_MARKER;
+        }
+    }
+
+    /**
+     * The markers of a file, stored column-wise. Instances are immutable, the index
+     * replaces them, when the markers of the file change.
+     */
+    public static final class FileViolations {
+        static final FileViolations EMPTY = new FileViolations(null, 0);
+
+        private final StringTable strings;
+        private final long[] markerIds;
+        private final int[] typeIds;
+        private final int[] ruleIds;
+        private final byte[] priorities;
+        private final int[] lines;
+        private final int[] endLines;
+        private final String[] messages;
+        private final int[] priorityCounts = new int[PRIORITY_SLOTS];
+
+        FileViolations(StringTable strings, int size) {
+            this.strings = strings;
+            markerIds = new long[size];
+            typeIds = new int[size];
+            ruleIds = new int[size];
+            priorities = new byte[size];
+            lines = new int[size];
+            endLines = new int[size];
+            messages = new String[size];
+        }
+
+        public int size() {
+            return markerIds.length;
+        }
+
+        public long getMarkerId(int index) {
+            return markerIds[index];
+        }
+
+        public String getMarkerType(int index) {
+            return strings.get(typeIds[index]);
+        }
+
+        public String getRuleName(int index) {
+            return strings.get(ruleIds[index]);
+        }
+
+        /**
+         * @return the priority of the rule or 0, if the marker is not a rule violation
+         */
+        public int getPriority(int index) {
+            return priorities[index];
+        }
+
+        public int getLine(int index) {
+            return lines[index];
+        }
+
+        public int getEndLine(int index) {
+            return endLines[index];
+        }
+
+        public String getMessage(int index) {
+            return messages[index];
+        }
+
+        /**
+         * @return <code>true</code> if both contain the same markers with the same attributes.
+         *     The attributes are compared as well, as the markers of violations, that only
+         *     moved, are updated in place.
+         */
+        public boolean sameMarkersAs(FileViolations other) {
+            return this == other || Arrays.equals(markerIds, other.markerIds)
+                    && Arrays.equals(typeIds, other.typeIds) && Arrays.equals(ruleIds, other.ruleIds)
+                    && Arrays.equals(priorities, other.priorities) && Arrays.equals(lines, other.lines)
+                    && Arrays.equals(endLines, other.endLines) && Arrays.equals(messages, other.messages);
+        }
+    }
+
+    /**
+     * Interns the rule names and marker types, so that each string is stored only once. The
+     * messages are not interned, as they mostly differ per violation and the table is never pruned.
+     */
+    static final class StringTable {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        synchronized int idOf(String value) {
+            String key = value == null ? "" : value;
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = values.size();
+                values.add(key);
+                ids.put(key, id);
+            }
+            return id;
+        }
+
+        synchronized String get(int id) {
+            return values.get(id);
+        }
+    }
+}
@@ -28,6 +28,7 @@ public abstract class AbstractDefaultCommand {
     private int stepCount;
     private boolean userInitiated;
     private boolean terminated;
+    private CommandKind kind = CommandKind.INTERACTIVE;
 
     protected AbstractDefaultCommand(String theName, String theDescription) {
         name = theName;
@@ -154,6 +155,21 @@ public abstract class AbstractDefaultCommand {
         this.userInitiated = userInitiated;
     }
 
+    /**
+     * @return Returns the kind, which determines the queue of the command.
+     */
+    public CommandKind getKind() {
+        return kind;
+    }
+
+    /**
+     * @param kind
+     *            The kind to set.
+     */
+    public void setKind(CommandKind kind) {
+        this.kind = kind;
+    }
+
     /**
      * @return Returns the monitor.
      */
@@ -247,6 +263,35 @@ public abstract class AbstractDefaultCommand {
         }
     }
 
+    /**
+     * Identifies the work of the command. A command is not queued, if an identical
+     * command of the same kind is still pending. The key is determined, when the
+     * command is queued.
+     *
+     * @return the key or <code>null</code>, if the command is always queued
+     */
+    protected Object pendingKey() {
+        return null;
+    }
+
+    /**
+     * Whether this command makes the given pending or running command of the same kind
+     * obsolete. The given command is dropped or canceled, when this command is queued.
+     */
+    protected boolean supersedes(AbstractDefaultCommand command) {
+        return false;
+    }
+
+    /**
+     * Called, when too many commands of the same kind are pending.
+     *
+     * @return <code>true</code> if the work has been handed over elsewhere and the
+     *     command must not be queued anymore
+     */
+    protected boolean deferWhenBusy() {
+        return false;
+    }
+
     public final void performExecute() {
         JobCommandProcessor.getInstance().processCommand(this);
     }
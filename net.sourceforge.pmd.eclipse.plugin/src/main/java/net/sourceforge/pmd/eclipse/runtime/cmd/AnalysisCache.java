@@ -0,0 +1,526 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
+
+/**
+ * Persistent cache of the markers, that PMD created for the files of a project.
+ *
+ * <p>An entry is keyed by the content hash of the file. All entries of a project share the same
+ * configuration fingerprint, that consists of the effective rulesets, the language version and the
+ * aux classpath. If the fingerprint changes, all entries are dropped. As the markers of the type
+ * resolution depend on the compiled classes of the file and of all the types it refers to, the
+ * class folders of the aux classpath are part of the fingerprint with the number and the newest
+ * timestamp of their class files. With type resolution, a compile therefore invalidates all
+ * entries. An entry also records the hash of the class files of its own file, see
+ * {@link #classesHashOf(IFile)}. Entries of files, that don't exist anymore, are dropped, when
+ * the cache is persisted.
+ *
+ * <p>The cache is stored in the working location of the project.
+ */
+public final class AnalysisCache {
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisCache.class);
+
+    private static final String CACHE_FILE_NAME = "analysis.cache";
+    private static final int FORMAT_VERSION = 2;
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+
+    private static final Map<IProject, AnalysisCache> CACHES_BY_PROJECT = new HashMap<>();
+
+    private final IProject project;
+    private final Map<String, Entry> entriesByPath = new HashMap<>();
+    private String configurationFingerprint = "";
+    private boolean loaded;
+    private boolean dirty;
+    private int hitCount;
+
+    private AnalysisCache(IProject project) {
+        this.project = project;
+    }
+
+    /**
+     * Gets the cache for the given project. The cache is loaded lazily.
+     */
+    public static synchronized AnalysisCache forProject(IProject project) {
+        AnalysisCache cache = CACHES_BY_PROJECT.get(project);
+        if (cache == null) {
+            cache = new AnalysisCache(project);
+            CACHES_BY_PROJECT.put(project, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Forgets the cache of the given project without persisting it, e.g. when the project is deleted.
+     */
+    public static synchronized void remove(IProject project) {
+        CACHES_BY_PROJECT.remove(project);
+    }
+
+    /**
+     * Persists all caches, that have been modified.
+     */
+    public static synchronized void persistAll() {
+        for (AnalysisCache cache : CACHES_BY_PROJECT.values()) {
+            cache.persist();
+        }
+    }
+
+    /**
+     * Selects the configuration, the following lookups are done for. If the configuration differs
+     * from the configuration of the cached entries, the entries are stale and are dropped.
+     *
+     * @param fingerprint the configuration fingerprint
+     * @see #fingerprintOf(List, LanguageVersion, boolean, ClassLoader)
+     */
+    public synchronized void useConfiguration(String fingerprint) {
+        load();
+        if (!configurationFingerprint.equals(fingerprint)) {
+            LOG.debug("Analysis configuration of project {} changed - dropping {} cached entries",
+                    project.getName(), entriesByPath.size());
+            entriesByPath.clear();
+            configurationFingerprint = fingerprint;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Gets the cached markers of a file.
+     *
+     * @param classesHash the hash of the class files of the file, see {@link #classesHashOf(IFile)}
+     * @return the markers or <code>null</code>, if the file has not been analyzed with this content
+     *     and these class files before
+     */
+    public synchronized Set<MarkerInfo2> markersFor(IFile file, String contentHash, String classesHash) {
+        Entry entry = entriesByPath.get(keyOf(file));
+        if (entry != null && entry.contentHash.equals(contentHash) && entry.classesHash.equals(classesHash)) {
+            hitCount++;
+            return new HashSet<>(entry.markers);
+        }
+        return null;
+    }
+
+    public synchronized void put(IFile file, String contentHash, String classesHash, Set<MarkerInfo2> markers) {
+        entriesByPath.put(keyOf(file), new Entry(contentHash, classesHash, new HashSet<>(markers)));
+        dirty = true;
+    }
+
+    public synchronized int size() {
+        return entriesByPath.size();
+    }
+
+    /**
+     * @return the number of files, whose markers have been served from the cache
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Writes the cache into the working location of the project, if it has been modified.
+     */
+    public synchronized void persist() {
+        if (!dirty || !project.isAccessible()) {
+            return;
+        }
+
+        evictDeletedFiles();
+
+        File cacheFile = cacheFile();
+        if (cacheFile == null) {
+            return;
+        }
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+            write(out);
+        } catch (IOException e) {
+            LOG.warn("Error while writing analysis cache {}", cacheFile, e);
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+            LOG.debug("Persisted {} cache entries of project {}", entriesByPath.size(), project.getName());
+        } catch (IOException e) {
+            LOG.warn("Error while writing analysis cache {}", cacheFile, e);
+        }
+    }
+
+    private void evictDeletedFiles() {
+        Iterator<String> paths = entriesByPath.keySet().iterator();
+        while (paths.hasNext()) {
+            if (!project.getFile(paths.next()).exists()) {
+                paths.remove();
+            }
+        }
+    }
+
+    private File cacheFile() {
+        IPath location = project.getWorkingLocation(PMDPlugin.PLUGIN_ID);
+        return location != null ? location.append(CACHE_FILE_NAME).toFile() : null;
+    }
+
+    private static String keyOf(IFile file) {
+        return file.getProjectRelativePath().toPortableString();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        File cacheFile = cacheFile();
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return;
+        }
+
+        try (InputStream stream = Files.newInputStream(cacheFile.toPath());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            read(in);
+            LOG.debug("Loaded {} cache entries of project {}", entriesByPath.size(), project.getName());
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable analysis cache {}: {}", cacheFile, e.toString());
+            entriesByPath.clear();
+            configurationFingerprint = "";
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(configurationFingerprint);
+        out.writeInt(entriesByPath.size());
+        for (Map.Entry<String, Entry> entry : entriesByPath.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue().contentHash);
+            out.writeUTF(entry.getValue().classesHash);
+            out.writeInt(entry.getValue().markers.size());
+            for (MarkerInfo2 marker : entry.getValue().markers) {
+                writeMarker(out, marker);
+            }
+        }
+    }
+
+    private static void writeMarker(DataOutputStream out, MarkerInfo2 marker) throws IOException {
+        Map<String, Object> attributes = marker.getAttributes();
+        out.writeUTF(marker.getType());
+        out.writeInt(attributes.size());
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            out.writeUTF(attribute.getKey());
+            Object value = attribute.getValue();
+            if (value instanceof Integer) {
+                out.writeByte(TYPE_INTEGER);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else {
+                out.writeByte(TYPE_STRING);
+                writeLongUTF(out, String.valueOf(value));
+            }
+        }
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported cache format");
+        }
+        configurationFingerprint = in.readUTF();
+        int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+            String path = in.readUTF();
+            String contentHash = in.readUTF();
+            String classesHash = in.readUTF();
+            int markerCount = in.readInt();
+            Set<MarkerInfo2> markers = new HashSet<>(markerCount);
+            for (int j = 0; j < markerCount; j++) {
+                markers.add(readMarker(in));
+            }
+            entriesByPath.put(path, new Entry(contentHash, classesHash, markers));
+        }
+    }
+
+    private static MarkerInfo2 readMarker(DataInputStream in) throws IOException {
+        String type = in.readUTF();
+        int attributeCount = in.readInt();
+        MarkerInfo2 marker = new MarkerInfo2(type, attributeCount);
+        for (int i = 0; i < attributeCount; i++) {
+            String name = in.readUTF();
+            byte valueType = in.readByte();
+            switch (valueType) {
+            case TYPE_INTEGER:
+                marker.add(name, in.readInt());
+                break;
+            case TYPE_BOOLEAN:
+                marker.add(name, Boolean.valueOf(in.readBoolean()));
+                break;
+            case TYPE_STRING:
+                marker.add(name, readLongUTF(in));
+                break;
+            default:
+                throw new IOException("Unknown attribute type " + valueType);
+            }
+        }
+        return marker;
+    }
+
+    /**
+     * Violation messages might exceed the 64k limit of {@link DataOutputStream#writeUTF(String)}.
+     */
+    private static void writeLongUTF(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLongUTF(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Calculates the hash of the file contents.
+     */
+    public static String contentHash(String contents) {
+        MessageDigest digest = newDigest();
+        digest.update(contents.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Calculates the fingerprint of the analysis configuration. It covers everything besides
+     * the file contents, that influences the created markers.
+     *
+     * <p>For the aux classpath, the jar files are considered with their size and modification
+     * timestamp, the class folders with the number and the newest modification timestamp of their
+     * files. A file can depend on any class of the aux classpath, e.g. a supertype might gain a
+     * method, that the file now overrides, without changing the class files of the file itself.
+     *
+     * @param ruleSets the effective (filtered) rulesets
+     * @param languageVersion the java language version of the project, might be <code>null</code>
+     * @param violationsAsErrors whether high priority violations are reported as errors
+     * @param auxClasspath the aux classpath or <code>null</code>, if type resolution is disabled
+     */
+    public static String fingerprintOf(List<RuleSet> ruleSets, LanguageVersion languageVersion,
+            boolean violationsAsErrors, ClassLoader auxClasspath) {
+        StringBuilder fingerprint = new StringBuilder(4096);
+        fingerprint.append(PMDPlugin.version).append('\n');
+        fingerprint.append(languageVersion).append('\n');
+        fingerprint.append(violationsAsErrors).append('\n');
+
+        for (RuleSet ruleSet : ruleSets) {
+            fingerprint.append(ruleSet.getName()).append('\n');
+            for (Pattern pattern : ruleSet.getFileExclusions()) {
+                fingerprint.append("exclude:").append(pattern.pattern()).append('\n');
+            }
+            for (Pattern pattern : ruleSet.getFileInclusions()) {
+                fingerprint.append("include:").append(pattern.pattern()).append('\n');
+            }
+            for (Rule rule : ruleSet.getRules()) {
+                fingerprint.append(rule.getLanguage().getTerseName()).append(':').append(rule.getName())
+                    .append(':').append(rule.getRuleClass()).append(':').append(rule.getPriority().getPriority())
+                    .append(':').append(rule.getMessage()).append('\n');
+                for (Map.Entry<PropertyDescriptor<?>, Object> property
+                        : rule.getPropertiesByPropertyDescriptor().entrySet()) {
+                    fingerprint.append(' ').append(property.getKey().name()).append('=')
+                        .append(property.getValue()).append('\n');
+                }
+            }
+        }
+
+        if (auxClasspath instanceof URLClassLoader) {
+            for (URL url : ((URLClassLoader) auxClasspath).getURLs()) {
+                fingerprint.append(url);
+                File file = toFile(url);
+                if (file != null && file.isFile()) {
+                    fingerprint.append(':').append(file.length()).append(':').append(file.lastModified());
+                } else if (file != null && file.isDirectory()) {
+                    appendFolderStamp(fingerprint, file);
+                }
+                fingerprint.append('\n');
+            }
+        }
+
+        MessageDigest digest = newDigest();
+        digest.update(fingerprint.toString().getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Appends the number and the newest modification timestamp of the files of a class folder.
+     * Deleted files are noticed by the number, added and modified files by the timestamp.
+     */
+    private static void appendFolderStamp(StringBuilder fingerprint, File folder) {
+        final long[] stamp = new long[2];
+        try {
+            Files.walkFileTree(folder.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    stamp[0]++;
+                    stamp[1] = Math.max(stamp[1], attributes.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOG.debug("Could not read the class folder {}: {}", folder, e.toString());
+        }
+        fingerprint.append(':').append(stamp[0]).append(':').append(stamp[1]);
+    }
+
+    /**
+     * Calculates the hash of the class files, that have been compiled from a java source file.
+     * Changes of the classes, that the file depends on, are covered by the configuration
+     * fingerprint, see {@link #fingerprintOf(List, LanguageVersion, boolean, ClassLoader)}.
+     *
+     * @return the hash or an empty string, if the file is not a source file of a java project
+     */
+    public static String classesHashOf(IFile file) {
+        IJavaElement element = JavaCore.create(file);
+        if (!(element instanceof ICompilationUnit)) {
+            return "";
+        }
+        try {
+            IPackageFragmentRoot root = (IPackageFragmentRoot) element
+                    .getAncestor(IJavaElement.PACKAGE_FRAGMENT_ROOT);
+            IPath outputLocation = root.getRawClasspathEntry().getOutputLocation();
+            if (outputLocation == null) {
+                outputLocation = element.getJavaProject().getOutputLocation();
+            }
+            IPath packagePath = file.getParent().getFullPath().makeRelativeTo(root.getPath());
+            IResource outputFolder = file.getWorkspace().getRoot().findMember(outputLocation.append(packagePath));
+            if (outputFolder == null || outputFolder.getLocation() == null) {
+                return "";
+            }
+            String typeName = file.getFullPath().removeFileExtension().lastSegment();
+            return classesHashOf(outputFolder.getLocation().toFile(), typeName);
+        } catch (JavaModelException e) {
+            LOG.debug("Could not determine the output folder of {}: {}", file, e.toString());
+            return "";
+        }
+    }
+
+    /**
+     * Calculates the hash of the class files of a top level type and its nested types.
+     *
+     * @param outputFolder the folder of the class files of the package of the type
+     * @param typeName the simple name of the top level type
+     * @return the hash or an empty string, if the class files could not be read
+     */
+    public static String classesHashOf(File outputFolder, final String typeName) {
+        File[] classFiles = outputFolder.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".class")
+                        && (name.equals(typeName + ".class") || name.startsWith(typeName + "$"));
+            }
+        });
+        if (classFiles == null) {
+            return "";
+        }
+        Arrays.sort(classFiles);
+        MessageDigest digest = newDigest();
+        try {
+            for (File classFile : classFiles) {
+                digest.update(classFile.getName().getBytes(StandardCharsets.UTF_8));
+                digest.update(Files.readAllBytes(classFile.toPath()));
+            }
+        } catch (IOException e) {
+            LOG.debug("Could not read the class files of {}: {}", typeName, e.toString());
+            return "";
+        }
+        return toHex(digest.digest());
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is required to be supported by every java platform
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static final class Entry {
+        private final String contentHash;
+        private final String classesHash;
+        private final Set<MarkerInfo2> markers;
+
+        Entry(String contentHash, String classesHash, Set<MarkerInfo2> markers) {
+            this.contentHash = contentHash;
+            this.classesHash = classesHash;
+            this.markers = markers;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.Report;
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleContext;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.eclipse.util.internal.SpyingRule;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.java.JavaLanguageModule;
+
+/**
+ * A warm context for the analysis of single files with single rules, e.g. for the
+ * inspector views and the live analysis.
+ *
+ * <p>A session keeps the configuration with the language version and the aux classpath
+ * of a project and processes the files directly, without setting up a new analysis
+ * with its file collection, thread pool and listeners each time. As the class loader
+ * stays the same, the classes loaded by the type resolution are reused by the next
+ * analysis of the project.
+ *
+ * <p>The session of a project is replaced, when the java version or the aux classpath
+ * of the project change. The analyses of a session are serialized.
+ *
+ * <p>PMD 6 offers no public API to process a single source outside of a full analysis, see
+ * {@link SingleSourceProcessor}, which is the only user of the deprecated internal API.
+ */
+public final class AnalysisSession {
+    private static final Logger LOG = LoggerFactory.getLogger(AnalysisSession.class);
+
+    /**
+     * The sessions of so many recently used projects are kept.
+     */
+    private static final int MAX_PROJECT_SESSIONS = 8;
+
+    private static final Map<IProject, AnalysisSession> SESSIONS_BY_PROJECT = new LinkedHashMap<IProject,
+            AnalysisSession>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<IProject, AnalysisSession> eldest) {
+            return size() > MAX_PROJECT_SESSIONS;
+        }
+    };
+
+    private static final Map<LanguageVersion, AnalysisSession> SESSIONS_BY_VERSION = new HashMap<>();
+
+    private final LanguageVersion languageVersion;
+    private final ClassLoader classLoader;
+    private final SingleSourceProcessor processor;
+
+    private AnalysisSession(LanguageVersion languageVersion, ClassLoader classLoader) {
+        this.languageVersion = languageVersion;
+        this.classLoader = classLoader;
+
+        PMDConfiguration configuration = new PMDConfiguration();
+        configuration.setIgnoreIncrementalAnalysis(true);
+        configuration.setThreads(0);
+        configuration.setForceLanguageVersion(languageVersion);
+        if (classLoader != null) {
+            configuration.setClassLoader(classLoader);
+        }
+        processor = new SingleSourceProcessor(configuration, languageVersion);
+    }
+
+    /**
+     * Gets the session for the given project. The session uses the java version of the
+     * project and its aux classpath, if the build path of the projects is used.
+     */
+    public static AnalysisSession forProject(IProject project) throws PropertiesException {
+        LanguageVersion languageVersion = PMDPlugin.javaVersionFor(project);
+        if (languageVersion == null) {
+            languageVersion = defaultLanguageVersion();
+        }
+        ClassLoader classLoader = null;
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
+        if (preferences.isProjectBuildPathEnabled()) {
+            TypeResolutionCache.getInstance().setMaximumSize(preferences.getTypeResolutionCacheSize());
+            // the project properties create a new class loader, when the classpath has changed
+            classLoader = PMDPlugin.getDefault().loadProjectProperties(project).getAuxClasspath();
+        }
+
+        synchronized (AnalysisSession.class) {
+            AnalysisSession session = SESSIONS_BY_PROJECT.get(project);
+            if (session == null || !session.languageVersion.equals(languageVersion)
+                    || session.classLoader != classLoader) {
+                LOG.debug("Creating analysis session for project {} with {}", project.getName(), languageVersion);
+                session = new AnalysisSession(languageVersion, classLoader);
+                SESSIONS_BY_PROJECT.put(project, session);
+            }
+            return session;
+        }
+    }
+
+    /**
+     * Gets the session for snippets of the given language version, which don't belong to a project.
+     */
+    public static synchronized AnalysisSession forLanguageVersion(LanguageVersion languageVersion) {
+        AnalysisSession session = SESSIONS_BY_VERSION.get(languageVersion);
+        if (session == null) {
+            session = new AnalysisSession(languageVersion, null);
+            SESSIONS_BY_VERSION.put(languageVersion, session);
+        }
+        return session;
+    }
+
+    /**
+     * Forgets the session of a project, e.g. when the project is deleted.
+     */
+    public static synchronized void remove(IProject project) {
+        SESSIONS_BY_PROJECT.remove(project);
+    }
+
+    /**
+     * Forgets all the sessions.
+     */
+    public static synchronized void removeAll() {
+        SESSIONS_BY_PROJECT.clear();
+        SESSIONS_BY_VERSION.clear();
+    }
+
+    private static LanguageVersion defaultLanguageVersion() {
+        return LanguageRegistry.getLanguage(JavaLanguageModule.NAME).getDefaultVersion();
+    }
+
+    public LanguageVersion getLanguageVersion() {
+        return languageVersion;
+    }
+
+    /**
+     * Parses the source. The tree is processed by the same stages (symbols, types and
+     * dataflow) as for the rules.
+     *
+     * @return the root node or <code>null</code>, if the source could not be parsed
+     */
+    public synchronized Node parse(String source, String fileName) {
+        SpyingRule rule = new SpyingRule();
+        rule.setLanguage(languageVersion.getLanguage());
+        processor.process(source, new File(fileName), RuleSetUtil.newSingle(rule));
+        return rule.getRootNode();
+    }
+
+    /**
+     * Analyzes the source with a single rule.
+     *
+     * @return the violations or <code>null</code>, if the source could not be parsed
+     */
+    public synchronized List<RuleViolation> analyze(String source, File file, Rule rule) {
+        return processor.process(source, file, RuleSetUtil.newSingle(rule));
+    }
+
+    /**
+     * Applies a single rule to a tree, that has already been parsed by this session.
+     * The violations are reported to the rule, e.g. a spying rule.
+     */
+    public synchronized void apply(Rule rule, Node compilationUnit) {
+        processor.apply(rule, compilationUnit);
+    }
+
+    /**
+     * Applies the rules of a ruleset to a tree, that has already been parsed by this session.
+     *
+     * @param file the file of the tree, which is reported by the violations
+     * @return the violations
+     */
+    public synchronized List<RuleViolation> apply(RuleSet ruleSet, Node compilationUnit, File file) {
+        return processor.apply(ruleSet, compilationUnit, file);
+    }
+
+    /**
+     * Processes single sources with the internal API of PMD 6: the source code processor, the
+     * rule context and the rulesets of an analysis. This API is deprecated without replacement,
+     * the PMD 7 API analyzes collections of files only. The warnings are suppressed here, so that
+     * no other class uses this API directly.
+     */
+    @SuppressWarnings("deprecation")
+    private static final class SingleSourceProcessor {
+        private final net.sourceforge.pmd.SourceCodeProcessor processor;
+        private final LanguageVersion languageVersion;
+
+        SingleSourceProcessor(PMDConfiguration configuration, LanguageVersion languageVersion) {
+            this.processor = new net.sourceforge.pmd.SourceCodeProcessor(configuration);
+            this.languageVersion = languageVersion;
+        }
+
+        /**
+         * @return the violations or <code>null</code>, if the source could not be parsed
+         */
+        List<RuleViolation> process(String source, File file, RuleSet ruleSet) {
+            RuleContext ctx = newRuleContext(file);
+            long start = System.currentTimeMillis();
+            try {
+                processor.processSourceCode(new StringReader(source), new net.sourceforge.pmd.RuleSets(ruleSet), ctx);
+            } catch (net.sourceforge.pmd.PMDException e) {
+                LOG.debug("Could not process {}: {}", file, e.toString());
+                return null;
+            }
+            LOG.debug("Processed {} in {} ms", file, System.currentTimeMillis() - start);
+            return new ArrayList<>(ctx.getReport().getViolations());
+        }
+
+        void apply(Rule rule, Node compilationUnit) {
+            rule.apply(Collections.singletonList(compilationUnit), newRuleContext(null));
+        }
+
+        List<RuleViolation> apply(RuleSet ruleSet, Node compilationUnit, File file) {
+            RuleContext ctx = newRuleContext(file);
+            net.sourceforge.pmd.RuleSets ruleSets = new net.sourceforge.pmd.RuleSets(ruleSet);
+            ruleSets.start(ctx);
+            ruleSets.apply(Collections.singletonList(compilationUnit), ctx, languageVersion.getLanguage());
+            ruleSets.end(ctx);
+            return new ArrayList<>(ctx.getReport().getViolations());
+        }
+
+        private RuleContext newRuleContext(File file) {
+            RuleContext ctx = new RuleContext();
+            ctx.setSourceCodeFile(file);
+            ctx.setLanguageVersion(languageVersion);
+            ctx.setReport(new Report());
+            return ctx;
+        }
+    }
+}
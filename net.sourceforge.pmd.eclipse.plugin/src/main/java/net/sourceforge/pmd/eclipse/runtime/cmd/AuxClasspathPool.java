@@ -0,0 +1,361 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+
+/**
+ * Shares the class loaders for the libraries of the aux classpath between projects.
+ * Projects, that depend on the same libraries in the same order (e.g. the modules of
+ * a multi-module build), use the same class loader, so that the jars are opened only
+ * once. The jars are opened lazily, when a class is loaded for the first time.
+ *
+ * <p>The class loaders are reference counted. Class loaders, that are not used anymore,
+ * are kept open up to the configured pool size, so that they can be reused e.g. when
+ * the classpath of a project is changed back. The least recently used class loaders are
+ * closed first.
+ *
+ * <p>The shared class loaders remember the classes, that could not be found, and keep
+ * the class files read by the type resolution in the {@link TypeResolutionCache}. When a
+ * library is modified, the class loader is replaced by a new one and the cached class
+ * files of the old one are removed, as soon as it is not used anymore.
+ *
+ * @see JavaProjectClassLoader
+ */
+public final class AuxClasspathPool {
+    private static final Logger LOG = LoggerFactory.getLogger(AuxClasspathPool.class);
+
+    private static final AuxClasspathPool INSTANCE = new AuxClasspathPool();
+
+    /**
+     * The shared class loaders in access order, the least recently used first.
+     */
+    private final Map<Key, PooledClassLoader> loaders = new LinkedHashMap<>(16, 0.75f, true);
+
+    private AuxClasspathPool() {
+        // singleton
+    }
+
+    public static AuxClasspathPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets a shared class loader for the given libraries. The class loader must be
+     * released, when it is not used anymore.
+     *
+     * @param libraries the urls of the libraries, in classpath order
+     * @param parent the parent class loader
+     * @return the shared class loader
+     */
+    public synchronized URLClassLoader acquire(List<URL> libraries, ClassLoader parent) {
+        Key key = new Key(libraries, parent);
+        PooledClassLoader loader = loaders.get(key);
+        if (loader != null && loader.isStale()) {
+            LOG.debug("Libraries of shared aux classpath class loader have been modified, replacing it");
+            loaders.remove(key);
+            if (loader.references == 0) {
+                close(loader);
+            }
+            loader = null;
+        }
+        if (loader == null) {
+            loader = new PooledClassLoader(key, libraries.toArray(new URL[0]), parent);
+            loaders.put(key, loader);
+            LOG.debug("Created shared aux classpath class loader with {} libraries - {}", libraries.size(),
+                    getUsage());
+        }
+        loader.references++;
+        return loader;
+    }
+
+    /**
+     * Releases a shared class loader, that has been acquired before.
+     */
+    public synchronized void release(ClassLoader classLoader) {
+        if (!(classLoader instanceof PooledClassLoader)) {
+            return;
+        }
+        PooledClassLoader loader = (PooledClassLoader) classLoader;
+        if (loader.references > 0) {
+            loader.references--;
+        }
+        if (loader.references == 0 && loaders.get(loader.key) != loader) {
+            // the class loader has been replaced, as its libraries have been modified
+            close(loader);
+        }
+        evictUnused(getPoolSize());
+    }
+
+    /**
+     * @return the number of shared class loaders, including the unused ones, that are still open
+     */
+    public synchronized int getLoaderCount() {
+        return loaders.size();
+    }
+
+    /**
+     * @return the number of shared class loaders, that are in use
+     */
+    public synchronized int getUsedLoaderCount() {
+        int count = 0;
+        for (PooledClassLoader loader : loaders.values()) {
+            if (loader.references > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of libraries of all the shared class loaders, which is the
+     *     maximum number of open jar files
+     */
+    public synchronized int getLibraryCount() {
+        int count = 0;
+        for (PooledClassLoader loader : loaders.values()) {
+            count += loader.getURLs().length;
+        }
+        return count;
+    }
+
+    /**
+     * Estimates the memory retained by the shared class loaders as the size of their class files
+     * in the {@link TypeResolutionCache}, including the ones, that are not used anymore. The memory
+     * of the loaded classes themselves can't be measured.
+     *
+     * @return the size of the cached class files of the shared class loaders in bytes
+     */
+    public synchronized long getCachedClassSize() {
+        TypeResolutionCache cache = TypeResolutionCache.getInstance();
+        long size = 0;
+        for (PooledClassLoader loader : loaders.values()) {
+            size += cache.getSize(loader);
+        }
+        return size;
+    }
+
+    /**
+     * @return a short description of the pool usage, e.g. for logging
+     */
+    public synchronized String getUsage() {
+        return getLoaderCount() + " shared class loaders (" + getUsedLoaderCount() + " in use) with "
+                + getLibraryCount() + " libraries and " + getCachedClassSize() / 1024 + " KB of cached class files";
+    }
+
+    /**
+     * Closes all the class loaders, that are not used anymore.
+     */
+    public synchronized void dispose() {
+        evictUnused(0);
+    }
+
+    private void evictUnused(int poolSize) {
+        List<PooledClassLoader> evicted = new ArrayList<>();
+        int unused = loaders.size() - getUsedLoaderCount();
+        Iterator<PooledClassLoader> iterator = loaders.values().iterator();
+        while (unused > poolSize && iterator.hasNext()) {
+            PooledClassLoader loader = iterator.next();
+            if (loader.references == 0) {
+                iterator.remove();
+                evicted.add(loader);
+                unused--;
+            }
+        }
+
+        for (PooledClassLoader loader : evicted) {
+            close(loader);
+        }
+        if (!evicted.isEmpty()) {
+            LOG.debug("Closed {} unused shared aux classpath class loaders - {}", evicted.size(), getUsage());
+        }
+    }
+
+    private static void close(PooledClassLoader loader) {
+        try {
+            loader.close();
+        } catch (IOException e) {
+            LOG.debug("Error while closing shared aux classpath class loader: {}", e.toString(), e);
+        }
+    }
+
+    /**
+     * Checks, whether the libraries of a class loader have been modified since it has been
+     * created. This is the case, if e.g. a library has been rebuilt by another project.
+     * The libraries are checked at most every few seconds.
+     *
+     * @return <code>true</code> if the class loader should not be used anymore
+     */
+    static boolean isStale(ClassLoader classLoader) {
+        return classLoader instanceof PooledClassLoader && ((PooledClassLoader) classLoader).isStale();
+    }
+
+    private static int getPoolSize() {
+        PMDPlugin plugin = PMDPlugin.getDefault();
+        return plugin == null ? 0 : Math.max(0, plugin.loadPreferences().getAuxClasspathPoolSize());
+    }
+
+    /**
+     * The libraries of a shared class loader together with its parent. The parents are
+     * compared by identity.
+     */
+    private static final class Key {
+        private final ClassLoader parent;
+        private final String libraries;
+
+        Key(List<URL> libraries, ClassLoader parent) {
+            this.parent = parent;
+            StringBuilder urls = new StringBuilder(libraries.size() * 100);
+            for (URL url : libraries) {
+                urls.append(url).append('\n');
+            }
+            this.libraries = urls.toString();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(parent) + libraries.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return parent == other.parent && libraries.equals(other.libraries);
+        }
+    }
+
+    /**
+     * A shared class loader with its reference count. The class loader remembers the
+     * classes, that could not be found, and caches the class files in the
+     * {@link TypeResolutionCache}.
+     */
+    private static class PooledClassLoader extends URLClassLoader {
+        /**
+         * The libraries are checked for modifications at most this often.
+         */
+        private static final long STALE_CHECK_MILLIS = 2000;
+
+        /**
+         * At most so many classes, that could not be found, are remembered.
+         */
+        private static final int MAXIMUM_MISSING_CLASSES = 10000;
+
+        private final Key key;
+        private final long fingerprint;
+        private final Set<String> missingClasses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private int references;
+        private volatile long lastStaleCheck;
+        private volatile boolean stale;
+
+        PooledClassLoader(Key key, URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+            this.key = key;
+            this.fingerprint = fingerprintOf(urls);
+            this.lastStaleCheck = System.currentTimeMillis();
+        }
+
+        /**
+         * Combines the modification timestamps and sizes of the libraries.
+         */
+        private static long fingerprintOf(URL[] urls) {
+            long fingerprint = 17;
+            for (URL url : urls) {
+                File file = fileOf(url);
+                if (file != null) {
+                    fingerprint = 31 * fingerprint + file.lastModified();
+                    fingerprint = 31 * fingerprint + file.length();
+                }
+            }
+            return fingerprint;
+        }
+
+        private static File fileOf(URL url) {
+            if (!"file".equals(url.getProtocol())) {
+                return null;
+            }
+            try {
+                return new File(url.toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        boolean isStale() {
+            long now = System.currentTimeMillis();
+            if (!stale && now - lastStaleCheck > STALE_CHECK_MILLIS) {
+                lastStaleCheck = now;
+                stale = fingerprintOf(getURLs()) != fingerprint;
+            }
+            return stale;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (missingClasses.contains(name)) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                return super.loadClass(name, resolve);
+            } catch (ClassNotFoundException e) {
+                if (missingClasses.size() < MAXIMUM_MISSING_CLASSES) {
+                    missingClasses.add(name);
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            if (!name.endsWith(".class")) {
+                return super.getResourceAsStream(name);
+            }
+            TypeResolutionCache cache = TypeResolutionCache.getInstance();
+            byte[] bytes = cache.get(this, name, 0L);
+            if (bytes == null) {
+                InputStream stream = super.getResourceAsStream(name);
+                if (stream == null) {
+                    return null;
+                }
+                try {
+                    bytes = TypeResolutionCache.readFully(stream);
+                } catch (IOException e) {
+                    LOG.debug("Could not read class file {}: {}", name, e.toString());
+                    return null;
+                }
+                cache.put(this, name, 0L, bytes);
+            }
+            return new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            missingClasses.clear();
+            TypeResolutionCache.getInstance().removeScope(this);
+        }
+    }
+}
@@ -4,21 +4,21 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 
-import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
@@ -39,6 +39,7 @@ import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
 import net.sourceforge.pmd.eclipse.ui.actions.internal.InternalRuleSetUtil;
@@ -56,6 +57,19 @@ import net.sourceforge.pmd.lang.java.JavaLanguageModule;
  */
 public class BaseVisitor {
     private static final Logger LOG = LoggerFactory.getLogger(BaseVisitor.class);
+
+    /**
+     * Maximum count of files, that are analyzed by one PMD analysis. The contents of these
+     * files are kept in memory during the analysis and cancellation is checked between two batches.
+     */
+    private static final int MAXIMUM_BATCH_SIZE = 500;
+
+    /**
+     * The analysis cache is persisted right away, if at least so many files have been analyzed.
+     * Smaller changes are persisted when the plugin is stopped.
+     */
+    private static final int MINIMUM_FILES_TO_PERSIST_CACHE = 50;
+
     private IProgressMonitor monitor;
     @Deprecated
     private boolean useTaskMarker = false;
@@ -68,6 +82,12 @@ public class BaseVisitor {
     private IProjectProperties projectProperties;
 
     private PMDConfiguration configuration;
+    private final List<IFile> collectedFiles = new ArrayList<>();
+    private final List<IFile> excludedFiles = new ArrayList<>();
+    private int threads;
+    private AnalysisCache analysisCache;
+    private boolean typeResolution;
+    private int analyzedFilesCount;
 
     /**
      * The constructor is protected to avoid illegal instantiation.
@@ -223,6 +243,16 @@ public class BaseVisitor {
         return pmdDuration;
     }
 
+    /**
+     * Set the number of threads, that are used to analyze the collected files.
+     *
+     * @param threads
+     *            the number of threads, 0 analyzes the files in the calling thread
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     /**
      * Set the project properties (note that visitor is expected to be called one project at a time
      */
@@ -236,7 +266,9 @@ public class BaseVisitor {
     }
 
     /**
-     * Run PMD against a resource
+     * Collects a resource for the PMD analysis. The resource is only collected, if it is
+     * a file, that should be checked. The collected files are analyzed later
+     * by {@link #analyzeCollectedFiles()}.
      *
      * @param resource
      *            the resource to process
@@ -268,100 +300,252 @@ public class BaseVisitor {
             LOG.debug("file " + file.getName() + " is derived: " + file.isDerived());
             LOG.debug("file checked: " + included);
 
-            prepareMarkerAccumulator(file);
-
-            LanguageVersionDiscoverer languageDiscoverer = new LanguageVersionDiscoverer();
-            LanguageVersion languageVersion = languageDiscoverer.getDefaultLanguageVersionForFile(file.getName());
-            // in case it is java, select the correct java version
-            if (languageVersion != null
-                    && LanguageRegistry.getLanguage(JavaLanguageModule.NAME).equals(languageVersion.getLanguage())) {
-                languageVersion = PMDPlugin.javaVersionFor(file.getProject());
-            }
-            if (languageVersion != null) {
-                configuration().setDefaultLanguageVersion(languageVersion);
-            }
+            LanguageVersion languageVersion = languageVersionFor(file);
             LOG.debug("discovered language: {}", languageVersion);
 
-            if (PMDPlugin.getDefault().loadPreferences().isProjectBuildPathEnabled()) {
-                configuration().setClassLoader(projectProperties.getAuxClasspath());
-            }
-
-            // Avoid warnings about not providing cache for incremental analysis
-            configuration().setIgnoreIncrementalAnalysis(true);
-
             final File sourceCodeFile = file.getRawLocation().toFile();
             if (included && InternalRuleSetUtil.ruleSetsApplies(ruleSets, sourceCodeFile) && isFileInWorkingSet(file)
                     && languageVersion != null) {
-                subTask("PMD checking: " + file.getProject() + ": " + file.getName());
+                collectedFiles.add(file);
+            } else {
+                LOG.debug("The file " + file.getName() + " is not in the working set");
+                // existing markers of the file are removed
+                excludedFiles.add(file);
+            }
+
+        } catch (PropertiesException e) {
+            // TODO: complete message
+            LOG.error("Properties exception visiting {}", file.getName(), e);
+        } catch (IllegalArgumentException e) {
+            LOG.error("Illegal argument: {}", e.toString(), e);
+        } catch (RuntimeException e) {
+            LOG.error("Runtime exception visiting {}", file.getName(), e);
+        }
+    }
+
+    private LanguageVersion languageVersionFor(IFile file) {
+        LanguageVersionDiscoverer languageDiscoverer = new LanguageVersionDiscoverer();
+        LanguageVersion languageVersion = languageDiscoverer.getDefaultLanguageVersionForFile(file.getName());
+        // in case it is java, select the correct java version
+        if (languageVersion != null
+                && LanguageRegistry.getLanguage(JavaLanguageModule.NAME).equals(languageVersion.getLanguage())) {
+            languageVersion = PMDPlugin.javaVersionFor(file.getProject());
+        }
+        return languageVersion;
+    }
 
-                long start = System.currentTimeMillis();
+    /**
+     * @return the files, that have been collected while visiting the resources and
+     *     that have not been analyzed yet
+     */
+    public List<IFile> getCollectedFiles() {
+        return Collections.unmodifiableList(collectedFiles);
+    }
 
-                // need to disable multi threading, as the ruleset is
-                // not recreated and shared between threads...
-                // but as we anyway have only one file to process, it won't hurt
-                // here.
-                configuration().setThreads(0);
+    /**
+     * Keeps only the given files of the collected files, the other files won't be analyzed
+     * by {@link #analyzeCollectedFiles()}.
+     */
+    public void retainCollectedFiles(Collection<IFile> files) {
+        collectedFiles.retainAll(files);
+    }
 
-                Report collectingReport = null;
+    /**
+     * Run PMD against all the files, that have been collected while visiting the resources.
+     * The files are analyzed in batches of at most {@link #MAXIMUM_BATCH_SIZE} files. Each batch
+     * is analyzed by one PMD analysis, which uses the configured number of threads.
+     */
+    public void analyzeCollectedFiles() {
+        for (IFile file : excludedFiles) {
+            prepareMarkerAccumulator(file);
+        }
+        excludedFiles.clear();
+
+        if (collectedFiles.isEmpty()) {
+            return;
+        }
+
+        try {
+            configureAnalysis(collectedFiles.get(0));
 
-                try (Reader input = new InputStreamReader(file.getContents(), file.getCharset());
-                     PmdAnalysis pmdAnalysis = PmdAnalysis.create(configuration());) {
+            for (int from = 0; from < collectedFiles.size() && !isCanceled(); from += MAXIMUM_BATCH_SIZE) {
+                int to = Math.min(from + MAXIMUM_BATCH_SIZE, collectedFiles.size());
+                analyzeBatch(collectedFiles.subList(from, to));
+            }
+        } catch (PropertiesException e) {
+            LOG.error("Properties exception while analyzing {} files", collectedFiles.size(), e);
+        } catch (CoreException e) {
+            LOG.error("Core exception while analyzing {} files", collectedFiles.size(), e);
+        } catch (RuntimeException e) {
+            LOG.error("Runtime exception while analyzing {} files", collectedFiles.size(), e);
+        } finally {
+            collectedFiles.clear();
+            if (analysisCache != null && analyzedFilesCount >= MINIMUM_FILES_TO_PERSIST_CACHE) {
+                analysisCache.persist();
+                analyzedFilesCount = 0;
+            }
+        }
+    }
 
-                    String sourceContents = IOUtil.toString(input);
-                    pmdAnalysis.files().addSourceFile(sourceContents, sourceCodeFile.getAbsolutePath());
+    private void configureAnalysis(IFile file) throws PropertiesException {
+        // the files of one visitor belong to the same project, so they share the java version
+        LanguageVersion javaVersion = PMDPlugin.javaVersionFor(file.getProject());
+        if (javaVersion != null) {
+            configuration().setDefaultLanguageVersion(javaVersion);
+        }
 
-                    pmdAnalysis.addRuleSets(getRuleSetList());
+        ClassLoader auxClasspath = null;
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
+        if (preferences.isProjectBuildPathEnabled()) {
+            TypeResolutionCache.getInstance().setMaximumSize(preferences.getTypeResolutionCacheSize());
+            auxClasspath = projectProperties.getAuxClasspath();
+            configuration().setClassLoader(auxClasspath);
+        }
+        typeResolution = auxClasspath != null;
 
-                    LOG.debug("PMD running on file {}", file.getName());
-                    collectingReport = pmdAnalysis.performAnalysisAndCollectReport();
-                    LOG.debug("PMD run finished.");
-                }
+        // Avoid warnings about not providing cache for incremental analysis,
+        // the plugin uses its own analysis cache
+        configuration().setIgnoreIncrementalAnalysis(true);
 
-                pmdDuration += System.currentTimeMillis() - start;
+        // PMD copies the rulesets for each of its worker threads, so the
+        // rulesets can be shared between all the files of the batch.
+        configuration().setThreads(Math.max(0, threads));
 
-                LOG.debug("PMD found {} violations for file {}", collectingReport.getViolations().size(), file);
+        if (preferences.isAnalysisCacheEnabled()) {
+            analysisCache = AnalysisCache.forProject(file.getProject());
+            analysisCache.useConfiguration(AnalysisCache.fingerprintOf(getRuleSetList(), javaVersion,
+                    projectProperties.violationsAsErrors(), auxClasspath));
+        }
+    }
 
-                if (!collectingReport.getConfigurationErrors().isEmpty()) {
-                    StringBuilder message = new StringBuilder("There were configuration errors!\n");
-                    for (ConfigurationError error : collectingReport.getConfigurationErrors()) {
-                        message.append(error.rule().getName()).append(": ").append(error.issue()).append('\n');
+    private void analyzeBatch(List<IFile> files) throws CoreException, PropertiesException {
+        Map<String, IFile> filesByPath = new HashMap<>();
+        Map<String, String> contentsByPath = new LinkedHashMap<>();
+        Map<String, String> contentHashesByPath = new HashMap<>();
+        Map<String, String> classesHashesByPath = new HashMap<>();
+
+        // the files are only put into the accumulator, once their markers are known. A file, whose
+        // analysis fails, keeps its previous markers, even if the whole batch is aborted.
+        for (IFile file : files) {
+            String path = file.getRawLocation().toFile().getAbsolutePath();
+            try (InputStream input = file.getContents()) {
+                // the contents are read and decoded once and are shared by PMD and the review comment scanner
+                String contents = new String(IOUtil.toByteArray(input), file.getCharset());
+                if (analysisCache != null) {
+                    String contentHash = AnalysisCache.contentHash(contents);
+                    // without type resolution, the markers don't depend on the compiled classes
+                    String classesHash = typeResolution ? AnalysisCache.classesHashOf(file) : "";
+                    if (replayCachedMarkers(file, contentHash, classesHash)) {
+                        continue;
                     }
-                    LOG.warn(message.toString());
+                    contentHashesByPath.put(path, contentHash);
+                    classesHashesByPath.put(path, classesHash);
                 }
-                if (!collectingReport.getProcessingErrors().isEmpty()) {
-                    StringBuilder message = new StringBuilder("There were processing errors!\n");
-                    for (ProcessingError error : collectingReport.getProcessingErrors()) {
-                        message.append(error.getFile()).append(": ").append(error.getMsg()).append(' ')
-                        .append(error.getDetail())
-                        .append("\n");
-                    }
-                    PMDPlugin.getDefault().logWarn(message.toString());
-                    throw new RuntimeException(message.toString());
+                contentsByPath.put(path, contents);
+                filesByPath.put(path, file);
+            } catch (CoreException e) {
+                LOG.error("Core exception reading " + file.getName(), e);
+                keepPreviousMarkers(file);
+            } catch (IOException e) {
+                LOG.error("IO exception reading " + file.getName(), e);
+                keepPreviousMarkers(file);
+            }
+        }
+
+        if (contentsByPath.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Report collectingReport;
+
+        try (PmdAnalysis pmdAnalysis = PmdAnalysis.create(configuration())) {
+            for (Map.Entry<String, String> entry : contentsByPath.entrySet()) {
+                pmdAnalysis.files().addSourceFile(entry.getValue(), entry.getKey());
+            }
+
+            pmdAnalysis.addRuleSets(getRuleSetList());
+
+            subTask("PMD checking: " + files.get(0).getProject() + ": " + contentsByPath.size() + " files");
+            LOG.debug("PMD running on {} files with {} threads", contentsByPath.size(), configuration().getThreads());
+            collectingReport = pmdAnalysis.performAnalysisAndCollectReport();
+            LOG.debug("PMD run finished.");
+        }
+
+        pmdDuration += System.currentTimeMillis() - start;
+
+        if (!collectingReport.getConfigurationErrors().isEmpty()) {
+            StringBuilder message = new StringBuilder("There were configuration errors!\n");
+            for (ConfigurationError error : collectingReport.getConfigurationErrors()) {
+                message.append(error.rule().getName()).append(": ").append(error.issue()).append('\n');
+            }
+            LOG.warn(message.toString());
+        }
+        if (!collectingReport.getProcessingErrors().isEmpty()) {
+            StringBuilder message = new StringBuilder("There were processing errors!\n");
+            for (ProcessingError error : collectingReport.getProcessingErrors()) {
+                message.append(error.getFile()).append(": ").append(error.getMsg()).append(' ')
+                .append(error.getDetail())
+                .append("\n");
+                // the previous markers of files, that could not be processed, are kept
+                IFile file = filesByPath.remove(error.getFile());
+                if (file != null) {
+                    keepPreviousMarkers(file);
                 }
+            }
+            PMDPlugin.getDefault().logWarn(message.toString());
+        }
 
-                updateMarkers(file, collectingReport.getViolations());
+        Map<String, List<RuleViolation>> violationsByPath = violationsByPath(collectingReport);
+        for (Map.Entry<String, IFile> entry : filesByPath.entrySet()) {
+            List<RuleViolation> violations = violationsByPath.get(entry.getKey());
+            if (violations == null) {
+                violations = Collections.emptyList();
+            }
+            LOG.debug("PMD found {} violations for file {}", violations.size(), entry.getValue());
 
-                worked(1);
-                fileCount++;
-            } else {
-                LOG.debug("The file " + file.getName() + " is not in the working set");
+            Set<MarkerInfo2> markers = updateMarkers(entry.getValue(), violations, contentsByPath.get(entry.getKey()));
+            if (analysisCache != null) {
+                analysisCache.put(entry.getValue(), contentHashesByPath.get(entry.getKey()),
+                        classesHashesByPath.get(entry.getKey()), markers);
+                analyzedFilesCount++;
             }
 
-        } catch (CoreException e) {
-            // TODO: complete message
-            LOG.error("Core exception visiting " + file.getName(), e);
-        } catch (IOException e) {
-            // TODO: complete message
-            LOG.error("IO exception visiting " + file.getName(), e);
-        } catch (PropertiesException e) {
-            // TODO: complete message
-            LOG.error("Properties exception visiting {}", file.getName(), e);
-        } catch (IllegalArgumentException e) {
-            LOG.error("Illegal argument: {}", e.toString(), e);
-        } catch (RuntimeException e) {
-            LOG.error("Runtime exception visiting {}", file.getName(), e);
+            worked(1);
+            fileCount++;
         }
+    }
 
+    private boolean replayCachedMarkers(IFile file, String contentHash, String classesHash) {
+        Set<MarkerInfo2> markers = analysisCache.markersFor(file, contentHash, classesHash);
+        if (markers == null) {
+            return false;
+        }
+
+        LOG.debug("Using {} cached markers for unchanged file {}", markers.size(), file);
+        Map<IFile, Set<MarkerInfo2>> accumulator = getAccumulator();
+        if (accumulator != null) {
+            accumulator.put(file, markers);
+        }
+        worked(1);
+        fileCount++;
+        return true;
+    }
+
+    /**
+     * Routes the violations of a report back to the analyzed files.
+     */
+    private static Map<String, List<RuleViolation>> violationsByPath(Report report) {
+        Map<String, List<RuleViolation>> violationsByPath = new HashMap<>();
+        for (RuleViolation violation : report.getViolations()) {
+            List<RuleViolation> violations = violationsByPath.get(violation.getFilename());
+            if (violations == null) {
+                violations = new ArrayList<>();
+                violationsByPath.put(violation.getFilename(), violations);
+            }
+            violations.add(violation);
+        }
+        return violationsByPath;
     }
 
     /**
@@ -406,23 +590,33 @@ public class BaseVisitor {
         }
     }
 
-    private void updateMarkers(IFile file, List<RuleViolation> violations)
+    /**
+     * Makes sure, that a file, that could not be analyzed, is not in the accumulator, so that its
+     * markers are not replaced.
+     */
+    private void keepPreviousMarkers(IFile file) {
+        Map<IFile, Set<MarkerInfo2>> accumulator = getAccumulator();
+        if (accumulator != null) {
+            accumulator.remove(file);
+        }
+    }
+
+    private Set<MarkerInfo2> updateMarkers(IFile file, List<RuleViolation> violations, String contents)
             throws CoreException, PropertiesException {
 
         Map<IFile, Set<MarkerInfo2>> accumulator = getAccumulator();
         Set<MarkerInfo2> markerSet = new HashSet<>();
-        List<Review> reviewsList = findReviewedViolations(file);
-        Review review = new Review();
+        // the review comments only need to be searched, if there are violations at all
+        ReviewedViolations reviews = violations.isEmpty() ? ReviewedViolations.NONE
+                : ReviewedViolations.scan(contents);
         // final IPreferences preferences =
         // PMDPlugin.getDefault().loadPreferences();
 
         Rule rule;
         for (RuleViolation violation : violations) {
             rule = violation.getRule();
-            review.ruleName = rule.getName();
-            review.lineNumber = violation.getBeginLine();
 
-            if (reviewsList.contains(review)) {
+            if (reviews.contains(rule.getName(), violation.getBeginLine())) {
                 LOG.debug("Ignoring violation of rule " + rule.getName() + " at line " + violation.getBeginLine()
                         + " because of a review.");
                 continue;
@@ -448,63 +642,7 @@ public class BaseVisitor {
             LOG.debug("Adding markerSet to accumulator for file " + file.getName());
             accumulator.put(file, markerSet);
         }
-    }
-
-    /**
-     * Search for reviewed violations in that file
-     *
-     * @param file
-     */
-    private List<Review> findReviewedViolations(final IFile file) {
-        final List<Review> reviews = new ArrayList<>();
-        int lineNumber = 0;
-        boolean findLine = false;
-        boolean comment = false;
-        final Stack<String> pendingReviews = new Stack<>();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getContents()))) {
-            while (reader.ready()) {
-                String line = reader.readLine();
-                if (line != null) {
-                    line = line.trim();
-                    lineNumber++;
-                    if (line.startsWith("/*")) {
-                        comment = line.indexOf("*/") == -1;
-                    } else if (comment && line.indexOf("*/") != -1) {
-                        comment = false;
-                    } else if (!comment && line.startsWith(PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT)) {
-                        final String tail = line.substring(PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT.length());
-                        final String ruleName = tail.substring(0, tail.indexOf(':'));
-                        pendingReviews.push(ruleName);
-                        findLine = true;
-                    } else if (!comment && findLine && StringUtils.isNotBlank(line) && !line.startsWith("//")) {
-                        findLine = false;
-                        while (!pendingReviews.empty()) {
-                            // @PMD:REVIEWED:AvoidInstantiatingObjectsInLoops:
-                            // by Herlin on 01/05/05 18:36
-                            final Review review = new Review();
-                            review.ruleName = pendingReviews.pop();
-                            review.lineNumber = lineNumber;
-                            reviews.add(review);
-                        }
-                    }
-                }
-            }
-
-            // if (log.isDebugEnabled()) {
-            // for (int i = 0; i < reviewsList.size(); i++) {
-            // final Review review = (Review) reviewsList.get(i);
-            // log.debug("Review : rule " + review.ruleName + ", line " +
-            // review.lineNumber);
-            // }
-            // }
-
-        } catch (CoreException e) {
-            PMDPlugin.getDefault().logError("Core Exception when searching reviewed violations", e);
-        } catch (IOException e) {
-            PMDPlugin.getDefault().logError("IO Exception when searching reviewed violations", e);
-        }
-
-        return reviews;
+        return markerSet;
     }
 
     private MarkerInfo2 getMarkerInfo(RuleViolation violation, String type) throws PropertiesException {
@@ -541,28 +679,4 @@ public class BaseVisitor {
 
         return info;
     }
-
-    /**
-     * Private inner type to handle reviews.
-     */
-    private class Review {
-        public String ruleName;
-        public int lineNumber;
-
-        @Override
-        public boolean equals(final Object obj) {
-            boolean result = false;
-            if (obj instanceof Review) {
-                Review reviewObj = (Review) obj;
-                result = ruleName.equals(reviewObj.ruleName) && lineNumber == reviewObj.lineNumber;
-            }
-            return result;
-        }
-
-        @Override
-        public int hashCode() {
-            return ruleName.hashCode() + lineNumber * lineNumber;
-        }
-
-    }
 }
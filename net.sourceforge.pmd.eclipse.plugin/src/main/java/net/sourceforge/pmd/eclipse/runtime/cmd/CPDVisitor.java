@@ -5,6 +5,7 @@
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -34,6 +35,7 @@ public class CPDVisitor implements IResourceVisitor {
     private ResourceWorkingSetFilter workingSetFilter;
     private Language language;
     private List<File> files;
+    private final List<IFile> resources = new ArrayList<>();
 
     /**
      * @param includeDerivedFiles
@@ -67,12 +69,20 @@ public class CPDVisitor implements IResourceVisitor {
         return this.files;
     }
 
+    /**
+     * @return the workspace files of the {@link #getFiles() files}, in the same order
+     */
+    public List<IFile> getResources() {
+        return this.resources;
+    }
+
     /**
      * @param files
      *            the list of files to set
      */
     public void setFiles(List<File> files) {
         this.files = files;
+        this.resources.clear();
     }
 
     /**
@@ -92,6 +102,7 @@ public class CPDVisitor implements IResourceVisitor {
                         && (includeDerivedFiles || !file.isDerived())) {
                     LOG.debug("Add file " + resource.getName());
                     files.add(ioFile);
+                    resources.add(file);
                     return false;
                 }
             } catch (PropertiesException e) {
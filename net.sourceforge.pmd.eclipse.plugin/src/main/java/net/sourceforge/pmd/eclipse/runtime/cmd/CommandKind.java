@@ -0,0 +1,43 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * The kind of a command determines, in which queue of the {@link JobCommandProcessor}
+ * the command waits and with which priority it is executed.
+ */
+public enum CommandKind {
+    /**
+     * Commands, that somebody is waiting for: user initiated checks, the dataflow view
+     * and the property pages. They are started first.
+     */
+    INTERACTIVE(Job.SHORT),
+
+    /**
+     * The reviews of the builder. A newer build makes pending and running reviews of the
+     * same resources obsolete.
+     */
+    BUILDER(Job.BUILD),
+
+    /**
+     * Long running commands like the reports and the CPD, which may wait for the others.
+     */
+    BACKGROUND(Job.DECORATE);
+
+    private final int jobPriority;
+
+    CommandKind(int jobPriority) {
+        this.jobPriority = jobPriority;
+    }
+
+    /**
+     * @return the priority of the jobs, that execute commands of this kind
+     */
+    public int getJobPriority() {
+        return jobPriority;
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The queues of the {@link JobCommandProcessor}: the pending and running commands of
+ * each {@link CommandKind} together with their statistics.
+ *
+ * <p>At most <code>maximumRunning</code> commands run at the same time. The next command is
+ * taken from the queue with the highest priority, unless a command of another queue has been
+ * waiting for too long. The builder and the background commands together never take the last
+ * slot, so that an interactive command can always start. The queues are not thread safe, the
+ * processor synchronizes the access.
+ *
+ * @param <E> the type of the queued commands
+ */
+public class CommandQueues<E> {
+    private final int maximumRunning;
+    private final int maximumPending;
+    private final long starvationMillis;
+    private final Map<CommandKind, CommandQueue<E>> queues = new EnumMap<>(CommandKind.class);
+    private int runningCount;
+
+    /**
+     * @param maximumRunning the maximum number of commands, that are executed at the same time, at least 2
+     * @param maximumPending if so many commands of a kind are pending, the kind is busy
+     * @param starvationMillis a command, that has been waiting so long, is started before the
+     *     commands of the queues with a higher priority
+     */
+    public CommandQueues(int maximumRunning, int maximumPending, long starvationMillis) {
+        if (maximumRunning < 2) {
+            throw new IllegalArgumentException("At least two commands must be able to run: " + maximumRunning);
+        }
+        this.maximumRunning = maximumRunning;
+        this.maximumPending = maximumPending;
+        this.starvationMillis = starvationMillis;
+        queues.put(CommandKind.INTERACTIVE, new CommandQueue<E>(maximumRunning));
+        queues.put(CommandKind.BUILDER, new CommandQueue<E>(maximumRunning - 1));
+        queues.put(CommandKind.BACKGROUND, new CommandQueue<E>(Math.max(1, maximumRunning / 2)));
+    }
+
+    /**
+     * @return the pending command with the given key or <code>null</code>
+     */
+    public E pendingWithKey(CommandKind kind, Object key) {
+        if (key != null) {
+            for (Item<E> item : queues.get(kind).pending) {
+                if (key.equals(item.key)) {
+                    return item.command;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts a command, that has been merged with an identical pending command.
+     */
+    public void deduplicated(CommandKind kind) {
+        queues.get(kind).deduplicatedCount++;
+    }
+
+    /**
+     * @return <code>true</code> if so many commands of the kind are pending, that new
+     *     commands should defer their work
+     */
+    public boolean isBusy(CommandKind kind) {
+        return queues.get(kind).pending.size() >= maximumPending;
+    }
+
+    /**
+     * Queues a command after the pending commands of its kind.
+     *
+     * @param key the key of identical commands or <code>null</code>
+     * @param now the current time in milliseconds
+     */
+    public void add(CommandKind kind, E command, Object key, long now) {
+        queues.get(kind).pending.add(new Item<>(command, key, now));
+    }
+
+    /**
+     * Drops a pending command, that has been made obsolete by a newer command.
+     *
+     * @return <code>true</code> if the command was pending
+     */
+    public boolean drop(CommandKind kind, E command) {
+        CommandQueue<E> queue = queues.get(kind);
+        Iterator<Item<E>> pending = queue.pending.iterator();
+        while (pending.hasNext()) {
+            if (pending.next().command == command) {
+                pending.remove();
+                queue.canceledCount++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts a running command, that has been canceled, because it has been made obsolete.
+     */
+    public void canceled(CommandKind kind) {
+        queues.get(kind).canceledCount++;
+    }
+
+    /**
+     * Takes the next command, that can be started, out of the queues. The command is running
+     * until {@link #finished(CommandKind, Object, boolean, long)} is called.
+     *
+     * @param now the current time in milliseconds
+     * @return the command or <code>null</code>, if no command can be started
+     */
+    public E startNext(long now) {
+        if (runningCount >= maximumRunning) {
+            return null;
+        }
+        CommandQueue<E> queue = nextQueue(now);
+        if (queue == null) {
+            return null;
+        }
+        Item<E> item = queue.pending.poll();
+        item.started = now;
+        queue.averageWaitMillis = movingAverage(queue.averageWaitMillis, queue.startedCount, now - item.queued);
+        queue.startedCount++;
+        queue.running.add(item);
+        runningCount++;
+        return item.command;
+    }
+
+    /**
+     * Ends a running command. The execution time of a command, that has not been canceled,
+     * is added to the statistics.
+     *
+     * @return <code>true</code> if the command was running
+     */
+    public boolean finished(CommandKind kind, E command, boolean canceled, long now) {
+        CommandQueue<E> queue = queues.get(kind);
+        Iterator<Item<E>> running = queue.running.iterator();
+        while (running.hasNext()) {
+            Item<E> item = running.next();
+            if (item.command == command) {
+                running.remove();
+                runningCount--;
+                if (!canceled) {
+                    queue.averageRunMillis = movingAverage(queue.averageRunMillis, queue.finishedCount,
+                            now - item.started);
+                    queue.finishedCount++;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops all the pending commands.
+     *
+     * @return the dropped commands
+     */
+    public List<E> clearPending() {
+        List<E> commands = new ArrayList<>();
+        for (CommandQueue<E> queue : queues.values()) {
+            for (Item<E> item : queue.pending) {
+                commands.add(item.command);
+            }
+            queue.pending.clear();
+        }
+        return commands;
+    }
+
+    /**
+     * @return the pending commands of the kind in the order, they will be started
+     */
+    public List<E> getPending(CommandKind kind) {
+        return commandsOf(queues.get(kind).pending);
+    }
+
+    /**
+     * @return the running commands of the kind
+     */
+    public List<E> getRunning(CommandKind kind) {
+        return commandsOf(queues.get(kind).running);
+    }
+
+    public int getPendingCount(CommandKind kind) {
+        return queues.get(kind).pending.size();
+    }
+
+    public int getRunningCount(CommandKind kind) {
+        return queues.get(kind).running.size();
+    }
+
+    /**
+     * @return the moving average of the time, the commands of the kind have been waiting
+     */
+    public double getAverageWaitMillis(CommandKind kind) {
+        return queues.get(kind).averageWaitMillis;
+    }
+
+    /**
+     * @return the moving average of the execution time of the commands of the kind
+     */
+    public double getAverageRunMillis(CommandKind kind) {
+        return queues.get(kind).averageRunMillis;
+    }
+
+    public int getDeduplicatedCount(CommandKind kind) {
+        return queues.get(kind).deduplicatedCount;
+    }
+
+    public int getCanceledCount(CommandKind kind) {
+        return queues.get(kind).canceledCount;
+    }
+
+    /**
+     * @return the queue of the next command to start, or <code>null</code> if no command can be started
+     */
+    private CommandQueue<E> nextQueue(long now) {
+        // the last slot is reserved for the interactive commands
+        boolean slotForOthers = runningCount - getRunningCount(CommandKind.INTERACTIVE) < maximumRunning - 1;
+        CommandQueue<E> next = null;
+        // the kinds are ordered by their priority
+        for (Map.Entry<CommandKind, CommandQueue<E>> entry : queues.entrySet()) {
+            CommandQueue<E> queue = entry.getValue();
+            if (queue.pending.isEmpty() || queue.running.size() >= queue.maximumRunning
+                    || entry.getKey() != CommandKind.INTERACTIVE && !slotForOthers) {
+                continue;
+            }
+            if (now - queue.pending.peek().queued >= starvationMillis) {
+                return queue;
+            }
+            if (next == null) {
+                next = queue;
+            }
+        }
+        return next;
+    }
+
+    private static <E> List<E> commandsOf(Iterable<Item<E>> items) {
+        List<E> commands = new ArrayList<>();
+        for (Item<E> item : items) {
+            commands.add(item.command);
+        }
+        return commands;
+    }
+
+    private static double movingAverage(double average, int count, long millis) {
+        return count == 0 ? millis : 0.7 * average + 0.3 * millis;
+    }
+
+    /**
+     * The pending and running commands of one kind together with their statistics.
+     */
+    private static final class CommandQueue<E> {
+        private final int maximumRunning;
+        private final Deque<Item<E>> pending = new ArrayDeque<>();
+        private final List<Item<E>> running = new ArrayList<>();
+        private double averageWaitMillis;
+        private double averageRunMillis;
+        private int startedCount;
+        private int finishedCount;
+        private int deduplicatedCount;
+        private int canceledCount;
+
+        CommandQueue(int maximumRunning) {
+            this.maximumRunning = maximumRunning;
+        }
+    }
+
+    private static final class Item<E> {
+        private final E command;
+        private final Object key;
+        private final long queued;
+        private long started;
+
+        Item(E command, Object key, long queued) {
+            this.command = command;
+            this.key = key;
+            this.queued = queued;
+        }
+    }
+}
@@ -0,0 +1,592 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.IPropertyListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.cpd.Language;
+import net.sourceforge.pmd.cpd.LanguageFactory;
+import net.sourceforge.pmd.cpd.Mark;
+import net.sourceforge.pmd.cpd.Match;
+import net.sourceforge.pmd.cpd.SourceCode;
+import net.sourceforge.pmd.cpd.TokenEntry;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
+
+/**
+ * Detects the duplicated code of the files, that are changed by a build, in the background.
+ *
+ * <p>Per project, the tokens of the java files are kept in a {@link CpdTokenCache} and the token tiles
+ * in a {@link CpdTileIndex}. The index is built with the first change of a project after the start,
+ * from the persistent token cache, so that only the files, that have been modified in the meantime,
+ * are tokenized. Afterwards the builder queues the changed files with {@link #enqueue(IProject, Collection)}.
+ * Only these files are tokenized and indexed again, and only their duplicates are searched, so a full
+ * CPD of the project is never run.
+ *
+ * <p>The duplicates are reported as CPD markers on both copies. The listeners, i.e. the CPD view, are
+ * notified with the duplicates, that have been found since the index has been built. When the continuous
+ * CPD is disabled, the indexes and the CPD markers are removed, see {@link #stop()}.
+ */
+public final class ContinuousCpd {
+    private static final Logger LOG = LoggerFactory.getLogger(ContinuousCpd.class);
+
+    /**
+     * The continuous CPD checks the java files, like the CPD command by default.
+     */
+    private static final String LANGUAGE = "java";
+
+    /**
+     * The job family of the continuous CPD job.
+     */
+    public static final Object FAMILY = new Object();
+
+    private static final ContinuousCpd INSTANCE = new ContinuousCpd();
+
+    private final Map<IProject, Set<IFile>> pendingFiles = new LinkedHashMap<>();
+    private final Map<IProject, ProjectIndex> indexes = new HashMap<>();
+    private final List<IPropertyListener> listeners = new ArrayList<>();
+    private final Job detectJob = new DetectJob();
+    private boolean disposed;
+    private boolean stopped;
+
+    private ContinuousCpd() {
+        // singleton
+    }
+
+    public static ContinuousCpd getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues the changed, added and removed files of a build.
+     *
+     * @param project the built project
+     * @param files the files of the resource delta
+     */
+    public synchronized void enqueue(IProject project, Collection<IFile> files) {
+        if (files.isEmpty() || disposed) {
+            return;
+        }
+        Set<IFile> pending = pendingFiles.get(project);
+        if (pending == null) {
+            pending = new LinkedHashSet<>();
+            pendingFiles.put(project, pending);
+        }
+        pending.addAll(files);
+        LOG.debug("Queued {} files of {} for the continuous CPD", files.size(), project.getName());
+        detectJob.schedule();
+    }
+
+    /**
+     * Drops the index of a project, e.g. because the project has been cleaned. The index is built again
+     * with the next change of the project.
+     */
+    public void forget(IProject project) {
+        ProjectIndex index;
+        synchronized (this) {
+            pendingFiles.remove(project);
+            index = indexes.remove(project);
+        }
+        if (index != null) {
+            index.persist();
+        }
+    }
+
+    /**
+     * Stops the continuous CPD, because it has been disabled in the preferences. The background job drops
+     * the queued files and the indexes, deletes the CPD markers of the workspace and notifies the listeners,
+     * that there are no duplicates anymore. The indexes are built again with the next change, after the
+     * continuous CPD has been enabled again.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (disposed) {
+                return;
+            }
+            stopped = true;
+        }
+        detectJob.cancel();
+        detectJob.schedule();
+    }
+
+    /**
+     * @return the number of files, that are waiting for the continuous CPD
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (Set<IFile> files : pendingFiles.values()) {
+            depth += files.size();
+        }
+        return depth;
+    }
+
+    /**
+     * Adds a listener, that is notified in the UI thread with an iterator of the current
+     * {@link Match matches} and the property {@link PMDRuntimeConstants#PROPERTY_CPD_UPDATE}.
+     */
+    public synchronized void addPropertyListener(IPropertyListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void removePropertyListener(IPropertyListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Cancels the background job and writes the token caches of the indexed projects.
+     */
+    public void dispose() {
+        List<ProjectIndex> currentIndexes;
+        synchronized (this) {
+            disposed = true;
+            pendingFiles.clear();
+            detectJob.cancel();
+            currentIndexes = new ArrayList<>(indexes.values());
+            indexes.clear();
+        }
+        for (ProjectIndex index : currentIndexes) {
+            index.persist();
+        }
+    }
+
+    /**
+     * Drops the queued files and the indexes, deletes all CPD markers and notifies the listeners, if the
+     * continuous CPD has been stopped. A canceled run might have queued its files again or built an index
+     * after {@link #stop()}, so this is done by the job.
+     */
+    private void removeIfStopped() throws CoreException {
+        List<ProjectIndex> currentIndexes;
+        synchronized (this) {
+            if (!stopped) {
+                return;
+            }
+            stopped = false;
+            pendingFiles.clear();
+            currentIndexes = new ArrayList<>(indexes.values());
+            indexes.clear();
+        }
+        for (ProjectIndex index : currentIndexes) {
+            index.persist();
+        }
+        ResourcesPlugin.getWorkspace().getRoot().deleteMarkers(PMDRuntimeConstants.PMD_CPD_MARKER, false,
+                IResource.DEPTH_INFINITE);
+        LOG.debug("Stopped the continuous CPD of {} projects", currentIndexes.size());
+        fireMatchesChanged(Collections.<CpdTileIndex.Duplication<IFile>>emptyList());
+    }
+
+    private synchronized Map.Entry<IProject, Set<IFile>> nextPendingProject() {
+        Iterator<Map.Entry<IProject, Set<IFile>>> projects = pendingFiles.entrySet().iterator();
+        if (!projects.hasNext()) {
+            return null;
+        }
+        Map.Entry<IProject, Set<IFile>> next = projects.next();
+        projects.remove();
+        return next;
+    }
+
+    /**
+     * Queues the files of a canceled run again, without scheduling the job.
+     */
+    private synchronized void requeue(IProject project, Set<IFile> files) {
+        if (disposed || stopped) {
+            return;
+        }
+        Set<IFile> pending = pendingFiles.get(project);
+        if (pending != null) {
+            files.addAll(pending);
+        }
+        pendingFiles.put(project, files);
+    }
+
+    private ProjectIndex indexOf(IProject project, IPreferences preferences, IProgressMonitor monitor)
+            throws CoreException, PropertiesException {
+        ProjectIndex index;
+        synchronized (this) {
+            index = indexes.get(project);
+        }
+        if (index != null && index.tiles.getMinimumTileSize() == preferences.getMinTileSize()) {
+            return index;
+        }
+
+        long start = System.currentTimeMillis();
+        index = ProjectIndex.build(project, preferences, monitor);
+        if (index != null) {
+            LOG.debug("Built the CPD index of {} files of {} in {}ms", index.tiles.size(), project.getName(),
+                    System.currentTimeMillis() - start);
+            synchronized (this) {
+                if (!disposed) {
+                    indexes.put(project, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Updates the index of a project for the given files and replaces the CPD markers of these files.
+     *
+     * @return <code>false</code>, if the detection has been canceled
+     */
+    private boolean detect(IProject project, Set<IFile> files, IProgressMonitor monitor)
+            throws CoreException, PropertiesException {
+        if (!project.isAccessible()) {
+            forget(project);
+            return true;
+        }
+
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
+        ProjectIndex index = indexOf(project, preferences, monitor);
+        if (index == null) {
+            return false;
+        }
+
+        Map<IFile, List<CpdTileIndex.Duplication<IFile>>> found;
+        List<CpdTileIndex.Duplication<IFile>> current;
+        synchronized (index) {
+            if (!index.update(files, preferences.getAnalysisThreads(), monitor)) {
+                return false;
+            }
+            found = index.detect(files);
+            current = index.currentDuplications();
+        }
+        updateMarkers(project, files, found);
+        LOG.debug("Continuous CPD of {} changed files of {} found duplicates in {} files", files.size(),
+                project.getName(), found.size());
+        fireMatchesChanged(current);
+        return true;
+    }
+
+    /**
+     * Deletes the CPD markers of the given files and the markers, that refer to these files, and creates
+     * the markers of the duplicates, that have been found.
+     */
+    private static void updateMarkers(final IProject project, final Set<IFile> files,
+            final Map<IFile, List<CpdTileIndex.Duplication<IFile>>> found) throws CoreException {
+        final Set<String> paths = new HashSet<>();
+        for (IFile file : files) {
+            paths.add(file.getFullPath().toPortableString());
+        }
+
+        IWorkspaceRunnable action = new IWorkspaceRunnable() {
+            @Override
+            public void run(IProgressMonitor monitor) throws CoreException {
+                for (IMarker marker : project.findMarkers(PMDRuntimeConstants.PMD_CPD_MARKER, false,
+                        IResource.DEPTH_INFINITE)) {
+                    if (files.contains(marker.getResource()) || paths.contains(
+                            marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_CPD_DUPLICATE, ""))) {
+                        marker.delete();
+                    }
+                }
+                for (List<CpdTileIndex.Duplication<IFile>> duplications : found.values()) {
+                    for (CpdTileIndex.Duplication<IFile> duplication : duplications) {
+                        createMarker(duplication.getFile(), duplication.getBeginLine(), duplication.getEndLine(),
+                                duplication.getOtherFile(), duplication.getOtherBeginLine(),
+                                duplication.getTokenCount());
+                        createMarker(duplication.getOtherFile(), duplication.getOtherBeginLine(),
+                                duplication.getOtherEndLine(), duplication.getFile(), duplication.getBeginLine(),
+                                duplication.getTokenCount());
+                    }
+                }
+            }
+        };
+
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        workspace.run(action, workspace.getRuleFactory().markerRule(project), IWorkspace.AVOID_UPDATE, null);
+    }
+
+    private static void createMarker(IFile file, int beginLine, int endLine, IFile duplicate, int duplicateLine,
+            int tokenCount) throws CoreException {
+        if (!file.exists()) {
+            return;
+        }
+        String message = MessageFormat.format(
+                PMDPlugin.getDefault().getStringTable().getString(StringKeys.MARKER_CPD_DUPLICATE),
+                String.valueOf(tokenCount), duplicate.getProjectRelativePath().toPortableString(),
+                String.valueOf(duplicateLine));
+        IMarker marker = file.createMarker(PMDRuntimeConstants.PMD_CPD_MARKER);
+        marker.setAttributes(
+                new String[] { IMarker.MESSAGE, IMarker.SEVERITY, IMarker.LINE_NUMBER,
+                    PMDRuntimeConstants.KEY_MARKERATT_LINE2, PMDRuntimeConstants.KEY_MARKERATT_CPD_DUPLICATE, },
+                new Object[] { message, IMarker.SEVERITY_WARNING, beginLine, endLine,
+                    duplicate.getFullPath().toPortableString(), });
+    }
+
+    private void fireMatchesChanged(List<CpdTileIndex.Duplication<IFile>> duplications) {
+        final List<IPropertyListener> currentListeners;
+        synchronized (this) {
+            currentListeners = new ArrayList<>(listeners);
+        }
+        if (currentListeners.isEmpty()) {
+            return;
+        }
+
+        final List<Match> matches = new ArrayList<>(duplications.size());
+        for (CpdTileIndex.Duplication<IFile> duplication : duplications) {
+            matches.add(matchOf(duplication));
+        }
+        // the token entries of the matches are only needed for their lines
+        TokenEntry.clearImages();
+
+        Display.getDefault().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                for (IPropertyListener listener : currentListeners) {
+                    listener.propertyChanged(matches.iterator(), PMDRuntimeConstants.PROPERTY_CPD_UPDATE);
+                }
+            }
+        });
+    }
+
+    /**
+     * Converts a duplicate into a CPD match, whose source code is read when it is shown.
+     */
+    private static Match matchOf(CpdTileIndex.Duplication<IFile> duplication) {
+        IFile file = duplication.getFile();
+        IFile otherFile = duplication.getOtherFile();
+        // the columns are not known, the marks only show whole lines
+        TokenEntry first = new TokenEntry("", locationOf(file), duplication.getBeginLine(), 1, 1);
+        TokenEntry second = new TokenEntry("", locationOf(otherFile), duplication.getOtherBeginLine(), 1, 1);
+        Match match = new Match(duplication.getTokenCount(), first, second);
+        for (Mark mark : match.getMarkSet()) {
+            if (mark.getToken() == first) {
+                mark.setLineCount(duplication.getEndLine() - duplication.getBeginLine() + 1);
+                mark.setSourceCode(sourceCodeOf(file));
+            } else {
+                mark.setLineCount(duplication.getOtherEndLine() - duplication.getOtherBeginLine() + 1);
+                mark.setSourceCode(sourceCodeOf(otherFile));
+            }
+        }
+        return match;
+    }
+
+    private static SourceCode sourceCodeOf(IFile file) {
+        String charset;
+        try {
+            charset = file.getCharset();
+        } catch (CoreException e) {
+            charset = ResourcesPlugin.getEncoding();
+        }
+        return new SourceCode(new SourceCode.FileCodeLoader(file.getLocation().toFile(), charset));
+    }
+
+    private static String locationOf(IFile file) {
+        return file.getLocation().toFile().getAbsolutePath();
+    }
+
+    /**
+     * The tokens, the token tiles and the duplicates of a project. The index is only used by the
+     * background job, while the job holds its lock.
+     */
+    private static final class ProjectIndex {
+        private final CPDVisitor filter;
+        private final CpdTokenCache tokens;
+        private final CpdTileIndex<IFile> tiles;
+
+        /**
+         * The duplicates, by the file, whose change revealed them.
+         */
+        private final Map<IFile, List<CpdTileIndex.Duplication<IFile>>> duplications = new HashMap<>();
+
+        private ProjectIndex(CPDVisitor filter, CpdTokenCache tokens, CpdTileIndex<IFile> tiles) {
+            this.filter = filter;
+            this.tokens = tokens;
+            this.tiles = tiles;
+        }
+
+        /**
+         * Tokenizes and indexes all the files of a project, that are checked by CPD.
+         *
+         * @return the index or <code>null</code>, if the job has been canceled
+         */
+        static ProjectIndex build(IProject project, IPreferences preferences, IProgressMonitor monitor)
+                throws CoreException, PropertiesException {
+            Language language = LanguageFactory.createLanguage(LANGUAGE);
+            IProjectProperties properties = PMDPlugin.getDefault().loadProjectProperties(project);
+            CPDVisitor visitor = new CPDVisitor();
+            visitor.setWorkingSet(properties.getProjectWorkingSet());
+            visitor.setIncludeDerivedFiles(properties.isIncludeDerivedFiles());
+            visitor.setLanguage(language);
+            visitor.setFiles(new ArrayList<File>());
+            project.accept(visitor);
+            List<IFile> files = new ArrayList<>(visitor.getResources());
+
+            CpdTokenCache tokens = CpdTokenCache.forProject(project, language, preferences.isAnalysisCacheEnabled());
+            if (!tokens.update(files, preferences.getAnalysisThreads(), monitor)) {
+                return null;
+            }
+            tokens.persist();
+
+            CpdTileIndex<IFile> tiles = new CpdTileIndex<>(preferences.getMinTileSize());
+            for (IFile file : files) {
+                CpdTokenCache.CachedTokens cached = tokens.tokensOf(file);
+                if (cached != null) {
+                    tiles.put(file, cached.getImages(), cached.getLines());
+                }
+            }
+            return new ProjectIndex(visitor, tokens, tiles);
+        }
+
+        /**
+         * Tokenizes and indexes the given files again. Files, that have been removed or are not checked
+         * by CPD anymore, are removed from the index.
+         *
+         * @return <code>false</code>, if the job has been canceled
+         */
+        boolean update(Set<IFile> files, int threads, IProgressMonitor monitor) throws CoreException {
+            filter.setFiles(new ArrayList<File>());
+            for (IFile file : files) {
+                if (file.exists()) {
+                    filter.visit(file);
+                }
+            }
+            Set<IFile> candidates = new LinkedHashSet<>(filter.getResources());
+            for (IFile file : files) {
+                if (!candidates.contains(file)) {
+                    tokens.remove(file);
+                    tiles.remove(file);
+                }
+            }
+
+            if (!tokens.refresh(candidates, threads, monitor)) {
+                return false;
+            }
+            for (IFile file : candidates) {
+                CpdTokenCache.CachedTokens cached = tokens.tokensOf(file);
+                if (cached == null) {
+                    tiles.remove(file);
+                } else {
+                    tiles.put(file, cached.getImages(), cached.getLines());
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Drops the duplicates of and with the given files, and searches the duplicates of these files.
+         *
+         * @return the duplicates, that have been found, by file
+         */
+        Map<IFile, List<CpdTileIndex.Duplication<IFile>>> detect(Set<IFile> files) {
+            duplications.keySet().removeAll(files);
+            Iterator<List<CpdTileIndex.Duplication<IFile>>> lists = duplications.values().iterator();
+            while (lists.hasNext()) {
+                List<CpdTileIndex.Duplication<IFile>> list = lists.next();
+                Iterator<CpdTileIndex.Duplication<IFile>> iterator = list.iterator();
+                while (iterator.hasNext()) {
+                    if (files.contains(iterator.next().getOtherFile())) {
+                        iterator.remove();
+                    }
+                }
+                if (list.isEmpty()) {
+                    lists.remove();
+                }
+            }
+
+            Map<IFile, List<CpdTileIndex.Duplication<IFile>>> found = new LinkedHashMap<>();
+            for (IFile file : files) {
+                List<CpdTileIndex.Duplication<IFile>> fileDuplications = new ArrayList<>();
+                for (CpdTileIndex.Duplication<IFile> duplication : tiles.duplicationsOf(file)) {
+                    // a duplicate of two changed files has already been found from the other file
+                    if (!found.containsKey(duplication.getOtherFile())) {
+                        fileDuplications.add(duplication);
+                    }
+                }
+                if (!fileDuplications.isEmpty()) {
+                    found.put(file, fileDuplications);
+                    duplications.put(file, fileDuplications);
+                }
+            }
+            return found;
+        }
+
+        List<CpdTileIndex.Duplication<IFile>> currentDuplications() {
+            List<CpdTileIndex.Duplication<IFile>> current = new ArrayList<>();
+            for (List<CpdTileIndex.Duplication<IFile>> list : duplications.values()) {
+                current.addAll(list);
+            }
+            return current;
+        }
+
+        synchronized void persist() {
+            tokens.persist();
+        }
+    }
+
+    /**
+     * Detects the duplicates of the queued files, one project after the other.
+     */
+    private class DetectJob extends Job {
+        DetectJob() {
+            super("PMD continuous CPD");
+            setPriority(Job.DECORATE);
+            setSystem(true);
+        }
+
+        @Override
+        public boolean belongsTo(Object family) {
+            return family == FAMILY;
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            try {
+                removeIfStopped();
+            } catch (CoreException e) {
+                LOG.error("Error while removing the CPD markers: {}", e.toString(), e);
+            }
+            Map.Entry<IProject, Set<IFile>> next = nextPendingProject();
+            while (next != null) {
+                boolean completed = false;
+                try {
+                    completed = detect(next.getKey(), next.getValue(), monitor);
+                } catch (CoreException | PropertiesException | RuntimeException e) {
+                    LOG.error("Error during continuous CPD of {}: {}", next.getKey().getName(), e.toString(), e);
+                    completed = true;
+                }
+                if (!completed) {
+                    requeue(next.getKey(), next.getValue());
+                }
+                if (monitor.isCanceled()) {
+                    return Status.CANCEL_STATUS;
+                }
+                next = nextPendingProject();
+            }
+            return Status.OK_STATUS;
+        }
+    }
+}
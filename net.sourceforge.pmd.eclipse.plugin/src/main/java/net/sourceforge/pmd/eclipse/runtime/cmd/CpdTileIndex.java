@@ -0,0 +1,351 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the token tiles of the files of a project, that finds the duplicated code of a single file
+ * without comparing all the files again.
+ *
+ * <p>Each file is a sequence of token images. A window of tokens is hashed with a rolling hash, and
+ * the windows, that start at every n-th token, are kept in a hash table. The window size and the step
+ * are chosen, so that every duplicate of at least the minimum tile size contains one of the indexed
+ * windows completely. To find the duplicates of a file, the hashes of all the windows of the file are
+ * looked up in the table. Each hit is verified and extended to the maximal duplicate. Adding, replacing
+ * or removing a file only updates the windows of this file.
+ *
+ * <p>Windows, that occur too often, are ignored, as they are boilerplate, e.g. a sequence of closing
+ * brackets. The token images are counted, so that the images, which no file uses anymore, are
+ * removed again. The index is not thread safe.
+ *
+ * @param <K> the type of the keys of the files
+ */
+public final class CpdTileIndex<K> {
+
+    /**
+     * Windows with more occurrences are ignored when looking for duplicates.
+     */
+    private static final int MAX_WINDOW_OCCURRENCES = 64;
+
+    private static final long HASH_BASE = 1000003L;
+
+    private final int minimumTileSize;
+    private final int windowSize;
+    private final int step;
+    private final long highestPower;
+
+    private final Map<String, Integer> imageIds = new HashMap<>();
+    private final List<String> imagesById = new ArrayList<>();
+    private int[] imageUseCounts = new int[256];
+    private final Deque<Integer> unusedImageIds = new ArrayDeque<>();
+    private final Map<K, Sequence<K>> sequences = new HashMap<>();
+    private final Map<Long, List<Window<K>>> windows = new HashMap<>();
+
+    /**
+     * @param minimumTileSize the minimum number of duplicated tokens
+     */
+    public CpdTileIndex(int minimumTileSize) {
+        this.minimumTileSize = Math.max(1, minimumTileSize);
+        this.windowSize = (this.minimumTileSize + 1) / 2;
+        this.step = this.minimumTileSize - windowSize + 1;
+        long power = 1;
+        for (int i = 1; i < windowSize; i++) {
+            power *= HASH_BASE;
+        }
+        this.highestPower = power;
+    }
+
+    public int getMinimumTileSize() {
+        return minimumTileSize;
+    }
+
+    /**
+     * @return the number of indexed files
+     */
+    public int size() {
+        return sequences.size();
+    }
+
+    public boolean contains(K key) {
+        return sequences.containsKey(key);
+    }
+
+    /**
+     * @return the number of distinct token images of the indexed files
+     */
+    public int getImageCount() {
+        return imageIds.size();
+    }
+
+    /**
+     * Adds a file to the index or replaces the tokens of a file.
+     *
+     * @param key the file
+     * @param images the images of the tokens
+     * @param lines the begin lines of the tokens
+     */
+    public void put(K key, String[] images, int[] lines) {
+        remove(key);
+
+        int[] ids = new int[images.length];
+        for (int i = 0; i < images.length; i++) {
+            Integer id = imageIds.get(images[i]);
+            if (id == null) {
+                id = newImageId(images[i]);
+            }
+            imageUseCounts[id]++;
+            ids[i] = id;
+        }
+
+        Sequence<K> sequence = new Sequence<>(key, ids, lines);
+        sequences.put(key, sequence);
+
+        int windowCount = ids.length < windowSize ? 0 : (ids.length - windowSize) / step + 1;
+        sequence.hashes = new long[windowCount];
+        for (int i = 0; i < windowCount; i++) {
+            long hash = hashOf(ids, i * step);
+            sequence.hashes[i] = hash;
+            List<Window<K>> occurrences = windows.get(hash);
+            if (occurrences == null) {
+                occurrences = new ArrayList<>(1);
+                windows.put(hash, occurrences);
+            }
+            occurrences.add(new Window<>(sequence, i * step));
+        }
+    }
+
+    /**
+     * Removes a file from the index.
+     */
+    public void remove(K key) {
+        Sequence<K> sequence = sequences.remove(key);
+        if (sequence == null) {
+            return;
+        }
+        for (int id : sequence.ids) {
+            if (--imageUseCounts[id] == 0) {
+                imageIds.remove(imagesById.set(id, null));
+                unusedImageIds.push(id);
+            }
+        }
+        for (long hash : sequence.hashes) {
+            List<Window<K>> occurrences = windows.get(hash);
+            if (occurrences == null) {
+                continue;
+            }
+            Iterator<Window<K>> iterator = occurrences.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().sequence == sequence) {
+                    iterator.remove();
+                }
+            }
+            if (occurrences.isEmpty()) {
+                windows.remove(hash);
+            }
+        }
+    }
+
+    /**
+     * Assigns an id to a new image. The ids of removed images are reused, so that the ids stay small.
+     */
+    private int newImageId(String image) {
+        int id;
+        if (unusedImageIds.isEmpty()) {
+            id = imagesById.size();
+            imagesById.add(image);
+            if (id == imageUseCounts.length) {
+                imageUseCounts = Arrays.copyOf(imageUseCounts, id * 2);
+            }
+        } else {
+            id = unusedImageIds.pop();
+            imagesById.set(id, image);
+        }
+        imageIds.put(image, id);
+        return id;
+    }
+
+    /**
+     * Finds the duplicates of a file within the file itself and within all the other files of the index.
+     * Each duplicate is reported once, with the given file as the first file.
+     *
+     * @param key the file
+     * @return the maximal duplicates of at least the minimum tile size
+     */
+    public List<Duplication<K>> duplicationsOf(K key) {
+        Sequence<K> sequence = sequences.get(key);
+        if (sequence == null || sequence.ids.length < minimumTileSize) {
+            return Collections.emptyList();
+        }
+
+        int[] ids = sequence.ids;
+        List<Duplication<K>> duplications = new ArrayList<>();
+        // the end of the last duplicate per other file and offset, so that a duplicate is extended only once
+        Map<Sequence<K>, Map<Integer, Integer>> covered = new HashMap<>();
+        long hash = hashOf(ids, 0);
+        for (int position = 0; position + windowSize <= ids.length; position++) {
+            if (position > 0) {
+                hash = (hash - ids[position - 1] * highestPower) * HASH_BASE + ids[position + windowSize - 1];
+            }
+            List<Window<K>> occurrences = windows.get(hash);
+            if (occurrences == null || occurrences.size() > MAX_WINDOW_OCCURRENCES) {
+                continue;
+            }
+            for (Window<K> window : occurrences) {
+                Duplication<K> duplication = extend(sequence, position, window, covered);
+                if (duplication != null) {
+                    duplications.add(duplication);
+                }
+            }
+        }
+        return duplications;
+    }
+
+    private Duplication<K> extend(Sequence<K> sequence, int position, Window<K> window,
+            Map<Sequence<K>, Map<Integer, Integer>> covered) {
+        Sequence<K> other = window.sequence;
+        int offset = window.position - position;
+        if (other == sequence && offset == 0) {
+            return null;
+        }
+        Map<Integer, Integer> ends = covered.get(other);
+        if (ends == null) {
+            ends = new HashMap<>();
+            covered.put(other, ends);
+        }
+        Integer end = ends.get(offset);
+        if (end != null && position < end || !equalWindows(sequence.ids, position, other.ids, window.position)) {
+            return null;
+        }
+
+        int begin = position;
+        while (begin > 0 && begin + offset > 0 && sequence.ids[begin - 1] == other.ids[begin + offset - 1]) {
+            begin--;
+        }
+        int length = windowSize + position - begin;
+        while (begin + length < sequence.ids.length && begin + offset + length < other.ids.length
+                && sequence.ids[begin + length] == other.ids[begin + offset + length]) {
+            length++;
+        }
+        if (other == sequence) {
+            // a duplicate within the file must not overlap itself
+            length = Math.min(length, Math.abs(offset));
+        }
+        ends.put(offset, begin + length);
+
+        // within the file, each duplicate is found from both of its copies
+        if (length < minimumTileSize || other == sequence && offset < 0) {
+            return null;
+        }
+        return new Duplication<>(sequence, begin, other, begin + offset, length);
+    }
+
+    private boolean equalWindows(int[] ids, int position, int[] otherIds, int otherPosition) {
+        for (int i = 0; i < windowSize; i++) {
+            if (ids[position + i] != otherIds[otherPosition + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long hashOf(int[] ids, int position) {
+        long hash = 0;
+        for (int i = position; i < position + windowSize; i++) {
+            hash = hash * HASH_BASE + ids[i];
+        }
+        return hash;
+    }
+
+    /**
+     * A duplicate of the tokens of a file within another file or the file itself.
+     *
+     * @param <K> the type of the keys of the files
+     */
+    public static final class Duplication<K> {
+        private final K file;
+        private final K otherFile;
+        private final int tokenCount;
+        private final int beginLine;
+        private final int endLine;
+        private final int otherBeginLine;
+        private final int otherEndLine;
+
+        Duplication(Sequence<K> sequence, int begin, Sequence<K> other, int otherBegin, int tokenCount) {
+            this.file = sequence.key;
+            this.otherFile = other.key;
+            this.tokenCount = tokenCount;
+            this.beginLine = sequence.lines[begin];
+            this.endLine = sequence.lines[begin + tokenCount - 1];
+            this.otherBeginLine = other.lines[otherBegin];
+            this.otherEndLine = other.lines[otherBegin + tokenCount - 1];
+        }
+
+        public K getFile() {
+            return file;
+        }
+
+        public K getOtherFile() {
+            return otherFile;
+        }
+
+        public int getTokenCount() {
+            return tokenCount;
+        }
+
+        public int getBeginLine() {
+            return beginLine;
+        }
+
+        public int getEndLine() {
+            return endLine;
+        }
+
+        public int getOtherBeginLine() {
+            return otherBeginLine;
+        }
+
+        public int getOtherEndLine() {
+            return otherEndLine;
+        }
+
+        @Override
+        public String toString() {
+            return tokenCount + " tokens " + file + ":" + beginLine + "-" + endLine + " in " + otherFile + ":"
+                    + otherBeginLine + "-" + otherEndLine;
+        }
+    }
+
+    private static final class Sequence<K> {
+        private final K key;
+        private final int[] ids;
+        private final int[] lines;
+        private long[] hashes;
+
+        Sequence(K key, int[] ids, int[] lines) {
+            this.key = key;
+            this.ids = ids;
+            this.lines = lines;
+        }
+    }
+
+    private static final class Window<K> {
+        private final Sequence<K> sequence;
+        private final int position;
+
+        Window(Sequence<K> sequence, int position) {
+            this.sequence = sequence;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,621 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.cpd.AbstractLanguage;
+import net.sourceforge.pmd.cpd.Language;
+import net.sourceforge.pmd.cpd.LanguageFactory;
+import net.sourceforge.pmd.cpd.SourceCode;
+import net.sourceforge.pmd.cpd.TokenEntry;
+import net.sourceforge.pmd.cpd.Tokenizer;
+import net.sourceforge.pmd.cpd.Tokens;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+
+/**
+ * Cache of the CPD token streams of the files of a project.
+ *
+ * <p>The files, whose tokens are missing or outdated, are tokenized in parallel. CPD itself requires,
+ * that all the tokens are created by the same thread in the order of the files, because the token
+ * identifiers and indexes are kept per thread. Therefore the tokens are stored with their images and
+ * are replayed by the tokenizer of the {@link #replayingLanguage(IProgressMonitor) replaying language},
+ * when the files are added to CPD.
+ *
+ * <p>An entry is keyed by the project relative path of the file and is valid for the modification
+ * stamp of the file, it has been tokenized for. All entries share the same fingerprint, that consists
+ * of the plugin version and the language. The cache is stored in the working location of the project.
+ *
+ * <p>The CPD command and the {@link ContinuousCpd continuous CPD} share one cache per project, see
+ * {@link #forProject(IProject, Language, boolean)}, so that the cache file is only written by one instance.
+ * The access to the cache is synchronized. The shared cache is kept in memory only while it is used, i.e.
+ * by the continuous CPD.
+ */
+public final class CpdTokenCache {
+    private static final Logger LOG = LoggerFactory.getLogger(CpdTokenCache.class);
+
+    private static final String CACHE_FILE_NAME = "cpd-tokens.cache";
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * The number of files, that are tokenized by one task.
+     */
+    private static final int FILES_PER_TASK = 50;
+
+    /**
+     * The persistent caches, that are shared by the CPD runs of a project.
+     */
+    private static final Map<IProject, WeakReference<CpdTokenCache>> SHARED_CACHES = new HashMap<>();
+
+    private final IProject project;
+    private final Language language;
+    private final String fingerprint;
+    private final boolean persistent;
+    private final Map<String, Entry> entriesByPath = new HashMap<>();
+    private final Map<String, Entry> entriesByLocation = new HashMap<>();
+    private boolean dirty;
+    private int hitCount;
+
+    private CpdTokenCache(IProject project, Language language, boolean persistent) {
+        this.project = project;
+        this.language = language;
+        this.fingerprint = PMDPlugin.version + '\n' + language.getTerseName();
+        this.persistent = persistent;
+    }
+
+    /**
+     * Gets the token cache of a project, that is shared by all CPD runs of the project. A cache, that is
+     * not persistent, is not shared.
+     *
+     * @param project the project
+     * @param language the language of the files
+     * @param persistent whether the cache is loaded from and stored in the working location of
+     *     the project. Otherwise all the files are tokenized again.
+     */
+    public static CpdTokenCache forProject(IProject project, Language language, boolean persistent) {
+        if (!persistent) {
+            return load(project, language, false);
+        }
+        synchronized (SHARED_CACHES) {
+            Iterator<WeakReference<CpdTokenCache>> references = SHARED_CACHES.values().iterator();
+            while (references.hasNext()) {
+                if (references.next().get() == null) {
+                    references.remove();
+                }
+            }
+            WeakReference<CpdTokenCache> reference = SHARED_CACHES.get(project);
+            CpdTokenCache cache = reference == null ? null : reference.get();
+            if (cache == null || !cache.language.getTerseName().equals(language.getTerseName())) {
+                cache = load(project, language, true);
+                SHARED_CACHES.put(project, new WeakReference<>(cache));
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Loads a new token cache of a project, that is not shared.
+     *
+     * @param project the project
+     * @param language the language of the files
+     * @param persistent whether the cache is loaded from and stored in the working location of
+     *     the project. Otherwise all the files are tokenized again.
+     */
+    public static CpdTokenCache load(IProject project, Language language, boolean persistent) {
+        CpdTokenCache cache = new CpdTokenCache(project, language, persistent);
+        if (persistent) {
+            cache.load();
+        }
+        return cache;
+    }
+
+    /**
+     * @return the number of cached files
+     */
+    public synchronized int size() {
+        return entriesByPath.size();
+    }
+
+    /**
+     * @return the number of files, whose tokens have been taken from the cache instead of tokenizing them
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Tokenizes the files, whose tokens are missing or outdated. Entries of other files are dropped.
+     *
+     * @param files the files, that are checked by CPD
+     * @param threads the number of threads, 0 tokenizes the files in the calling thread
+     * @param monitor the progress monitor, one unit of work per file. May be <code>null</code>.
+     * @return <code>false</code>, if the tokenization has been canceled
+     */
+    public synchronized boolean update(List<IFile> files, int threads, IProgressMonitor monitor) {
+        Set<String> paths = new HashSet<>();
+        for (IFile file : files) {
+            paths.add(keyOf(file));
+        }
+        if (entriesByPath.keySet().retainAll(paths)) {
+            dirty = true;
+        }
+        // the locations of all the given files are added again
+        entriesByLocation.clear();
+        return refresh(files, threads, monitor);
+    }
+
+    /**
+     * Tokenizes the given files, whose tokens are missing or outdated. Unlike
+     * {@link #update(List, int, IProgressMonitor)}, the entries of other files are kept.
+     *
+     * @param files the files to check
+     * @param threads the number of threads, 0 tokenizes the files in the calling thread
+     * @param monitor the progress monitor, one unit of work per file. May be <code>null</code>.
+     * @return <code>false</code>, if the tokenization has been canceled
+     */
+    public synchronized boolean refresh(Collection<IFile> files, int threads, IProgressMonitor monitor) {
+        List<IFile> outdated = new ArrayList<>();
+        for (IFile file : files) {
+            Entry entry = entriesByPath.get(keyOf(file));
+            if (entry == null || entry.modificationStamp != file.getModificationStamp()) {
+                outdated.add(file);
+            } else {
+                entriesByLocation.put(locationOf(file), entry);
+                hitCount++;
+            }
+        }
+        worked(monitor, files.size() - outdated.size());
+        LOG.debug("CPD tokens of {} files are cached, {} files need to be tokenized",
+                files.size() - outdated.size(), outdated.size());
+
+        List<List<IFile>> tasks = new ArrayList<>();
+        for (int start = 0; start < outdated.size(); start += FILES_PER_TASK) {
+            tasks.add(outdated.subList(start, Math.min(outdated.size(), start + FILES_PER_TASK)));
+        }
+        if (threads <= 0) {
+            for (List<IFile> task : tasks) {
+                if (isCanceled(monitor)) {
+                    return false;
+                }
+                putAll(tokenize(task, monitor));
+                worked(monitor, task.size());
+            }
+            return !isCanceled(monitor);
+        }
+        return tokenizeInParallel(tasks, threads, monitor);
+    }
+
+    /**
+     * Drops the entry of a file, e.g. because the file has been deleted.
+     */
+    public synchronized void remove(IFile file) {
+        Entry entry = entriesByPath.remove(keyOf(file));
+        if (entry != null) {
+            entriesByLocation.values().remove(entry);
+            dirty = true;
+        }
+    }
+
+    private boolean tokenizeInParallel(List<List<IFile>> tasks, int threads, final IProgressMonitor monitor) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Map<IFile, Entry>>> results = new ArrayList<>();
+            for (final List<IFile> task : tasks) {
+                results.add(executor.submit(new Callable<Map<IFile, Entry>>() {
+                    @Override
+                    public Map<IFile, Entry> call() {
+                        return tokenize(task, monitor);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                if (isCanceled(monitor)) {
+                    return false;
+                }
+                putAll(results.get(i).get());
+                worked(monitor, tasks.get(i).size());
+            }
+            return !isCanceled(monitor);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Error while tokenizing the files for CPD", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void putAll(Map<IFile, Entry> entries) {
+        for (Map.Entry<IFile, Entry> entry : entries.entrySet()) {
+            entriesByPath.put(keyOf(entry.getKey()), entry.getValue());
+            entriesByLocation.put(locationOf(entry.getKey()), entry.getValue());
+        }
+        dirty |= !entries.isEmpty();
+    }
+
+    /**
+     * Tokenizes the given files with a language instance of its own. The token images are cleared
+     * before each file, so that the images of the token identifiers can be looked up quickly.
+     */
+    private Map<IFile, Entry> tokenize(List<IFile> files, IProgressMonitor monitor) {
+        Tokenizer tokenizer = LanguageFactory.createLanguage(language.getTerseName()).getTokenizer();
+        Map<IFile, Entry> entries = new HashMap<>();
+        for (IFile file : files) {
+            if (isCanceled(monitor)) {
+                break;
+            }
+            long modificationStamp = file.getModificationStamp();
+            TokenEntry.clearImages();
+            Tokens tokens = new Tokens();
+            try {
+                SourceCode source = new SourceCode(new SourceCode.FileCodeLoader(new File(locationOf(file)),
+                        file.getCharset()));
+                tokenizer.tokenize(source, tokens);
+                entries.put(file, new Entry(modificationStamp, encode(tokens.getTokens())));
+            } catch (CoreException | IOException | RuntimeException e) {
+                // like CPD with skipped lexical errors, the file is not checked
+                LOG.warn("Skipping {} for CPD: {}", file.getFullPath(), e.toString());
+            }
+        }
+        TokenEntry.clearImages();
+        return entries;
+    }
+
+    /**
+     * Encodes the tokens of a file: the distinct images, followed by the tokens with the index of the
+     * image, the line delta and the columns. The EOF token is not encoded.
+     */
+    private static byte[] encode(List<TokenEntry> tokens) throws IOException {
+        Map<Integer, Integer> imageIndexes = new HashMap<>();
+        List<String> images = new ArrayList<>();
+        int[] indexes = new int[tokens.size()];
+        int count = 0;
+        for (TokenEntry token : tokens) {
+            if (token == TokenEntry.EOF) {
+                continue;
+            }
+            Integer index = imageIndexes.get(token.getIdentifier());
+            if (index == null) {
+                index = images.size();
+                imageIndexes.put(token.getIdentifier(), index);
+                // the images are cleared per file, so this looks only through the images of this file
+                images.add(token.toString());
+            }
+            indexes[count++] = index;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(count * 6 + 1024);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeVarInt(out, images.size());
+            for (String image : images) {
+                // unlike writeUTF, the length of the image is not limited to 64 KB
+                byte[] utf8 = image.getBytes(StandardCharsets.UTF_8);
+                writeVarInt(out, utf8.length);
+                out.write(utf8);
+            }
+            writeVarInt(out, count);
+            int line = 0;
+            int i = 0;
+            for (TokenEntry token : tokens) {
+                if (token == TokenEntry.EOF) {
+                    continue;
+                }
+                writeVarInt(out, indexes[i++]);
+                writeVarInt(out, zigZag(token.getBeginLine() - line));
+                writeVarInt(out, token.getBeginColumn());
+                writeVarInt(out, token.getEndColumn());
+                line = token.getBeginLine();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static CachedTokens decode(byte[] encoded) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        String[] images = new String[readVarInt(in)];
+        for (int i = 0; i < images.length; i++) {
+            byte[] utf8 = new byte[readVarInt(in)];
+            in.readFully(utf8);
+            images[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        CachedTokens tokens = new CachedTokens(readVarInt(in));
+        int line = 0;
+        for (int i = 0; i < tokens.images.length; i++) {
+            tokens.images[i] = images[readVarInt(in)];
+            line += unZigZag(readVarInt(in));
+            tokens.lines[i] = line;
+            tokens.beginColumns[i] = readVarInt(in);
+            tokens.endColumns[i] = readVarInt(in);
+        }
+        return tokens;
+    }
+
+    private static void replay(byte[] encoded, String fileName, Tokens tokens) throws IOException {
+        CachedTokens decoded = decode(encoded);
+        for (int i = 0; i < decoded.images.length; i++) {
+            tokens.add(new TokenEntry(decoded.images[i], fileName, decoded.lines[i], decoded.beginColumns[i],
+                    decoded.endColumns[i]));
+        }
+        tokens.add(TokenEntry.getEOF());
+    }
+
+    /**
+     * Gets the cached tokens of a file, without creating any token entries.
+     *
+     * @return the tokens or <code>null</code>, if the file is not cached
+     */
+    public synchronized CachedTokens tokensOf(IFile file) {
+        Entry entry = entriesByPath.get(keyOf(file));
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return decode(entry.tokens);
+        } catch (IOException e) {
+            LOG.warn("Ignoring corrupt CPD tokens of {}: {}", file.getFullPath(), e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the tokens of the file are available, i.e. the file could be tokenized
+     */
+    public synchronized boolean contains(IFile file) {
+        return entriesByLocation.containsKey(locationOf(file));
+    }
+
+    /**
+     * Creates a language, whose tokenizer replays the cached tokens. Files, that are not cached,
+     * are tokenized by the original tokenizer. When the monitor is canceled, the tokenizer throws
+     * an {@link OperationCanceledException}, so that CPD stops adding files.
+     *
+     * @param monitor the monitor of the CPD run, might be <code>null</code>
+     */
+    public Language replayingLanguage(final IProgressMonitor monitor) {
+        final Tokenizer tokenizer = language.getTokenizer();
+        Tokenizer replayingTokenizer = new Tokenizer() {
+            @Override
+            public void tokenize(SourceCode sourceCode, Tokens tokenEntries) throws IOException {
+                if (isCanceled(monitor)) {
+                    throw new OperationCanceledException();
+                }
+                Entry entry;
+                synchronized (CpdTokenCache.this) {
+                    entry = entriesByLocation.get(sourceCode.getFileName());
+                }
+                if (entry == null) {
+                    tokenizer.tokenize(sourceCode, tokenEntries);
+                } else {
+                    replay(entry.tokens, sourceCode.getFileName(), tokenEntries);
+                }
+            }
+        };
+        List<String> extensions = language.getExtensions();
+        return new AbstractLanguage(language.getName(), language.getTerseName(), replayingTokenizer,
+                extensions.toArray(new String[0])) {
+        };
+    }
+
+    /**
+     * Writes the cache into the working location of the project, if it has been modified.
+     */
+    public synchronized void persist() {
+        if (!persistent || !dirty || !project.isAccessible()) {
+            return;
+        }
+
+        File cacheFile = cacheFile();
+        if (cacheFile == null) {
+            return;
+        }
+        // a temp file of its own, so that a concurrent write never garbles the cache file
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(cacheFile.getParentFile().toPath(), CACHE_FILE_NAME, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                write(out);
+            }
+            Files.move(tempFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            LOG.debug("Persisted CPD tokens of {} files of project {}", entriesByPath.size(), project.getName());
+        } catch (IOException e) {
+            LOG.warn("Error while writing CPD token cache {}", cacheFile, e);
+            deleteQuietly(tempFile);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.debug("Could not delete {}: {}", file, e.toString());
+        }
+    }
+
+    private File cacheFile() {
+        IPath location = project.getWorkingLocation(PMDPlugin.PLUGIN_ID);
+        return location != null ? location.append(CACHE_FILE_NAME).toFile() : null;
+    }
+
+    private static String keyOf(IFile file) {
+        return file.getProjectRelativePath().toPortableString();
+    }
+
+    /**
+     * The file name of the source code, that CPD creates for the file.
+     */
+    private static String locationOf(IFile file) {
+        return file.getLocation().toFile().getAbsolutePath();
+    }
+
+    private void load() {
+        File cacheFile = cacheFile();
+        if (cacheFile == null || !cacheFile.isFile()) {
+            return;
+        }
+
+        try (InputStream stream = Files.newInputStream(cacheFile.toPath());
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            read(in);
+            LOG.debug("Loaded CPD tokens of {} files of project {}", entriesByPath.size(), project.getName());
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable CPD token cache {}: {}", cacheFile, e.toString());
+            entriesByPath.clear();
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(fingerprint);
+        out.writeInt(entriesByPath.size());
+        for (Map.Entry<String, Entry> entry : entriesByPath.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().modificationStamp);
+            out.writeInt(entry.getValue().tokens.length);
+            out.write(entry.getValue().tokens);
+        }
+    }
+
+    private void read(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported cache format");
+        }
+        if (!fingerprint.equals(in.readUTF())) {
+            LOG.debug("CPD configuration of project {} changed - ignoring the cached tokens", project.getName());
+            return;
+        }
+        int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+            String path = in.readUTF();
+            long modificationStamp = in.readLong();
+            byte[] tokens = new byte[in.readInt()];
+            in.readFully(tokens);
+            entriesByPath.put(path, new Entry(modificationStamp, tokens));
+        }
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            out.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        out.writeByte(remaining);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static boolean isCanceled(IProgressMonitor monitor) {
+        return monitor != null && monitor.isCanceled();
+    }
+
+    private static void worked(IProgressMonitor monitor, int work) {
+        if (monitor != null && work > 0) {
+            monitor.worked(work);
+        }
+    }
+
+    /**
+     * The decoded tokens of a file. The EOF token is not included.
+     */
+    public static final class CachedTokens {
+        private final String[] images;
+        private final int[] lines;
+        private final int[] beginColumns;
+        private final int[] endColumns;
+
+        CachedTokens(int size) {
+            images = new String[size];
+            lines = new int[size];
+            beginColumns = new int[size];
+            endColumns = new int[size];
+        }
+
+        /**
+         * @return the images of the tokens. Equal images share the same string instance.
+         */
+        public String[] getImages() {
+            return images;
+        }
+
+        /**
+         * @return the begin lines of the tokens
+         */
+        public int[] getLines() {
+            return lines;
+        }
+    }
+
+    private static final class Entry {
+        private final long modificationStamp;
+        private final byte[] tokens;
+
+        Entry(long modificationStamp, byte[] tokens) {
+            this.modificationStamp = modificationStamp;
+            this.tokens = tokens;
+        }
+    }
+}
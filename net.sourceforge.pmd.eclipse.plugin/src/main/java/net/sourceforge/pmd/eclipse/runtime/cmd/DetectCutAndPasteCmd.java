@@ -19,7 +19,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IPropertyListener;
 import org.slf4j.Logger;
@@ -27,12 +29,14 @@ import org.slf4j.LoggerFactory;
 
 import net.sourceforge.pmd.cpd.CPD;
 import net.sourceforge.pmd.cpd.CPDConfiguration;
+import net.sourceforge.pmd.cpd.CPDNullListener;
 import net.sourceforge.pmd.cpd.Language;
 import net.sourceforge.pmd.cpd.LanguageFactory;
 import net.sourceforge.pmd.cpd.Match;
 import net.sourceforge.pmd.cpd.renderer.CPDRenderer;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
 
@@ -53,6 +57,11 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
 
     private static final Logger LOG = LoggerFactory.getLogger(DetectCutAndPasteCmd.class);
 
+    /**
+     * How often the cancellation is checked, while the matches are searched.
+     */
+    private static final long MATCHING_POLL_MILLIS = 200;
+
     /**
      * Default Constructor
      */
@@ -62,6 +71,7 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
         setOutputProperties(true);
         setReadOnly(false);
         setTerminated(false);
+        setKind(CommandKind.BACKGROUND);
         listeners = new ArrayList<>();
     }
 
@@ -80,7 +90,7 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
     @Override
     public void execute() {
         try {
-            List<File> files = findCandidateFiles();
+            List<IFile> files = findCandidateFiles();
 
             if (files.isEmpty()) {
                 logInfo("No files found for specified language.");
@@ -93,7 +103,7 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
             if (!isCanceled()) {
                 final CPD cpd = detectCutAndPaste(files);
 
-                if (!isCanceled()) {
+                if (cpd != null && !isCanceled()) {
                     if (createReport) {
                         renderReport(cpd.getMatches());
                     }
@@ -202,7 +212,7 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
      * @throws PropertiesException
      * @throws CoreException
      */
-    private List<File> findCandidateFiles() throws PropertiesException, CoreException {
+    private List<IFile> findCandidateFiles() throws PropertiesException, CoreException {
 
         final IProjectProperties properties = projectProperties();
         final CPDVisitor visitor = new CPDVisitor();
@@ -211,53 +221,127 @@ public class DetectCutAndPasteCmd extends AbstractProjectCommand {
         visitor.setLanguage(language);
         visitor.setFiles(new ArrayList<File>());
         visitProjectResourcesWith(visitor);
-        return visitor.getFiles();
+        return visitor.getResources();
     }
 
     /**
-     * Run the cut and paste detector. At first all files have to be added to
-     * the cpd. Then the CPD can be executed.
+     * Run the cut and paste detector. At first the files, whose tokens are not cached, are
+     * tokenized in parallel. Then all files are added to the cpd, which replays the cached tokens,
+     * and the CPD is executed.
      * 
      * @param files
      *            List of files to be checked.
-     * @return the CPD itself for retrieving the matches.
-     * @throws CoreException
+     * @return the CPD itself for retrieving the matches or <code>null</code>, if the command
+     *         has been canceled
      */
-    private CPD detectCutAndPaste(final List<File> files) {
+    private CPD detectCutAndPaste(final List<IFile> files) {
         LOG.debug("Searching for project files");
 
-        final CPD cpd = newCPD();
+        final IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
+        final CpdTokenCache tokenCache = CpdTokenCache.forProject(project(), language,
+                preferences.isAnalysisCacheEnabled());
 
         subTask("Collecting files for CPD");
-        final Iterator<File> fileIterator = files.iterator();
-        while (fileIterator.hasNext() && !isCanceled()) {
-            final File file = fileIterator.next();
-            try {
-                cpd.add(file);
-                worked(1);
-            } catch (IOException e) {
-                LOG.warn("IOException when adding file " + file.getName() + " to CPD. Continuing.", e);
+        if (!tokenCache.update(files, preferences.getAnalysisThreads(), getMonitor())) {
+            return null;
+        }
+        tokenCache.persist();
+
+        final CPD cpd = newCPD(tokenCache.replayingLanguage(getMonitor()));
+        final List<File> cachedFiles = new ArrayList<>(files.size());
+        for (IFile file : files) {
+            if (tokenCache.contains(file)) {
+                cachedFiles.add(file.getLocation().toFile());
             }
         }
 
-        if (!isCanceled()) {
-            subTask("Performing CPD");
-            LOG.debug("Performing CPD");
-            cpd.go();
-            worked(getStepCount());
+        subTask("Performing CPD");
+        LOG.debug("Performing CPD");
+        if (!findMatches(cpd, cachedFiles)) {
+            return null;
         }
+        worked(getStepCount());
 
         return cpd;
     }
 
-    private CPD newCPD() {
+    /**
+     * Adds the files to the CPD and runs its match algorithm in a separate thread, so that the command returns
+     * as soon as it is canceled. The replay of the tokens stops with the next file, the algorithm itself is
+     * stopped at the beginning of its next phase. The token images are kept per thread, so they are released
+     * with the thread.
+     *
+     * @return <code>false</code>, if the command has been canceled
+     */
+    private boolean findMatches(final CPD cpd, final List<File> files) {
+        final RuntimeException[] failure = new RuntimeException[1];
+        cpd.setCpdListener(new CPDNullListener() {
+            @Override
+            public void phaseUpdate(int phase) {
+                if (isCanceled()) {
+                    throw new OperationCanceledException();
+                }
+            }
+        });
+        Thread matcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (File file : files) {
+                        try {
+                            cpd.add(file);
+                        } catch (IOException e) {
+                            LOG.warn("IOException when adding file " + file.getName() + " to CPD. Continuing.", e);
+                        }
+                    }
+                    cpd.go();
+                } catch (OperationCanceledException e) {
+                    LOG.debug("CPD has been canceled");
+                } catch (RuntimeException e) {
+                    failure[0] = e;
+                }
+            }
+        }, "PMD CPD matching");
+        matcher.setDaemon(true);
+        matcher.start();
+
+        try {
+            while (matcher.isAlive()) {
+                if (isCanceled()) {
+                    return false;
+                }
+                matcher.join(MATCHING_POLL_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return !isCanceled();
+    }
+
+    private CPD newCPD(Language cpdLanguage) {
         CPDConfiguration config = new CPDConfiguration();
         config.setMinimumTileSize(minTileSize);
-        config.setLanguage(language);
-        config.setEncoding(System.getProperty("file.encoding"));
+        config.setLanguage(cpdLanguage);
+        config.setEncoding(projectCharset());
         return new CPD(config);
     }
 
+    /**
+     * The encoding, the source code of the matches is read with.
+     */
+    private String projectCharset() {
+        try {
+            return project().getDefaultCharset();
+        } catch (CoreException e) {
+            LOG.debug("Could not determine the charset of project {}: {}", project().getName(), e.toString());
+            return ResourcesPlugin.getEncoding();
+        }
+    }
+
     /**
      * Renders a report using the matches of the CPD. Creates a report folder
      * and report file.
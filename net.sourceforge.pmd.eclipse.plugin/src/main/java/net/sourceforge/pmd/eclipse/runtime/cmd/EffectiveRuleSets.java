@@ -0,0 +1,229 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.eclipse.ui.actions.internal.InternalRuleSetUtil;
+import net.sourceforge.pmd.lang.Language;
+
+/**
+ * The rulesets, that are effectively used to check a project: the project rulesets
+ * filtered by the active rules of the global rule management and extended by the
+ * inclusion and exclusion patterns. Also provides the file extensions of the languages
+ * of these rules.
+ *
+ * <p>The effective rulesets are cached per project and are only computed again, if
+ * the project rulesets, the active rules or any of the patterns change.
+ */
+public final class EffectiveRuleSets {
+    private static final Logger LOG = LoggerFactory.getLogger(EffectiveRuleSets.class);
+
+    private static final Map<IProject, EffectiveRuleSets> CACHE = new HashMap<>();
+
+    private final Version version;
+    private final List<RuleSet> ruleSets;
+    private final Set<String> fileExtensions;
+    private final int activeRuleCount;
+    private final int totalRuleCount;
+
+    private EffectiveRuleSets(Version version, List<RuleSet> ruleSets, int totalRuleCount) {
+        this.version = version;
+        this.ruleSets = Collections.unmodifiableList(ruleSets);
+        this.fileExtensions = Collections.unmodifiableSet(determineFileExtensions(ruleSets));
+        this.activeRuleCount = InternalRuleSetUtil.countRules(ruleSets);
+        this.totalRuleCount = totalRuleCount;
+    }
+
+    /**
+     * Gets the effective rulesets of a project, either from the cache or by filtering
+     * the project rulesets.
+     *
+     * @param project the project
+     * @param properties the properties of the project
+     * @return the effective rulesets
+     * @throws PropertiesException if the project rulesets can't be loaded
+     */
+    public static EffectiveRuleSets forProject(IProject project, IProjectProperties properties)
+            throws PropertiesException {
+        IPreferences preferences = PMDPlugin.getDefault().getPreferencesManager().loadPreferences();
+        Version version = new Version(properties, preferences);
+
+        synchronized (CACHE) {
+            EffectiveRuleSets cached = CACHE.get(project);
+            if (cached != null && cached.version.equals(version)) {
+                return cached;
+            }
+        }
+
+        List<RuleSet> filteredRuleSets = filteredRuleSets(version.projectRuleSets, properties, preferences);
+        EffectiveRuleSets effectiveRuleSets = new EffectiveRuleSets(version, filteredRuleSets,
+                InternalRuleSetUtil.countRules(version.projectRuleSets));
+        synchronized (CACHE) {
+            CACHE.put(project, effectiveRuleSets);
+        }
+        return effectiveRuleSets;
+    }
+
+    /**
+     * Removes the cached rulesets of a project, e.g. when the project is deleted.
+     */
+    public static void remove(IProject project) {
+        synchronized (CACHE) {
+            CACHE.remove(project);
+        }
+    }
+
+    public List<RuleSet> getRuleSets() {
+        return ruleSets;
+    }
+
+    public Set<String> getFileExtensions() {
+        return fileExtensions;
+    }
+
+    public int getActiveRuleCount() {
+        return activeRuleCount;
+    }
+
+    public int getTotalRuleCount() {
+        return totalRuleCount;
+    }
+
+    private static List<RuleSet> filteredRuleSets(List<RuleSet> projectRuleSets, IProjectProperties properties,
+            IPreferences preferences) {
+        Set<String> onlyActiveRuleNames = preferences.getActiveRuleNames();
+
+        List<RuleSet> filteredRuleSets = new ArrayList<>();
+
+        for (RuleSet ruleSet : projectRuleSets) {
+            int rulesBefore = ruleSet.size();
+            RuleSet filteredRuleSet = RuleSetUtil.newCopyOf(ruleSet);
+            if (preferences.getGlobalRuleManagement()) {
+                // TODO: active rules are not language aware... filter by rule name...
+                List<Rule> rulesToKeep = new ArrayList<>();
+                for (Rule rule : filteredRuleSet.getRules()) {
+                    if (onlyActiveRuleNames.contains(rule.getName())) {
+                        rulesToKeep.add(rule);
+                    }
+                }
+                filteredRuleSet = RuleSetUtil.retainOnly(filteredRuleSet, rulesToKeep);
+                int rulesAfter = filteredRuleSet.size();
+
+                if (rulesAfter < rulesBefore) {
+                    LOG.warn("Ruleset has been filtered as Global Rule Management is active. "
+                            + "{} of {} rules are active and are used. {} rules will be ignored.",
+                            rulesAfter, rulesBefore, rulesBefore - rulesAfter);
+                }
+            }
+            filteredRuleSet = InternalRuleSetUtil.addExcludePatterns(filteredRuleSet,
+                    InternalRuleSetUtil.convertStringPatterns(preferences.activeExclusionPatterns()),
+                    InternalRuleSetUtil.convertStringPatterns(properties.getBuildPathExcludePatterns()));
+            filteredRuleSet = InternalRuleSetUtil.addIncludePatterns(filteredRuleSet,
+                    InternalRuleSetUtil.convertStringPatterns(preferences.activeInclusionPatterns()),
+                    InternalRuleSetUtil.convertStringPatterns(properties.getBuildPathIncludePatterns()));
+            filteredRuleSets.add(filteredRuleSet);
+        }
+
+        return filteredRuleSets;
+    }
+
+    private static Set<String> determineFileExtensions(List<RuleSet> ruleSets) {
+        Set<Language> languages = new HashSet<>();
+        for (RuleSet ruleset : ruleSets) {
+            for (Rule rule : ruleset.getRules()) {
+                languages.add(rule.getLanguage());
+            }
+        }
+        Set<String> fileExtensions = new HashSet<>();
+        for (Language language : languages) {
+            for (String extension : language.getExtensions()) {
+                fileExtensions.add(extension.toLowerCase(Locale.ROOT));
+            }
+        }
+        LOG.debug("Determined applicable file extensions: {}", fileExtensions);
+        return fileExtensions;
+    }
+
+    /**
+     * Everything the effective rulesets depend on. The project rulesets are compared by
+     * identity, as the project properties replace them, whenever they are changed.
+     * The patterns are copied, as the sets might be modified in place.
+     */
+    private static final class Version {
+        private final List<RuleSet> projectRuleSets;
+        private final boolean globalRuleManagement;
+        private final Set<String> activeRuleNames;
+        private final Set<String> activeExclusionPatterns;
+        private final Set<String> activeInclusionPatterns;
+        private final Set<String> buildPathExcludePatterns;
+        private final Set<String> buildPathIncludePatterns;
+
+        Version(IProjectProperties properties, IPreferences preferences) throws PropertiesException {
+            projectRuleSets = new ArrayList<>(properties.getProjectRuleSetList());
+            globalRuleManagement = preferences.getGlobalRuleManagement();
+            activeRuleNames = globalRuleManagement ? new HashSet<>(preferences.getActiveRuleNames())
+                    : Collections.<String>emptySet();
+            activeExclusionPatterns = new HashSet<>(preferences.activeExclusionPatterns());
+            activeInclusionPatterns = new HashSet<>(preferences.activeInclusionPatterns());
+            buildPathExcludePatterns = new HashSet<>(properties.getBuildPathExcludePatterns());
+            buildPathIncludePatterns = new HashSet<>(properties.getBuildPathIncludePatterns());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Version)) {
+                return false;
+            }
+            Version other = (Version) obj;
+            return sameRuleSets(projectRuleSets, other.projectRuleSets)
+                    && globalRuleManagement == other.globalRuleManagement
+                    && activeRuleNames.equals(other.activeRuleNames)
+                    && activeExclusionPatterns.equals(other.activeExclusionPatterns)
+                    && activeInclusionPatterns.equals(other.activeInclusionPatterns)
+                    && buildPathExcludePatterns.equals(other.buildPathExcludePatterns)
+                    && buildPathIncludePatterns.equals(other.buildPathIncludePatterns);
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = projectRuleSets.size();
+            for (RuleSet ruleSet : projectRuleSets) {
+                hash = 31 * hash + System.identityHashCode(ruleSet);
+            }
+            return 31 * hash + activeRuleNames.hashCode();
+        }
+
+        private static boolean sameRuleSets(List<RuleSet> ruleSets, List<RuleSet> otherRuleSets) {
+            if (ruleSets.size() != otherRuleSets.size()) {
+                return false;
+            }
+            for (int i = 0; i < ruleSets.size(); i++) {
+                if (ruleSets.get(i) != otherRuleSets.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules the analysis of the files of incremental builds. The files of a
+ * resource delta are prioritized: files, that are open in an editor, and
+ * recently saved files are analyzed right away. If the delta is too large, the
+ * remaining files are analyzed in time-boxed slices by a low priority
+ * background job.
+ *
+ * <p>Each file has a generation, which is incremented whenever a newer delta
+ * contains the file. Queued files and markers of a running slice, that have
+ * been superseded this way, are dropped. The generation of a file is forgotten,
+ * when its analysis is done, see {@link #reviewed(Collection)}.
+ *
+ * <p>In the asynchronous builder mode, the builder queues all the changed
+ * files with {@link #enqueue(List)}, so that the build itself doesn't wait for PMD.
+ * Without auto build, the FileChangeReviewer queues the changed files the same way,
+ * so that the resource change notification isn't blocked.
+ */
+public final class IncrementalReviewScheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalReviewScheduler.class);
+
+    /**
+     * At least so many files of a delta are always analyzed right away.
+     */
+    private static final int MINIMUM_IMMEDIATE_FILES = 5;
+
+    /**
+     * The time budget for the files of a delta, that are analyzed right away.
+     */
+    private static final long IMMEDIATE_BUDGET_MILLIS = 2000;
+
+    /**
+     * The time budget for one slice of the background job.
+     */
+    private static final long SLICE_BUDGET_MILLIS = 5000;
+
+    /**
+     * The job family of the background review jobs.
+     */
+    public static final Object FAMILY = new Object();
+
+    private static final IncrementalReviewScheduler INSTANCE = new IncrementalReviewScheduler();
+
+    private final ReviewQueue<IFile> queue = new ReviewQueue<IFile>() {
+        @Override
+        protected boolean exists(IFile file) {
+            return file.exists();
+        }
+    };
+    private final Job drainJob = new DrainJob();
+    private boolean disposed;
+
+    /**
+     * Moving average of the analysis duration per file, used to size the
+     * immediate part of a delta and the background slices.
+     */
+    private double averageMillisPerFile = 100;
+
+    private IncrementalReviewScheduler() {
+        // singleton
+    }
+
+    public static IncrementalReviewScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Marks the given files as changed by a newer delta. Queued analyses of
+     * these files are dropped, and a running slice, that contains any of
+     * these files, is canceled.
+     */
+    public synchronized void supersede(Collection<IFile> files) {
+        if (queue.supersede(files)) {
+            LOG.debug("Canceling background review slice, a newer delta supersedes its files");
+            drainJob.cancel();
+        }
+    }
+
+    /**
+     * Splits the files of a delta into the files, that should be analyzed
+     * right away, and the files, that are queued for the background job. Open
+     * files come first, then the files are ordered by their modification time.
+     *
+     * @param files the files of the delta, which must already be superseded
+     * @return the files to analyze right away
+     */
+    public synchronized List<IFile> schedule(List<IFile> files) {
+        List<IFile> prioritized = new ArrayList<>(files);
+        Collections.sort(prioritized, new PriorityComparator(openFilesAmong(files)));
+
+        int immediateCount = Math.max(MINIMUM_IMMEDIATE_FILES, filesWithinBudget(IMMEDIATE_BUDGET_MILLIS));
+        if (prioritized.size() <= immediateCount || disposed) {
+            return prioritized;
+        }
+
+        List<IFile> immediate = new ArrayList<>(prioritized.subList(0, immediateCount));
+        queue.append(prioritized.subList(immediateCount, prioritized.size()));
+        LOG.debug("Analyzing {} files right away, {} files are queued for the background review",
+                immediate.size(), getQueueDepth());
+        drainJob.schedule();
+        return immediate;
+    }
+
+    /**
+     * Queues all the given files for the background review. The files are
+     * prioritized like in {@link #schedule(List)} and are analyzed before the
+     * files, that are already waiting.
+     *
+     * @param files the changed files, which must already be superseded
+     */
+    public synchronized void enqueue(List<IFile> files) {
+        if (files.isEmpty() || disposed) {
+            return;
+        }
+
+        List<IFile> prioritized = new ArrayList<>(files);
+        Collections.sort(prioritized, new PriorityComparator(openFilesAmong(files)));
+        queue.prepend(prioritized);
+
+        LOG.debug("Queued {} files for the background review, queue depth is {}", files.size(), getQueueDepth());
+        drainJob.schedule();
+    }
+
+    /**
+     * Updates the estimated analysis duration per file.
+     */
+    public synchronized void recordDuration(int fileCount, long millis) {
+        if (fileCount > 0) {
+            averageMillisPerFile = 0.7 * averageMillisPerFile + 0.3 * ((double) millis / fileCount);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the file has not been changed by a newer
+     *     delta since the given generation has been recorded
+     */
+    public synchronized boolean isCurrent(IFile file, Integer generation) {
+        return queue.isCurrent(file, generation);
+    }
+
+    /**
+     * Forgets the generations of the given files after their analysis right away,
+     * unless they have been queued for the background review in the meantime.
+     */
+    public synchronized void reviewed(Collection<IFile> files) {
+        queue.reviewed(files);
+    }
+
+    /**
+     * @return the number of files, that are waiting for or are currently in the background review
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of files, whose generation is currently recorded
+     */
+    public synchronized int getGenerationCount() {
+        return queue.getGenerationCount();
+    }
+
+    /**
+     * Cancels the background review and forgets all queued files.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        queue.clear();
+        drainJob.cancel();
+    }
+
+    private int filesWithinBudget(long budgetMillis) {
+        return (int) Math.max(1, budgetMillis / Math.max(1.0, averageMillisPerFile));
+    }
+
+    private synchronized Map<IFile, Integer> startSlice() {
+        return queue.startSlice(filesWithinBudget(SLICE_BUDGET_MILLIS));
+    }
+
+    private synchronized void finishSlice(Map<IFile, Integer> slice, boolean canceled) {
+        // the files of a canceled slice, that have not been superseded, are requeued
+        queue.finishSlice(slice, canceled);
+        if (queue.hasPendingFiles() && !disposed) {
+            drainJob.schedule();
+        }
+    }
+
+    private static Collection<IFile> openFilesAmong(List<IFile> files) {
+        Collection<IFile> openFiles = new HashSet<>();
+        for (IFile file : files) {
+            if (FileBuffers.getTextFileBufferManager().getTextFileBuffer(file.getFullPath(),
+                    LocationKind.IFILE) != null) {
+                openFiles.add(file);
+            }
+        }
+        return openFiles;
+    }
+
+    /**
+     * Orders open files first, then the most recently modified files.
+     */
+    private static class PriorityComparator implements Comparator<IFile> {
+        private final Collection<IFile> openFiles;
+
+        PriorityComparator(Collection<IFile> openFiles) {
+            this.openFiles = openFiles;
+        }
+
+        @Override
+        public int compare(IFile file1, IFile file2) {
+            boolean open1 = openFiles.contains(file1);
+            boolean open2 = openFiles.contains(file2);
+            if (open1 != open2) {
+                return open1 ? -1 : 1;
+            }
+            return Long.compare(file2.getLocalTimeStamp(), file1.getLocalTimeStamp());
+        }
+    }
+
+    /**
+     * Analyzes the queued files, one slice per run.
+     */
+    private class DrainJob extends Job {
+        DrainJob() {
+            super("PMD background review");
+            setPriority(Job.DECORATE);
+            setSystem(true);
+        }
+
+        @Override
+        public boolean belongsTo(Object family) {
+            return family == FAMILY;
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            Map<IFile, Integer> slice = startSlice();
+            if (slice.isEmpty()) {
+                finishSlice(slice, false);
+                return Status.OK_STATUS;
+            }
+
+            LOG.debug("Background review of {} files, queue depth is {}", slice.size(), getQueueDepth());
+            ReviewCodeCmd cmd = new ReviewCodeCmd();
+            for (IFile file : slice.keySet()) {
+                cmd.addResource(file);
+            }
+            cmd.setGenerations(slice);
+            cmd.setMonitor(monitor);
+            long start = System.currentTimeMillis();
+            try {
+                cmd.execute();
+            } catch (RuntimeException e) {
+                LOG.error("Error during background review: {}", e.toString(), e);
+            }
+            if (!monitor.isCanceled()) {
+                recordDuration(slice.size(), System.currentTimeMillis() - start);
+            }
+
+            finishSlice(slice, monitor.isCanceled());
+            return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+        }
+    }
+}
@@ -4,12 +4,21 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -27,18 +36,48 @@ import net.sourceforge.pmd.eclipse.core.internal.FileModificationUtil;
 
 /**
  * This is a ClassLoader for the Build Path of an IJavaProject.
+ *
+ * <p>The class loader itself only contains the output folders of the project and its
+ * dependent projects. The libraries are loaded by a parent class loader, which is shared
+ * with other projects, that use the same libraries. See {@link AuxClasspathPool}.
+ * The classes of the output folders are loaded first, so that a class of the project
+ * shadows a class of a library with the same name, like when the output folders and
+ * the libraries were on one classpath.
+ *
+ * <p>The class files read by the type resolution are cached in the {@link TypeResolutionCache}
+ * with their modification timestamp, so that only modified classes are read again. The class
+ * loader remembers the classes, that could not be found, until they appear in the output
+ * folders.
  */
 public class JavaProjectClassLoader extends URLClassLoader {
     private static final Logger LOG = LoggerFactory.getLogger(JavaProjectClassLoader.class);
 
+    /**
+     * At most so many classes, that could not be found, are remembered.
+     */
+    private static final int MAXIMUM_MISSING_CLASSES = 10000;
+
     private final IJavaProject javaProject;
     private final long lastModTimestamp;
-    private final IWorkspace workspace;
-    private Set<IJavaProject> javaProjects = new HashSet<>();
-
+    private final URLClassLoader libraries;
+    private final Set<String> missingClasses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private boolean closed;
 
     public JavaProjectClassLoader(ClassLoader parent, IProject project) {
-        super(new URL[0], parent);
+        this(parent, classpathOf(project));
+    }
+
+    private JavaProjectClassLoader(ClassLoader parent, Classpath classpath) {
+        // the shared class loader is used even without libraries, so that the classes
+        // of the jdk and the plugin are cached as well
+        super(classpath.folders.toArray(new URL[0]),
+                AuxClasspathPool.getInstance().acquire(classpath.libraries, parent));
+        javaProject = classpath.javaProject;
+        lastModTimestamp = getClasspathModificationTimestamp();
+        libraries = (URLClassLoader) getParent();
+    }
+
+    private static Classpath classpathOf(IProject project) {
         try {
             if (!project.hasNature(JavaCore.NATURE_ID)) {
                 throw new IllegalArgumentException("The project " + project + " is not a java project");
@@ -47,18 +86,18 @@ public class JavaProjectClassLoader extends URLClassLoader {
             throw new IllegalArgumentException("The project " + project + " is not a java project", e);
         }
 
-        workspace = project.getWorkspace();
-        javaProject = JavaCore.create(project);
-        lastModTimestamp = getClasspathModificationTimestamp();
-        addURLs(javaProject, false);
-
-        // No longer need these things, drop references
-        javaProjects = null;
+        Classpath classpath = new Classpath(project.getWorkspace(), JavaCore.create(project));
+        addURLs(classpath, classpath.javaProject, false);
+        return classpath;
     }
 
+    /**
+     * @return <code>true</code> if the classpath of the project or one of its libraries
+     *     has been modified, and a new class loader should be used
+     */
     public boolean isModified() {
         long newTimestamp = getClasspathModificationTimestamp();
-        return newTimestamp != lastModTimestamp;
+        return newTimestamp != lastModTimestamp || AuxClasspathPool.isStale(libraries);
     }
 
     private long getClasspathModificationTimestamp() {
@@ -66,22 +105,144 @@ public class JavaProjectClassLoader extends URLClassLoader {
         return FileModificationUtil.getFileModificationTimestamp(classpathFile.getLocation().toFile());
     }
 
-    private IProject projectFor(IClasspathEntry classpathEntry) {
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (missingClasses.contains(name)) {
+            if (findResource(name.replace('.', '/') + ".class") == null) {
+                throw new ClassNotFoundException(name);
+            }
+            // the class has been compiled in the meantime
+            missingClasses.remove(name);
+        }
+        try {
+            return loadClassChildFirst(name, resolve);
+        } catch (ClassNotFoundException e) {
+            if (missingClasses.size() < MAXIMUM_MISSING_CLASSES) {
+                missingClasses.add(name);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the classes of the output folders first, and only then asks the shared class
+     * loader of the libraries, which delegates to its parent first. The classes of the jdk
+     * are always loaded by the parent.
+     */
+    private Class<?> loadClassChildFirst(String name, boolean resolve) throws ClassNotFoundException {
+        if (name.startsWith("java.")) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass == null) {
+                try {
+                    loadedClass = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    loadedClass = libraries.loadClass(name);
+                }
+            }
+            if (resolve) {
+                resolveClass(loadedClass);
+            }
+            return loadedClass;
+        }
+    }
+
+    /**
+     * Gets the class files from the {@link TypeResolutionCache}. The class files of the
+     * libraries are cached by the shared class loader, the class files of the output
+     * folders are cached by this class loader, until they are modified. Like the classes,
+     * the class files of the output folders are looked up first.
+     */
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        if (!name.endsWith(".class")) {
+            return super.getResourceAsStream(name);
+        }
+        URL url = name.startsWith("java/") ? null : findResource(name);
+        if (url == null) {
+            return libraries.getResourceAsStream(name);
+        }
+        File file = fileOf(url);
+        if (file == null) {
+            try {
+                return url.openStream();
+            } catch (IOException e) {
+                LOG.debug("Could not read class file {}: {}", url, e.toString());
+                return null;
+            }
+        }
+
+        TypeResolutionCache cache = TypeResolutionCache.getInstance();
+        long timestamp = file.lastModified();
+        byte[] bytes = cache.get(this, name, timestamp);
+        if (bytes == null) {
+            try {
+                bytes = TypeResolutionCache.readFully(url.openStream());
+            } catch (IOException e) {
+                LOG.debug("Could not read class file {}: {}", file, e.toString());
+                return null;
+            }
+            cache.put(this, name, timestamp, bytes);
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private static File fileOf(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the urls of the output folders and of the libraries
+     */
+    @Override
+    public URL[] getURLs() {
+        List<URL> urls = new ArrayList<>(Arrays.asList(super.getURLs()));
+        urls.addAll(Arrays.asList(libraries.getURLs()));
+        return urls.toArray(new URL[0]);
+    }
+
+    /**
+     * Closes the class loader and releases the shared class loader of the libraries.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        super.close();
+        missingClasses.clear();
+        TypeResolutionCache.getInstance().removeScope(this);
+        AuxClasspathPool.getInstance().release(libraries);
+    }
+
+    private static IProject projectFor(IWorkspace workspace, IClasspathEntry classpathEntry) {
         return workspace.getRoot().getProject(classpathEntry.getPath().toString());
     }
 
-    private void addURLs(IJavaProject javaProject, boolean exportsOnly) {
+    private static void addURLs(Classpath classpath, IJavaProject javaProject, boolean exportsOnly) {
 
-        if (javaProjects.contains(javaProject)) {
+        if (classpath.javaProjects.contains(javaProject)) {
             return;
         }
 
-        javaProjects.add(javaProject);
+        classpath.javaProjects.add(javaProject);
 
         try {
             // Add default output location
             IPath projectLocation = javaProject.getProject().getLocation();
-            addURL(projectLocation.append(javaProject.getOutputLocation().removeFirstSegments(1)));
+            addURL(classpath, projectLocation.append(javaProject.getOutputLocation().removeFirstSegments(1)), false);
 
             // Add each classpath entry
             IClasspathEntry[] classpathEntries = javaProject.getResolvedClasspath(true);
@@ -91,16 +252,16 @@ public class JavaProjectClassLoader extends URLClassLoader {
 
                     // Recurse on projects
                     case IClasspathEntry.CPE_PROJECT:
-                        IProject project = projectFor(classpathEntry);
+                        IProject project = projectFor(classpath.workspace, classpathEntry);
                         IJavaProject javaProj = JavaCore.create(project);
                         if (javaProj != null) {
-                            addURLs(javaProj, true);
+                            addURLs(classpath, javaProj, true);
                         }
                         break;
 
                     // Library
                     case IClasspathEntry.CPE_LIBRARY:
-                        addURL(classpathEntry);
+                        addURL(classpath, classpathEntry.getPath(), true);
                         break;
 
                     // Only Source entries with custom output location need to
@@ -108,7 +269,7 @@ public class JavaProjectClassLoader extends URLClassLoader {
                     case IClasspathEntry.CPE_SOURCE:
                         IPath outputLocation = classpathEntry.getOutputLocation();
                         if (outputLocation != null) {
-                            addURL(projectLocation.append(outputLocation.removeFirstSegments(1)));
+                            addURL(classpath, projectLocation.append(outputLocation.removeFirstSegments(1)), false);
                         }
                         break;
 
@@ -126,14 +287,13 @@ public class JavaProjectClassLoader extends URLClassLoader {
         }
     }
 
-    private void addURL(IClasspathEntry classpathEntry) {
-        addURL(classpathEntry.getPath());
-    }
-
-    private void addURL(IPath path) {
+    /**
+     * @param library <code>true</code> for a library entry, <code>false</code> for an output folder
+     */
+    private static void addURL(Classpath classpath, IPath path, boolean library) {
         try {
             File absoluteFile = null;
-            IPath location = workspace.getRoot().getFile(path).getLocation();
+            IPath location = classpath.workspace.getRoot().getFile(path).getLocation();
             if (location != null) {
                 // location is only present, if a project exists in the workspace
                 // in other words: only if path referenced something inside an existing project
@@ -150,9 +310,31 @@ public class JavaProjectClassLoader extends URLClassLoader {
             }
             URL url = absoluteFile.toURI().toURL();
             LOG.debug("auxclasspath: Adding url {}", url);
-            addURL(url);
+            // jars are shared with other projects, output folders and class folders are project
+            // specific, as their class files change. A missing jar is still a library.
+            if (library && !absoluteFile.isDirectory()) {
+                classpath.libraries.add(url);
+            } else {
+                classpath.folders.add(url);
+            }
         } catch (MalformedURLException e) {
             LOG.warn("MalformedURLException occurred: {}", e.getMessage(), e);
         }
     }
+
+    /**
+     * The classpath of a java project, split into the folders and the libraries.
+     */
+    private static class Classpath {
+        private final IWorkspace workspace;
+        private final IJavaProject javaProject;
+        private final Set<IJavaProject> javaProjects = new HashSet<>();
+        private final List<URL> folders = new ArrayList<>();
+        private final List<URL> libraries = new ArrayList<>();
+
+        Classpath(IWorkspace workspace, IJavaProject javaProject) {
+            this.workspace = workspace;
+            this.javaProject = javaProject;
+        }
+    }
 }
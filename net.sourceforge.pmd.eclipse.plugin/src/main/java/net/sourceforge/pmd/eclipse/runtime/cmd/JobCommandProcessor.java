@@ -8,16 +8,15 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,19 +24,60 @@ import org.slf4j.LoggerFactory;
  * This is a particular processor for Eclipse in order to handle long running
  * commands.
  *
+ * <p>The commands wait in one queue per {@link CommandKind}. At most one command per
+ * available core is executed at a time. When a command finishes, the next command is
+ * taken from the queue with the highest priority, unless a command of another queue
+ * has been waiting for too long. The builder and the background commands together
+ * never use all the cores, so that an interactive command can always start
+ * (see {@link CommandQueues}).
+ *
+ * <p>A command, for which an identical command is still pending, is not queued
+ * again. Pending and running commands, that are made obsolete by a newer command, are
+ * dropped or canceled (see {@link AbstractDefaultCommand#supersedes(AbstractDefaultCommand)}).
+ * If too many commands of a kind are pending, new commands may hand over their work
+ * (see {@link AbstractDefaultCommand#deferWhenBusy()}).
+ *
  * @author Philippe Herlin
  *
  */
 public class JobCommandProcessor {
     private static final Logger LOG = LoggerFactory.getLogger(JobCommandProcessor.class);
-    private final Map<AbstractDefaultCommand, Job> jobs = Collections
-            .synchronizedMap(new HashMap<AbstractDefaultCommand, Job>());
 
-    private static ConcurrentLinkedQueue<Job> outstanding = new ConcurrentLinkedQueue<>();
-    private static AtomicInteger count = new AtomicInteger();
-    
+    /**
+     * The job family of the jobs, that execute the commands.
+     */
+    public static final Object FAMILY = new Object();
+
+    /**
+     * The maximum number of commands, that are executed at the same time.
+     */
+    private static final int MAXIMUM_RUNNING = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * If so many commands of a kind are pending, new commands are asked to defer their work.
+     */
+    private static final int MAXIMUM_PENDING = 50;
+
+    /**
+     * A command, that has been waiting so long, is started before the commands of
+     * the queues with a higher priority.
+     */
+    private static final long STARVATION_MILLIS = 10000;
+
     private static final JobCommandProcessor INSTANCE = new JobCommandProcessor();
 
+    private final CommandQueues<Entry> queues = new CommandQueues<>(MAXIMUM_RUNNING, MAXIMUM_PENDING,
+            STARVATION_MILLIS);
+
+    /**
+     * The pending and running commands. Identical commands share the same entry.
+     */
+    private final Map<AbstractDefaultCommand, Entry> entries = new HashMap<>();
+
+    private JobCommandProcessor() {
+        // singleton
+    }
+
     public static JobCommandProcessor getInstance() {
         return INSTANCE;
     }
@@ -49,13 +89,143 @@ public class JobCommandProcessor {
             throw new IllegalStateException();
         }
 
+        // the key is determined before the command is queued, e.g. the resource delta of
+        // a build is not valid anymore after the build
+        Object key = aCommand.pendingKey();
+        CommandKind kind = aCommand.getKind();
+
+        synchronized (this) {
+            Entry identical = queues.pendingWithKey(kind, key);
+            if (identical != null) {
+                identical.commands.add(aCommand);
+                entries.put(aCommand, identical);
+                queues.deduplicated(kind);
+                LOG.debug("Command {} is already pending", aCommand.getName());
+                return;
+            }
+
+            cancelSupersededBy(aCommand, kind);
+
+            if (queues.isBusy(kind) && aCommand.deferWhenBusy()) {
+                LOG.debug("Deferred command {}, {} {} commands are pending", aCommand.getName(),
+                        queues.getPendingCount(kind), kind);
+                return;
+            }
+
+            Entry entry = newEntry(aCommand, kind);
+            queues.add(kind, entry, key, System.currentTimeMillis());
+            entries.put(aCommand, entry);
+            startPendingCommands();
+        }
+        LOG.debug("Ending job command {}", aCommand.getName());
+    }
+
+    /**
+     * Waits until the given command has been executed. If no command is given, waits
+     * for all the commands, that are pending or running now.
+     *
+     * @param aCommand the command or <code>null</code>
+     */
+    public synchronized void waitCommandToFinish(final AbstractDefaultCommand aCommand) {
+        Collection<AbstractDefaultCommand> awaited;
+        if (aCommand != null) {
+            awaited = Collections.singletonList(aCommand);
+        } else {
+            // a command, that waits for all the others, must not wait for itself
+            Job currentJob = Job.getJobManager().currentJob();
+            awaited = new ArrayList<>();
+            for (Map.Entry<AbstractDefaultCommand, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().job != currentJob) {
+                    awaited.add(entry.getKey());
+                }
+            }
+            LOG.debug("Waiting for {} commands to finish...", awaited.size());
+        }
+
+        try {
+            while (isAnyPendingOrRunning(awaited)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        if (aCommand == null) {
+            LOG.debug("All jobs have finished.");
+        }
+    }
+
+    /**
+     * @return the number of commands of the given kind, that are waiting to be executed
+     */
+    public synchronized int getQueueDepth(CommandKind kind) {
+        return queues.getPendingCount(kind);
+    }
+
+    /**
+     * @return the number of commands of the given kind, that are executed right now
+     */
+    public synchronized int getRunningCount(CommandKind kind) {
+        return queues.getRunningCount(kind);
+    }
+
+    /**
+     * @return the moving average of the time, the commands of the given kind have been waiting
+     */
+    public synchronized long getAverageWaitMillis(CommandKind kind) {
+        return Math.round(queues.getAverageWaitMillis(kind));
+    }
+
+    /**
+     * @return the moving average of the execution time of the commands of the given kind
+     */
+    public synchronized long getAverageRunMillis(CommandKind kind) {
+        return Math.round(queues.getAverageRunMillis(kind));
+    }
+
+    /**
+     * @return a summary of the queues for logging
+     */
+    public synchronized String getUsage() {
+        StringBuilder usage = new StringBuilder();
+        for (CommandKind kind : CommandKind.values()) {
+            if (usage.length() > 0) {
+                usage.append(", ");
+            }
+            usage.append(kind).append(": ").append(queues.getPendingCount(kind)).append(" pending, ")
+                    .append(queues.getRunningCount(kind)).append(" running, waited ")
+                    .append(Math.round(queues.getAverageWaitMillis(kind))).append(" ms, ran ")
+                    .append(Math.round(queues.getAverageRunMillis(kind))).append(" ms, ")
+                    .append(queues.getDeduplicatedCount(kind)).append(" deduplicated, ")
+                    .append(queues.getCanceledCount(kind)).append(" canceled");
+        }
+        return usage.toString();
+    }
+
+    /**
+     * Drops the pending commands and cancels the running commands.
+     */
+    public synchronized void dispose() {
+        for (Entry entry : queues.clearPending()) {
+            forget(entry);
+        }
+        // a job, that has not started yet, is finished right away when it is canceled,
+        // so all the queues must already be empty
+        for (CommandKind kind : CommandKind.values()) {
+            for (Entry entry : queues.getRunning(kind)) {
+                entry.canceled = true;
+                entry.job.cancel();
+            }
+        }
+    }
+
+    private Entry newEntry(final AbstractDefaultCommand aCommand, CommandKind kind) {
         final Job job = new Job(aCommand.getName()) {
             @Override
             protected IStatus run(IProgressMonitor monitor) {
                 try {
-                    if (aCommand instanceof AbstractDefaultCommand) {
-                        ((AbstractDefaultCommand) aCommand).setMonitor(monitor);
-                    }
+                    aCommand.setMonitor(monitor);
                     long start = System.currentTimeMillis();
                     aCommand.execute();
                     long duration = System.currentTimeMillis() - start;
@@ -63,86 +233,95 @@ public class JobCommandProcessor {
                 } catch (RuntimeException e) {
                     LOG.error("Error executing command {}: {}", aCommand.getName(), e.toString(), e);
                 }
+                return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+            }
 
-                synchronized (outstanding) {
-                    count.decrementAndGet();
-                    Job job = outstanding.poll();
-                    if (job != null) {
-                        job.schedule();
-                    }
-                }
-                return Status.OK_STATUS;
+            @Override
+            public boolean belongsTo(Object family) {
+                return family == FAMILY;
             }
         };
+        job.setUser(aCommand.isUserInitiated());
+        job.setPriority(kind.getJobPriority());
 
-        if (aCommand instanceof AbstractDefaultCommand) {
-            job.setUser(((AbstractDefaultCommand) aCommand).isUserInitiated());
-        }
-
-        synchronized (outstanding) {
-            if (count.incrementAndGet() > 10) {
-                // too many already running, put in a queue to run later
-                outstanding.add(job);
-            } else {
-                job.schedule();
+        final Entry entry = new Entry(aCommand, kind, job);
+        // the listener is notified as well, if the job is canceled before it runs
+        job.addJobChangeListener(new JobChangeAdapter() {
+            @Override
+            public void done(IJobChangeEvent event) {
+                finished(entry);
             }
-        }
-        this.addJob(aCommand, job);
-        LOG.debug("Ending job command {}", aCommand.getName());
+        });
+        return entry;
     }
 
-    public void waitCommandToFinish(final AbstractDefaultCommand aCommand) {
-        final Job job = this.jobs.get(aCommand);
-        if (job != null) {
-            try {
-                job.join();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(e);
+    /**
+     * Drops the pending commands and cancels the running commands of the kind, that
+     * are made obsolete by the given command.
+     */
+    private void cancelSupersededBy(AbstractDefaultCommand command, CommandKind kind) {
+        for (Entry entry : queues.getPending(kind)) {
+            if (command.supersedes(entry.commands.get(0))) {
+                LOG.debug("Dropping pending command {}, it is superseded by a newer one", entry.job.getName());
+                queues.drop(kind, entry);
+                forget(entry);
             }
-        } else {
-            // no specific command given - wait for all jobs to finish
-            clearTerminatedJobs();
-            Collection<Job> runningJobs = new ArrayList<>(this.jobs.values());
-            LOG.debug("Waiting for {} jobs to finish...", runningJobs.size());
-            for (Job runningJob : runningJobs) {
-                try {
-                    runningJob.join();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException(e);
-                }
+        }
+        for (Entry entry : queues.getRunning(kind)) {
+            if (!entry.canceled && command.supersedes(entry.commands.get(0))) {
+                LOG.debug("Canceling running command {}, it is superseded by a newer one", entry.job.getName());
+                entry.canceled = true;
+                entry.job.cancel();
+                queues.canceled(kind);
             }
-            clearTerminatedJobs();
-            LOG.debug("All jobs have finished.");
         }
+    }
 
+    private void startPendingCommands() {
+        Entry entry = queues.startNext(System.currentTimeMillis());
+        while (entry != null) {
+            entry.job.schedule();
+            entry = queues.startNext(System.currentTimeMillis());
+        }
+    }
+
+    private synchronized void finished(Entry entry) {
+        queues.finished(entry.kind, entry, entry.canceled, System.currentTimeMillis());
+        forget(entry);
+        startPendingCommands();
+        LOG.debug("Command {} finished - {}", entry.job.getName(), getUsage());
+    }
+
+    private void forget(Entry entry) {
+        for (AbstractDefaultCommand command : entry.commands) {
+            entries.remove(command);
+        }
+        notifyAll();
+    }
+
+    private boolean isAnyPendingOrRunning(Collection<AbstractDefaultCommand> commands) {
+        for (AbstractDefaultCommand command : commands) {
+            if (entries.containsKey(command)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Add a job to the map. Also, clear all finished jobs
-     * 
-     * @param command
-     *            for which to keep the job
-     * @param job
-     *            a job to keep until it is finished
+     * A queued command with its job. The job executes the first command only, the
+     * other commands are identical and have been queued later.
      */
-    private void addJob(final AbstractDefaultCommand command, final Job job) {
-        this.jobs.put(command, job);
-        clearTerminatedJobs();
-    }
-
-    private void clearTerminatedJobs() {
-        Set<AbstractDefaultCommand> keySet = this.jobs.keySet();
-        synchronized (this.jobs) {
-            final Iterator<AbstractDefaultCommand> i = keySet.iterator();
-            while (i.hasNext()) {
-                final AbstractDefaultCommand aCommand = i.next();
-                final Job aJob = this.jobs.get(aCommand);
-                if (aJob == null || aJob.getResult() != null) {
-                    i.remove();
-                }
-            }
+    private static final class Entry {
+        private final List<AbstractDefaultCommand> commands = new ArrayList<>(1);
+        private final CommandKind kind;
+        private final Job job;
+        private boolean canceled;
+
+        Entry(AbstractDefaultCommand command, CommandKind kind, Job job) {
+            this.commands.add(command);
+            this.kind = kind;
+            this.job = job;
         }
     }
 }
@@ -0,0 +1,362 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.JavaModelException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.Rule;
+import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleViolation;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Analyzes the unsaved content of the java editors while typing.
+ *
+ * <p>The reconcile participant of the java editor requests the analysis of the current content of a
+ * working copy and reports the results of the last finished analysis, until the analysis of the current
+ * content is available. The analysis itself runs in a background job: the requests are debounced, and a
+ * request for newer content of the same file cancels the analysis of the older content, see
+ * {@link LiveAnalysisQueue}. When the results are available and the content didn't change in the
+ * meantime, the working copy is reconciled again, so that the results are shown as annotations.
+ *
+ * <p>The source is parsed once, and the rules of the effective rulesets of the project are applied one
+ * after another to the tree. The time of each rule is measured and kept as cost per 1000 characters.
+ * The cheapest rules are applied first, rules that are too expensive for the time budget of the
+ * preferences are left to the analysis of the saved file, and the analysis stops when the budget is
+ * used up.
+ *
+ * <p>Violations, that have been reviewed with a review comment in the unsaved content, are not
+ * reported.
+ *
+ * <p>The results of a file are forgotten, when its working copy is discarded, e.g. when its editor has
+ * been closed. The rules of a project are forgotten, when the project properties change.
+ */
+public final class LiveAnalysis implements IElementChangedListener {
+    private static final Logger LOG = LoggerFactory.getLogger(LiveAnalysis.class);
+
+    /**
+     * The analysis starts after so many milliseconds without newer requests.
+     */
+    private static final long DEBOUNCE_MILLIS = 300;
+
+    /**
+     * A rule is only applied while typing, if its expected time is below this fraction of the budget.
+     */
+    private static final int MAX_RULE_SHARE_OF_BUDGET = 4;
+
+    /**
+     * The results of so many recently edited files are kept.
+     */
+    private static final int MAX_RESULTS = 20;
+
+    private static final LiveAnalysis INSTANCE = new LiveAnalysis();
+
+    private final LiveAnalysisQueue<IFile, ICompilationUnit> queue = new LiveAnalysisQueue<>(MAX_RESULTS);
+    private final Map<IProject, LiveRules> rulesByProject = new HashMap<>();
+    private final Map<String, Double> nanosPerKiloCharByRule = new HashMap<>();
+    private final Job analysisJob = new AnalysisJob();
+    private boolean disposed;
+
+    private LiveAnalysis() {
+        // singleton
+    }
+
+    public static LiveAnalysis getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the violations of the last analyzed content of a file. If this is not the given
+     * content, the analysis of the content is requested and the working copy is reconciled
+     * again, when the violations are available.
+     *
+     * @param workingCopy the working copy of the file
+     * @param source the current content of the working copy
+     * @return the violations or <code>null</code>, if the file has not been analyzed yet
+     */
+    public List<RuleViolation> violationsOf(IFile file, ICompilationUnit workingCopy, String source) {
+        List<RuleViolation> violations;
+        synchronized (this) {
+            violations = queue.lastViolationsOf(file);
+            if (disposed || queue.isAnalyzed(file, source) || !queue.request(file, workingCopy, source)) {
+                return violations;
+            }
+        }
+        analysisJob.schedule(DEBOUNCE_MILLIS);
+        return violations;
+    }
+
+    /**
+     * Forgets the results and the requests of a file, e.g. when its editor has been closed.
+     */
+    public synchronized void remove(IFile file) {
+        queue.remove(file);
+    }
+
+    /**
+     * Forgets the rules of a project, e.g. when its rulesets have changed.
+     */
+    public synchronized void forget(IProject project) {
+        rulesByProject.remove(project);
+    }
+
+    /**
+     * Forgets the results of the files, whose working copies have been discarded or which
+     * have been removed.
+     */
+    @Override
+    public void elementChanged(ElementChangedEvent event) {
+        forgetDiscarded(event.getDelta());
+    }
+
+    private void forgetDiscarded(IJavaElementDelta delta) {
+        IJavaElement element = delta.getElement();
+        if (element.getElementType() == IJavaElement.COMPILATION_UNIT) {
+            ICompilationUnit unit = (ICompilationUnit) element;
+            boolean discarded = (delta.getFlags() & IJavaElementDelta.F_PRIMARY_WORKING_COPY) != 0
+                    && !unit.isWorkingCopy();
+            if ((discarded || delta.getKind() == IJavaElementDelta.REMOVED) && unit.getResource() instanceof IFile) {
+                remove((IFile) unit.getResource());
+            }
+            return;
+        }
+        for (IJavaElementDelta child : delta.getAffectedChildren()) {
+            forgetDiscarded(child);
+        }
+    }
+
+    public void dispose() {
+        synchronized (this) {
+            disposed = true;
+            queue.clear();
+            rulesByProject.clear();
+        }
+        analysisJob.cancel();
+    }
+
+    private synchronized LiveAnalysisQueue.Request<IFile, ICompilationUnit> nextRequest() {
+        return queue.next();
+    }
+
+    private synchronized boolean put(LiveAnalysisQueue.Request<IFile, ICompilationUnit> request,
+            List<RuleViolation> violations) {
+        return !disposed && queue.put(request, violations);
+    }
+
+    /**
+     * @return whether the violations of the request are available
+     */
+    private boolean analyze(LiveAnalysisQueue.Request<IFile, ICompilationUnit> request, IProgressMonitor monitor)
+            throws PropertiesException {
+        IFile file = request.getFile();
+        IProject project = file.getProject();
+        IProjectProperties properties = PMDPlugin.getDefault().loadProjectProperties(project);
+        if (!properties.isPmdEnabled()) {
+            return put(request, Collections.<RuleViolation>emptyList());
+        }
+        IPreferences preferences = PMDPlugin.getDefault().loadPreferences();
+
+        AnalysisSession session = AnalysisSession.forProject(project);
+        LanguageVersion javaVersion = session.getLanguageVersion();
+        File sourceFile = file.getRawLocation().toFile();
+        Node compilationUnit = session.parse(request.getSource(), sourceFile.getAbsolutePath());
+        if (compilationUnit == null || request.isSuperseded() || monitor.isCanceled()) {
+            // the source can't be parsed while typing, the java editor shows the syntax errors
+            return false;
+        }
+
+        long budgetNanos = preferences.getLiveAnalysisBudget() * 1000000L;
+        double kiloChars = Math.max(1, request.getSource().length()) / 1000.0;
+        long start = System.nanoTime();
+        int appliedRules = 0;
+        List<RuleViolation> violations = new ArrayList<>();
+        for (LiveRule rule : rulesOf(project, properties, javaVersion.getLanguage(), kiloChars)) {
+            if (request.isSuperseded() || monitor.isCanceled()) {
+                return false;
+            }
+            double expectedNanos = expectedNanos(rule.name, kiloChars);
+            if (expectedNanos > budgetNanos / MAX_RULE_SHARE_OF_BUDGET
+                    || System.nanoTime() - start + expectedNanos > budgetNanos) {
+                // the rules are sorted by their cost, so all the remaining rules are too expensive
+                break;
+            }
+
+            long ruleStart = System.nanoTime();
+            try {
+                violations.addAll(session.apply(rule.ruleSet, compilationUnit, sourceFile));
+            } catch (RuntimeException e) {
+                LOG.debug("Rule {} failed on the unsaved content of {}: {}", rule.name, file, e.toString());
+            }
+            measured(rule.name, (System.nanoTime() - ruleStart) / kiloChars);
+            appliedRules++;
+        }
+
+        LOG.debug("Live analysis of {} applied {} rules in {} ms", file, appliedRules,
+                (System.nanoTime() - start) / 1000000);
+        return put(request, withoutReviewed(violations, request.getSource()));
+    }
+
+    /**
+     * Removes the violations, that have been reviewed with a review comment in the given source,
+     * like the analysis of the saved file does.
+     */
+    static List<RuleViolation> withoutReviewed(List<RuleViolation> violations, String source) {
+        if (violations.isEmpty()) {
+            return violations;
+        }
+        ReviewedViolations reviews = ReviewedViolations.scan(source);
+        if (reviews == ReviewedViolations.NONE) {
+            return violations;
+        }
+        List<RuleViolation> remaining = new ArrayList<>(violations.size());
+        for (RuleViolation violation : violations) {
+            if (!reviews.contains(violation.getRule().getName(), violation.getBeginLine())) {
+                remaining.add(violation);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Gets copies of the java rules of the effective rulesets of a project, sorted by their
+     * expected time. The copies are only used by the analysis job.
+     */
+    private List<LiveRule> rulesOf(IProject project, IProjectProperties properties, Language language,
+            final double kiloChars) throws PropertiesException {
+        EffectiveRuleSets effectiveRuleSets = EffectiveRuleSets.forProject(project, properties);
+        LiveRules liveRules;
+        synchronized (this) {
+            liveRules = rulesByProject.get(project);
+        }
+        if (liveRules == null || liveRules.source != effectiveRuleSets) {
+            List<LiveRule> rules = new ArrayList<>();
+            for (RuleSet ruleSet : effectiveRuleSets.getRuleSets()) {
+                for (Rule rule : ruleSet.getRules()) {
+                    if (language.equals(rule.getLanguage())) {
+                        Rule copy = rule.deepCopy();
+                        RuleSet single = RuleSetUtil.retainOnly(ruleSet, Collections.singletonList(copy));
+                        rules.add(new LiveRule(rule.getName(), single));
+                    }
+                }
+            }
+            liveRules = new LiveRules(effectiveRuleSets, rules);
+            synchronized (this) {
+                rulesByProject.put(project, liveRules);
+            }
+        }
+
+        List<LiveRule> sorted = new ArrayList<>(liveRules.rules);
+        Collections.sort(sorted, new Comparator<LiveRule>() {
+            @Override
+            public int compare(LiveRule rule1, LiveRule rule2) {
+                return Double.compare(expectedNanos(rule1.name, kiloChars), expectedNanos(rule2.name, kiloChars));
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * @return the expected time of a rule or 0, if the rule has not been measured yet
+     */
+    private synchronized double expectedNanos(String ruleName, double kiloChars) {
+        Double nanosPerKiloChar = nanosPerKiloCharByRule.get(ruleName);
+        return nanosPerKiloChar == null ? 0 : nanosPerKiloChar * kiloChars;
+    }
+
+    private synchronized void measured(String ruleName, double nanosPerKiloChar) {
+        Double average = nanosPerKiloCharByRule.get(ruleName);
+        nanosPerKiloCharByRule.put(ruleName,
+                average == null ? nanosPerKiloChar : (3 * average + nanosPerKiloChar) / 4);
+    }
+
+    /**
+     * Reconciles the working copy again, so that the participant reports the violations.
+     */
+    private static void reconcile(LiveAnalysisQueue.Request<IFile, ICompilationUnit> request) {
+        ICompilationUnit workingCopy = request.getWorkingCopy();
+        try {
+            if (workingCopy.isWorkingCopy() && request.getSource().equals(workingCopy.getSource())) {
+                workingCopy.reconcile(ICompilationUnit.NO_AST, true, null, null);
+            }
+        } catch (JavaModelException e) {
+            LOG.debug("Could not reconcile {}: {}", request.getFile(), e.toString());
+        }
+    }
+
+    private static final class LiveRule {
+        private final String name;
+        private final RuleSet ruleSet;
+
+        LiveRule(String name, RuleSet ruleSet) {
+            this.name = name;
+            this.ruleSet = ruleSet;
+        }
+    }
+
+    private static final class LiveRules {
+        private final EffectiveRuleSets source;
+        private final List<LiveRule> rules;
+
+        LiveRules(EffectiveRuleSets source, List<LiveRule> rules) {
+            this.source = source;
+            this.rules = rules;
+        }
+    }
+
+    /**
+     * Analyzes the requested contents one after another.
+     */
+    private class AnalysisJob extends Job {
+        AnalysisJob() {
+            super("PMD live analysis");
+            setPriority(Job.DECORATE);
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            LiveAnalysisQueue.Request<IFile, ICompilationUnit> request = nextRequest();
+            while (request != null && !monitor.isCanceled()) {
+                try {
+                    if (analyze(request, monitor)) {
+                        reconcile(request);
+                    }
+                } catch (PropertiesException | RuntimeException e) {
+                    LOG.warn("Live analysis of {} failed: {}", request.getFile(), e.toString());
+                }
+                request = nextRequest();
+            }
+            return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+        }
+    }
+}
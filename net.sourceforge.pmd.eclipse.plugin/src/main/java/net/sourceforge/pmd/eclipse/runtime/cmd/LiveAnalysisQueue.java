@@ -0,0 +1,198 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.pmd.RuleViolation;
+
+/**
+ * The requests and the results of the {@link LiveAnalysis}.
+ *
+ * <p>Only the newest content of a file is waiting for its analysis: a request for newer content
+ * replaces the waiting request and supersedes the running analysis of the file, so that typing
+ * only leads to a single analysis after the debounce delay. The results of the recently analyzed
+ * files are kept, the last result of a file stays available while the newer content is waiting.
+ * The queue itself is not thread safe, the live analysis synchronizes the access.
+ *
+ * @param <F> the type of the files
+ * @param <W> the type of the working copies, that are reconciled with the results
+ */
+public class LiveAnalysisQueue<F, W> {
+    private final Map<F, Request<F, W>> pendingRequests = new LinkedHashMap<>();
+    private final Map<F, Result> results;
+    private Request<F, W> runningRequest;
+
+    /**
+     * @param maximumResults the results of so many recently analyzed files are kept
+     */
+    public LiveAnalysisQueue(final int maximumResults) {
+        results = new LinkedHashMap<F, Result>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<F, Result> eldest) {
+                return size() > maximumResults;
+            }
+        };
+    }
+
+    /**
+     * @return the violations of the last analyzed content of the file or <code>null</code>,
+     *     if the file has not been analyzed yet
+     */
+    public List<RuleViolation> lastViolationsOf(F file) {
+        Result result = results.get(file);
+        return result == null ? null : result.violations;
+    }
+
+    /**
+     * @return <code>true</code> if the violations of exactly this content of the file are available
+     */
+    public boolean isAnalyzed(F file, String source) {
+        Result result = results.get(file);
+        return result != null && result.source.equals(source);
+    }
+
+    /**
+     * Requests the analysis of the content of a file, unless this content is already waiting
+     * or being analyzed. A waiting request of older content is replaced, a running analysis
+     * of older content is superseded.
+     *
+     * @return <code>true</code> if the request has been queued, the analysis should be
+     *     scheduled after the debounce delay
+     */
+    public boolean request(F file, W workingCopy, String source) {
+        Request<F, W> pending = pendingRequests.get(file);
+        if (pending != null && pending.source.equals(source)
+                || isRunning(file) && runningRequest.source.equals(source)) {
+            return false;
+        }
+        pendingRequests.put(file, new Request<>(file, workingCopy, source));
+        if (isRunning(file)) {
+            runningRequest.superseded = true;
+        }
+        return true;
+    }
+
+    /**
+     * Takes the next request out of the queue, it's the running request until the next call.
+     *
+     * @return the next request or <code>null</code>, if no request is waiting
+     */
+    public Request<F, W> next() {
+        Iterator<Request<F, W>> iterator = pendingRequests.values().iterator();
+        if (!iterator.hasNext()) {
+            runningRequest = null;
+        } else {
+            runningRequest = iterator.next();
+            iterator.remove();
+        }
+        return runningRequest;
+    }
+
+    /**
+     * Keeps the violations of a finished analysis.
+     *
+     * @return <code>false</code> if the request has been superseded in the meantime, its
+     *     violations are dropped
+     */
+    public boolean put(Request<F, W> request, List<RuleViolation> violations) {
+        if (request.superseded) {
+            return false;
+        }
+        results.put(request.file, new Result(request.source, violations));
+        return true;
+    }
+
+    /**
+     * Forgets the result and the waiting request of a file, a running analysis of the file is superseded.
+     */
+    public void remove(F file) {
+        pendingRequests.remove(file);
+        results.remove(file);
+        if (isRunning(file)) {
+            runningRequest.superseded = true;
+        }
+    }
+
+    /**
+     * Forgets all the requests and results, a running analysis is superseded.
+     */
+    public void clear() {
+        pendingRequests.clear();
+        results.clear();
+        if (runningRequest != null) {
+            runningRequest.superseded = true;
+        }
+    }
+
+    /**
+     * @return the number of waiting requests
+     */
+    public int getPendingCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * @return the number of kept results
+     */
+    public int getResultCount() {
+        return results.size();
+    }
+
+    private boolean isRunning(F file) {
+        return runningRequest != null && runningRequest.file.equals(file);
+    }
+
+    /**
+     * The analysis of the content of a file.
+     */
+    public static final class Request<F, W> {
+        private final F file;
+        private final W workingCopy;
+        private final String source;
+        private volatile boolean superseded;
+
+        Request(F file, W workingCopy, String source) {
+            this.file = file;
+            this.workingCopy = workingCopy;
+            this.source = source;
+        }
+
+        public F getFile() {
+            return file;
+        }
+
+        public W getWorkingCopy() {
+            return workingCopy;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * @return <code>true</code> if newer content of the file has been requested or the
+         *     file has been removed, the analysis can be stopped
+         */
+        public boolean isSuperseded() {
+            return superseded;
+        }
+    }
+
+    private static final class Result {
+        private final String source;
+        private final List<RuleViolation> violations;
+
+        Result(String source, List<RuleViolation> violations) {
+            this.source = source;
+            this.violations = violations;
+        }
+    }
+}
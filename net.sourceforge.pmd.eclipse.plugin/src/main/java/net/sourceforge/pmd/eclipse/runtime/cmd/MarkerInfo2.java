@@ -4,6 +4,7 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -11,6 +12,8 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.runtime.CoreException;
 
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
 /**
  * 
  * @author Brian Remedios
@@ -33,12 +36,54 @@ public class MarkerInfo2 {
         add(name, Integer.valueOf(value));
     }
 
+    public String getType() {
+        return type;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return Collections.unmodifiableMap(data);
+    }
+
     public void addAsMarkerTo(IFile file) throws CoreException {
 
         IMarker marker = file.createMarker(type);
         marker.setAttributes(data.keySet().toArray(new String[data.size()]), data.values().toArray());
     }
 
+    /**
+     * Updates the attributes of an existing marker, if they differ from this marker info.
+     *
+     * @return <code>true</code> if the marker has been changed
+     */
+    public boolean updateMarker(IMarker marker) throws CoreException {
+        if (data.equals(marker.getAttributes())) {
+            return false;
+        }
+        marker.setAttributes(data.keySet().toArray(new String[data.size()]), data.values().toArray());
+        return true;
+    }
+
+    /**
+     * The identity of a marker consists of the marker type, the rule name, the line and the message.
+     * It is used to match the markers of a new review with the markers that already exist on a file.
+     */
+    public String identity() {
+        return identity(type, data.get(PMDRuntimeConstants.KEY_MARKERATT_RULENAME), data.get(IMarker.LINE_NUMBER),
+                data.get(IMarker.MESSAGE));
+    }
+
+    /**
+     * @see #identity()
+     */
+    public static String identityOf(IMarker marker) throws CoreException {
+        return identity(marker.getType(), marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME),
+                marker.getAttribute(IMarker.LINE_NUMBER), marker.getAttribute(IMarker.MESSAGE));
+    }
+
+    private static String identity(String type, Object ruleName, Object line, Object message) {
+        return type + '\n' + ruleName + '\n' + line + '\n' + message;
+    }
+
     @Override
     public String toString() {
         return "MarkerInfo2: rule=" + data.get("rulename") + ", message=" + data.get(IMarker.MESSAGE) + ", line="
@@ -4,20 +4,39 @@
 
 package net.sourceforge.pmd.eclipse.runtime.cmd;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
-import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IPackageDeclaration;
 import org.eclipse.jdt.core.IType;
@@ -31,12 +50,17 @@ import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex.FileViolations;
 import net.sourceforge.pmd.renderers.Renderer;
 
 /**
  * This command produce a report for a project using the specified renderer.
  *
+ * <p>The violations are taken from the violation index and are fed file by file to the renderers,
+ * which write directly into the report files using the charset of the report folder. The
+ * renderers run in parallel.
+ *
  * @author Philippe Herlin
  *
  */
@@ -58,6 +82,7 @@ public class RenderReportsCmd extends AbstractProjectCommand {
         setOutputProperties(false);
         setReadOnly(false);
         setTerminated(false);
+        setKind(CommandKind.BACKGROUND);
     }
 
     /**
@@ -74,66 +99,27 @@ public class RenderReportsCmd extends AbstractProjectCommand {
         }
     }
 
-    /**
-     * 
-     * @param report
-     * @param folder
-     * @param reportName
-     * @param renderer
-     * @throws IOException
-     * @throws CoreException
-     */
-    private void render(Report report, IFolder folder, String reportName, Renderer renderer)
-            throws IOException, CoreException {
-
-        String reportString = null;
-
-        try (StringWriter writer = new StringWriter()) {
-            renderer.setWriter(writer);
-            renderer.start();
-            renderer.renderFileReport(report);
-            renderer.end();
-            renderer.flush();
-
-            reportString = writer.toString();
-        }
-
-        if (StringUtils.isBlank(reportString)) {
-            LOG.debug("Missing content for report: " + reportName);
-            return;
-        }
-
-        LOG.debug("   Creating the report file");
-        IFile reportFile = folder.getFile(reportName);
-        try (InputStream contentsStream = new ByteArrayInputStream(reportString.getBytes())) {
-            if (reportFile.exists()) {
-                reportFile.setContents(contentsStream, true, false, getMonitor());
-            } else {
-                reportFile.create(contentsStream, true, getMonitor());
-            }
-        }
-        reportFile.refreshLocal(IResource.DEPTH_INFINITE, getMonitor());
-    }
-
     @Override
     public void execute() {
 
         try {
             LOG.debug("Starting RenderReport command");
-            LOG.debug("   Create a report object");
-            final Report report = createReport(project());
+            LOG.debug("   Collecting the reported files");
+            final List<ReportedFile> files = reportedFilesOf(project());
 
             LOG.debug("   Getting the report folder");
             final IFolder folder = getProjectFolder(PMDRuntimeConstants.REPORT_FOLDER);
             if (!folder.exists()) {
                 folder.create(true, true, getMonitor());
             }
+            final Charset charset = Charset.forName(folder.getDefaultCharset());
 
-            for (Map.Entry<String, Renderer> entry : renderers.entrySet()) {
-                String reportName = entry.getKey();
-                Renderer renderer = entry.getValue();
-                LOG.debug("   Render the report");
-                render(report, folder, reportName, renderer);
+            LOG.debug("   Render the reports");
+            final Map<IFile, File> outputs = renderAll(folder, charset, files);
+
+            LOG.debug("   Updating the report files");
+            for (Map.Entry<IFile, File> entry : outputs.entrySet()) {
+                updateReportFile(entry.getKey(), entry.getValue());
             }
         } catch (CoreException | IOException e) {
             LOG.debug(e.toString(), e);
@@ -144,6 +130,150 @@ public class RenderReportsCmd extends AbstractProjectCommand {
         }
     }
 
+    /**
+     * Renders the reports in parallel, one task per renderer. Each renderer writes directly into a
+     * file, that is not known to the workspace yet: either a temporary file next to the report file or,
+     * if the report folder is not in the local file system, a temporary file in the temp directory.
+     *
+     * @return the rendered files by the report files, they should be copied to. Blank reports are
+     *     not included.
+     */
+    private Map<IFile, File> renderAll(IFolder folder, final Charset charset, final List<ReportedFile> files)
+            throws IOException {
+        final RuleSet ruleSet = PMDPlugin.getDefault().getPreferencesManager().getRuleSet();
+        final Map<IFile, File> outputs = new LinkedHashMap<>();
+        final Map<IFile, Future<Void>> tasks = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(renderers.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            for (Map.Entry<String, Renderer> entry : renderers.entrySet()) {
+                final IFile reportFile = folder.getFile(entry.getKey());
+                final Renderer renderer = entry.getValue();
+                final File output = outputFileFor(reportFile);
+                outputs.put(reportFile, output);
+                tasks.put(reportFile, executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        try (Writer writer = new BufferedWriter(
+                                new OutputStreamWriter(Files.newOutputStream(output.toPath()), charset))) {
+                            render(renderer, writer, files, ruleSet);
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            IOException failure = null;
+            for (Map.Entry<IFile, Future<Void>> task : tasks.entrySet()) {
+                try {
+                    task.getValue().get();
+                } catch (ExecutionException e) {
+                    LOG.warn("Error while rendering the report {}", task.getKey().getName(), e.getCause());
+                    if (failure == null) {
+                        failure = new IOException("Error while rendering the report " + task.getKey().getName(),
+                                e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (failure == null) {
+                        failure = new InterruptedIOException("Rendering of the reports has been interrupted");
+                    }
+                }
+            }
+            if (failure != null) {
+                deleteAll(outputs.values());
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Iterator<File> blankOutputs = outputs.values().iterator();
+        while (blankOutputs.hasNext()) {
+            File output = blankOutputs.next();
+            if (isBlank(output, charset)) {
+                LOG.debug("Missing content for report: " + output.getName());
+                Files.deleteIfExists(output.toPath());
+                blankOutputs.remove();
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Feeds the violations file by file to the renderer, so that only the violations of one file are
+     * in memory at the same time.
+     */
+    private static void render(Renderer renderer, Writer writer, List<ReportedFile> files, RuleSet ruleSet)
+            throws IOException {
+        renderer.setWriter(writer);
+        renderer.start();
+        for (ReportedFile file : files) {
+            renderer.renderFileReport(file.createReport(ruleSet));
+        }
+        renderer.end();
+        renderer.flush();
+    }
+
+    /**
+     * @return <code>true</code> if the rendered output contains only whitespace, like
+     *     {@link org.apache.commons.lang3.StringUtils#isBlank(CharSequence)}. The output is read only
+     *     up to the first other character.
+     */
+    private static boolean isBlank(File output, Charset charset) throws IOException {
+        try (Reader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(output.toPath()), charset))) {
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (!Character.isWhitespace(c)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static File outputFileFor(IFile reportFile) throws IOException {
+        IPath location = reportFile.getLocation();
+        if (location != null) {
+            return location.addFileExtension("tmp").toFile();
+        }
+        return Files.createTempFile("pmd-report", ".tmp").toFile();
+    }
+
+    /**
+     * Replaces the contents of the report file by the rendered output.
+     */
+    private void updateReportFile(IFile reportFile, File output) throws IOException, CoreException {
+        LOG.debug("   Creating the report file " + reportFile.getName());
+        IPath location = reportFile.getLocation();
+        if (location != null && location.addFileExtension("tmp").toFile().equals(output)) {
+            Files.move(output.toPath(), location.toFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+            reportFile.refreshLocal(IResource.DEPTH_ZERO, getMonitor());
+            return;
+        }
+
+        try (InputStream contentsStream = new BufferedInputStream(Files.newInputStream(output.toPath()))) {
+            if (reportFile.exists()) {
+                reportFile.setContents(contentsStream, true, false, getMonitor());
+            } else {
+                reportFile.create(contentsStream, true, getMonitor());
+            }
+        } finally {
+            Files.deleteIfExists(output.toPath());
+        }
+    }
+
+    private static void deleteAll(Collection<File> files) {
+        for (File file : files) {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                LOG.debug("Could not delete {}: {}", file, e.toString());
+            }
+        }
+    }
+
     @Override
     public void reset() {
         setProject(null);
@@ -156,58 +286,79 @@ public class RenderReportsCmd extends AbstractProjectCommand {
         return super.isReadyToExecute() && !renderers.isEmpty();
     }
 
-    private static void classAndPackageFrom(IMarker marker, FakeRuleViolation violation) throws JavaModelException {
-        ICompilationUnit unit = JavaCore.createCompilationUnitFrom((IFile) marker.getResource());
-
-        IPackageDeclaration[] packages = unit.getPackageDeclarations();
-        violation.setPackageName(packages.length > 0 ? packages[0].getElementName() : "(default)");
-
-        IType[] types = unit.getAllTypes();
-        violation.setClassName(types.length > 0 ? types[0].getElementName() : marker.getResource().getName());
-    }
-
     /**
-     * Create a Report object from the markers of a project.
-     * 
-     * @param project
-     * @return
+     * Collects the files with violations of a project from the violation index. The package and
+     * class of a file are resolved once per file, the violations are only turned into rule violations,
+     * when the file is rendered.
      */
-    private Report createReport(IProject project) throws CoreException {
-
-        Report report = new Report();
-
-        IMarker[] markers = MarkerUtil.findAllMarkers(project);
-        RuleSet ruleSet = PMDPlugin.getDefault().getPreferencesManager().getRuleSet();
+    private static List<ReportedFile> reportedFilesOf(IProject project) throws CoreException {
+        ViolationIndex index = PMDPlugin.getDefault().getViolationIndex();
         boolean isJavaProject = project.hasNature(JavaCore.NATURE_ID);
 
-        for (IMarker marker : markers) {
-            String ruleName = marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_RULENAME, "");
-            Rule rule = ruleSet.getRuleByName(ruleName);
-
-            FakeRuleViolation ruleViolation = createViolation(marker, rule);
-
-            if (isJavaProject && marker.getResource() instanceof IFile) {
-                classAndPackageFrom(marker, ruleViolation);
+        List<ReportedFile> files = new ArrayList<>();
+        for (IFile file : index.getFilesWithViolations(project)) {
+            FileViolations violations = index.getViolations(file);
+            if (violations == null || violations.size() == 0) {
+                continue;
+            }
+            ReportedFile reportedFile = new ReportedFile(file, violations);
+            if (isJavaProject) {
+                reportedFile.resolveClassAndPackage();
             }
+            files.add(reportedFile);
+        }
+        return files;
+    }
 
-            report.addRuleViolation(ruleViolation);
+    /**
+     * The violations of a file together with the package and class of the file.
+     */
+    private static final class ReportedFile {
+        private final IFile file;
+        private final FileViolations violations;
+        private String packageName;
+        private String className;
+
+        ReportedFile(IFile file, FileViolations violations) {
+            this.file = file;
+            this.violations = violations;
         }
 
-        return report;
-    }
+        private void resolveClassAndPackage() throws JavaModelException {
+            ICompilationUnit unit = JavaCore.createCompilationUnitFrom(file);
 
-    private static FakeRuleViolation createViolation(IMarker marker, Rule rule) {
+            IPackageDeclaration[] packages = unit.getPackageDeclarations();
+            packageName = packages.length > 0 ? packages[0].getElementName() : "(default)";
 
-        // @PMD:REVIEWED:AvoidInstantiatingObjectsInLoops: by Herlin on 01/05/05
-        // 19:14
-        FakeRuleViolation ruleViolation = new FakeRuleViolation(rule);
+            IType[] types = unit.getTypes();
+            className = types.length > 0 ? types[0].getElementName() : file.getName();
+        }
 
-        // Fill in the rule violation object before adding it to the report
-        ruleViolation.setBeginLine(marker.getAttribute(IMarker.LINE_NUMBER, 0));
-        ruleViolation.setEndLine(marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_LINE2, 0));
-        ruleViolation.setVariableName(marker.getAttribute(PMDRuntimeConstants.KEY_MARKERATT_LINE2, ""));
-        ruleViolation.setFilename(marker.getResource().getProjectRelativePath().toString());
-        ruleViolation.setDescription(marker.getAttribute(IMarker.MESSAGE, rule.getMessage()));
-        return ruleViolation;
+        /**
+         * Creates a report, that contains only the violations of this file.
+         */
+        Report createReport(RuleSet ruleSet) {
+            Report report = new Report();
+            String filename = file.getProjectRelativePath().toString();
+            for (int i = 0; i < violations.size(); i++) {
+                Rule rule = ruleSet.getRuleByName(violations.getRuleName(i));
+
+                // @PMD:REVIEWED:AvoidInstantiatingObjectsInLoops: by Herlin on 01/05/05
+                // 19:14
+                FakeRuleViolation ruleViolation = new FakeRuleViolation(rule);
+
+                // Fill in the rule violation object before adding it to the report
+                ruleViolation.setBeginLine(violations.getLine(i));
+                ruleViolation.setEndLine(violations.getEndLine(i));
+                ruleViolation.setVariableName("");
+                ruleViolation.setFilename(filename);
+                ruleViolation.setPackageName(packageName);
+                ruleViolation.setClassName(className);
+                String message = violations.getMessage(i);
+                ruleViolation.setDescription(message.isEmpty() ? rule.getMessage() : message);
+                report.addRuleViolation(ruleViolation);
+            }
+            return report;
+        }
     }
 }
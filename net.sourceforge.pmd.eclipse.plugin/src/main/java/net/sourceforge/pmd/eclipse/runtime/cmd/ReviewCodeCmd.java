@@ -9,20 +9,20 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IResourceRuleFactory;
-import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.IWorkspaceRunnable;
@@ -47,13 +47,10 @@ import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
-import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
 import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
 import net.sourceforge.pmd.eclipse.ui.actions.internal.InternalRuleSetUtil;
-import net.sourceforge.pmd.lang.Language;
 
 /**
  * This command executes the PMD engine on a specified resource.
@@ -67,14 +64,18 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
     private static final Logger LOG = LoggerFactory.getLogger(ReviewCodeCmd.class);
 
     /**
-     * Maximum count of changed resources, that are considered to be not a full build. If more than these resources are
-     * changed, PMD will only be executed, if full build option is enabled.
+     * Maximum count of resources, that are considered to be not a full build. If a build of more resources is
+     * requested, PMD will only be executed, if full build option is enabled. Resource deltas are not limited,
+     * large deltas are partly analyzed in the background by the {@link IncrementalReviewScheduler}.
      */
     private static final int MAXIMUM_RESOURCE_COUNT = 5;
 
     private final List<IResource> resources = new ArrayList<>();
     private IResourceDelta resourceDelta;
     private Map<IFile, Set<MarkerInfo2>> markersByFile = new HashMap<>();
+    private final Set<IFile> changedFiles = new HashSet<>();
+    private Map<IFile, Integer> generations;
+    private Set<IResource> reviewedResources;
     private boolean openPmdPerspective;
     private boolean openPmdViolationsOverviewView;
     private boolean openPmdViolationsOutlineView;
@@ -88,8 +89,6 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
      */
     private boolean runAlways = false;
 
-    private IProjectProperties propertyCache = null;
-
     public ReviewCodeCmd() {
         super("ReviewCode", "Run PMD on a list of workbench resources");
 
@@ -173,12 +172,22 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         LOG.debug("ReviewCode command starting.");
         try {
             fileCount = 0;
+            changedFiles.clear();
             ruleCount = 0;
             pmdDuration = 0;
 
             String projectList = determineProjectList();
-            int totalWork = determineTotalWork();
-            LOG.info("Found {} resources in projects {}", totalWork, projectList);
+
+            // The resources are traversed only once: the collected files determine the
+            // total work and are the work queue of the analysis afterwards.
+            // PMDPlugin fills resources if it's a full build and
+            // resourcesDelta if it is incremental or auto
+            List<ProjectReview> projectReviews = resources.isEmpty() ? collectResourceDelta() : collectResources();
+            int totalWork = 0;
+            for (ProjectReview projectReview : projectReviews) {
+                totalWork += projectReview.visitor.getCollectedFiles().size();
+            }
+            LOG.info("Found {} files to review in projects {}", totalWork, projectList);
             setStepCount(totalWork); // mostly for unit tests
 
             StringBuilder mainTaskName = new StringBuilder(projectList.length() + 20);
@@ -186,12 +195,11 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
             beginTask(mainTaskName.toString(), totalWork);
 
             // Lancer PMD
-            // PMDPlugin fills resources if it's a full build and
-            // resourcesDelta if it is incremental or auto
-            if (resources.isEmpty()) {
-                processResourceDelta();
-            } else {
-                processResources();
+            for (ProjectReview projectReview : projectReviews) {
+                if (isCanceled()) {
+                    break;
+                }
+                reviewProject(projectReview);
             }
 
             // do we really need to do any of the rest of this if
@@ -208,19 +216,6 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                     }
                 };
 
-                // clear the markers here. The call to Resource.deleteMarkers
-                // will
-                // also call the Workspace.prepareOperation so do that
-                // outside the larger "applyMarkers" call to avoid doubly
-                // holding locks
-                // for too long
-                for (IFile file : markersByFile.keySet()) {
-                    if (isCanceled()) {
-                        break;
-                    }
-                    MarkerUtil.deleteAllMarkersIn(file);
-                }
-
                 final IWorkspace workspace = ResourcesPlugin.getWorkspace();
                 workspace.run(action, getSchedulingRule(), IWorkspace.AVOID_UPDATE, getMonitor());
             }
@@ -243,7 +238,7 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                 PMDPlugin.getDefault().showView(PMDPlugin.VIOLATIONS_OUTLINE_ID);
             }
 
-        } catch (CoreException e) {
+        } catch (CoreException | PropertiesException e) {
             throw new RuntimeException("Core exception when reviewing code", e);
         } finally {
             LOG.debug("ReviewCode command has ended.");
@@ -262,91 +257,8 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
             }
         }
 
-        PMDPlugin.getDefault().changedFiles(markedFiles());
-    }
-
-    private int determineTotalWork() {
-        boolean useFileExtensions = PMDPlugin.getDefault().loadPreferences().isDetermineFiletypesAutomatically();
-        Map<IProject, Set<String>> fileExtensionsPerProject = new HashMap<>();
-        CountVisitor2 visitor = new CountVisitor2(useFileExtensions, fileExtensionsPerProject);
-
-        for (IResource resource : resources) {
-            determineFileExtensions(fileExtensionsPerProject, resource);
-
-            try {
-                if (resource instanceof IProject && ((IProject) resource).hasNature(JavaCore.NATURE_ID)) {
-                    for (IResource sourceFolder : getJavaProjectSourceFolders((IProject) resource)) {
-                        sourceFolder.accept(visitor);
-                    }
-                } else {
-                    resource.accept(visitor);
-                }
-            } catch (CoreException e) {
-                LOG.warn("Error while counting resources for {}", resource, e);
-            }
-        }
-        if (resourceDelta != null) {
-            IResource resource = resourceDelta.getResource();
-            determineFileExtensions(fileExtensionsPerProject, resource);
-            try {
-                resource.accept(visitor);
-            } catch (CoreException e) {
-                LOG.warn("Error while counting resources for {} (delta)", resource, e);
-            }
-        }
-        return visitor.getCount();
-    }
-
-    private void determineFileExtensions(Map<IProject, Set<String>> fileExtensionsPerProject, IResource resource) {
-        IProject project = resource.getProject();
-        if (project != null && !fileExtensionsPerProject.containsKey(project)) {
-            try {
-                List<RuleSet> rulesets = rulesetsFrom(resource);
-                Set<String> fileExtensions = determineFileExtensions(rulesets);
-                fileExtensionsPerProject.put(project, fileExtensions);
-            } catch (PropertiesException e) {
-                LOG.warn("Error while determining file extensions for project {}", project, e);
-                fileExtensionsPerProject.put(project, Collections.<String>emptySet());
-            }
-        }
-    }
-
-    private static class CountVisitor2 implements IResourceVisitor {
-        private final boolean useFileExtensions;
-        private final Map<IProject, Set<String>> fileExtensionsPerProject;
-        private int count;
-
-        CountVisitor2(boolean useFileExtensions, Map<IProject, Set<String>> fileExtensionsPerProject) {
-            this.useFileExtensions = useFileExtensions;
-            this.fileExtensionsPerProject = fileExtensionsPerProject;
-        }
-
-        CountVisitor2(boolean useFileExtensions, IProject project, Set<String> fileExtensions) {
-            this.useFileExtensions = useFileExtensions;
-            this.fileExtensionsPerProject = new HashMap<>();
-            this.fileExtensionsPerProject.put(project, fileExtensions);
-        }
-
-        @Override
-        public boolean visit(IResource resource) throws CoreException {
-            if (resource instanceof IFile) {
-                if (useFileExtensions) {
-                    Set<String> extensions = fileExtensionsPerProject.get(resource.getProject());
-                    String extension = resource.getFileExtension();
-                    if (extensions != null && extension != null
-                            && extensions.contains(extension.toLowerCase(Locale.ROOT))) {
-                        count++;
-                    }
-                } else {
-                    // count all files
-                    count++;
-                }
-            }
-            return true;
-        }
-
-        public int getCount() {
-            return count;
+        if (!changedFiles.isEmpty()) {
+            PMDPlugin.getDefault().changedFiles(changedFiles);
         }
     }
 
@@ -414,6 +326,16 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         // the flag was never used
     }
 
+    /**
+     * Marks this command as a slice of the background review. The markers are only
+     * applied to files, that have not been changed by a newer delta in the meantime.
+     *
+     * @param generations the generations of the files at the time they were queued
+     */
+    void setGenerations(Map<IFile, Integer> generations) {
+        this.generations = generations;
+    }
+
     public void setRunAlways(boolean runAlways) {
         this.runAlways = runAlways;
     }
@@ -450,11 +372,13 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
     public void reset() {
         resources.clear();
         markersByFile = new HashMap<>();
+        changedFiles.clear();
         setTerminated(false);
         openPmdPerspective = false;
         openPmdViolationsOverviewView = false;
         openPmdViolationsOutlineView = false;
         runAlways = false;
+        reviewedResources = null;
     }
 
     @Override
@@ -462,6 +386,105 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         return !resources.isEmpty() || resourceDelta != null;
     }
 
+    /**
+     * The reviews of the builder are identified by the reviewed resources, which are the
+     * changed files for a resource delta. The other reviews are always queued, as their
+     * results may be read by the caller.
+     */
+    @Override
+    protected Set<IResource> pendingKey() {
+        if (getKind() != CommandKind.BUILDER) {
+            return null;
+        }
+        if (reviewedResources == null) {
+            reviewedResources = resourceDelta == null ? new HashSet<>(resources) : changedFilesOf(resourceDelta);
+        }
+        return reviewedResources;
+    }
+
+    /**
+     * A newer review of the builder makes the older reviews of the same files or of
+     * the files of the same projects (for a full build) obsolete, as they would analyze
+     * outdated content.
+     */
+    @Override
+    protected boolean supersedes(AbstractDefaultCommand command) {
+        if (getKind() != CommandKind.BUILDER || command.getKind() != CommandKind.BUILDER
+                || !(command instanceof ReviewCodeCmd)) {
+            return false;
+        }
+        Set<IResource> supersededResources = ((ReviewCodeCmd) command).reviewedResources;
+        if (reviewedResources == null || supersededResources == null) {
+            return false;
+        }
+        if (reviewedResources.equals(supersededResources)) {
+            return true;
+        }
+        if (resourceDelta != null) {
+            return false;
+        }
+        for (IResource resource : reviewedResources) {
+            if (!(resource instanceof IProject)) {
+                return false;
+            }
+        }
+        for (IResource resource : supersededResources) {
+            if (!reviewedResources.contains(resource.getProject())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * If the builder is far ahead of the reviews, the changed files of a resource delta
+     * are handed over to the background review.
+     */
+    @Override
+    protected boolean deferWhenBusy() {
+        if (getKind() != CommandKind.BUILDER || resourceDelta == null || reviewedResources == null) {
+            return false;
+        }
+        List<IFile> files = new ArrayList<>();
+        for (IResource resource : reviewedResources) {
+            if (resource instanceof IFile && resource.exists()) {
+                files.add((IFile) resource);
+            }
+        }
+        IncrementalReviewScheduler scheduler = IncrementalReviewScheduler.getInstance();
+        scheduler.supersede(files);
+        scheduler.enqueue(files);
+        return true;
+    }
+
+    /**
+     * @return the added and changed files of the delta, which are not derived, or
+     *     <code>null</code> if the delta could not be visited
+     */
+    private static Set<IResource> changedFilesOf(IResourceDelta rootDelta) {
+        final Set<IResource> files = new HashSet<>();
+        try {
+            rootDelta.accept(new IResourceDeltaVisitor() {
+                @Override
+                public boolean visit(IResourceDelta delta) {
+                    IResource resource = delta.getResource();
+                    if (resource.isDerived()) {
+                        return false;
+                    }
+                    if (resource instanceof IFile && (delta.getKind() == IResourceDelta.ADDED
+                            || delta.getKind() == IResourceDelta.CHANGED)) {
+                        files.add(resource);
+                    }
+                    return true;
+                }
+            });
+        } catch (CoreException e) {
+            LOG.debug("Could not visit the resource delta {}: {}", rootDelta.getResource(), e.toString());
+            return null;
+        }
+        return files;
+    }
+
     /**
      * @return the scheduling rule needed to apply markers
      */
@@ -484,126 +507,153 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
     }
 
     /**
-     * Process the list of workbench resources
+     * Collect the files of the list of workbench resources. The resources are grouped by project,
+     * so that all files of a project are analyzed together.
      */
-    private void processResources() {
+    private List<ProjectReview> collectResources() {
+        List<IResource> resourcesToReview = new ArrayList<>();
         for (IResource resource : resources) {
-            if (!isCanceled()) {
-                // if resource is a project, visit only its source folders
-                if (resource instanceof IProject) {
-                    processProject((IProject) resource);
-                } else {
-                    processResource(resource);
-                }
+            // if resource is a project, visit only its source folders
+            if (resource instanceof IProject) {
+                resourcesToReview.addAll(projectResourcesToReview((IProject) resource));
+            } else {
+                resourcesToReview.add(resource);
             }
         }
-    }
 
-    private IProjectProperties getProjectProperties(IProject project) throws PropertiesException {
-        if (propertyCache == null || !propertyCache.getProject().getName().equals(project.getName())) {
-            propertyCache = PMDPlugin.getDefault().loadProjectProperties(project);
+        Map<IProject, List<IResource>> resourcesByProject = new LinkedHashMap<>();
+        for (IResource resource : resourcesToReview) {
+            IProject project = resource.getProject();
+            List<IResource> projectResources = resourcesByProject.get(project);
+            if (projectResources == null) {
+                projectResources = new ArrayList<>();
+                resourcesByProject.put(project, projectResources);
+            }
+            projectResources.add(resource);
+        }
+
+        List<ProjectReview> projectReviews = new ArrayList<>();
+        for (Map.Entry<IProject, List<IResource>> entry : resourcesByProject.entrySet()) {
+            if (isCanceled()) {
+                break;
+            }
+            ProjectReview projectReview = collectProjectResources(entry.getKey(), entry.getValue());
+            if (projectReview != null) {
+                projectReviews.add(projectReview);
+            }
         }
-        return propertyCache;
+        return projectReviews;
     }
 
-    private List<RuleSet> rulesetsFrom(IResource resource) throws PropertiesException {
-        IProject project = resource.getProject();
-        IProjectProperties properties = getProjectProperties(project);
+    private IProjectProperties getProjectProperties(IProject project) throws PropertiesException {
+        // the properties manager keeps the properties of all projects in memory
+        return PMDPlugin.getDefault().loadProjectProperties(project);
+    }
 
-        return filteredRuleSets(properties); // properties.getProjectRuleSet();
+    private EffectiveRuleSets effectiveRuleSets(IProject project) throws PropertiesException {
+        EffectiveRuleSets effectiveRuleSets = EffectiveRuleSets.forProject(project, getProjectProperties(project));
+        taskScope(effectiveRuleSets.getActiveRuleCount(), effectiveRuleSets.getTotalRuleCount());
+        return effectiveRuleSets;
     }
 
     /**
-     * Review a single resource. The given resource might be a directory, though.
+     * Review resources of a single project. The given resources might be directories, though.
+     * All files are collected first and then analyzed by one PMD analysis.
      */
-    private void processResource(IResource resource) {
+    private ProjectReview collectProjectResources(IProject project, List<IResource> projectResources) {
         try {
-
-            final IProject project = resource.getProject();
             final IProjectProperties properties = getProjectProperties(project);
             if (!runAlways && !properties.isPmdEnabled()) {
-                return;
+                return null;
             }
 
-            List<RuleSet> ruleSets = rulesetsFrom(resource);
-            Set<String> fileExtensions = determineFileExtensions(ruleSets);
-            // final PMDEngine pmdEngine = getPmdEngineForProject(project);
-            int targetCount = 0;
-            if (resource.exists()) {
-                targetCount = countResourceElement(resource, fileExtensions);
-            }
-            // Could add a property that lets us set the max number to analyze
-            if (properties.isFullBuildEnabled() || isUserInitiated() || targetCount <= MAXIMUM_RESOURCE_COUNT) {
-                setStepCount(targetCount);
-                LOG.debug("Visiting resource {}: {}", resource.getName(), getStepCount());
+            LOG.debug("Visiting resources of project {}", project.getName());
+            ResourceVisitor visitor = new ResourceVisitor();
+            configureVisitor(visitor, project, properties);
+            for (IResource resource : projectResources) {
                 if (resource.exists()) {
-                    final ResourceVisitor visitor = new ResourceVisitor();
-                    visitor.setMonitor(getMonitor());
-                    visitor.setRuleSetList(ruleSets);
-                    visitor.setFileExtensions(fileExtensions);
-                    visitor.setAccumulator(markersByFile);
-                    visitor.setProjectProperties(properties);
                     resource.accept(visitor);
-
-                    ruleCount = InternalRuleSetUtil.countRules(ruleSets);
-                    fileCount += visitor.getProcessedFilesCount();
-                    pmdDuration += visitor.getActualPmdDuration();
                 } else {
                     LOG.debug("Skipping resource {} because it doesn't exist.", resource.getName());
                 }
-            } else {
-                LOG.info("Skipping resource {} because of fullBuildEnabled flag and "
-                        + "targetCount is {}. This is more than {}. "
-                        + "If you want to execute PMD, please check \"Full build enabled\" in the project settings.",
-                        resource.getName(), targetCount, MAXIMUM_RESOURCE_COUNT);
             }
-
+            return new ProjectReview(project, properties, visitor, false);
         } catch (PropertiesException | CoreException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private Set<String> determineFileExtensions(List<RuleSet> ruleSets) {
-        Set<Language> languages = new HashSet<>();
-        for (RuleSet ruleset : ruleSets) {
-            for (Rule rule : ruleset.getRules()) {
-                languages.add(rule.getLanguage());
+    private void configureVisitor(BaseVisitor visitor, IProject project, IProjectProperties properties)
+            throws PropertiesException {
+        EffectiveRuleSets effectiveRuleSets = effectiveRuleSets(project);
+        visitor.setMonitor(getMonitor());
+        visitor.setRuleSetList(effectiveRuleSets.getRuleSets());
+        visitor.setFileExtensions(effectiveRuleSets.getFileExtensions());
+        visitor.setAccumulator(markersByFile);
+        visitor.setProjectProperties(properties);
+        visitor.setThreads(PMDPlugin.getDefault().loadPreferences().getAnalysisThreads());
+    }
+
+    /**
+     * Analyzes the collected files of a project.
+     */
+    private void reviewProject(ProjectReview projectReview) throws PropertiesException {
+        BaseVisitor visitor = projectReview.visitor;
+        IProjectProperties properties = projectReview.properties;
+        int targetCount = visitor.getCollectedFiles().size();
+        IncrementalReviewScheduler scheduler = IncrementalReviewScheduler.getInstance();
+
+        if (projectReview.delta) {
+            // Large deltas (e.g. a checkout) are only analyzed partly right away,
+            // the remaining files are analyzed in the background
+            scheduler.supersede(visitor.getCollectedFiles());
+            if (!properties.isFullBuildEnabled() && !isUserInitiated()) {
+                visitor.retainCollectedFiles(new HashSet<>(scheduler.schedule(visitor.getCollectedFiles())));
             }
+        } else if (!properties.isFullBuildEnabled() && !isUserInitiated() && generations == null
+                && targetCount > MAXIMUM_RESOURCE_COUNT) {
+            // Could add a property that lets us set the max number to analyze
+            LOG.info("Skipping resources of project {} because of fullBuildEnabled flag and "
+                    + "targetCount is {}. This is more than {}. "
+                    + "If you want to execute PMD, please check \"Full build enabled\" in the project settings.",
+                    projectReview.project.getName(), targetCount, MAXIMUM_RESOURCE_COUNT);
+            worked(targetCount);
+            return;
         }
-        Set<String> fileExtensions = new HashSet<>();
-        for (Language language : languages) {
-            for (String extension : language.getExtensions()) {
-                fileExtensions.add(extension.toLowerCase(Locale.ROOT));
-            }
+        // the files, that are not analyzed now, are done as far as this command is concerned
+        worked(targetCount - visitor.getCollectedFiles().size());
+
+        // the visitor forgets the collected files, when it has analyzed them
+        List<IFile> analyzedFiles = new ArrayList<>(visitor.getCollectedFiles());
+        visitor.analyzeCollectedFiles();
+        if (projectReview.delta) {
+            scheduler.recordDuration(visitor.getProcessedFilesCount(), visitor.getActualPmdDuration());
+            scheduler.reviewed(analyzedFiles);
         }
-        LOG.debug("Determined applicable file extensions: {}", fileExtensions);
-        return fileExtensions;
+
+        ruleCount = InternalRuleSetUtil.countRules(visitor.getRuleSetList());
+        fileCount += visitor.getProcessedFilesCount();
+        pmdDuration += visitor.getActualPmdDuration();
     }
 
     /**
-     * Review an entire project
+     * Determines the resources to review for an entire project. For java projects,
+     * these are the source folders only.
      */
-    private void processProject(IProject project) {
+    private List<IResource> projectResourcesToReview(IProject project) {
         try {
             subTask("Review " + project);
 
             if (project.hasNature(JavaCore.NATURE_ID)) {
-                processJavaProject(project);
-            } else {
-                processResource(project);
+                return getJavaProjectSourceFolders(project);
             }
+            return Collections.<IResource>singletonList(project);
 
         } catch (CoreException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private void processJavaProject(IProject project) throws CoreException {
-        for (IResource sourceFolder : getJavaProjectSourceFolders(project)) {
-            processResource(sourceFolder);
-        }
-    }
-
     private List<IResource> getJavaProjectSourceFolders(IProject project) throws CoreException {
         List<IResource> sourceFolders = new ArrayList<>();
         final IJavaProject javaProject = JavaCore.create(project);
@@ -640,102 +690,35 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
                 + " rules");
     }
 
-    private List<RuleSet> filteredRuleSets(IProjectProperties properties) throws PropertiesException {
-        final List<RuleSet> projectRuleSets = properties.getProjectRuleSetList();
-        IPreferences preferences = PMDPlugin.getDefault().getPreferencesManager().loadPreferences();
-        Set<String> onlyActiveRuleNames = preferences.getActiveRuleNames();
-
-        List<RuleSet> filteredRuleSets = new ArrayList<>();
-
-        for (RuleSet ruleSet : projectRuleSets) {
-            int rulesBefore = ruleSet.size();
-            RuleSet filteredRuleSet = RuleSetUtil.newCopyOf(ruleSet);
-            if (preferences.getGlobalRuleManagement()) {
-                // TODO: active rules are not language aware... filter by rule name...
-                List<Rule> rulesToKeep = new ArrayList<>();
-                for (Rule rule : filteredRuleSet.getRules()) {
-                    if (onlyActiveRuleNames.contains(rule.getName())) {
-                        rulesToKeep.add(rule);
-                    }
-                }
-                filteredRuleSet = RuleSetUtil.retainOnly(filteredRuleSet, rulesToKeep);
-                int rulesAfter = filteredRuleSet.size();
-
-                if (rulesAfter < rulesBefore) {
-                    LOG.warn("Ruleset has been filtered as Global Rule Management is active. "
-                            + "{} of {} rules are active and are used. {} rules will be ignored.",
-                            rulesAfter, rulesBefore, rulesBefore - rulesAfter);
-                }
-            }
-            filteredRuleSet = InternalRuleSetUtil.addExcludePatterns(filteredRuleSet,
-                    InternalRuleSetUtil.convertStringPatterns(preferences.activeExclusionPatterns()),
-                    InternalRuleSetUtil.convertStringPatterns(properties.getBuildPathExcludePatterns()));
-            filteredRuleSet = InternalRuleSetUtil.addIncludePatterns(filteredRuleSet,
-                    InternalRuleSetUtil.convertStringPatterns(preferences.activeInclusionPatterns()),
-                    InternalRuleSetUtil.convertStringPatterns(properties.getBuildPathIncludePatterns()));
-            filteredRuleSets.add(filteredRuleSet);
-        }
-
-        taskScope(InternalRuleSetUtil.countRules(filteredRuleSets), InternalRuleSetUtil.countRules(projectRuleSets));
-        return filteredRuleSets;
-    }
-
-    private List<RuleSet> rulesetsFromResourceDelta() throws PropertiesException {
-
-        IResource resource = resourceDelta.getResource();
-        final IProject project = resource.getProject();
-        final IProjectProperties properties = getProjectProperties(project);
-
-        return filteredRuleSets(properties); // properties.getProjectRuleSet();
-    }
-
     /**
      * Review a resource delta.
      */
-    private void processResourceDelta() {
+    private List<ProjectReview> collectResourceDelta() {
         try {
             IResource resource = resourceDelta.getResource();
             final IProject project = resource.getProject();
             final IProjectProperties properties = getProjectProperties(project);
             LOG.info("ReviewCodeCmd started on resource delta {} in {}", resource.getName(), project);
 
-            final List<RuleSet> ruleSets = rulesetsFromResourceDelta();
-            Set<String> fileExtensions = determineFileExtensions(ruleSets);
-
-            // PMDEngine pmdEngine = getPmdEngineForProject(project);
-            int targetCount = countDeltaElement(resourceDelta);
-            // Could add a property that lets us set the max number to analyze
-            if (properties.isFullBuildEnabled() || isUserInitiated() || targetCount <= MAXIMUM_RESOURCE_COUNT) {
-                setStepCount(targetCount);
-                LOG.debug("Visiting delta of resource {}: {}", resource.getName(), getStepCount());
-
-                DeltaVisitor visitor = new DeltaVisitor();
-                visitor.setMonitor(getMonitor());
-                visitor.setRuleSetList(ruleSets);
-                visitor.setFileExtensions(fileExtensions);
-                visitor.setAccumulator(markersByFile);
-                visitor.setProjectProperties(properties);
-                resourceDelta.accept(visitor);
-
-                ruleCount = InternalRuleSetUtil.countRules(ruleSets);
-                fileCount += visitor.getProcessedFilesCount();
-                pmdDuration += visitor.getActualPmdDuration();
-            } else {
-                LOG.info("Skipping resourceDelta {} because of fullBuildEnabled flag and targetCount is {}. "
-                        + "This is more than {}. If you want to execute PMD, please check \"Full build enabled\" "
-                        + "in the project settings.", resource.getName(), targetCount, MAXIMUM_RESOURCE_COUNT);
-            }
+            LOG.debug("Visiting delta of resource {}", resource.getName());
+            DeltaVisitor visitor = new DeltaVisitor();
+            configureVisitor(visitor, project, properties);
+            resourceDelta.accept(visitor);
+            return Collections.singletonList(new ProjectReview(project, properties, visitor, true));
         } catch (PropertiesException | CoreException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * Apply PMD markers after the review.
+     * Apply PMD markers after the review. The new markers are compared with the
+     * existing markers of each file, so that unchanged markers are kept and
+     * only vanished markers are deleted and new markers are created.
      */
     private void applyMarkers() {
         LOG.debug("Processing marker directives");
         int violationCount = 0;
+        MarkerChanges changes = new MarkerChanges();
         long start = System.currentTimeMillis();
 
         String currentFile = ""; // for logging
@@ -743,16 +726,21 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         beginTask("PMD Applying markers", markersByFile.size());
 
         try {
-            for (IFile file : markersByFile.keySet()) {
+            for (Map.Entry<IFile, Set<MarkerInfo2>> entry : markersByFile.entrySet()) {
                 if (isCanceled()) {
                     break;
                 }
+                IFile file = entry.getKey();
                 currentFile = file.getName();
-                Set<MarkerInfo2> markerInfoSet = markersByFile.get(file);
-                for (MarkerInfo2 markerInfo : markerInfoSet) {
-                    markerInfo.addAsMarkerTo(file);
-                    violationCount++;
+                if (generations != null
+                        && !IncrementalReviewScheduler.getInstance().isCurrent(file, generations.get(file))) {
+                    LOG.debug("Skipping markers of {}, it has been changed in the meantime", file);
+                    continue;
                 }
+                if (applyMarkers(file, entry.getValue(), changes)) {
+                    changedFiles.add(file);
+                }
+                violationCount += entry.getValue().size();
 
                 worked(1);
             }
@@ -762,61 +750,78 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
         } finally {
             long duration = System.currentTimeMillis() - start;
             int count = markersByFile.size();
-            LOG.debug("applyMarkers: {} markers applied on {} files in {} ms.", violationCount, count, duration);
+            LOG.debug("applyMarkers: {} markers applied on {} files in {} ms: "
+                    + "{} kept, {} updated, {} deleted, {} created.", violationCount, count, duration,
+                    changes.kept, changes.updated, changes.deleted, changes.created);
             LOG.info("End of processing marker directives. " + violationCount + " violations for " + count + " files.");
         }
     }
 
     /**
-     * Count the number of sub-resources of a resource.
+     * Replaces the PMD markers of the given file with the new markers, touching only the markers that differ.
      *
-     * @param resource a project
-     * @param fileExtensions the file extensions that should match
-     * @return the element count
+     * @return <code>true</code> if any marker of the file has been changed
      */
-    private int countResourceElement(IResource resource, Set<String> fileExtensions) {
-        boolean checkFileExtensions = PMDPlugin.getDefault().loadPreferences().isDetermineFiletypesAutomatically();
-
-        if (resource instanceof IFile) {
-            if (checkFileExtensions && fileExtensions != null) {
-                String extension = resource.getFileExtension();
-                if (extension != null && fileExtensions.contains(extension.toLowerCase(Locale.ROOT))) {
-                    return 1;
-                } else {
-                    return 0;
-                }
+    private boolean applyMarkers(IFile file, Set<MarkerInfo2> newMarkers, MarkerChanges changes)
+            throws CoreException {
+        if (!file.exists()) {
+            return false;
+        }
+
+        // the same violation might be reported more than once for the same line.
+        // The priority, dfa and task markers are subtypes of the PMD marker, so a single lookup finds each marker once.
+        Map<String, List<IMarker>> existingMarkers = new HashMap<>();
+        for (IMarker marker : file.findMarkers(PMDRuntimeConstants.PMD_MARKER, true, IResource.DEPTH_ZERO)) {
+            String identity = MarkerInfo2.identityOf(marker);
+            List<IMarker> markers = existingMarkers.get(identity);
+            if (markers == null) {
+                markers = new ArrayList<>(1);
+                existingMarkers.put(identity, markers);
+            }
+            markers.add(marker);
+        }
+
+        boolean changed = false;
+        List<MarkerInfo2> markersToCreate = new ArrayList<>();
+        for (MarkerInfo2 markerInfo : newMarkers) {
+            List<IMarker> markers = existingMarkers.get(markerInfo.identity());
+            if (markers == null || markers.isEmpty()) {
+                markersToCreate.add(markerInfo);
+            } else if (markerInfo.updateMarker(markers.remove(markers.size() - 1))) {
+                changes.updated++;
+                changed = true;
+            } else {
+                changes.kept++;
             }
-            return 1;
         }
 
-        final CountVisitor2 visitor = new CountVisitor2(checkFileExtensions, resource.getProject(), fileExtensions);
+        List<IMarker> markersToDelete = new ArrayList<>();
+        for (List<IMarker> markers : existingMarkers.values()) {
+            markersToDelete.addAll(markers);
+        }
+        if (!markersToDelete.isEmpty()) {
+            file.getWorkspace().deleteMarkers(markersToDelete.toArray(new IMarker[markersToDelete.size()]));
+            changes.deleted += markersToDelete.size();
+            changed = true;
+        }
 
-        try {
-            resource.accept(visitor);
-        } catch (CoreException e) {
-            LOG.error("Exception when counting elements of a project: {}", e.toString(), e);
+        for (MarkerInfo2 markerInfo : markersToCreate) {
+            markerInfo.addAsMarkerTo(file);
+            changes.created++;
+            changed = true;
         }
 
-        return visitor.getCount();
+        return changed;
     }
 
     /**
-     * Count the number of sub-resources of a delta.
-     *
-     * @param delta
-     *            a resource delta
-     * @return the element count
+     * Statistics about the marker changes of one review.
      */
-    private int countDeltaElement(IResourceDelta delta) {
-        final CountVisitor visitor = new CountVisitor();
-
-        try {
-            delta.accept(visitor);
-        } catch (CoreException e) {
-            LOG.error("Exception counting elements in a delta selection: {}", e.toString(), e);
-        }
-
-        return visitor.count;
+    private static class MarkerChanges {
+        private int kept;
+        private int updated;
+        private int deleted;
+        private int created;
     }
 
     /**
@@ -832,24 +837,19 @@ public class ReviewCodeCmd extends AbstractDefaultCommand {
     }
 
     /**
-     * Private inner class to count the number of resources or delta elements. Only files are counted.
+     * The files of a project, that have been collected for the review.
      */
-    private final class CountVisitor implements IResourceVisitor, IResourceDeltaVisitor {
-        public int count = 0;
+    private static class ProjectReview {
+        private final IProject project;
+        private final IProjectProperties properties;
+        private final BaseVisitor visitor;
+        private final boolean delta;
 
-        @Override
-        public boolean visit(IResource resource) {
-            if (resource instanceof IFile) {
-                count++;
-            }
-            return true;
-        }
-
-        @Override
-        public boolean visit(IResourceDelta delta) {
-            IResource resource = delta.getResource();
-            return visit(resource);
+        ProjectReview(IProject project, IProjectProperties properties, BaseVisitor visitor, boolean delta) {
+            this.project = project;
+            this.properties = properties;
+            this.visitor = visitor;
+            this.delta = delta;
         }
     }
-
 }
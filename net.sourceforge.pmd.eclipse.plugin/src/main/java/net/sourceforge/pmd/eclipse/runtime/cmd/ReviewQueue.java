@@ -0,0 +1,177 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The queue of the background review of the {@link IncrementalReviewScheduler}: the files,
+ * that are waiting for their analysis, and the files of the running slice.
+ *
+ * <p>Each file, that is superseded by a newer delta, gets a new generation. The generation
+ * is only kept as long as the file is waiting or being analyzed, see {@link #reviewed(Collection)}.
+ * The queue itself is not thread safe, the scheduler synchronizes the access.
+ *
+ * @param <T> the type of the queued files
+ */
+public class ReviewQueue<T> {
+    private final Map<T, Integer> generations = new HashMap<>();
+    private final Map<T, Integer> pendingFiles = new LinkedHashMap<>();
+    private Map<T, Integer> runningSlice = Collections.emptyMap();
+
+    /**
+     * The generations are unique over all files, so that a forgotten generation
+     * is never mistaken for a newer one.
+     */
+    private int lastGeneration;
+
+    /**
+     * Marks the given files as changed by a newer delta and drops their queued analyses.
+     *
+     * @return <code>true</code> if the running slice contains any of these files
+     */
+    public boolean supersede(Collection<T> files) {
+        boolean sliceSuperseded = false;
+        for (T file : files) {
+            generations.put(file, ++lastGeneration);
+            pendingFiles.remove(file);
+            sliceSuperseded |= runningSlice.containsKey(file);
+        }
+        return sliceSuperseded;
+    }
+
+    /**
+     * Queues the files after the files, that are already waiting.
+     */
+    public void append(List<T> files) {
+        for (T file : files) {
+            pendingFiles.put(file, generations.get(file));
+        }
+    }
+
+    /**
+     * Queues the files in front of the files, that are already waiting.
+     */
+    public void prepend(List<T> files) {
+        Map<T, Integer> queue = new LinkedHashMap<>();
+        for (T file : files) {
+            queue.put(file, generations.get(file));
+        }
+        prepend(queue);
+    }
+
+    /**
+     * Takes the next files out of the queue. Files, that don't exist anymore, are skipped
+     * and forgotten.
+     *
+     * @param maximumSize the maximum number of files of the slice
+     * @return the files of the slice with their generations
+     */
+    public Map<T, Integer> startSlice(int maximumSize) {
+        Map<T, Integer> slice = new LinkedHashMap<>();
+        Iterator<Map.Entry<T, Integer>> pending = pendingFiles.entrySet().iterator();
+        while (pending.hasNext() && slice.size() < maximumSize) {
+            Map.Entry<T, Integer> entry = pending.next();
+            pending.remove();
+            if (exists(entry.getKey())) {
+                slice.put(entry.getKey(), entry.getValue());
+            } else if (isCurrent(entry.getKey(), entry.getValue())) {
+                generations.remove(entry.getKey());
+            }
+        }
+        runningSlice = slice;
+        return slice;
+    }
+
+    /**
+     * Ends the running slice. The files of a canceled slice, that have not been superseded
+     * in the meantime, are queued again in front of the other files. The files of a completed
+     * slice are done.
+     */
+    public void finishSlice(Map<T, Integer> slice, boolean canceled) {
+        runningSlice = Collections.emptyMap();
+        Map<T, Integer> current = new LinkedHashMap<>();
+        for (Map.Entry<T, Integer> entry : slice.entrySet()) {
+            if (isCurrent(entry.getKey(), entry.getValue())) {
+                current.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (canceled) {
+            prepend(current);
+        } else {
+            reviewed(current.keySet());
+        }
+    }
+
+    /**
+     * Forgets the generations of the given files, after they have been analyzed. Files,
+     * that have been queued or are being analyzed by a slice in the meantime, are kept.
+     */
+    public void reviewed(Collection<T> files) {
+        for (T file : files) {
+            if (!pendingFiles.containsKey(file) && !runningSlice.containsKey(file)) {
+                generations.remove(file);
+            }
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the file has not been changed by a newer
+     *     delta since the given generation has been recorded
+     */
+    public boolean isCurrent(T file, Integer generation) {
+        Integer current = generations.get(file);
+        return current == null ? generation == null : current.equals(generation);
+    }
+
+    /**
+     * @return <code>true</code> if files are waiting for the next slice
+     */
+    public boolean hasPendingFiles() {
+        return !pendingFiles.isEmpty();
+    }
+
+    /**
+     * @return the number of files, that are waiting for or are in the running slice
+     */
+    public int size() {
+        return pendingFiles.size() + runningSlice.size();
+    }
+
+    /**
+     * @return the number of files, whose generation is currently recorded
+     */
+    public int getGenerationCount() {
+        return generations.size();
+    }
+
+    /**
+     * Forgets all the queued files and generations.
+     */
+    public void clear() {
+        pendingFiles.clear();
+        generations.clear();
+    }
+
+    /**
+     * @return <code>false</code> if the file has been deleted while it was waiting
+     */
+    protected boolean exists(T file) {
+        return true;
+    }
+
+    private void prepend(Map<T, Integer> files) {
+        Map<T, Integer> queue = new LinkedHashMap<>(files);
+        queue.putAll(pendingFiles);
+        pendingFiles.clear();
+        pendingFiles.putAll(queue);
+    }
+}
@@ -8,6 +8,7 @@ import java.io.File;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.eclipse.core.resources.IFile;
@@ -15,11 +16,9 @@ import org.eclipse.core.resources.IResource;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.IPropertyListener;
 
-import net.sourceforge.pmd.PMDConfiguration;
-import net.sourceforge.pmd.PmdAnalysis;
-import net.sourceforge.pmd.Report;
 import net.sourceforge.pmd.Rule;
 import net.sourceforge.pmd.RuleSet;
+import net.sourceforge.pmd.RuleViolation;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
 import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
 import net.sourceforge.pmd.eclipse.util.internal.IOUtil;
@@ -87,27 +86,27 @@ public class ReviewResourceForRuleCommand extends AbstractDefaultCommand {
 
             File sourceCodeFile = file.getFullPath().toFile();
             if (ruleSet.applies(sourceCodeFile)) {
-                PMDConfiguration configuration = new PMDConfiguration();
-                Report report = null;
+                List<RuleViolation> violations = null;
 
-                try (Reader input = new InputStreamReader(file.getContents(), file.getCharset());
-                     PmdAnalysis pmdAnalysis = PmdAnalysis.create(configuration)) {
-
-                    pmdAnalysis.addRuleSet(ruleSet);
-                    pmdAnalysis.files().addSourceFile(IOUtil.toString(input), sourceCodeFile.getAbsolutePath());
-
-                    report = pmdAnalysis.performAnalysisAndCollectReport();
+                // the warm session of the project avoids setting up a new analysis for each refresh
+                try (Reader input = new InputStreamReader(file.getContents(), file.getCharset())) {
+                    violations = AnalysisSession.forProject(file.getProject()).analyze(IOUtil.toString(input),
+                            sourceCodeFile.getAbsoluteFile(), rule);
                 } catch (Exception e) {
                     throw new RuntimeException(e);
                 }
+                if (violations == null) {
+                    // the file could not be parsed
+                    violations = Collections.emptyList();
+                }
 
-                final Report finalResult = report;
+                final List<RuleViolation> finalResult = violations;
                 // trigger event propertyChanged for all listeners
                 Display.getDefault().asyncExec(new Runnable() {
                     @Override
                     public void run() {
                         for (IPropertyListener listener : listenerList) {
-                            listener.propertyChanged(finalResult.getViolations().iterator(),
+                            listener.propertyChanged(finalResult.iterator(),
                                     PMDRuntimeConstants.PROPERTY_REVIEW);
                         }
                     }
@@ -0,0 +1,131 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+
+/**
+ * Index of the violations, that have been reviewed with a plugin style review comment
+ * (<code>// @PMD:REVIEWED:RuleName: by user on date</code>). A review comment applies
+ * to the next line, which is neither blank nor a comment.
+ *
+ * <p>The index is built in a single pass over the already loaded contents of a file.
+ */
+final class ReviewedViolations {
+    static final ReviewedViolations NONE = new ReviewedViolations(Collections.<Review>emptySet());
+
+    private final Set<Review> reviews;
+
+    private ReviewedViolations(Set<Review> reviews) {
+        this.reviews = reviews;
+    }
+
+    /**
+     * @return <code>true</code> if the violation of the given rule at the given line has been reviewed
+     */
+    boolean contains(String ruleName, int lineNumber) {
+        return !reviews.isEmpty() && reviews.contains(new Review(ruleName, lineNumber));
+    }
+
+    /**
+     * Searches for the review comments in the contents of a file.
+     *
+     * @param contents the contents of the file
+     * @return the reviewed violations
+     */
+    static ReviewedViolations scan(String contents) {
+        if (!contents.contains(PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT)) {
+            return NONE;
+        }
+
+        Set<Review> reviews = new HashSet<>();
+        Deque<String> pendingReviews = new ArrayDeque<>();
+        boolean findLine = false;
+        boolean comment = false;
+        int lineNumber = 0;
+        int length = contents.length();
+        int lineStart = 0;
+
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && contents.charAt(lineEnd) != '\n' && contents.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            lineNumber++;
+
+            // trim the line like String.trim()
+            int start = lineStart;
+            int end = lineEnd;
+            while (start < end && contents.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && contents.charAt(end - 1) <= ' ') {
+                end--;
+            }
+
+            if (contents.startsWith("/*", start) && start + 2 <= end) {
+                comment = indexOf(contents, "*/", start, end) == -1;
+            } else if (comment && indexOf(contents, "*/", start, end) != -1) {
+                comment = false;
+            } else if (!comment && contents.startsWith(PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT, start)) {
+                int ruleNameStart = start + PMDRuntimeConstants.PLUGIN_STYLE_REVIEW_COMMENT.length();
+                int ruleNameEnd = indexOf(contents, ":", ruleNameStart, end);
+                pendingReviews.push(contents.substring(ruleNameStart, ruleNameEnd == -1 ? end : ruleNameEnd));
+                findLine = true;
+            } else if (!comment && findLine && start < end && !contents.startsWith("//", start)) {
+                findLine = false;
+                while (!pendingReviews.isEmpty()) {
+                    reviews.add(new Review(pendingReviews.pop(), lineNumber));
+                }
+            }
+
+            // skip the line terminator, which is either \n, \r or \r\n
+            lineStart = lineEnd + 1;
+            if (lineEnd + 1 < length && contents.charAt(lineEnd) == '\r' && contents.charAt(lineEnd + 1) == '\n') {
+                lineStart++;
+            }
+        }
+
+        return new ReviewedViolations(reviews);
+    }
+
+    private static int indexOf(String contents, String str, int from, int to) {
+        int index = contents.indexOf(str, from);
+        return index != -1 && index + str.length() <= to ? index : -1;
+    }
+
+    /**
+     * A reviewed violation of a rule at a line.
+     */
+    private static final class Review {
+        private final String ruleName;
+        private final int lineNumber;
+
+        Review(String ruleName, int lineNumber) {
+            this.ruleName = ruleName;
+            this.lineNumber = lineNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Review)) {
+                return false;
+            }
+            Review other = (Review) obj;
+            return ruleName.equals(other.ruleName) && lineNumber == other.lineNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * ruleName.hashCode() + lineNumber;
+        }
+    }
+}
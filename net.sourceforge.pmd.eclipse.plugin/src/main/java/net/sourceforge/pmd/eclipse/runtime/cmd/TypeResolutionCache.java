@@ -0,0 +1,264 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.cmd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
+
+/**
+ * Caches the class files, that the type resolution reads through the aux classpath
+ * class loaders, so that they are not read again from the jars and output folders for
+ * each analyzed file and each build.
+ *
+ * <p>The class files are cached per scope. The scope is the class loader, that has read
+ * the class file: the shared class loader of the libraries (see {@link AuxClasspathPool})
+ * or the class loader of the output folders of a project (see {@link JavaProjectClassLoader}).
+ * As the shared class loaders are replaced, when a library changes, and the class files
+ * of the output folders are cached with their modification timestamp, the cache is
+ * invalidated selectively for the changed libraries and classes only.
+ *
+ * <p>The size of the cache is limited by the configured size. The least recently used
+ * class files are removed first. The analyses pass the configured size to the cache, when
+ * they start, so that a changed preference applies to the next analysis. See
+ * {@link #setMaximumSize(int)}.
+ */
+public final class TypeResolutionCache {
+    private static final Logger LOG = LoggerFactory.getLogger(TypeResolutionCache.class);
+
+    private static final TypeResolutionCache INSTANCE = new TypeResolutionCache();
+
+    private static final int BYTES_PER_MB = 1024 * 1024;
+
+    /**
+     * The cached class files in access order, the least recently used first.
+     */
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * The maximum size in bytes, it is only changed by {@link #setMaximumSize(int)}.
+     */
+    private volatile long maximumSize = toBytes(IPreferences.TYPE_RESOLUTION_CACHE_SIZE_DEFAULT);
+
+    private long size;
+    private long hits;
+    private long misses;
+
+    private TypeResolutionCache() {
+        // singleton
+    }
+
+    public static TypeResolutionCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets a cached class file.
+     *
+     * @param scope the class loader, that has read the class file
+     * @param name the resource name of the class file, e.g. <code>java/lang/String.class</code>
+     * @param timestamp the modification timestamp of the class file or <code>0</code>,
+     *     if the class file doesn't change within the scope
+     * @return the content of the class file or <code>null</code>, if the class file is not
+     *     cached or has been modified
+     */
+    public synchronized byte[] get(Object scope, String name, long timestamp) {
+        Key key = new Key(scope, name);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.timestamp != timestamp) {
+            entries.remove(key);
+            size -= entry.bytes.length;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.bytes;
+    }
+
+    /**
+     * Caches a class file.
+     *
+     * @see #get(Object, String, long)
+     */
+    public synchronized void put(Object scope, String name, long timestamp, byte[] bytes) {
+        long limit = maximumSize;
+        if (bytes.length > limit) {
+            evict(limit);
+            return;
+        }
+        Entry previous = entries.put(new Key(scope, name), new Entry(timestamp, bytes));
+        if (previous != null) {
+            size -= previous.bytes.length;
+        }
+        size += bytes.length;
+        evict(limit);
+    }
+
+    /**
+     * Sets the maximum size of the cache. It is called with the configured size, when an
+     * analysis starts, the class files, that don't fit anymore, are removed by the next
+     * {@link #put(Object, String, long, byte[])}.
+     *
+     * @param megaBytes the maximum size in MB
+     */
+    public void setMaximumSize(int megaBytes) {
+        maximumSize = toBytes(megaBytes);
+    }
+
+    /**
+     * @return the maximum size of the cache in bytes
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Removes all the class files of a scope, e.g. when the class loader is closed.
+     */
+    public synchronized void removeScope(Object scope) {
+        int removed = 0;
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (entry.getKey().scope == scope) {
+                size -= entry.getValue().bytes.length;
+                iterator.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            LOG.debug("Removed {} class files of closed class loader - {}", removed, getUsage());
+        }
+    }
+
+    /**
+     * @return the number of cached class files
+     */
+    public synchronized int getClassCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return the size of the cached class files in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the size of the cached class files of a scope in bytes
+     */
+    public synchronized long getSize(Object scope) {
+        long scopeSize = 0;
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            if (entry.getKey().scope == scope) {
+                scopeSize += entry.getValue().bytes.length;
+            }
+        }
+        return scopeSize;
+    }
+
+    /**
+     * @return the ratio of the lookups, that have been served from the cache
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return a short description of the cache usage, e.g. for logging
+     */
+    public synchronized String getUsage() {
+        return entries.size() + " cached class files with " + size / 1024 + " KB, "
+                + Math.round(getHitRatio() * 100) + "% hits";
+    }
+
+    /**
+     * Removes all the cached class files.
+     */
+    public synchronized void dispose() {
+        LOG.debug("Disposing type resolution cache - {}", getUsage());
+        entries.clear();
+        size = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    private void evict(long limit) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > limit && iterator.hasNext()) {
+            size -= iterator.next().bytes.length;
+            iterator.remove();
+        }
+    }
+
+    private static long toBytes(int megaBytes) {
+        return (long) Math.max(0, megaBytes) * BYTES_PER_MB;
+    }
+
+    /**
+     * Reads the rest of the stream and closes it.
+     */
+    static byte[] readFully(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(1024, stream.available()));
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * A class file of a scope. The scopes are compared by identity.
+     */
+    private static final class Key {
+        private final Object scope;
+        private final String name;
+
+        Key(Object scope, String name) {
+            this.scope = scope;
+            this.name = name;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(scope) + name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return scope == other.scope && name.equals(other.name);
+        }
+    }
+
+    private static final class Entry {
+        private final long timestamp;
+        private final byte[] bytes;
+
+        Entry(long timestamp, byte[] bytes) {
+            this.timestamp = timestamp;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -32,9 +32,19 @@ public interface IPreferences {
     String REVIEW_ADDITIONAL_COMMENT_DEFAULT = "by {0} on {1}";
     boolean REVIEW_PMD_STYLE_ENABLED_DEFAULT = true;
     int MIN_TILE_SIZE_DEFAULT = 25;
+    boolean CONTINUOUS_CPD_ENABLED_DEFAULT = false;
     String LOG_FILENAME_DEFAULT = System.getProperty("user.home") + "/pmd-eclipse.log";
     String LOG_LEVEL_DEFAULT = "WARN";
 
+    // Performance
+    int ANALYSIS_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+    boolean ANALYSIS_CACHE_ENABLED_DEFAULT = true;
+    boolean ASYNC_BUILDER_ENABLED_DEFAULT = false;
+    int AUX_CLASSPATH_POOL_SIZE_DEFAULT = 20;
+    boolean LIVE_ANALYSIS_ENABLED_DEFAULT = false;
+    int LIVE_ANALYSIS_BUDGET_DEFAULT = 250;
+    int TYPE_RESOLUTION_CACHE_SIZE_DEFAULT = 32;
+
     // default renderer
     String ACTIVE_RENDERERS = "text";
     String ACTIVE_EXCLUSIONS = "";
@@ -194,6 +204,79 @@ public interface IPreferences {
 
     PriorityDescriptor getPriorityDescriptor(RulePriority priority);
 
+    /**
+     * Get the number of threads PMD uses to analyze the files of a project.
+     * A value of 0 analyzes the files in the calling thread.
+     */
+    int getAnalysisThreads();
+
+    /**
+     * Set the number of threads PMD uses to analyze the files of a project.
+     */
+    void setAnalysisThreads(int analysisThreads);
+
+    /**
+     * Should the markers of unchanged files be taken from the persistent analysis cache
+     * instead of analyzing the files again?
+     */
+    boolean isAnalysisCacheEnabled();
+
+    /**
+     * Set whether the persistent analysis cache should be used.
+     */
+    void setAnalysisCacheEnabled(boolean analysisCacheEnabled);
+
+    /**
+     * Whether the builder should only queue the changed files and analyze them in the background,
+     * so that PMD does not add to the build time.
+     */
+    boolean isAsyncBuilderEnabled();
+
+    /**
+     * Sets whether the builder should only queue the changed files and analyze them in the background.
+     */
+    void setAsyncBuilderEnabled(boolean asyncBuilderEnabled);
+
+    /**
+     * Get the maximum number of shared aux classpath class loaders, that are kept open while they are not used.
+     */
+    int getAuxClasspathPoolSize();
+
+    /**
+     * Set the maximum number of shared aux classpath class loaders, that are kept open while they are not used.
+     */
+    void setAuxClasspathPoolSize(int auxClasspathPoolSize);
+
+    /**
+     * Are the unsaved java editors analyzed while typing.
+     */
+    boolean isLiveAnalysisEnabled();
+
+    /**
+     * Enables the analysis of the unsaved java editors while typing.
+     */
+    void setLiveAnalysisEnabled(boolean liveAnalysisEnabled);
+
+    /**
+     * Get the time in milliseconds, that the rules of an analysis while typing may take.
+     */
+    int getLiveAnalysisBudget();
+
+    /**
+     * Sets the time in milliseconds, that the rules of an analysis while typing may take.
+     */
+    void setLiveAnalysisBudget(int liveAnalysisBudget);
+
+    /**
+     * Get the maximum size in MB of the class files, that are cached for the type resolution.
+     */
+    int getTypeResolutionCacheSize();
+
+    /**
+     * Set the maximum size in MB of the class files, that are cached for the type resolution.
+     */
+    void setTypeResolutionCacheSize(int typeResolutionCacheSize);
+
     // CPD Preferences
 
     /**
@@ -207,6 +290,17 @@ public interface IPreferences {
      */
     void setMinTileSize(int minTileSize);
 
+    /**
+     * Whether the duplicated code of the changed files should be detected by the builder, using an index of the
+     * token tiles of the project, that is updated incrementally.
+     */
+    boolean isContinuousCpdEnabled();
+
+    /**
+     * Sets whether the duplicated code of the changed files should be detected by the builder.
+     */
+    void setContinuousCpdEnabled(boolean continuousCpdEnabled);
+
     /**
      * Get the log filename
      */
@@ -57,6 +57,14 @@ class PreferencesImpl implements IPreferences {
     private String groupingColumn;
     private Set<String> selectedRuleNames;
     private int selectedPropertyTab;
+    private int analysisThreads;
+    private boolean analysisCacheEnabled;
+    private boolean asyncBuilderEnabled;
+    private int auxClasspathPoolSize;
+    private boolean continuousCpdEnabled;
+    private boolean liveAnalysisEnabled;
+    private int liveAnalysisBudget;
+    private int typeResolutionCacheSize;
 
     /**
      * Is constructed from a preferences manager
@@ -374,4 +382,84 @@ class PreferencesImpl implements IPreferences {
     public void setSelectedPropertyTab(int anIndex) {
         selectedPropertyTab = anIndex;
     }
+
+    @Override
+    public int getAnalysisThreads() {
+        return analysisThreads;
+    }
+
+    @Override
+    public void setAnalysisThreads(int analysisThreads) {
+        this.analysisThreads = analysisThreads;
+    }
+
+    @Override
+    public boolean isAnalysisCacheEnabled() {
+        return analysisCacheEnabled;
+    }
+
+    @Override
+    public void setAnalysisCacheEnabled(boolean analysisCacheEnabled) {
+        this.analysisCacheEnabled = analysisCacheEnabled;
+    }
+
+    @Override
+    public boolean isAsyncBuilderEnabled() {
+        return asyncBuilderEnabled;
+    }
+
+    @Override
+    public void setAsyncBuilderEnabled(boolean asyncBuilderEnabled) {
+        this.asyncBuilderEnabled = asyncBuilderEnabled;
+    }
+
+    @Override
+    public int getAuxClasspathPoolSize() {
+        return auxClasspathPoolSize;
+    }
+
+    @Override
+    public void setAuxClasspathPoolSize(int auxClasspathPoolSize) {
+        this.auxClasspathPoolSize = auxClasspathPoolSize;
+    }
+
+    @Override
+    public boolean isContinuousCpdEnabled() {
+        return continuousCpdEnabled;
+    }
+
+    @Override
+    public void setContinuousCpdEnabled(boolean continuousCpdEnabled) {
+        this.continuousCpdEnabled = continuousCpdEnabled;
+    }
+
+    @Override
+    public boolean isLiveAnalysisEnabled() {
+        return liveAnalysisEnabled;
+    }
+
+    @Override
+    public void setLiveAnalysisEnabled(boolean liveAnalysisEnabled) {
+        this.liveAnalysisEnabled = liveAnalysisEnabled;
+    }
+
+    @Override
+    public int getLiveAnalysisBudget() {
+        return liveAnalysisBudget;
+    }
+
+    @Override
+    public void setLiveAnalysisBudget(int liveAnalysisBudget) {
+        this.liveAnalysisBudget = liveAnalysisBudget;
+    }
+
+    @Override
+    public int getTypeResolutionCacheSize() {
+        return typeResolutionCacheSize;
+    }
+
+    @Override
+    public void setTypeResolutionCacheSize(int typeResolutionCacheSize) {
+        this.typeResolutionCacheSize = typeResolutionCacheSize;
+    }
 }
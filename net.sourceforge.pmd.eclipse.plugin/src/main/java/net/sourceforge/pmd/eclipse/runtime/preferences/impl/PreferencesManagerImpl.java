@@ -90,6 +90,15 @@ class PreferencesManagerImpl implements IPreferencesManager {
     private static final String SELECTED_RULE_NAMES = PMDPlugin.PLUGIN_ID + ".ruletable.selectedRules";
     private static final String SELECTED_PROPERTY_TAB = PMDPlugin.PLUGIN_ID + ".ruletable.selectedPropertyTab";
 
+    private static final String ANALYSIS_THREADS = PMDPlugin.PLUGIN_ID + ".analysis_threads";
+    private static final String ANALYSIS_CACHE_ENABLED = PMDPlugin.PLUGIN_ID + ".analysis_cache_enabled";
+    private static final String ASYNC_BUILDER_ENABLED = PMDPlugin.PLUGIN_ID + ".analysis_async_builder";
+    private static final String AUX_CLASSPATH_POOL_SIZE = PMDPlugin.PLUGIN_ID + ".analysis_aux_classpath_pool_size";
+    private static final String CONTINUOUS_CPD_ENABLED = PMDPlugin.PLUGIN_ID + ".cpd_continuous";
+    private static final String LIVE_ANALYSIS_ENABLED = PMDPlugin.PLUGIN_ID + ".analysis_live";
+    private static final String LIVE_ANALYSIS_BUDGET = PMDPlugin.PLUGIN_ID + ".analysis_live_budget";
+    private static final String TYPE_RESOLUTION_CACHE_SIZE = PMDPlugin.PLUGIN_ID
+            + ".analysis_type_resolution_cache_size";
 
     private static final String OLD_PREFERENCE_PREFIX = "net.sourceforge.pmd.runtime";
     private static final String OLD_PREFERENCE_LOCATION = "/.metadata/.plugins/org.eclipse.core.runtime/.settings/net.sourceforge.pmd.runtime.prefs";
@@ -197,6 +206,14 @@ class PreferencesManagerImpl implements IPreferencesManager {
         loadGroupingColumn();
         loadSelectedRuleNames();
         loadSelectedPropertyTab();
+        loadAnalysisThreads();
+        loadAnalysisCacheEnabled();
+        loadAsyncBuilderEnabled();
+        loadAuxClasspathPoolSize();
+        loadContinuousCpdEnabled();
+        loadLiveAnalysisEnabled();
+        loadLiveAnalysisBudget();
+        loadTypeResolutionCacheSize();
 
         preferencesTimestamp = getPreferencesTimestamp();
 
@@ -269,6 +286,14 @@ class PreferencesManagerImpl implements IPreferencesManager {
         storeGroupingColumn();
         storeSelectedRuleNames();
         storeSelectedPropertyTab();
+        storeAnalysisThreads();
+        storeAnalysisCacheEnabled();
+        storeAsyncBuilderEnabled();
+        storeAuxClasspathPoolSize();
+        storeContinuousCpdEnabled();
+        storeLiveAnalysisEnabled();
+        storeLiveAnalysisBudget();
+        storeTypeResolutionCacheSize();
 
         IEclipsePreferences prefs = InstanceScope.INSTANCE.getNode(PMDPlugin.getDefault().getBundle().getSymbolicName());
         try {
@@ -289,6 +314,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
             RuleSet newRuleSet = getRuleSetFromStateLocation();
             updateConfiguredProjects(newRuleSet);
             ruleSet = newRuleSet;
+            PMDPlugin.getDefault().getPropertiesManager().pluginRuleSetChanged();
         }
         return ruleSet;
     }
@@ -298,6 +324,7 @@ class PreferencesManagerImpl implements IPreferencesManager {
         updateConfiguredProjects(newRuleSet);
         ruleSet = newRuleSet;
         storeRuleSetInStateLocation(ruleSet);
+        PMDPlugin.getDefault().getPropertiesManager().pluginRuleSetChanged();
     }
 
     private void loadProjectBuildPathEnabled() {
@@ -574,6 +601,77 @@ class PreferencesManagerImpl implements IPreferencesManager {
         storePreferencesStore.setValue(SELECTED_PROPERTY_TAB, preferences.getSelectedPropertyTab());
     }
 
+    private void loadAnalysisThreads() {
+        loadPreferencesStore.setDefault(ANALYSIS_THREADS, IPreferences.ANALYSIS_THREADS_DEFAULT);
+        preferences.setAnalysisThreads(loadPreferencesStore.getInt(ANALYSIS_THREADS));
+    }
+
+    private void storeAnalysisThreads() {
+        storePreferencesStore.setValue(ANALYSIS_THREADS, preferences.getAnalysisThreads());
+    }
+
+    private void loadAnalysisCacheEnabled() {
+        loadPreferencesStore.setDefault(ANALYSIS_CACHE_ENABLED, IPreferences.ANALYSIS_CACHE_ENABLED_DEFAULT);
+        preferences.setAnalysisCacheEnabled(loadPreferencesStore.getBoolean(ANALYSIS_CACHE_ENABLED));
+    }
+
+    private void storeAnalysisCacheEnabled() {
+        storePreferencesStore.setValue(ANALYSIS_CACHE_ENABLED, preferences.isAnalysisCacheEnabled());
+    }
+
+    private void loadAsyncBuilderEnabled() {
+        loadPreferencesStore.setDefault(ASYNC_BUILDER_ENABLED, IPreferences.ASYNC_BUILDER_ENABLED_DEFAULT);
+        preferences.setAsyncBuilderEnabled(loadPreferencesStore.getBoolean(ASYNC_BUILDER_ENABLED));
+    }
+
+    private void storeAsyncBuilderEnabled() {
+        storePreferencesStore.setValue(ASYNC_BUILDER_ENABLED, preferences.isAsyncBuilderEnabled());
+    }
+
+    private void loadAuxClasspathPoolSize() {
+        loadPreferencesStore.setDefault(AUX_CLASSPATH_POOL_SIZE, IPreferences.AUX_CLASSPATH_POOL_SIZE_DEFAULT);
+        preferences.setAuxClasspathPoolSize(loadPreferencesStore.getInt(AUX_CLASSPATH_POOL_SIZE));
+    }
+
+    private void storeAuxClasspathPoolSize() {
+        storePreferencesStore.setValue(AUX_CLASSPATH_POOL_SIZE, preferences.getAuxClasspathPoolSize());
+    }
+
+    private void loadContinuousCpdEnabled() {
+        loadPreferencesStore.setDefault(CONTINUOUS_CPD_ENABLED, IPreferences.CONTINUOUS_CPD_ENABLED_DEFAULT);
+        preferences.setContinuousCpdEnabled(loadPreferencesStore.getBoolean(CONTINUOUS_CPD_ENABLED));
+    }
+
+    private void storeContinuousCpdEnabled() {
+        storePreferencesStore.setValue(CONTINUOUS_CPD_ENABLED, preferences.isContinuousCpdEnabled());
+    }
+
+    private void loadLiveAnalysisEnabled() {
+        loadPreferencesStore.setDefault(LIVE_ANALYSIS_ENABLED, IPreferences.LIVE_ANALYSIS_ENABLED_DEFAULT);
+        preferences.setLiveAnalysisEnabled(loadPreferencesStore.getBoolean(LIVE_ANALYSIS_ENABLED));
+    }
+
+    private void storeLiveAnalysisEnabled() {
+        storePreferencesStore.setValue(LIVE_ANALYSIS_ENABLED, preferences.isLiveAnalysisEnabled());
+    }
+
+    private void loadLiveAnalysisBudget() {
+        loadPreferencesStore.setDefault(LIVE_ANALYSIS_BUDGET, IPreferences.LIVE_ANALYSIS_BUDGET_DEFAULT);
+        preferences.setLiveAnalysisBudget(loadPreferencesStore.getInt(LIVE_ANALYSIS_BUDGET));
+    }
+
+    private void storeLiveAnalysisBudget() {
+        storePreferencesStore.setValue(LIVE_ANALYSIS_BUDGET, preferences.getLiveAnalysisBudget());
+    }
+
+    private void loadTypeResolutionCacheSize() {
+        loadPreferencesStore.setDefault(TYPE_RESOLUTION_CACHE_SIZE, IPreferences.TYPE_RESOLUTION_CACHE_SIZE_DEFAULT);
+        preferences.setTypeResolutionCacheSize(loadPreferencesStore.getInt(TYPE_RESOLUTION_CACHE_SIZE));
+    }
+
+    private void storeTypeResolutionCacheSize() {
+        storePreferencesStore.setValue(TYPE_RESOLUTION_CACHE_SIZE, preferences.getTypeResolutionCacheSize());
+    }
 
     /**
      * Get rule set from state location.
@@ -0,0 +1,24 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.properties;
+
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Is notified, whenever the properties of a project change. This can be used to
+ * invalidate caches, that depend on the project properties.
+ *
+ * @see IProjectPropertiesManager#addProjectPropertiesListener(IProjectPropertiesListener)
+ */
+public interface IProjectPropertiesListener {
+    /**
+     * The properties of the project have been stored, changed on disk or removed.
+     * The changed properties are only read on the next load.
+     *
+     * @param project
+     *            the project
+     */
+    void projectPropertiesChanged(IProject project);
+}
@@ -37,4 +37,26 @@ public interface IProjectPropertiesManager {
      *            the project
      */
     void removeProjectProperties(IProject project);
+
+    /**
+     * Notify the manager, that the plugin ruleset has been changed. The rulesets of the
+     * projects, that use the plugin ruleset, are synchronized on their next load.
+     */
+    void pluginRuleSetChanged();
+
+    /**
+     * Add a listener, that is notified whenever the properties of a project change.
+     * 
+     * @param listener
+     *            the listener
+     */
+    void addProjectPropertiesListener(IProjectPropertiesListener listener);
+
+    /**
+     * Remove a listener, that has been added before.
+     * 
+     * @param listener
+     *            the listener
+     */
+    void removeProjectPropertiesListener(IProjectPropertiesListener listener);
 }
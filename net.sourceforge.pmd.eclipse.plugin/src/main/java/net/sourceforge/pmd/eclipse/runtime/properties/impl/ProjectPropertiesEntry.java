@@ -0,0 +1,133 @@
+/*
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.runtime.properties.impl;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.runtime.IPath;
+
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
+
+/**
+ * An entry of the project properties index. The entry is marked as changed by the
+ * resource change listener of the manager, whenever the properties file or one of the
+ * ruleset files of the project change. As long as the entry is unchanged, the properties
+ * can be returned without accessing the file system.
+ */
+class ProjectPropertiesEntry {
+    static final String PROPERTIES_FILE = ".pmd";
+
+    private final IProjectProperties projectProperties;
+    private final AtomicBoolean propertiesChanged = new AtomicBoolean();
+    private final AtomicBoolean ruleSetChanged = new AtomicBoolean(true);
+    private volatile long propertiesModificationStamp;
+    private volatile Set<IPath> ruleSetFiles = Collections.emptySet();
+    private volatile boolean externalRuleSetFiles;
+
+    ProjectPropertiesEntry(IProjectProperties projectProperties) {
+        this.projectProperties = projectProperties;
+        this.propertiesModificationStamp = getPropertiesFile().getModificationStamp();
+    }
+
+    IProjectProperties getProjectProperties() {
+        return projectProperties;
+    }
+
+    IProject getProject() {
+        return projectProperties.getProject();
+    }
+
+    IFile getPropertiesFile() {
+        return getProject().getFile(PROPERTIES_FILE);
+    }
+
+    /**
+     * @return <code>true</code> if neither the properties nor the ruleset need to be read again.
+     *     Missing ruleset files and ruleset files outside of the workspace
+     *     are not tracked, so they are always checked.
+     */
+    boolean isUpToDate() {
+        return !propertiesChanged.get() && !ruleSetChanged.get() && !externalRuleSetFiles;
+    }
+
+    /**
+     * Marks the properties as changed, if the properties file has been modified by someone else.
+     *
+     * @return <code>true</code> if the entry has been marked
+     */
+    boolean propertiesFileChanged() {
+        if (getPropertiesFile().getModificationStamp() != propertiesModificationStamp) {
+            propertiesChanged.set(true);
+            return true;
+        }
+        return false;
+    }
+
+    void markRuleSetChanged() {
+        ruleSetChanged.set(true);
+    }
+
+    /**
+     * Clears the properties changed mark and remembers the current state of the properties file.
+     *
+     * @return <code>true</code> if the properties have been changed
+     */
+    boolean takePropertiesChanged() {
+        propertiesModificationStamp = getPropertiesFile().getModificationStamp();
+        return propertiesChanged.getAndSet(false);
+    }
+
+    /**
+     * Clears the ruleset changed mark.
+     *
+     * @return <code>true</code> if the ruleset needs to be loaded or synchronized again
+     */
+    boolean takeRuleSetChanged() {
+        return ruleSetChanged.getAndSet(false) || externalRuleSetFiles;
+    }
+
+    Set<IPath> getRuleSetFiles() {
+        return ruleSetFiles;
+    }
+
+    /**
+     * Remembers the workspace paths of the ruleset files, so that changes to them can be detected.
+     *
+     * @throws PropertiesException if the ruleset files could not be determined
+     */
+    void updateRuleSetFiles() throws PropertiesException {
+        if (!projectProperties.isRuleSetStoredInProject()) {
+            ruleSetFiles = Collections.emptySet();
+            externalRuleSetFiles = false;
+            return;
+        }
+
+        IWorkspaceRoot root = getProject().getWorkspace().getRoot();
+        Set<IPath> paths = new HashSet<>();
+        List<File> resolvedFiles = projectProperties.getResolvedRuleSetFiles();
+        // missing ruleset files can't be tracked either
+        boolean external = resolvedFiles.size() < projectProperties.getRuleSetFile().split(",").length;
+        for (File file : resolvedFiles) {
+            IFile[] workspaceFiles = root.findFilesForLocationURI(file.toURI());
+            if (workspaceFiles.length == 0) {
+                external = true;
+            }
+            for (IFile workspaceFile : workspaceFiles) {
+                paths.add(workspaceFile.getFullPath());
+            }
+        }
+        ruleSetFiles = paths;
+        externalRuleSetFiles = external;
+    }
+}
@@ -33,6 +33,7 @@ import net.sourceforge.pmd.PMD;
 import net.sourceforge.pmd.RuleSet;
 import net.sourceforge.pmd.eclipse.core.internal.FileModificationUtil;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.runtime.cmd.AuxClasspathPool;
 import net.sourceforge.pmd.eclipse.runtime.cmd.JavaProjectClassLoader;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesManager;
@@ -466,25 +467,21 @@ public class ProjectPropertiesImpl implements IProjectProperties {
     }
 
     @Override
-    public ClassLoader getAuxClasspath() {
+    public synchronized ClassLoader getAuxClasspath() {
         try {
             if (project != null && project.hasNature(JavaCore.NATURE_ID)) {
                 String projectName = project.getName();
                 if (auxclasspath != null && auxclasspath.isModified()) {
                     PMDPlugin.getDefault().logInformation("Classpath of project " + projectName
                             + " changed - recreating it.");
-                    try {
-                        auxclasspath.close();
-                    } catch (IOException ignored) {
-                        // ignored
-                    }
-                    auxclasspath = null;
+                    disposeAuxClasspath();
                 }
 
                 if (auxclasspath == null) {
                     PMDPlugin.getDefault()
                             .logInformation("Creating new auxclasspath class loader for project " + project.getName());
                     auxclasspath = new JavaProjectClassLoader(PMD.class.getClassLoader(), project);
+                    LOG.debug("Aux classpath pool usage: {}", AuxClasspathPool.getInstance().getUsage());
                 }
                 return auxclasspath;
             }
@@ -494,4 +491,18 @@ public class ProjectPropertiesImpl implements IProjectProperties {
         }
         return null;
     }
+
+    /**
+     * Closes the aux classpath class loader, so that the shared libraries can be released.
+     */
+    synchronized void disposeAuxClasspath() {
+        if (auxclasspath != null) {
+            try {
+                auxclasspath.close();
+            } catch (IOException ignored) {
+                // ignored
+            }
+            auxclasspath = null;
+        }
+    }
 }
@@ -18,6 +18,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 import javax.xml.bind.DataBindingException;
 import javax.xml.bind.JAXBContext;
@@ -29,7 +30,11 @@ import javax.xml.transform.stream.StreamSource;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.ui.IWorkingSetManager;
 import org.eclipse.ui.PlatformUI;
 import org.slf4j.Logger;
@@ -42,6 +47,7 @@ import net.sourceforge.pmd.RuleSetLoader;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.builder.PMDNature;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
+import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesListener;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesManager;
 import net.sourceforge.pmd.eclipse.runtime.properties.PropertiesException;
 import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
@@ -54,12 +60,14 @@ import net.sourceforge.pmd.eclipse.util.internal.IOUtil;
  * @author Philippe Herlin
  *
  */
-public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
+public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager, IResourceChangeListener {
     private static final Logger LOG = LoggerFactory.getLogger(ProjectPropertiesManagerImpl.class);
 
     private static final JAXBContext JAXB_CONTEXT = initJaxbContext();
 
-    private final ConcurrentMap<IProject, ProjectPropertiesTimestampTupel> projectsProperties = new ConcurrentHashMap<>();
+    private final ConcurrentMap<IProject, ProjectPropertiesEntry> projectsProperties = new ConcurrentHashMap<>();
+
+    private final CopyOnWriteArrayList<IProjectPropertiesListener> listeners = new CopyOnWriteArrayList<>();
 
     private static JAXBContext initJaxbContext() {
         try {
@@ -70,47 +78,69 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
     }
 
     /**
-     * Load a project properties.
+     * Load a project properties. The properties are kept in an index, which is updated by
+     * {@link #resourceChanged(IResourceChangeEvent)}. As long as neither the properties file
+     * nor the ruleset files have been changed, the properties are returned without any
+     * file system access.
      *
      * @param project
      *            a project
      */
     @Override
     public IProjectProperties loadProjectProperties(final IProject project) throws PropertiesException {
+        ProjectPropertiesEntry entry = this.projectsProperties.get(project);
+        if (entry != null && entry.isUpToDate()) {
+            return entry.getProjectProperties();
+        }
+
+        synchronized (this) {
+            return loadProjectPropertiesFromDisk(project);
+        }
+    }
+
+    private IProjectProperties loadProjectPropertiesFromDisk(final IProject project) throws PropertiesException {
         LOG.debug("Loading project properties for project {}", project.getName());
         try {
-            ProjectPropertiesTimestampTupel projectPropertiesTupel = this.projectsProperties.get(project);
+            ProjectPropertiesEntry entry = this.projectsProperties.get(project);
             final IProjectProperties projectProperties;
-            if (projectPropertiesTupel == null) {
+            if (entry == null) {
                 LOG.debug("Creating new poject properties for {}", project.getName());
-                IProjectProperties projectPropertiesNew = new PropertiesFactoryImpl().newProjectProperties(project, this);
-                final ProjectPropertiesTO to = readProjectProperties(project);
-                fillProjectProperties(projectPropertiesNew, to);
-                projectPropertiesTupel = this.projectsProperties.putIfAbsent(project, new ProjectPropertiesTimestampTupel(projectPropertiesNew));
-                if (projectPropertiesTupel == null) {
-                    projectPropertiesTupel = this.projectsProperties.get(project);
-                } else {
-                    LOG.debug("project properties already existed for {}", project.getName());
+                projectProperties = new PropertiesFactoryImpl().newProjectProperties(project, this);
+                // index the entry before reading, so that concurrent changes of the properties file are noticed.
+                // The entry is not up to date yet, so other threads wait for this load.
+                entry = new ProjectPropertiesEntry(projectProperties);
+                this.projectsProperties.put(project, entry);
+                boolean filled = false;
+                try {
+                    final ProjectPropertiesTO to = readProjectProperties(project);
+                    fillProjectProperties(projectProperties, to);
+                    filled = true;
+                } finally {
+                    if (!filled) {
+                        this.projectsProperties.remove(project);
+                    }
                 }
-                projectProperties = projectPropertiesTupel.getProjectProperties();
-            } else if (projectPropertiesTupel.isOutOfSync()) {
+            } else if (entry.takePropertiesChanged()) {
                 LOG.info("Project properties for project {} have been changed on disk - reloading", project.getName());
-                projectProperties = projectPropertiesTupel.getProjectProperties();
+                projectProperties = entry.getProjectProperties();
                 final ProjectPropertiesTO to = readProjectProperties(project);
                 fillProjectProperties(projectProperties, to);
                 projectProperties.setNeedRebuild(true);
             } else {
                 LOG.debug("Project properties found and are up to date for project {}", project.getName());
-                projectProperties = projectPropertiesTupel.getProjectProperties();
+                projectProperties = entry.getProjectProperties();
             }
 
-            // if the ruleset is stored in the project reload it when it changed on disk (modification time stamp)
-            if (projectProperties.isRuleSetStoredInProject()) {
-                loadRuleSetFromProject(projectProperties);
-            } else {
-                // else resynchronize the ruleset
-                final boolean needRebuild = synchronizeRuleSet(projectProperties);
-                projectProperties.setNeedRebuild(projectProperties.isNeedRebuild() || needRebuild);
+            if (entry.takeRuleSetChanged()) {
+                // if the ruleset is stored in the project reload it when it changed on disk (modification time stamp)
+                if (projectProperties.isRuleSetStoredInProject()) {
+                    loadRuleSetFromProject(projectProperties);
+                } else {
+                    // else resynchronize the ruleset
+                    final boolean needRebuild = synchronizeRuleSet(projectProperties);
+                    projectProperties.setNeedRebuild(projectProperties.isNeedRebuild() || needRebuild);
+                }
+                entry.updateRuleSetFiles();
             }
 
             return projectProperties;
@@ -132,18 +162,97 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
             }
 
             writeProjectProperties(projectProperties.getProject(), fillTransferObject(projectProperties));
-            projectsProperties.put(projectProperties.getProject(), new ProjectPropertiesTimestampTupel(projectProperties));
+            ProjectPropertiesEntry entry = new ProjectPropertiesEntry(projectProperties);
+            // the properties have just been written, only the ruleset files need to be determined
+            entry.takeRuleSetChanged();
+            entry.updateRuleSetFiles();
+            ProjectPropertiesEntry previous = projectsProperties.put(projectProperties.getProject(), entry);
+            if (previous != null && previous.getProjectProperties() != projectProperties) {
+                disposeProjectProperties(previous.getProjectProperties());
+            }
 
         } catch (CoreException e) {
             throw new PropertiesException("Core Exception when storing project properties for project "
                     + projectProperties.getProject().getName(), e);
         }
 
+        fireProjectPropertiesChanged(projectProperties.getProject());
     }
 
     @Override
     public void removeProjectProperties(IProject project) {
-        this.projectsProperties.remove(project);
+        ProjectPropertiesEntry entry = this.projectsProperties.remove(project);
+        if (entry != null) {
+            disposeProjectProperties(entry.getProjectProperties());
+            fireProjectPropertiesChanged(project);
+        }
+    }
+
+    private void disposeProjectProperties(IProjectProperties projectProperties) {
+        if (projectProperties instanceof ProjectPropertiesImpl) {
+            ((ProjectPropertiesImpl) projectProperties).disposeAuxClasspath();
+        }
+    }
+
+    @Override
+    public void pluginRuleSetChanged() {
+        for (ProjectPropertiesEntry entry : projectsProperties.values()) {
+            entry.markRuleSetChanged();
+        }
+    }
+
+    @Override
+    public void addProjectPropertiesListener(IProjectPropertiesListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    @Override
+    public void removeProjectPropertiesListener(IProjectPropertiesListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Marks the indexed project properties as changed, whose properties file or ruleset files
+     * are contained in the resource delta. The properties are read on the next load.
+     */
+    @Override
+    public void resourceChanged(IResourceChangeEvent event) {
+        IResourceDelta delta = event.getDelta();
+        if (delta == null || projectsProperties.isEmpty()) {
+            return;
+        }
+
+        List<IProject> changedProjects = new ArrayList<>();
+        for (ProjectPropertiesEntry entry : projectsProperties.values()) {
+            boolean changed = false;
+            if (delta.findMember(entry.getPropertiesFile().getFullPath()) != null) {
+                changed = entry.propertiesFileChanged();
+            }
+            for (IPath ruleSetFile : entry.getRuleSetFiles()) {
+                if (delta.findMember(ruleSetFile) != null) {
+                    entry.markRuleSetChanged();
+                    changed = true;
+                }
+            }
+            if (changed) {
+                LOG.debug("Project properties for project {} have been changed", entry.getProject().getName());
+                changedProjects.add(entry.getProject());
+            }
+        }
+
+        for (IProject project : changedProjects) {
+            fireProjectPropertiesChanged(project);
+        }
+    }
+
+    private void fireProjectPropertiesChanged(IProject project) {
+        for (IProjectPropertiesListener listener : listeners) {
+            try {
+                listener.projectPropertiesChanged(project);
+            } catch (RuntimeException e) {
+                LOG.error("Error while notifying project properties listener: {}", e.toString(), e);
+            }
+        }
     }
 
     /**
@@ -190,7 +299,7 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
         ProjectPropertiesTO projectProperties = null;
         try {
 
-            final IFile propertiesFile = project.getFile(ProjectPropertiesTimestampTupel.PROPERTIES_FILE);
+            final IFile propertiesFile = project.getFile(ProjectPropertiesEntry.PROPERTIES_FILE);
             if (propertiesFile.exists() && propertiesFile.isAccessible()) {
                 try (Reader in = new InputStreamReader(propertiesFile.getContents(), StandardCharsets.UTF_8)) {
                     String properties = IOUtil.toString(in);
@@ -315,7 +424,7 @@ public class ProjectPropertiesManagerImpl implements IProjectPropertiesManager {
         try {
             String writer = convertProjectPropertiesToString(projectProperties);
 
-            final IFile propertiesFile = project.getFile(ProjectPropertiesTimestampTupel.PROPERTIES_FILE);
+            final IFile propertiesFile = project.getFile(ProjectPropertiesEntry.PROPERTIES_FILE);
             if (propertiesFile.exists() && propertiesFile.isAccessible()) {
                 propertiesFile.setContents(new ByteArrayInputStream(writer.getBytes()), false, false, null);
             } else {
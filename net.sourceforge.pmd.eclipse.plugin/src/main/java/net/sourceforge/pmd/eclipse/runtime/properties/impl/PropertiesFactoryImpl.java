@@ -5,6 +5,8 @@
 package net.sourceforge.pmd.eclipse.runtime.properties.impl;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.ResourcesPlugin;
 
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectProperties;
 import net.sourceforge.pmd.eclipse.runtime.properties.IProjectPropertiesManager;
@@ -16,17 +18,29 @@ import net.sourceforge.pmd.eclipse.runtime.properties.IPropertiesFactory;
  * @author Herlin
  */
 public class PropertiesFactoryImpl implements IPropertiesFactory {
-    private IProjectPropertiesManager projectPropertiesManager;
+    private ProjectPropertiesManagerImpl projectPropertiesManager;
 
     @Override
     public IProjectPropertiesManager getProjectPropertiesManager() {
         if (this.projectPropertiesManager == null) {
-            this.projectPropertiesManager = new ProjectPropertiesManagerImpl();
+            ProjectPropertiesManagerImpl manager = new ProjectPropertiesManagerImpl();
+            // keeps the indexed project properties up to date
+            ResourcesPlugin.getWorkspace().addResourceChangeListener(manager, IResourceChangeEvent.POST_CHANGE);
+            this.projectPropertiesManager = manager;
         }
         
         return this.projectPropertiesManager;
     }
 
+    /**
+     * Stops keeping the indexed project properties up to date, e.g. when the plugin is stopped.
+     */
+    public void dispose() {
+        if (this.projectPropertiesManager != null) {
+            ResourcesPlugin.getWorkspace().removeResourceChangeListener(this.projectPropertiesManager);
+        }
+    }
+
     @Override
     public IProjectProperties newProjectProperties(IProject project, IProjectPropertiesManager newProjectPropertiesManager) {
         return new ProjectPropertiesImpl(project, newProjectPropertiesManager);
@@ -0,0 +1,256 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+
+import net.sourceforge.pmd.RulePriority;
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+import net.sourceforge.pmd.eclipse.ui.views.PriorityFilter;
+
+/**
+ * The priority summaries of the resources, that have been decorated by the {@link RuleLabelDecorator}.
+ * A summary consists of the highest priority, that is not filtered, and the number of violations with
+ * such a priority of a resource and all its members.
+ *
+ * <p>The summaries are computed from the aggregated counts of the violation index. After the violations
+ * or the priority filter changed, the summaries are computed again and only the resources, whose
+ * summary actually changed, need to be decorated again.
+ *
+ * <p>The summaries are indexed by container, so that the decorated members of a container are found
+ * without looking at all the summaries. The summaries of removed resources and closed projects
+ * are forgotten, see {@link #removed(IResourceDelta)}.
+ */
+public final class PrioritySummaryCache {
+    private final Map<IResource, Summary> summaries = new HashMap<>();
+
+    /**
+     * The members of each container, that have a summary or contain resources with a summary.
+     */
+    private final Map<IResource, Set<IResource>> membersByContainer = new HashMap<>();
+
+    /**
+     * Computes the summary of a resource and remembers it.
+     */
+    public synchronized Summary summaryOf(IResource resource) {
+        Summary summary = computeSummary(resource);
+        if (summaries.put(resource, summary) == null) {
+            addToContainers(resource);
+        }
+        return summary;
+    }
+
+    /**
+     * Computes the summaries of the given resources, their parents and, for folders and projects,
+     * their members again.
+     *
+     * @param resources the resources, whose violations changed
+     * @return the resources, that have been decorated and whose summary changed
+     */
+    public synchronized Set<IResource> update(Collection<? extends IResource> resources) {
+        Set<IResource> withParents = new HashSet<>();
+        for (IResource resource : resources) {
+            if (resource.getType() != IResource.FILE) {
+                addMembers(resource, withParents);
+            }
+            for (IResource current = resource; current != null; current = current.getParent()) {
+                withParents.add(current);
+            }
+        }
+        return recompute(withParents);
+    }
+
+    /**
+     * Computes all the summaries again, e.g. after the priority filter changed.
+     *
+     * @return the resources, whose summary changed
+     */
+    public synchronized Set<IResource> updateAll() {
+        return recompute(new ArrayList<>(summaries.keySet()));
+    }
+
+    /**
+     * Forgets the summaries of the removed resources and of the members of closed projects.
+     * Only the parts of the delta, that contain resources with a summary, are visited.
+     */
+    public synchronized void removed(IResourceDelta delta) {
+        for (IResourceDelta memberDelta : delta.getAffectedChildren()) {
+            IResource member = memberDelta.getResource();
+            if (!summaries.containsKey(member) && !membersByContainer.containsKey(member)) {
+                continue;
+            }
+            if (memberDelta.getKind() == IResourceDelta.REMOVED) {
+                remove(member);
+            } else if ((memberDelta.getFlags() & IResourceDelta.OPEN) != 0 && !member.isAccessible()) {
+                // the closed project itself is still shown
+                for (IResource projectMember : new ArrayList<>(membersOf(member))) {
+                    remove(projectMember);
+                }
+            } else {
+                removed(memberDelta);
+            }
+        }
+    }
+
+    /**
+     * @return the number of resources with a summary
+     */
+    public synchronized int size() {
+        return summaries.size();
+    }
+
+    public synchronized void clear() {
+        summaries.clear();
+        membersByContainer.clear();
+    }
+
+    private Set<IResource> recompute(Collection<IResource> resources) {
+        Set<IResource> changed = new HashSet<>();
+        for (IResource resource : resources) {
+            Summary previous = summaries.get(resource);
+            if (previous == null) {
+                // never decorated, it's decorated with the current summary, when it gets visible
+                continue;
+            }
+            if (!resource.exists()) {
+                remove(resource);
+                continue;
+            }
+            Summary summary = computeSummary(resource);
+            if (!summary.equals(previous)) {
+                summaries.put(resource, summary);
+                changed.add(resource);
+            }
+        }
+        return changed;
+    }
+
+    private void addToContainers(IResource resource) {
+        IResource member = resource;
+        for (IResource container = resource.getParent(); container != null; container = container.getParent()) {
+            Set<IResource> members = membersByContainer.get(container);
+            if (members == null) {
+                members = new HashSet<>();
+                membersByContainer.put(container, members);
+            }
+            if (!members.add(member)) {
+                // the other containers already know the member
+                break;
+            }
+            member = container;
+        }
+    }
+
+    private Set<IResource> membersOf(IResource container) {
+        Set<IResource> members = membersByContainer.get(container);
+        return members == null ? Collections.<IResource>emptySet() : members;
+    }
+
+    /**
+     * Adds the members of the container with a summary, including the members of sub folders.
+     */
+    private void addMembers(IResource container, Collection<IResource> result) {
+        for (IResource member : membersOf(container)) {
+            if (summaries.containsKey(member)) {
+                result.add(member);
+            }
+            addMembers(member, result);
+        }
+    }
+
+    /**
+     * Forgets the summaries of the resource and its members.
+     */
+    private void remove(IResource resource) {
+        removeMembers(resource);
+
+        // forget the containers, that have neither a summary nor other members anymore
+        IResource member = resource;
+        for (IResource container = resource.getParent(); container != null; container = container.getParent()) {
+            Set<IResource> members = membersByContainer.get(container);
+            if (members == null || !members.remove(member) || !members.isEmpty()) {
+                break;
+            }
+            membersByContainer.remove(container);
+            if (summaries.containsKey(container)) {
+                break;
+            }
+            member = container;
+        }
+    }
+
+    /**
+     * Forgets the summaries of the resource and its members, without updating the index of its container.
+     */
+    private void removeMembers(IResource resource) {
+        for (IResource member : membersOf(resource)) {
+            removeMembers(member);
+        }
+        membersByContainer.remove(resource);
+        summaries.remove(resource);
+    }
+
+    private static Summary computeSummary(IResource resource) {
+        int[] priorityCounts = PMDPlugin.getDefault().getViolationIndex().getPriorityCounts(resource);
+        PriorityFilter filter = PriorityFilter.getInstance();
+
+        int highestPriority = 0;
+        int count = 0;
+        for (int priority = 1; priority < priorityCounts.length; priority++) {
+            if (priorityCounts[priority] > 0 && filter.isPriorityEnabled(RulePriority.valueOf(priority))) {
+                if (highestPriority == 0) {
+                    highestPriority = priority;
+                }
+                count += priorityCounts[priority];
+            }
+        }
+        return count == 0 ? Summary.NONE : new Summary(highestPriority, count);
+    }
+
+    /**
+     * The highest enabled priority and the number of violations with an enabled priority.
+     */
+    public static final class Summary {
+        static final Summary NONE = new Summary(0, 0);
+
+        private final int highestPriority;
+        private final int count;
+
+        Summary(int highestPriority, int count) {
+            this.highestPriority = highestPriority;
+            this.count = count;
+        }
+
+        /**
+         * @return the highest priority or <code>null</code>, if there are no violations to show
+         */
+        public RulePriority getHighestPriority() {
+            return highestPriority == 0 ? null : RulePriority.valueOf(highestPriority);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Summary)) {
+                return false;
+            }
+            Summary other = (Summary) obj;
+            return highestPriority == other.highestPriority && count == other.count;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * highestPriority + count;
+        }
+    }
+}
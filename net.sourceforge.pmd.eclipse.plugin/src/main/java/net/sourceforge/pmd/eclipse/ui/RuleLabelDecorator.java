@@ -9,7 +9,9 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.viewers.IDecoration;
 import org.eclipse.jface.viewers.ILabelProviderListener;
@@ -17,11 +19,9 @@ import org.eclipse.jface.viewers.ILightweightLabelDecorator;
 import org.eclipse.jface.viewers.LabelProviderChangedEvent;
 
 import net.sourceforge.pmd.RulePriority;
-import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
-import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.ui.priority.PriorityDescriptorCache;
 import net.sourceforge.pmd.eclipse.ui.views.PriorityFilter;
+import net.sourceforge.pmd.eclipse.ui.views.PriorityFilter.PriorityFilterChangeListener;
 
 /**
  * 
@@ -32,6 +32,34 @@ public class RuleLabelDecorator implements ILightweightLabelDecorator {
 
     private Set<ILabelProviderListener> listeners = new CopyOnWriteArraySet<>();
 
+    private final PrioritySummaryCache summaries = new PrioritySummaryCache();
+
+    private final PriorityFilterChangeListener priorityFilterListener = new PriorityFilterChangeListener() {
+        @Override
+        public void priorityEnabled(RulePriority priority) {
+            fireChanged(summaries.updateAll());
+        }
+
+        @Override
+        public void priorityDisabled(RulePriority priority) {
+            fireChanged(summaries.updateAll());
+        }
+    };
+
+    private final IResourceChangeListener resourceListener = new IResourceChangeListener() {
+        @Override
+        public void resourceChanged(IResourceChangeEvent event) {
+            if (event.getDelta() != null) {
+                summaries.removed(event.getDelta());
+            }
+        }
+    };
+
+    public RuleLabelDecorator() {
+        PriorityFilter.getInstance().addPriorityFilterChangeListener(priorityFilterListener);
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceListener, IResourceChangeEvent.POST_CHANGE);
+    }
+
     @Override
     public void addListener(ILabelProviderListener listener) {
         listeners.add(listener);
@@ -39,14 +67,42 @@ public class RuleLabelDecorator implements ILightweightLabelDecorator {
 
     @Override
     public void dispose() {
-        // nothing to do
+        PriorityFilter.getInstance().removePriorityFilterChangeListener(priorityFilterListener);
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(resourceListener);
+        summaries.clear();
     }
 
+    /**
+     * Decorates the given resources again.
+     */
     public void changed(Collection<IResource> resources) {
-        LabelProviderChangedEvent lpce = new LabelProviderChangedEvent(this, resources.toArray());
+        fireEvent(new LabelProviderChangedEvent(this, resources.toArray()));
+    }
 
+    /**
+     * Decorates all the resources again, e.g. after the priority icons changed.
+     */
+    public void changedAll() {
+        fireEvent(new LabelProviderChangedEvent(this));
+    }
+
+    /**
+     * Notifies the decorator, that the violations of the given resources changed. Only the
+     * resources and their parents, whose decoration actually changes, are decorated again.
+     */
+    public void violationsChanged(Collection<? extends IResource> resources) {
+        fireChanged(summaries.update(resources));
+    }
+
+    private void fireChanged(Set<IResource> resources) {
+        if (!resources.isEmpty()) {
+            changed(resources);
+        }
+    }
+
+    private void fireEvent(LabelProviderChangedEvent event) {
         for (ILabelProviderListener listener : listeners) {
-            listener.labelProviderChanged(lpce);
+            listener.labelProviderChanged(event);
         }
     }
 
@@ -76,40 +132,14 @@ public class RuleLabelDecorator implements ILightweightLabelDecorator {
 
         IResource resource = (IResource) element;
 
-        Set<Integer> range = null;
-        try {
-            range = MarkerUtil.priorityRangeOf(resource, PMDRuntimeConstants.RULE_MARKER_TYPES, 5);
-        } catch (CoreException e1) {
-            return;
-        }
-
-        if (range.isEmpty()) {
-            return;
-        }
-
-        // consider only the priorities, that are not filtered
-        Integer highestPriority = null;
-        for (Integer priority : range) {
-            if (PriorityFilter.getInstance().isPriorityEnabled(RulePriority.valueOf(priority))) {
-                if (highestPriority == null || highestPriority > priority) {
-                    highestPriority = priority;
-                }
-            }
-        }
-
+        // the summary considers only the priorities, that are not filtered
+        RulePriority highestPriority = summaries.summaryOf(resource).getHighestPriority();
         if (highestPriority == null) {
             return;
         }
 
-        ImageDescriptor overlay = PriorityDescriptorCache.INSTANCE.descriptorFor(RulePriority.valueOf(highestPriority)).getAnnotationImageDescriptor();
-
-        try {
-            boolean hasMarkers = MarkerUtil.hasAnyRuleMarkers(resource);
-            if (hasMarkers) {
-                decoration.addOverlay(overlay);
-            }
-        } catch (CoreException e) {
-            PMDPlugin.getDefault().logError("Error while adding overlay icon", e);
-        }
+        ImageDescriptor overlay = PriorityDescriptorCache.INSTANCE.descriptorFor(highestPriority)
+                .getAnnotationImageDescriptor();
+        decoration.addOverlay(overlay);
     }
 }
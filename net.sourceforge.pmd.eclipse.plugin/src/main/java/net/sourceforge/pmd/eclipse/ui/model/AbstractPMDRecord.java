@@ -8,9 +8,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+
 /**
  * Abstract class containing the "Framework" of the PMD-Model Contains Method to
  * check for Resources and Markers and abstract Methods, that need to bee
@@ -29,6 +32,15 @@ public abstract class AbstractPMDRecord {
 
     public static final AbstractPMDRecord[] EMPTY_RECORDS = new AbstractPMDRecord[0];
 
+    /**
+     * The aggregated metrics of the children, the children and the generation of the
+     * code metrics, they have been computed for.
+     */
+    private int aggregatedLOC;
+    private int aggregatedMethods;
+    private AbstractPMDRecord[] metricsChildren;
+    private int metricsGeneration = -1;
+
     /**
      * @return the Name of the Element
      */
@@ -126,6 +138,73 @@ public abstract class AbstractPMDRecord {
      */
     protected abstract AbstractPMDRecord[] createChildren();
 
+    /**
+     * Gets the files directly within a folder, that have violations, from the violation index.
+     *
+     * @param folder the folder, may be <code>null</code>
+     * @return the files with violations
+     */
+    protected static List<IFile> filesWithViolationsIn(IResource folder) {
+        List<IFile> files = new ArrayList<>();
+        if (folder != null) {
+            for (IFile file : PMDPlugin.getDefault().getViolationIndex().getFilesWithViolations(folder)) {
+                if (folder.equals(file.getParent())) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Gets the sum of the lines of code of the children. The sum is computed again only,
+     * if the children or the code metrics changed in the meantime.
+     *
+     * @return the aggregated lines of code
+     */
+    protected final int aggregatedLOC() {
+        aggregateMetrics();
+        return aggregatedLOC;
+    }
+
+    /**
+     * Gets the sum of the number of methods of the children.
+     *
+     * @return the aggregated number of methods
+     * @see #aggregatedLOC()
+     */
+    protected final int aggregatedNumberOfMethods() {
+        aggregateMetrics();
+        return aggregatedMethods;
+    }
+
+    /**
+     * Forgets the aggregated metrics of this element and its parents, e.g. after a file
+     * has been added or removed.
+     */
+    protected final void invalidateMetrics() {
+        for (AbstractPMDRecord record = this; record != null; record = record.getParent()) {
+            record.metricsGeneration = -1;
+        }
+    }
+
+    private void aggregateMetrics() {
+        final AbstractPMDRecord[] children = getChildren();
+        final int generation = CodeMetricsCache.getInstance().getGeneration();
+        if (children != metricsChildren || generation != metricsGeneration) {
+            int loc = 0;
+            int methods = 0;
+            for (AbstractPMDRecord element : children) {
+                loc += element.getLOC();
+                methods += element.getNumberOfMethods();
+            }
+            aggregatedLOC = loc;
+            aggregatedMethods = methods;
+            metricsChildren = children;
+            metricsGeneration = generation;
+        }
+    }
+
     /**
      * Checks, if this Element has Error-Markers in it. Calls the underlying
      * children (Recursion) to also check for Markers. The Recursion needs to be
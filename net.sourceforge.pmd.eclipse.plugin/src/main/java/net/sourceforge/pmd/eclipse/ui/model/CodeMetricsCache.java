@@ -0,0 +1,413 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
+
+/**
+ * Persistent cache of the code metrics (lines of code and number of methods) of the files,
+ * that are shown in the violation overview.
+ *
+ * <p>The metrics are never computed by the caller. If the metrics of a file are missing or
+ * the file has been modified since they have been computed, the file is queued and the metrics
+ * are computed by a low priority background job. Until then, the previous metrics (or zero)
+ * are returned. The listeners are notified, when new metrics are available. Metrics, that
+ * could not be computed, are not cached, so that they are computed again with the next lookup.
+ *
+ * <p>An entry is keyed by the workspace path of the file and is valid for the modification
+ * stamp of the file, it has been computed for. The cache is stored in the state location of
+ * the plugin. It is read by the background job as well, the lookups before return zero and
+ * queue the files.
+ */
+public final class CodeMetricsCache {
+    private static final Logger LOG = LoggerFactory.getLogger(CodeMetricsCache.class);
+
+    private static final String CACHE_FILE_NAME = "code-metrics.cache";
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The listeners are notified at least after so many milliseconds of computation.
+     */
+    private static final long BATCH_MILLIS = 500;
+
+    private static final CodeMetricsCache INSTANCE = new CodeMetricsCache();
+
+    private final Map<String, Metrics> metricsByPath = new HashMap<>();
+    private final Set<IFile> pendingFiles = new LinkedHashSet<>();
+    private final List<MetricsListener> listeners = new ArrayList<>();
+    private final Job computeJob = new ComputeJob();
+    private int generation;
+    private boolean loaded;
+    private boolean dirty;
+    private boolean disposed;
+
+    private CodeMetricsCache() {
+        // singleton
+    }
+
+    public static CodeMetricsCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the lines of code of a file. The metrics are computed in the background,
+     * if they are not known yet or are outdated.
+     *
+     * @return the lines of code or 0, if they are not known yet
+     */
+    public synchronized int getLinesOfCode(IFile file) {
+        return metricsOf(file).linesOfCode;
+    }
+
+    /**
+     * Gets the number of methods of a file. The metrics are computed in the background,
+     * if they are not known yet or are outdated.
+     *
+     * @return the number of methods or 0, if it is not known yet
+     */
+    public synchronized int getNumberOfMethods(IFile file) {
+        return metricsOf(file).numberOfMethods;
+    }
+
+    /**
+     * Queues the given files, whose metrics are missing or outdated, for the background job.
+     */
+    public synchronized void request(Collection<IFile> files) {
+        for (IFile file : files) {
+            metricsOf(file);
+        }
+    }
+
+    /**
+     * The generation is incremented whenever new metrics are available. It can be used
+     * to detect, whether aggregated metrics need to be computed again.
+     */
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the number of files, whose metrics are waiting to be computed
+     */
+    public synchronized int getQueueDepth() {
+        return pendingFiles.size();
+    }
+
+    public synchronized void addListener(MetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void removeListener(MetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Cancels the background job and writes the cache into the state location
+     * of the plugin, if it has been modified.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        pendingFiles.clear();
+        computeJob.cancel();
+        persist();
+    }
+
+    private Metrics metricsOf(IFile file) {
+        Metrics metrics = metricsByPath.get(keyOf(file));
+        if ((metrics == null || metrics.modificationStamp != file.getModificationStamp())
+                && file.isAccessible() && !disposed && pendingFiles.add(file)) {
+            computeJob.schedule();
+        }
+        return metrics == null ? Metrics.NONE : metrics;
+    }
+
+    private synchronized IFile nextPendingFile() {
+        Iterator<IFile> files = pendingFiles.iterator();
+        if (!files.hasNext()) {
+            return null;
+        }
+        IFile file = files.next();
+        files.remove();
+        return file;
+    }
+
+    /**
+     * @return <code>true</code> if the metrics of the file are known and not outdated
+     */
+    private synchronized boolean isCurrent(IFile file) {
+        Metrics metrics = metricsByPath.get(keyOf(file));
+        return metrics != null && metrics.modificationStamp == file.getModificationStamp();
+    }
+
+    private synchronized void put(IFile file, Metrics metrics) {
+        if (!disposed) {
+            metricsByPath.put(keyOf(file), metrics);
+            generation++;
+            dirty = true;
+        }
+    }
+
+    private void fireMetricsChanged(Collection<IFile> files) {
+        List<MetricsListener> currentListeners;
+        synchronized (this) {
+            currentListeners = new ArrayList<>(listeners);
+        }
+        for (MetricsListener listener : currentListeners) {
+            listener.metricsChanged(files);
+        }
+    }
+
+    private static String keyOf(IFile file) {
+        return file.getFullPath().toPortableString();
+    }
+
+    /**
+     * Computes the metrics of a file. The modification stamp is taken before the file is read,
+     * so that a concurrent modification makes the metrics outdated.
+     *
+     * @return the metrics or <code>null</code>, if the file could not be read
+     */
+    private static Metrics computeMetrics(IFile file) {
+        long modificationStamp = file.getModificationStamp();
+        int linesOfCode;
+        try (Reader reader = new InputStreamReader(file.getContents(), file.getCharset())) {
+            linesOfCode = LinesOfCodeCounter.count(reader, true);
+        } catch (CoreException | IOException e) {
+            LOG.debug("Error while counting the lines of code of {}: {}", file, e.toString(), e);
+            return null;
+        }
+        int methods = countMethods(file);
+        return methods == -1 ? null : new Metrics(modificationStamp, linesOfCode, methods);
+    }
+
+    /**
+     * Counts the methods of the top level types of a compilation unit. The structure of the
+     * compilation unit is taken from the java model.
+     *
+     * @return the number of methods or -1, if the compilation unit could not be read
+     */
+    private static int countMethods(IFile file) {
+        final IJavaElement element = JavaCore.create(file);
+        int methods = 0;
+        if (element instanceof ICompilationUnit) {
+            try {
+                for (IType type : ((ICompilationUnit) element).getTypes()) {
+                    methods += type.getMethods().length;
+                }
+            } catch (JavaModelException e) {
+                LOG.debug("Error while counting the methods of {}: {}", file, e.toString(), e);
+                return -1;
+            }
+        }
+        return methods;
+    }
+
+    private File cacheFile() {
+        PMDPlugin plugin = PMDPlugin.getDefault();
+        return plugin == null ? null : plugin.getStateLocation().append(CACHE_FILE_NAME).toFile();
+    }
+
+    /**
+     * Reads the cache from the state location of the plugin, if it has not been read yet. It is
+     * only called by the background job, the file is read without holding the lock.
+     */
+    private void load() {
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+        }
+
+        Map<String, Metrics> persisted = new HashMap<>();
+        File cacheFile = cacheFile();
+        if (cacheFile != null && cacheFile.isFile()) {
+            try (InputStream stream = Files.newInputStream(cacheFile.toPath());
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+                read(in, persisted);
+                LOG.debug("Loaded code metrics of {} files", persisted.size());
+            } catch (IOException e) {
+                LOG.warn("Ignoring unreadable code metrics cache {}: {}", cacheFile, e.toString());
+                persisted.clear();
+            }
+        }
+
+        synchronized (this) {
+            loaded = true;
+            if (!persisted.isEmpty()) {
+                persisted.putAll(metricsByPath);
+                metricsByPath.clear();
+                metricsByPath.putAll(persisted);
+                generation++;
+            }
+        }
+    }
+
+    private void persist() {
+        // the metrics of the cache file must not be overwritten, before they have been read
+        if (!dirty || !loaded) {
+            return;
+        }
+
+        evictDeletedFiles();
+
+        File cacheFile = cacheFile();
+        if (cacheFile == null) {
+            return;
+        }
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+            write(out);
+        } catch (IOException e) {
+            LOG.warn("Error while writing code metrics cache {}", cacheFile, e);
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+            LOG.debug("Persisted code metrics of {} files", metricsByPath.size());
+        } catch (IOException e) {
+            LOG.warn("Error while writing code metrics cache {}", cacheFile, e);
+        }
+    }
+
+    private void evictDeletedFiles() {
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        Iterator<String> paths = metricsByPath.keySet().iterator();
+        while (paths.hasNext()) {
+            if (!root.getFile(Path.fromPortableString(paths.next())).exists()) {
+                paths.remove();
+            }
+        }
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(metricsByPath.size());
+        for (Map.Entry<String, Metrics> entry : metricsByPath.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().modificationStamp);
+            out.writeInt(entry.getValue().linesOfCode);
+            out.writeInt(entry.getValue().numberOfMethods);
+        }
+    }
+
+    private static void read(DataInputStream in, Map<String, Metrics> metricsByPath) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported cache format");
+        }
+        int entryCount = in.readInt();
+        for (int i = 0; i < entryCount; i++) {
+            String path = in.readUTF();
+            long modificationStamp = in.readLong();
+            int linesOfCode = in.readInt();
+            int numberOfMethods = in.readInt();
+            metricsByPath.put(path, new Metrics(modificationStamp, linesOfCode, numberOfMethods));
+        }
+    }
+
+    /**
+     * Is notified, when new metrics have been computed. The listeners are called
+     * from the background job, not from the UI thread.
+     */
+    public interface MetricsListener {
+        /**
+         * @param files the files, whose metrics have been computed
+         */
+        void metricsChanged(Collection<IFile> files);
+    }
+
+    private static final class Metrics {
+        private static final Metrics NONE = new Metrics(IFile.NULL_STAMP, 0, 0);
+
+        private final long modificationStamp;
+        private final int linesOfCode;
+        private final int numberOfMethods;
+
+        Metrics(long modificationStamp, int linesOfCode, int numberOfMethods) {
+            this.modificationStamp = modificationStamp;
+            this.linesOfCode = linesOfCode;
+            this.numberOfMethods = numberOfMethods;
+        }
+    }
+
+    /**
+     * Computes the metrics of the queued files. The listeners are notified in batches.
+     */
+    private class ComputeJob extends Job {
+        ComputeJob() {
+            super("PMD code metrics");
+            setPriority(Job.DECORATE);
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            List<IFile> batch = new ArrayList<>();
+            long batchStart = System.currentTimeMillis();
+            load();
+            IFile file = nextPendingFile();
+            while (file != null && !monitor.isCanceled()) {
+                if (file.isAccessible()) {
+                    // the metrics of the queued file might have been read from the cache file
+                    Metrics metrics = isCurrent(file) ? null : computeMetrics(file);
+                    if (metrics != null) {
+                        put(file, metrics);
+                    }
+                    if (isCurrent(file)) {
+                        batch.add(file);
+                    }
+                }
+                if (!batch.isEmpty() && System.currentTimeMillis() - batchStart > BATCH_MILLIS) {
+                    fireMetricsChanged(batch);
+                    batch = new ArrayList<>();
+                    batchStart = System.currentTimeMillis();
+                }
+                file = nextPendingFile();
+            }
+            if (!batch.isEmpty()) {
+                fireMetricsChanged(batch);
+            }
+            return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+        }
+    }
+}
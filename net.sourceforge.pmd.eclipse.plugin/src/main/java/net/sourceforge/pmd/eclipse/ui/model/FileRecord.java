@@ -4,34 +4,29 @@
 
 package net.sourceforge.pmd.eclipse.ui.model;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.jdt.core.ICompilationUnit;
-import org.eclipse.jdt.core.IJavaElement;
-import org.eclipse.jdt.core.IType;
-import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.JavaModelException;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
 import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
+import net.sourceforge.pmd.eclipse.runtime.builder.ViolationIndex.FileViolations;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 
 /**
- * AbstractPMDRecord for Files
+ * AbstractPMDRecord for Files. The children (the rules of the violations) are created
+ * lazily, when they are requested for the first time.
  *
  * @author SebastianRaffel ( 16.05.2005 ), Philippe Herlin, Sven Jacob
  *
@@ -41,8 +36,7 @@ public class FileRecord extends AbstractPMDRecord {
     private AbstractPMDRecord[] children;
     private final IResource resource;
     private final AbstractPMDRecord parent;
-    private int numberOfLOC;
-    private int numberOfMethods;
+    private FileViolations violations;
 
     /**
      * Constructor (not for use with the Model, no PackageRecord is provided
@@ -60,9 +54,7 @@ public class FileRecord extends AbstractPMDRecord {
 
         this.resource = javaResource;
         this.parent = null;
-        this.numberOfLOC = 0;
-        this.numberOfMethods = 0;
-        this.children = createChildren();
+        this.violations = currentViolations();
     }
 
     /**
@@ -80,9 +72,7 @@ public class FileRecord extends AbstractPMDRecord {
 
         this.resource = javaResource;
         this.parent = record;
-        this.numberOfLOC = 0;
-        this.numberOfMethods = 0;
-        this.children = createChildren();
+        this.violations = currentViolations();
     }
 
     /**
@@ -100,9 +90,7 @@ public class FileRecord extends AbstractPMDRecord {
 
         this.resource = resource;
         this.parent = record;
-        this.numberOfLOC = 0;
-        this.numberOfMethods = 0;
-        this.children = createChildren();
+        this.violations = currentViolations();
     }
 
     public long getTimestamp() {
@@ -121,7 +109,10 @@ public class FileRecord extends AbstractPMDRecord {
      * @see net.sourceforge.pmd.eclipse.ui.model.AbstractPMDRecord#getChildren()
      */
     @Override
-    public AbstractPMDRecord[] getChildren() {
+    public synchronized AbstractPMDRecord[] getChildren() {
+        if (children == null) {
+            children = createChildren();
+        }
         return children; // NOPMD by Sven on 13.11.06 11:57
     }
 
@@ -137,8 +128,27 @@ public class FileRecord extends AbstractPMDRecord {
      * Updates all children.
      *
      */
-    public void updateChildren() {
-        children = createChildren();
+    public synchronized void updateChildren() {
+        violations = currentViolations();
+        // children, that have not been requested yet, are still created lazily
+        if (children != null) {
+            children = createChildren();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the markers of the file didn't change since the children have been updated
+     */
+    public synchronized boolean isUpToDate() {
+        FileViolations current = currentViolations();
+        return violations != null && current != null && violations.sameMarkersAs(current);
+    }
+
+    private FileViolations currentViolations() {
+        if (!(resource instanceof IFile)) {
+            return null;
+        }
+        return PMDPlugin.getDefault().getViolationIndex().getViolations((IFile) resource);
     }
 
     /**
@@ -147,6 +157,9 @@ public class FileRecord extends AbstractPMDRecord {
     @Override
     protected final AbstractPMDRecord[] createChildren() {
         AbstractPMDRecord[] children = EMPTY_RECORDS;
+        if (!hasMarkers()) {
+            return children;
+        }
 
         try { // get all markers
             final List<IMarker> markers = Arrays.asList(findMarkers());
@@ -188,8 +201,7 @@ public class FileRecord extends AbstractPMDRecord {
      */
     @Override
     public boolean hasMarkers() {
-        final IMarker[] markers = findMarkers();
-        return markers != null && markers.length > 0;
+        return resource.isAccessible() && PMDPlugin.getDefault().getViolationIndex().hasViolations(resource);
     }
 
     /**
@@ -263,129 +275,41 @@ public class FileRecord extends AbstractPMDRecord {
     }
 
     /**
-     * Calculates the Number of Code-Lines this File has. The Function is
-     * adapted from the Eclipse Metrics-Plugin available at:
-     * http://www.sourceforge.net/projects/metrics
+     * Counts the lines of code of a source.
      *
+     * @see LinesOfCodeCounter
      */
-    public void calculateLinesOfCode() {
-        if (resource.isAccessible()) {
-
-            // the whole while has to be a String for this operation
-            // so we read the File line-wise into a String
-
-            final String source = resourceToString(resource);
-
-            numberOfLOC = linesOfCodeIn(source, true);
-        }
-    }
-
-    // TODO migrate to utility class
     public static int linesOfCodeIn(final String source, boolean ignoreSingleBrackets) {
-
-        int loc = 0;
-        final int firstCurly = source.indexOf('{');
-        if (firstCurly != -1) {
-            final String body = source.substring(firstCurly + 1, source.length() - 1).trim();
-            final StringTokenizer lines = new StringTokenizer(body, "\n");
-            while (lines.hasMoreTokens()) {
-                String trimmed = lines.nextToken().trim();
-                if (trimmed.length() > 0 && trimmed.startsWith("/*")) {
-                    while (trimmed.indexOf("*/") == -1) {
-                        trimmed = lines.nextToken().trim();
-                    }
-                    if (lines.hasMoreTokens()) {
-                        trimmed = lines.nextToken().trim();
-                    }
-                }
-
-                if (ignoreSingleBrackets) {
-                    if ("{".equals(trimmed) || "}".equals(trimmed)) {
-                        continue;
-                    }
-                }
-
-                if (!trimmed.startsWith("//")) {
-                    loc++;
-                }
-            }
+        try {
+            return LinesOfCodeCounter.count(new StringReader(source), ignoreSingleBrackets);
+        } catch (IOException e) {
+            // can't happen with a StringReader
+            throw new IllegalStateException(e);
         }
-        return loc;
     }
 
     /**
-     * Gets the Number of Code-Lines this File has.
+     * Gets the Number of Code-Lines this File has. The lines are counted in the
+     * background, until then 0 is returned.
      *
      * @return the Lines of Code
+     * @see CodeMetricsCache
      */
     @Override
     public int getLOC() {
-        return numberOfLOC;
-    }
-
-    /**
-     * Reads a Resource's File and return the Code as String.
-     *
-     * @param resource
-     *            a resource to read ; the resource must be accessible.
-     * @return a String which is the Files Content
-     */
-    protected String resourceToString(IResource resource) {
-        final StringBuilder fileContents = new StringBuilder();
-        IFile file = (IFile) resource.getAdapter(IFile.class);
-        try (BufferedReader bReader = new BufferedReader(new InputStreamReader(file.getContents(), file.getCharset()))) {
-            // ... and read the File line by line
-            while (bReader.ready()) {
-                fileContents.append(bReader.readLine()).append('\n');
-            }
-        } catch (CoreException e) {
-            PMDPlugin.getDefault()
-                .logError(StringKeys.ERROR_FILE_NOT_FOUND + resource.toString() + " in " + this.toString(), e);
-        } catch (IOException ioe) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_IO_EXCEPTION + this.toString(), ioe);
-        }
-
-        return fileContents.toString();
+        return resource instanceof IFile ? CodeMetricsCache.getInstance().getLinesOfCode((IFile) resource) : 0;
     }
 
     /**
-     * Calculate the number of methods.
-     */
-    public void calculateNumberOfMethods() {
-        if (resource.isAccessible()) {
-
-            // we need to change the Resource into a Java-File
-            final IJavaElement element = JavaCore.create(resource);
-            final List<Object> methods = new ArrayList<>();
-
-            if (element instanceof ICompilationUnit) {
-                try {
-                    // ITypes can be Package Declarations or other Java Stuff
-                    // too
-                    IType[] types = ((ICompilationUnit) element).getTypes();
-                    for (IType type : types) {
-                        // only if it is an IType itself, it's a Class
-                        // from which we can get its Methods
-                        methods.addAll(Arrays.asList(type.getMethods()));
-                    }
-                } catch (JavaModelException jme) {
-                    PMDPlugin.getDefault().logError(StringKeys.ERROR_JAVAMODEL_EXCEPTION + toString(), jme);
-                }
-            }
-            if (!methods.isEmpty()) {
-                numberOfMethods = methods.size();
-            }
-        }
-    }
-
-    /**
-     * Gets the Number of Methods, this class contains.
+     * Gets the Number of Methods, this class contains. The methods are counted in the
+     * background, until then 0 is returned.
      *
      * @return the Number of Methods
+     * @see CodeMetricsCache
      */
     @Override
     public int getNumberOfMethods() {
-        return numberOfMethods; // deactivate this method for now
+        return resource instanceof IFile ? CodeMetricsCache.getInstance().getNumberOfMethods((IFile) resource) : 0;
     }
 
     @Override
@@ -415,11 +339,8 @@ public class FileRecord extends AbstractPMDRecord {
 
     @Override
     public int getNumberOfViolationsToPriority(int prio, boolean invertMarkerAndFileRecords) {
-        int number = 0;
-
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfViolationsToPriority(prio, false);
-        }
-        return number;
+        // the index already counts the violations per priority, the children are not needed
+        int[] priorityCounts = PMDPlugin.getDefault().getViolationIndex().getPriorityCounts(resource);
+        return prio > 0 && prio < priorityCounts.length ? priorityCounts[prio] : 0;
     }
 }
@@ -4,22 +4,33 @@
 
 package net.sourceforge.pmd.eclipse.ui.model;
 
-import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
-
-import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
-import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 
+/**
+ * AbstractPMDRecord for a folder of a project without java nature. Only the files with
+ * violations are part of the model.
+ */
 public class FolderRecord extends AbstractPMDRecord {
     private final IFolder folder;
     private final ProjectRecord parent;
     private AbstractPMDRecord[] children;
 
     public FolderRecord(IFolder folder, ProjectRecord record) {
+        this(folder, record, null);
+    }
+
+    /**
+     * Constructor for a folder, whose files with violations are already known.
+     *
+     * @param folder the folder
+     * @param record the Project
+     * @param files the files with violations or <code>null</code> to look them up
+     */
+    FolderRecord(IFolder folder, ProjectRecord record, List<IFile> files) {
         super();
 
         if (folder == null) {
@@ -32,7 +43,7 @@ public class FolderRecord extends AbstractPMDRecord {
 
         this.folder = folder;
         this.parent = record;
-        this.children = createChildren();
+        this.children = files == null ? createChildren() : createFileRecords(files);
     }
 
     @Override
@@ -61,23 +72,15 @@ public class FolderRecord extends AbstractPMDRecord {
 
     @Override
     protected final AbstractPMDRecord[] createChildren() {
-        List<FileRecord> fileList = new ArrayList<>();
-        try {
-            for (IResource member : folder.members()) {
-                if (member != null) {
-                    fileList.add(new FileRecord(member, this)); // NOPMD
-                    // by
-                    // Herlin
-                    // on
-                    // 09/10/06
-                    // 00:25
-                }
-            }
-        } catch (CoreException ce) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_CORE_EXCEPTION + this.toString(), ce);
-        }
+        return createFileRecords(filesWithViolationsIn(folder));
+    }
 
-        return fileList.toArray(new AbstractPMDRecord[0]);
+    private AbstractPMDRecord[] createFileRecords(List<IFile> files) {
+        AbstractPMDRecord[] fileRecords = new AbstractPMDRecord[files.size()];
+        for (int i = 0; i < fileRecords.length; i++) {
+            fileRecords[i] = new FileRecord(files.get(i), this); // NOPMD
+        }
+        return fileRecords;
     }
 
     @Override
@@ -95,6 +98,7 @@ public class FolderRecord extends AbstractPMDRecord {
         final List<AbstractPMDRecord> files = getChildrenAsList();
         files.add(file);
 
+        invalidateMetrics();
         children = new AbstractPMDRecord[files.size()];
         files.toArray(this.children);
         // }
@@ -115,6 +119,7 @@ public class FolderRecord extends AbstractPMDRecord {
             if (file.getResource().equals(resource)) {
                 files.remove(i);
 
+                invalidateMetrics();
                 children = new AbstractPMDRecord[files.size()]; // NOPMD
                 // by
                 // Herlin
@@ -162,21 +167,11 @@ public class FolderRecord extends AbstractPMDRecord {
 
     @Override
     public int getLOC() {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getLOC();
-        }
-
-        return number;
+        return aggregatedLOC();
     }
 
     @Override
     public int getNumberOfMethods() {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfMethods();
-        }
-
-        return number;
+        return aggregatedNumberOfMethods();
     }
 }
@@ -0,0 +1,106 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.model;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Counts the lines of code of a source file. The source is scanned character by character
+ * from a reader, so neither the whole file nor the single lines are kept in memory.
+ *
+ * <p>The lines before the first opening curly bracket, empty lines, line comments and block
+ * comments, that start at the beginning of a line, are not counted. Optionally lines, that consist
+ * only of a single curly bracket, are not counted either. The counting is adapted from the Eclipse
+ * Metrics-Plugin available at: http://www.sourceforge.net/projects/metrics
+ */
+public final class LinesOfCodeCounter {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean ignoreSingleBrackets;
+
+    private boolean inBody;
+    private boolean inBlockComment;
+    private int linesOfCode;
+
+    // the state of the current line
+    private int nonWhitespaceCount;
+    private char first;
+    private char second;
+    private char previous;
+    private boolean commentClosed;
+
+    private LinesOfCodeCounter(boolean ignoreSingleBrackets) {
+        this.ignoreSingleBrackets = ignoreSingleBrackets;
+    }
+
+    /**
+     * Counts the lines of code of the given source. The reader is not closed.
+     *
+     * @param source the source code
+     * @param ignoreSingleBrackets whether lines with only a single curly bracket are ignored
+     * @return the lines of code
+     * @throws IOException if the source can't be read
+     */
+    public static int count(Reader source, boolean ignoreSingleBrackets) throws IOException {
+        LinesOfCodeCounter counter = new LinesOfCodeCounter(ignoreSingleBrackets);
+        char[] buffer = new char[BUFFER_SIZE];
+        int read = source.read(buffer);
+        while (read != -1) {
+            for (int i = 0; i < read; i++) {
+                counter.scan(buffer[i]);
+            }
+            read = source.read(buffer);
+        }
+        counter.endOfLine();
+        return counter.linesOfCode;
+    }
+
+    private void scan(char c) {
+        if (!inBody) {
+            // everything up to the first curly bracket is the header of the file
+            inBody = c == '{';
+        } else if (c == '\n') {
+            endOfLine();
+        } else if (c > ' ') {
+            nonWhitespaceCount++;
+            if (nonWhitespaceCount == 1) {
+                first = c;
+            } else if (nonWhitespaceCount == 2) {
+                second = c;
+                if (first == '/' && c == '*' && !inBlockComment) {
+                    // the star of the comment start doesn't close the comment, e.g. "/*/"
+                    previous = 0;
+                    return;
+                }
+            }
+            if (previous == '*' && c == '/') {
+                commentClosed = true;
+            }
+            previous = c;
+        }
+    }
+
+    private void endOfLine() {
+        if (inBlockComment || nonWhitespaceCount > 1 && first == '/' && second == '*') {
+            inBlockComment = !commentClosed;
+        } else if (isCodeLine()) {
+            linesOfCode++;
+        }
+
+        nonWhitespaceCount = 0;
+        first = 0;
+        second = 0;
+        previous = 0;
+        commentClosed = false;
+    }
+
+    private boolean isCodeLine() {
+        if (nonWhitespaceCount == 0 || first == '/' && second == '/') {
+            return false;
+        }
+        return !(ignoreSingleBrackets && nonWhitespaceCount == 1 && (first == '{' || first == '}'));
+    }
+}
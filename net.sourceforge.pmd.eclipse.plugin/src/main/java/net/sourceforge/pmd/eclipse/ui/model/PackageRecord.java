@@ -4,12 +4,10 @@
 
 package net.sourceforge.pmd.eclipse.ui.model;
 
-import java.util.ArrayList;
 import java.util.List;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.JavaModelException;
 
@@ -17,7 +15,8 @@ import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 
 /**
- * AbstractPMDRecord for a Package creates Files when instantiated
+ * AbstractPMDRecord for a Package creates Files when instantiated. Only the files with
+ * violations are part of the model.
  *
  * @author SebastianRaffel ( 16.05.2005 ), Philippe Herlin, Sven Jacob
  *
@@ -36,6 +35,17 @@ public class PackageRecord extends AbstractPMDRecord {
      *            the Project
      */
     public PackageRecord(IPackageFragment fragment, ProjectRecord record) {
+        this(fragment, record, null);
+    }
+
+    /**
+     * Constructor for a package, whose files with violations are already known.
+     *
+     * @param fragment the PackageFragment
+     * @param record the Project
+     * @param files the files with violations or <code>null</code> to look them up
+     */
+    PackageRecord(IPackageFragment fragment, ProjectRecord record, List<IFile> files) {
         super();
 
         if (fragment == null) {
@@ -48,7 +58,7 @@ public class PackageRecord extends AbstractPMDRecord {
 
         this.packageFragment = fragment;
         this.parent = record;
-        this.children = createChildren();
+        this.children = files == null ? createChildren() : createFileRecords(files);
     }
 
     @Override
@@ -83,25 +93,15 @@ public class PackageRecord extends AbstractPMDRecord {
 
     @Override
     protected final AbstractPMDRecord[] createChildren() {
-        List<FileRecord> fileList = new ArrayList<>();
-        try {
-            ICompilationUnit[] javaUnits = packageFragment.getCompilationUnits();
-            for (ICompilationUnit javaUnit : javaUnits) {
-                IResource javaResource = javaUnit.getCorrespondingResource();
-                if (javaResource != null) {
-                    fileList.add(new FileRecord(javaResource, this)); // NOPMD
-                    // by
-                    // Herlin
-                    // on
-                    // 09/10/06
-                    // 00:25
-                }
-            }
-        } catch (CoreException ce) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_CORE_EXCEPTION + this.toString(), ce);
-        }
+        return createFileRecords(filesWithViolationsIn(getResource()));
+    }
 
-        return fileList.toArray(new AbstractPMDRecord[0]);
+    private AbstractPMDRecord[] createFileRecords(List<IFile> files) {
+        AbstractPMDRecord[] fileRecords = new AbstractPMDRecord[files.size()];
+        for (int i = 0; i < fileRecords.length; i++) {
+            fileRecords[i] = new FileRecord(files.get(i), this); // NOPMD
+        }
+        return fileRecords;
     }
 
     @Override
@@ -119,6 +119,7 @@ public class PackageRecord extends AbstractPMDRecord {
         final List<AbstractPMDRecord> files = getChildrenAsList();
         files.add(file);
 
+        invalidateMetrics();
         children = new AbstractPMDRecord[files.size()];
         files.toArray(this.children);
         // }
@@ -139,6 +140,7 @@ public class PackageRecord extends AbstractPMDRecord {
             if (file.getResource().equals(resource)) {
                 files.remove(i);
 
+                invalidateMetrics();
                 children = new AbstractPMDRecord[files.size()]; // NOPMD
                 // by
                 // Herlin
@@ -193,21 +195,11 @@ public class PackageRecord extends AbstractPMDRecord {
 
     @Override
     public int getLOC() {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getLOC();
-        }
-
-        return number;
+        return aggregatedLOC();
     }
 
     @Override
     public int getNumberOfMethods() {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfMethods();
-        }
-
-        return number;
+        return aggregatedNumberOfMethods();
     }
 }
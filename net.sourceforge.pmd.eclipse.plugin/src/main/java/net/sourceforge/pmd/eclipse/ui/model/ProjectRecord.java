@@ -4,27 +4,27 @@
 
 package net.sourceforge.pmd.eclipse.ui.model;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IPackageFragment;
 import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.JavaModelException;
 
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
-import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 
 /**
- * AbstractPMDRecord for Projects creates Packages when instantiated
+ * AbstractPMDRecord for Projects creates Packages when instantiated. Only the packages,
+ * that contain files with violations, are part of the model.
  *
  * @author SebastianRaffel ( 16.05.2005 ), Philippe Herlin, Sven Jacob
  *
@@ -88,113 +88,46 @@ public class ProjectRecord extends AbstractPMDRecord {
         return project;
     }
 
+    /**
+     * Creates the packages (or folders), that contain files with violations. The files are
+     * taken from the violation index, so the project doesn't need to be traversed.
+     */
     @Override
     protected final AbstractPMDRecord[] createChildren() {
-        final Set<AbstractPMDRecord> packages = new HashSet<>();
-        try {
-            // search for Packages
-            project.accept(new IResourceVisitor() {
-                @Override
-                public boolean visit(IResource resource) throws CoreException {
-                    boolean visitChildren;
-                    switch (resource.getType()) {
-                    case IResource.FOLDER:
-                        visitChildren = ProjectRecord.this.isJavaProject ? visitAsPackages(resource)
-                                : visitAsFolders(resource);
-                        break;
-                    case IResource.PROJECT:
-                        visitChildren = true;
-                        break;
-                    default:
-                        visitChildren = false;
-                        break;
-                    }
-
-                    return visitChildren;
-                }
-
-                private Boolean visitAsPackages(IResource resource) {
-                    IJavaElement javaMember = JavaCore.create(resource);
-
-                    if (javaMember == null) {
-                        return true;
-                    } else {
-                        if (javaMember instanceof IPackageFragmentRoot) {
-                            // if the Element is the Root of all Packages
-                            // get all packages from it and add them to the
-                            // list
-                            // (e.g. for "org.eclipse.core.resources" and
-                            // "org.eclipse.core" the root is
-                            // "org.eclipse.core")
-                            packages.addAll(createPackagesFromFragmentRoot((IPackageFragmentRoot) javaMember));
-                        } else if (javaMember instanceof IPackageFragment
-                                && javaMember.getParent() instanceof IPackageFragmentRoot) {
-                            // if the Element is a Package get its Root and
-                            // do the same as above
-                            final IPackageFragment fragment = (IPackageFragment) javaMember;
-                            packages.addAll(
-                                    createPackagesFromFragmentRoot((IPackageFragmentRoot) fragment.getParent()));
-                        }
-
-                        return false;
-                    }
-                }
+        Map<IContainer, List<IFile>> filesByFolder = new LinkedHashMap<>();
+        for (IFile file : PMDPlugin.getDefault().getViolationIndex().getFilesWithViolations(project)) {
+            List<IFile> files = filesByFolder.get(file.getParent());
+            if (files == null) {
+                files = new ArrayList<>();
+                filesByFolder.put(file.getParent(), files);
+            }
+            files.add(file);
+        }
 
-                private Boolean visitAsFolders(IResource resource) {
-                    IFolder folder = (IFolder) resource;
-                    packages.addAll(createPackagesFromFolderRoot(folder));
-                    return false;
+        List<AbstractPMDRecord> packages = new ArrayList<>(filesByFolder.size());
+        for (Map.Entry<IContainer, List<IFile>> entry : filesByFolder.entrySet()) {
+            if (isJavaProject) {
+                IPackageFragment fragment = packageFragmentOf(entry.getKey());
+                if (fragment != null) {
+                    packages.add(new PackageRecord(fragment, this, entry.getValue()));
                 }
-            });
-        } catch (CoreException ce) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_CORE_EXCEPTION + this.toString(), ce);
+            } else if (entry.getKey() instanceof IFolder) {
+                packages.add(new FolderRecord((IFolder) entry.getKey(), this, entry.getValue()));
+            }
         }
 
-        // return the List as an Array of Packages
         return packages.toArray(new AbstractPMDRecord[0]);
     }
 
     /**
-     * Search for the Packages to a given FragmentRoot (Package-Root) and create
-     * PackageRecords for them.
-     *
-     * @param root
-     * @return
+     * @return the package of the folder or <code>null</code>, if the folder is not within a source folder
      */
-    protected final Set<PackageRecord> createPackagesFromFragmentRoot(IPackageFragmentRoot root) {
-        final Set<PackageRecord> packages = new HashSet<>();
-        IJavaElement[] fragments = null;
-        try {
-            // search for all children
-            fragments = root.getChildren();
-            for (IJavaElement fragment : fragments) {
-                if (fragment instanceof IPackageFragment) {
-                    // create a PackageRecord for the Fragment
-                    // and add it to the list
-                    packages.add(new PackageRecord((IPackageFragment) fragment, this));
-                }
-            }
-        } catch (JavaModelException jme) {
-            PMDPlugin.getDefault().logError(StringKeys.ERROR_JAVAMODEL_EXCEPTION + this.toString(), jme);
-        }
-
-        return packages;
-    }
-
-    protected final Set<FolderRecord> createPackagesFromFolderRoot(IFolder rootFolder) {
-        final Set<FolderRecord> folder = new HashSet<>();
-
-        try {
-            for (IResource resource : rootFolder.members()) {
-                if (resource instanceof IFolder) {
-                    folder.add(new FolderRecord((IFolder) resource, this)); // NOPMD
-                }
-            }
-        } catch (CoreException e) {
-            e.printStackTrace();
+    private static IPackageFragment packageFragmentOf(IContainer folder) {
+        IJavaElement javaMember = JavaCore.create(folder);
+        if (javaMember instanceof IPackageFragmentRoot) {
+            return ((IPackageFragmentRoot) javaMember).getPackageFragment("");
         }
-
-        return folder;
+        return javaMember instanceof IPackageFragment ? (IPackageFragment) javaMember : null;
     }
 
     @Override
@@ -251,13 +184,9 @@ public class ProjectRecord extends AbstractPMDRecord {
     private AbstractPMDRecord removeFromJavaProject(IResource resource) {
         AbstractPMDRecord removedResource = null;
 
-        IPackageFragment fragment;
-
-        final IJavaElement element = JavaCore.create(resource.getParent());
-        if (element instanceof IPackageFragment) {
-            fragment = (IPackageFragment) element;
-        } else {
-            fragment = ((IPackageFragmentRoot) element).getPackageFragment("");
+        final IPackageFragment fragment = packageFragmentOf(resource.getParent());
+        if (fragment == null) {
+            return null;
         }
 
         PackageRecord packageRec;
@@ -289,6 +218,9 @@ public class ProjectRecord extends AbstractPMDRecord {
     private AbstractPMDRecord removeFromOtherProject(IResource resource) {
         AbstractPMDRecord removedResource = null;
 
+        if (!(resource.getParent() instanceof IFolder)) {
+            return null;
+        }
         IFolder folder = (IFolder) resource.getParent();
         FolderRecord folderRec;
 
@@ -319,13 +251,12 @@ public class ProjectRecord extends AbstractPMDRecord {
     private AbstractPMDRecord addToJavaProject(IResource resource) {
         AbstractPMDRecord addedResource = null;
 
-        IJavaElement javaMember = JavaCore.create(resource.getParent());
-        if (javaMember instanceof IPackageFragmentRoot) {
-            javaMember = ((IPackageFragmentRoot) javaMember).getPackageFragment("");
+        final IPackageFragment fragment = packageFragmentOf(resource.getParent());
+        if (fragment == null) {
+            // the file is not within a source folder
+            return null;
         }
 
-        final IPackageFragment fragment = (IPackageFragment) javaMember;
-
         // we search int the children Packages for the File's Package
         // by comparing their Fragments
         for (int k = 0; k < children.length && addedResource == null; k++) {
@@ -355,6 +286,9 @@ public class ProjectRecord extends AbstractPMDRecord {
     private AbstractPMDRecord addToOtherProject(IResource resource) {
         AbstractPMDRecord addedResource = null;
 
+        if (!(resource.getParent() instanceof IFolder)) {
+            return null;
+        }
         IFolder folder = (IFolder) resource.getParent();
 
         // we search int the children Packages for the File's Package
@@ -395,21 +329,11 @@ public class ProjectRecord extends AbstractPMDRecord {
 
     @Override
     public int getLOC() {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getLOC();
-        }
-
-        return number;
+        return aggregatedLOC();
     }
 
     @Override
     public int getNumberOfMethods() {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfMethods();
-        }
-
-        return number;
+        return aggregatedNumberOfMethods();
     }
 }
@@ -151,21 +151,11 @@ public class RootRecord extends AbstractPMDRecord {
 
     @Override
     public int getLOC() {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getLOC();
-        }
-
-        return number;
+        return aggregatedLOC();
     }
 
     @Override
     public int getNumberOfMethods() {
-        int number = 0;
-        for (AbstractPMDRecord element : children) {
-            number += element.getNumberOfMethods();
-        }
-
-        return number;
+        return aggregatedNumberOfMethods();
     }
 }
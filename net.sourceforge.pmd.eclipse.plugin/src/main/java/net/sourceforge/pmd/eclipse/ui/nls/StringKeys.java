@@ -158,6 +158,7 @@ public final class StringKeys {
     public static final String PREF_CPD_GROUP_GENERAL = "preference.cpd.group.general";
     public static final String PREF_CPD_TITLE = "preference.cpd.title";
     public static final String PREF_CPD_TILESIZE = "preference.cpd.tilesize";
+    public static final String PREF_CPD_CONTINUOUS = "preference.cpd.continuous";
 
     public static final String PREF_SUMMARY_LABEL_NAME = "preference.summary.label.name";
     public static final String PREF_SUMMARY_LABEL_DESCRIPTION = "preference.summary.label.description";
@@ -328,6 +329,8 @@ public final class StringKeys {
     public static final String MONITOR_CALC_STATS_OF_PACKAGE = "monitor.calc_stats.package";
     public static final String MSGKEY_MONITOR_COLLECTING_MARKERS = "monitor.collect_markers";
 
+    public static final String MARKER_CPD_DUPLICATE = "marker.cpd.duplicate";
+
     public static final String PRIORITY_COLUMN_NAME = "priority.column.name";
     public static final String PRIORITY_COLUMN_PMD_NAME = "priority.column.name.pmd";
     public static final String PRIORITY_COLUMN_VALUE = "priority.column.value";
@@ -18,6 +18,7 @@ import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Spinner;
 
 import net.sourceforge.pmd.cpd.GUI;
+import net.sourceforge.pmd.eclipse.runtime.cmd.ContinuousCpd;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 import net.sourceforge.pmd.eclipse.ui.preferences.br.AbstractPMDPreferencePage;
@@ -32,6 +33,7 @@ import net.sourceforge.pmd.eclipse.ui.preferences.br.AbstractPMDPreferencePage;
 public class CPDPreferencePage extends AbstractPMDPreferencePage {
 
     private Spinner minTileSizeSpinner;
+    private Button continuousCpdButton;
 
     @Override
     protected String descriptionId() {
@@ -122,17 +124,29 @@ public class CPDPreferencePage extends AbstractPMDPreferencePage {
         data.grabExcessHorizontalSpace = true;
         minTileSizeSpinner.setLayoutData(data);
 
+        continuousCpdButton = new Button(group, SWT.CHECK);
+        continuousCpdButton.setText(getMessage(StringKeys.PREF_CPD_CONTINUOUS));
+        continuousCpdButton.setSelection(preferences.isContinuousCpdEnabled());
+        data = new GridData(GridData.FILL_HORIZONTAL);
+        data.horizontalSpan = 2;
+        continuousCpdButton.setLayoutData(data);
+
         return group;
     }
 
     @Override
     protected void performDefaults() {
         minTileSizeSpinner.setMinimum(IPreferences.MIN_TILE_SIZE_DEFAULT);
+        continuousCpdButton.setSelection(IPreferences.CONTINUOUS_CPD_ENABLED_DEFAULT);
     }
 
     @Override
     public boolean performOk() {
         preferences.setMinTileSize(Integer.valueOf(minTileSizeSpinner.getText()).intValue());
+        if (preferences.isContinuousCpdEnabled() && !continuousCpdButton.getSelection()) {
+            ContinuousCpd.getInstance().stop();
+        }
+        preferences.setContinuousCpdEnabled(continuousCpdButton.getSelection());
 
         return super.performOk();
     }
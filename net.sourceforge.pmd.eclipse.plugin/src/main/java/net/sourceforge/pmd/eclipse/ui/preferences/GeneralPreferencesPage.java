@@ -8,11 +8,8 @@ import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
-import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.jface.preference.ColorSelector;
 import org.eclipse.jface.preference.PreferenceDialog;
@@ -54,12 +51,11 @@ import net.sourceforge.pmd.PMDVersion;
 import net.sourceforge.pmd.RulePriority;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.plugin.UISettings;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.runtime.preferences.IPreferences;
 import net.sourceforge.pmd.eclipse.ui.BasicTableLabelProvider;
+import net.sourceforge.pmd.eclipse.ui.RuleLabelDecorator;
 import net.sourceforge.pmd.eclipse.ui.Shape;
 import net.sourceforge.pmd.eclipse.ui.ShapePicker;
-import net.sourceforge.pmd.eclipse.ui.model.RootRecord;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 import net.sourceforge.pmd.eclipse.ui.preferences.br.BasicTableManager;
 import net.sourceforge.pmd.eclipse.ui.priority.PriorityColumnUI;
@@ -822,10 +818,11 @@ public class GeneralPreferencesPage extends PreferencePage implements IWorkbench
 
         PriorityDescriptorCache.INSTANCE.storeInPreferences();
 
-        // refresh the resources so that the rule label decorator is updated
-        RootRecord root = new RootRecord(ResourcesPlugin.getWorkspace().getRoot());
-        Set<IFile> files = MarkerUtil.allMarkedFiles(root);
-        PMDPlugin.getDefault().changedFiles(files);
+        // the violations didn't change, but the rule label decorator needs to use the new icons
+        RuleLabelDecorator decorator = PMDPlugin.getDefault().ruleLabelDecorator();
+        if (decorator != null) {
+            decorator.changedAll();
+        }
 
         // Refresh the views to pick up the marker change
         PMDPlugin.getDefault().refreshView(PMDPlugin.VIOLATIONS_OVERVIEW_ID); 
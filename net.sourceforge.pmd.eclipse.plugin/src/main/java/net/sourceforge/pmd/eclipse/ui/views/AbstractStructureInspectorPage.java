@@ -38,16 +38,21 @@ import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 import net.sourceforge.pmd.eclipse.ui.views.ast.ASTUtil;
+import net.sourceforge.pmd.eclipse.ui.views.ast.CompilationUnitCache;
 import net.sourceforge.pmd.eclipse.ui.views.ast.XPathEvaluator;
+import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.java.ast.ASTMethodDeclaration;
 
 /**
+ * The abstract syntax tree of the document is taken from the {@link CompilationUnitCache}
+ * and is parsed in the background, if it's not current. The methods are shown, when the
+ * tree is available.
  * 
  * @author Brian Remedios
  */
 public abstract class AbstractStructureInspectorPage extends Page
-        implements IPropertyChangeListener, ISelectionChangedListener {
+        implements IPropertyChangeListener, ISelectionChangedListener, CompilationUnitCache.CompilationUnitListener {
 
     private Combo methodSelector;
     private FileRecord resourceRecord;
@@ -61,8 +66,7 @@ public abstract class AbstractStructureInspectorPage extends Page
         resourceRecord = record;
         if (part instanceof ITextEditor) {
             textEditor = (ITextEditor) part;
-            String source = getDocument().get();
-            classNode = XPathEvaluator.INSTANCE.getCompilationUnit(source);
+            requestCompilationUnit();
         }
     }
 
@@ -72,11 +76,57 @@ public abstract class AbstractStructureInspectorPage extends Page
             // set a new filerecord
             resourceRecord = new FileRecord(resource);
 
-            String source = getDocument().get();
-            classNode = XPathEvaluator.INSTANCE.getCompilationUnit(source);
+            if (textEditor != null) {
+                requestCompilationUnit();
+            }
         }
     }
 
+    /**
+     * Takes the tree of the document from the cache or requests it. Until the new tree has been
+     * parsed, the previous tree is shown.
+     */
+    private void requestCompilationUnit() {
+        requestCompilationUnit(this);
+    }
+
+    /**
+     * Requests the tree of the current content of the document. The listener is notified
+     * right away, if the cached tree is current, otherwise after the document has been parsed
+     * in the background.
+     */
+    protected void requestCompilationUnit(CompilationUnitCache.CompilationUnitListener listener) {
+        CompilationUnitCache.getInstance().request(getDocument(), getLanguageVersion(), listener);
+    }
+
+    @Override
+    public void compilationUnitParsed(IDocument document, Node compilationUnit) {
+        if (compilationUnit == null || compilationUnit == classNode || textEditor == null
+                || document != getDocument()) {
+            return;
+        }
+
+        classNode = compilationUnit;
+        if (methodSelector != null && !methodSelector.isDisposed()) {
+            refreshMethodSelector();
+            if (methodSelector.getSelectionIndex() < 0) {
+                showFirstMethod();
+            }
+        }
+    }
+
+    /**
+     * @return the java version of the project of the resource or the default version
+     */
+    protected LanguageVersion getLanguageVersion() {
+        LanguageVersion version = null;
+        IResource resource = resourceRecord == null ? null : resourceRecord.getResource();
+        if (resource != null) {
+            version = PMDPlugin.javaVersionFor(resource.getProject());
+        }
+        return version != null ? version : XPathEvaluator.INSTANCE.getLanguageVersion();
+    }
+
     // refresh the methods and select the old selected method
     protected void refreshMethodSelector() {
         int index = methodSelector.getSelectionIndex();
@@ -313,6 +363,10 @@ public abstract class AbstractStructureInspectorPage extends Page
      */
     private List<ASTMethodDeclaration> getPMDMethods() {
         List<ASTMethodDeclaration> methodList = new ArrayList<>();
+        if (classNode == null) {
+            // not parsed yet
+            return methodList;
+        }
         methodList.addAll(classNode.findDescendantsOfType(ASTMethodDeclaration.class));
         Collections.sort(methodList, ASTUtil.METHOD_COMPARATOR);
         return methodList;
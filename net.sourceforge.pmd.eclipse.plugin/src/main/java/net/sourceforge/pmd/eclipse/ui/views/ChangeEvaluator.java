@@ -5,17 +5,23 @@
 package net.sourceforge.pmd.eclipse.ui.views;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 
+import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.ui.model.AbstractPMDRecord;
 import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
-import net.sourceforge.pmd.eclipse.ui.model.PackageRecord;
 import net.sourceforge.pmd.eclipse.ui.model.ProjectRecord;
 import net.sourceforge.pmd.eclipse.ui.model.RootRecord;
 
@@ -23,7 +29,11 @@ import net.sourceforge.pmd.eclipse.ui.model.RootRecord;
  * As chunks of code originally found in the ViolationOverviewContentProvider,
  * the ChangeEvaluator aggregates the same functionality while using formal
  * ChangeRecord instances instead of List triplets.
- * 
+ *
+ * <p>The changed files are grouped by project and are looked up in a map of the
+ * file records of the project, so that the evaluation is linear in the number of
+ * changed files. Files, whose markers didn't change, are skipped.
+ *
  * @author Brian Remedios
  */
 public class ChangeEvaluator {
@@ -35,109 +45,76 @@ public class ChangeEvaluator {
     }
 
     public ChangeRecord<AbstractPMDRecord> changeRecordFor(IResourceChangeEvent event) {
+        return changeRecordFor(changedFilesIn(event));
+    }
 
-        List<IMarkerDelta> markerDeltas = MarkerUtil.markerDeltasIn(event);
-
-        // first we get a List of changes to Files and Projects so we won't be
-        // updating everything
-        List<IResource> changedFiles = new ArrayList<>();
-        List<IProject> changedProjects = new ArrayList<>();
-        for (IMarkerDelta markerDelta : markerDeltas) {
-            IResource resource = markerDelta.getResource();
-            IProject project = resource.getProject();
+    /**
+     * @return the resources of the PMD marker deltas of the event, without duplicates
+     */
+    public static Set<IResource> changedFilesIn(IResourceChangeEvent event) {
+        Set<IResource> changedFiles = new LinkedHashSet<>();
+        for (IMarkerDelta markerDelta : MarkerUtil.markerDeltasIn(event)) {
+            changedFiles.add(markerDelta.getResource());
+        }
+        return changedFiles;
+    }
 
-            // the lists should not contain Projects or Resources twice
-            if (!changedFiles.contains(resource)) {
-                changedFiles.add(resource);
-                // LOG.debug("Resource " + resource.getName() + " has changed");
-            }
+    /**
+     * Updates the model for the given changed files.
+     *
+     * @param changedFiles the files, whose markers changed
+     * @return the added, removed and changed records. Added packages or folders are reported
+     *     instead of the files within them.
+     */
+    public ChangeRecord<AbstractPMDRecord> changeRecordFor(Collection<IResource> changedFiles) {
 
-            if (!changedProjects.contains(project)) {
-                changedProjects.add(project);
-                // LOG.debug("Project " + project.getName() + " has changed");
+        // first we group the changed files by project, so we won't be updating everything
+        Map<IProject, List<IResource>> changedProjects = new LinkedHashMap<>();
+        for (IResource resource : changedFiles) {
+            IProject project = resource.getProject();
+            List<IResource> files = changedProjects.get(project);
+            if (files == null) {
+                files = new ArrayList<>();
+                changedProjects.put(project, files);
             }
+            files.add(resource);
         }
 
         // we can add, change, or remove Resources
         // all the changes are given to the viewer later
-
         ChangeRecord<AbstractPMDRecord> changeRec = new ChangeRecord<>();
 
-        // we go through the changed Projects
-        for (IProject project : changedProjects) {
-            // LOG.debug("Processing changes for project " + project.getName());
+        for (Map.Entry<IProject, List<IResource>> entry : changedProjects.entrySet()) {
+            IProject project = entry.getKey();
             ProjectRecord projectRec = (ProjectRecord) root.findResource(project);
 
-            // if the Project is closed or deleted, we also delete it from the
-            // Model and go on
             if (!(project.isOpen() && project.isAccessible())) {
-                // LOG.debug("The project is not open or not accessible. Remove
-                // it");
-                List<AbstractPMDRecord>[] array = updateFiles(project, changedFiles);
-                changeRec.removed(array[1]);
-                root.removeResource(project);
+                // if the Project is closed or deleted, we also delete it from the Model
+                if (projectRec != null) {
+                    removeProject(projectRec, changeRec);
+                }
             } else if (projectRec == null) {
-                // if we couldn't find the Project then it has to be new
-                // LOG.debug("Cannot find a project record for it. Add it.");
+                // if we couldn't find the Project then it has to be new, its
+                // packages are created from the current markers
                 projectRec = (ProjectRecord) root.addResource(project);
+                if (projectRec != null) {
+                    changeRec.added(projectRec.getChildrenAsList());
+                }
+            } else {
+                searchProjectForModifications(projectRec, entry.getValue(), changeRec);
             }
-
-            // then we can update the Files for the new or updated Project
-            List<AbstractPMDRecord>[] array = updateFiles(project, changedFiles);
-            changeRec.added(array[0]);
-            changeRec.removed(array[1]);
-            changeRec.changed(array[2]);
         }
 
-        // the additions, removals and changes are given to the viewer
-        // so that it can update itself
-        // updating the table MUST be in sync
-        // this.treeViewer.getControl().getDisplay().syncExec(new Runnable() {
-        // public void run() {
-        // updateViewer(additions, removals, changes);
-        // }
-        // });
-
         return changeRec;
     }
 
-    /**
-     * Updates the Files for a given Project
-     *
-     * @param project
-     * @param changedFiles,
-     *            a List of all changed Files
-     * @return an List of Lists containing additions [0], removals [1] and
-     *         changes [2] (Array-Position in Brackets)
-     */
-    private List<AbstractPMDRecord>[] updateFiles(IProject project, List<IResource> changedFiles) {
-        // TODO use ChangeRecord
-        List<AbstractPMDRecord> additions = new ArrayList<>();
-        List<AbstractPMDRecord> removals = new ArrayList<>();
-        List<AbstractPMDRecord> changes = new ArrayList<>();
-        List<AbstractPMDRecord>[] updatedFiles = new List[] { additions, removals, changes };
-
-        // we search for the ProjectRecord to the Project
-        // if it doesn't exist, we return nothing
-        ProjectRecord projectRec = (ProjectRecord) root.findResource(project);
-
-        // we got through all files
-        if (projectRec != null && project.isAccessible()) {
-            updatedFiles = searchProjectForModifications(projectRec, changedFiles);
-        } else if (projectRec != null) {
-            // if the project is deleted or closed
-            List<AbstractPMDRecord> packages = projectRec.getChildrenAsList();
-            // ... we add all Packages to the removals so they are not shown
-            // anymore
-            removals.addAll(packages);
-            for (int k = 0; k < packages.size(); k++) {
-                PackageRecord packageRec = (PackageRecord) packages.get(k);
-                removals.addAll(packageRec.getChildrenAsList());
-            }
-            updatedFiles = new List[] { additions, removals, changes };
+    private void removeProject(ProjectRecord projectRec, ChangeRecord<AbstractPMDRecord> changeRec) {
+        // ... we add all Packages to the removals so they are not shown anymore
+        for (AbstractPMDRecord packageRec : projectRec.getChildrenAsList()) {
+            changeRec.removed(packageRec);
+            changeRec.removed(packageRec.getChildrenAsList());
         }
-
-        return updatedFiles;
+        root.removeResource(projectRec.getResource());
     }
 
     /**
@@ -145,57 +122,59 @@ public class ChangeEvaluator {
      * additions, updates and removals.
      *
      * @param projectRec
-     * @param changedFiles
-     * @return
+     * @param changedFiles the changed files of this project
+     * @param changeRec the record, to which the modifications are added
      */
-    private static List<AbstractPMDRecord>[] searchProjectForModifications(ProjectRecord projectRec,
-            List<IResource> changedFiles) {
+    private static void searchProjectForModifications(ProjectRecord projectRec, List<IResource> changedFiles,
+            ChangeRecord<AbstractPMDRecord> changeRec) {
 
-        // TODO use ChangeRecord
-        List<AbstractPMDRecord> additions = new ArrayList<>();
-        List<AbstractPMDRecord> removals = new ArrayList<>();
-        List<AbstractPMDRecord> changes = new ArrayList<>();
-        IProject project = (IProject) projectRec.getResource();
-
-        // LOG.debug("Analyses project " + project.getName());
+        Map<IResource, FileRecord> fileRecords = fileRecordsOf(projectRec);
 
         for (IResource resource : changedFiles) {
-            // LOG.debug("Analyses resource " + resource.getName());
-
-            // ... and first check, if the project is the right one
-            if (project.equals(resource.getProject())) {
-                AbstractPMDRecord rec = projectRec.findResource(resource);
-                if (rec != null && rec.getResourceType() == IResource.FILE) {
-                    FileRecord fileRec = (FileRecord) rec;
-                    fileRec.updateChildren();
-                    if (fileRec.getResource().isAccessible() && fileRec.hasMarkers()) {
-                        // LOG.debug("The file has changed");
-                        changes.add(fileRec);
-                    } else {
-                        // LOG.debug("The file has been removed");
-                        projectRec.removeResource(fileRec.getResource());
-                        removals.add(fileRec);
-
-                        // remove parent if no more markers
-                        if (!fileRec.getParent().hasMarkers()) {
-                            projectRec.removeResource(fileRec.getParent().getResource());
-                            removals.add(fileRec.getParent());
-                        }
+            FileRecord fileRec = fileRecords.get(resource);
+            if (fileRec != null) {
+                if (fileRec.getResource().isAccessible() && fileRec.hasMarkers()) {
+                    if (!fileRec.isUpToDate()) {
+                        fileRec.updateChildren();
+                        changeRec.changed(fileRec);
                     }
-                } else if (rec == null) {
-                    // LOG.debug("This is a new file.");
-                    AbstractPMDRecord fileRec = projectRec.addResource(resource);
-                    additions.add(fileRec);
                 } else {
-                    // LOG.debug("The resource found is not a file! type found :
-                    // " + rec.getResourceType());
+                    // the file has been removed or has no markers anymore
+                    AbstractPMDRecord parentRec = fileRec.getParent();
+                    projectRec.removeResource(resource);
+                    fileRecords.remove(resource);
+
+                    changeRec.removed(fileRec);
+
+                    // the parent has been removed, if this was its last file
+                    if (parentRec.getChildren().length == 0) {
+                        changeRec.removed(parentRec);
+                    }
+                }
+            } else if (resource.getType() == IResource.FILE && resource.isAccessible()
+                    && PMDPlugin.getDefault().getViolationIndex().hasViolations(resource)) {
+                // this is a new file
+                AbstractPMDRecord addedRec = projectRec.addResource(resource);
+                if (addedRec instanceof FileRecord) {
+                    fileRecords.put(resource, (FileRecord) addedRec);
+                    AbstractPMDRecord parentRec = addedRec.getParent();
+
+                    // a new package is reported instead of its first file
+                    changeRec.added(parentRec.getChildren().length == 1 ? parentRec : addedRec);
                 }
-            } else {
-                // LOG.debug("The project resource is not the same! (" +
-                // resource.getProject().getName() + ')');
             }
         }
+    }
 
-        return new List[] { additions, removals, changes };
+    private static Map<IResource, FileRecord> fileRecordsOf(ProjectRecord projectRec) {
+        Map<IResource, FileRecord> fileRecords = new HashMap<>();
+        for (AbstractPMDRecord packageRec : projectRec.getChildrenAsList()) {
+            for (AbstractPMDRecord fileRec : packageRec.getChildrenAsList()) {
+                if (fileRec instanceof FileRecord) {
+                    fileRecords.put(fileRec.getResource(), (FileRecord) fileRec);
+                }
+            }
+        }
+        return fileRecords;
     }
 }
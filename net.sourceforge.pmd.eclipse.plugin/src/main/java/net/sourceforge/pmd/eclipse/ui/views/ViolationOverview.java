@@ -6,8 +6,12 @@ package net.sourceforge.pmd.eclipse.ui.views; // NOPMD by Sven on 13.11.06 11:45
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
@@ -38,6 +42,8 @@ import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
 import net.sourceforge.pmd.eclipse.runtime.cmd.DeleteMarkersCommand;
 import net.sourceforge.pmd.eclipse.ui.PMDUiConstants;
 import net.sourceforge.pmd.eclipse.ui.model.AbstractPMDRecord;
+import net.sourceforge.pmd.eclipse.ui.model.CodeMetricsCache;
+import net.sourceforge.pmd.eclipse.ui.model.CodeMetricsCache.MetricsListener;
 import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
 import net.sourceforge.pmd.eclipse.ui.model.FileToMarkerRecord;
 import net.sourceforge.pmd.eclipse.ui.model.MarkerRecord;
@@ -61,6 +67,20 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
     private ProjectFilter projectFilter;
     private ViolationOverviewMenuManager menuManager;
     private ViolationOverviewDoubleClickListener doubleClickListener;
+    private final MetricsListener metricsListener = new MetricsListener() {
+        @Override
+        public void metricsChanged(final Collection<IFile> files) {
+            // only the metrics columns of the files and their containers changed
+            Display.getDefault().asyncExec(new Runnable() {
+                @Override
+                public void run() {
+                    if (!treeViewer.getControl().isDisposed()) {
+                        updateMetrics(files);
+                    }
+                }
+            });
+        }
+    };
 
     private RootRecord root;
     private ViewMemento memento;
@@ -107,7 +127,8 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
 
     @Override
     public void createPartControl(Composite parent) {
-        treeViewer = new TreeViewer(parent, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL);
+        // the tree is virtual, the items are only created, when they get visible
+        treeViewer = new TreeViewer(parent, SWT.MULTI | SWT.H_SCROLL | SWT.V_SCROLL | SWT.VIRTUAL);
         treeViewer.setUseHashlookup(true);
         treeViewer.getTree().setHeaderVisible(true);
         treeViewer.getTree().setLinesVisible(true);
@@ -130,6 +151,7 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
         treeViewer.setInput(root);
         treeViewer.addDoubleClickListener(doubleClickListener);
         getSite().setSelectionProvider(this);
+        CodeMetricsCache.getInstance().addListener(metricsListener);
 
         // load the State from a Memento into the View if there is one
         if (memento != null) {
@@ -166,6 +188,7 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
         memento.save();
 
         menuManager.dispose();
+        CodeMetricsCache.getInstance().removeListener(metricsListener);
 
         super.dispose();
     }
@@ -386,6 +409,36 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
         return projects;
     }
 
+    /**
+     * Updates the records of the given files and their containers, after their metrics changed.
+     * If the markers are shown per package, the marker records show the metrics of the package,
+     * so the packages are refreshed.
+     */
+    private void updateMetrics(Collection<IFile> files) {
+        Set<Object> updates = new LinkedHashSet<>();
+        Set<Object> refreshes = new LinkedHashSet<>();
+        for (IFile file : files) {
+            AbstractPMDRecord record = root.findResource(file);
+            if (record == null) {
+                continue;
+            }
+            if (getShowType() == SHOW_MARKERS_FILES) {
+                refreshes.add(record.getParent());
+            }
+            for (; record != null && record != root; record = record.getParent()) {
+                updates.add(record);
+            }
+        }
+
+        for (Object element : refreshes) {
+            treeViewer.refresh(element, true);
+        }
+        updates.removeAll(refreshes);
+        if (!updates.isEmpty()) {
+            treeViewer.update(updates.toArray(), null);
+        }
+    }
+
     /**
      * Refresh the View (and its Elements).
      */
@@ -632,31 +685,9 @@ public class ViolationOverview extends ViewPart implements ISelectionProvider, I
         // do nothing
     }
 
-    /**
-     * Calculates the LOC of the expanded file record.
-     */
     @Override
     public void treeExpanded(TreeExpansionEvent event) {
-        Object object = event.getElement();
-        if (object instanceof PackageRecord) {
-            PackageRecord record = (PackageRecord) object;
-            AbstractPMDRecord[] children = record.getChildren();
-            for (AbstractPMDRecord element : children) {
-                if (element instanceof FileRecord) {
-                    FileRecord fileRecord = (FileRecord) element;
-                    fileRecord.calculateLinesOfCode();
-                    fileRecord.calculateNumberOfMethods();
-                }
-            }
-        }
-
-        // refresh the labels in the table
-        Display.getDefault().asyncExec(new Runnable() {
-            @Override
-            public void run() {
-                getViewer().refresh();
-            }
-        });
+        // do nothing, the metrics of the files are computed in the background, when they are shown
     }
 
     /**
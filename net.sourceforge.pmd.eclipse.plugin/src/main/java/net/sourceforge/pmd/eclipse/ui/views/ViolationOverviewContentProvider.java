@@ -4,18 +4,28 @@
 
 package net.sourceforge.pmd.eclipse.ui.views;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.IStructuredContentProvider;
 import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.TreeViewer;
 import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Control;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +42,10 @@ import net.sourceforge.pmd.eclipse.util.Util;
 /**
  * Provides the Violation Overview with Content Elements can be PackageRecords or FileRecords
  *
+ * <p>The marker deltas are collected for a short time and the model is then updated by a
+ * background job. The resulting changes are applied to the viewer in chunks on the UI
+ * thread, without refreshing the whole tree.
+ *
  * @author SebastianRaffel ( 09.05.2005 ), Philppe Herlin, Sven Jacob
  *
  */
@@ -39,13 +53,29 @@ public class ViolationOverviewContentProvider
         implements ITreeContentProvider, IStructuredContentProvider, IResourceChangeListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(ViolationOverviewContentProvider.class);
+
+    /**
+     * The marker deltas are collected for so long, before the model is updated.
+     */
+    private static final long UPDATE_DELAY_MILLIS = 300;
+
+    /**
+     * At most so many changes are applied to the viewer at once, so that the UI stays responsive.
+     */
+    private static final int VIEWER_CHUNK_SIZE = 200;
+
     protected boolean filterPackages;
 
     private final ViolationOverview violationView;
     private TreeViewer treeViewer;
 
     private RootRecord root;
-    private ChangeEvaluator changeEvaluator;
+    private volatile ChangeEvaluator changeEvaluator;
+
+    private final Set<IResource> pendingFiles = new LinkedHashSet<>();
+    private final Job updateJob = new UpdateJob();
+    private final Deque<ViewerChange> viewerChanges = new ArrayDeque<>();
+    private boolean viewerUpdateScheduled;
 
     /**
      * Constructor
@@ -65,6 +95,13 @@ public class ViolationOverviewContentProvider
             IWorkspaceRoot workspaceRoot = (IWorkspaceRoot) root.getResource();
             workspaceRoot.getWorkspace().removeResourceChangeListener(this);
         }
+        updateJob.cancel();
+        synchronized (pendingFiles) {
+            pendingFiles.clear();
+        }
+        synchronized (viewerChanges) {
+            viewerChanges.clear();
+        }
     }
 
     @Override
@@ -282,15 +319,19 @@ public class ViolationOverviewContentProvider
 
     @Override
     public void resourceChanged(IResourceChangeEvent event) {
-        final ChangeRecord<AbstractPMDRecord> changes = changeEvaluator.changeRecordFor(event);
+        Set<IResource> changedFiles = ChangeEvaluator.changedFilesIn(event);
+        if (changedFiles.isEmpty()) {
+            return;
+        }
 
-        // the additions, removals and changes are given to the viewer so that it can update itself
-        treeViewer.getControl().getDisplay().asyncExec(new Runnable() {
-            @Override
-            public void run() {
-                updateViewer(changes);
+        // the first delta starts the collection period, the following deltas are coalesced
+        synchronized (pendingFiles) {
+            boolean schedule = pendingFiles.isEmpty();
+            pendingFiles.addAll(changedFiles);
+            if (schedule) {
+                updateJob.schedule(UPDATE_DELAY_MILLIS);
             }
-        });
+        }
     }
 
     // public void resourceChanged(IResourceChangeEvent event) {
@@ -495,28 +536,167 @@ public class ViolationOverviewContentProvider
     // violationView.refresh();
     // }
 
+    /**
+     * Queues the changes of the model, which are applied to the viewer in chunks on the UI thread.
+     *
+     * @param changes the changes computed by the {@link ChangeEvaluator}
+     */
     protected void updateViewer(ChangeRecord<AbstractPMDRecord> changes) {
+        synchronized (viewerChanges) {
+            for (AbstractPMDRecord record : changes.removals) {
+                viewerChanges.add(new ViewerChange(ViewerChange.REMOVED, record));
+            }
+            for (AbstractPMDRecord record : changes.additions) {
+                viewerChanges.add(new ViewerChange(ViewerChange.ADDED, record));
+            }
+            for (AbstractPMDRecord record : changes.changes) {
+                viewerChanges.add(new ViewerChange(ViewerChange.CHANGED, record));
+            }
+            scheduleViewerUpdate();
+        }
+    }
 
-        // perform removals
-        if (changes.hasRemovals()) {
-            treeViewer.cancelEditing();
-            treeViewer.remove(changes.removals.toArray());
+    private void scheduleViewerUpdate() {
+        if (viewerUpdateScheduled || viewerChanges.isEmpty()) {
+            return;
         }
+        Control control = treeViewer.getControl();
+        if (control.isDisposed()) {
+            viewerChanges.clear();
+            return;
+        }
+        viewerUpdateScheduled = true;
+        control.getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                applyViewerChanges();
+            }
+        });
+    }
 
-        // perform additions (if any)
-        for (AbstractPMDRecord addedRec : changes.additions) {
-            if (addedRec instanceof FileRecord) {
-                treeViewer.add(addedRec.getParent(), addedRec);
-            } else {
-                treeViewer.add(root, addedRec);
+    /**
+     * Applies the next chunk of the queued changes. Runs on the UI thread.
+     */
+    private void applyViewerChanges() {
+        List<ViewerChange> chunk = new ArrayList<>(VIEWER_CHUNK_SIZE);
+        synchronized (viewerChanges) {
+            viewerUpdateScheduled = false;
+            while (chunk.size() < VIEWER_CHUNK_SIZE && !viewerChanges.isEmpty()) {
+                chunk.add(viewerChanges.poll());
+            }
+        }
+
+        Control control = treeViewer.getControl();
+        if (control.isDisposed() || chunk.isEmpty()) {
+            return;
+        }
+
+        // structurally changed elements are refreshed, parents only need new labels (e.g. the number of violations)
+        Set<Object> refreshes = new LinkedHashSet<>();
+        Set<Object> updates = new LinkedHashSet<>();
+        boolean markersByPackage = violationView.getShowType() == ViolationOverview.SHOW_MARKERS_FILES;
+        boolean filesOnly = violationView.getShowType() == ViolationOverview.SHOW_FILES_MARKERS;
+
+        control.setRedraw(false);
+        try {
+            for (ViewerChange change : chunk) {
+                AbstractPMDRecord record = change.record;
+                boolean isFile = record instanceof FileRecord;
+                switch (change.kind) {
+                case ViewerChange.REMOVED:
+                    treeViewer.remove(record);
+                    if (isFile && markersByPackage) {
+                        refreshes.add(record.getParent());
+                    }
+                    break;
+                case ViewerChange.ADDED:
+                    if (isFile && markersByPackage) {
+                        refreshes.add(record.getParent());
+                    } else if (isFile) {
+                        treeViewer.add(filesOnly ? root : record.getParent(), record);
+                    } else {
+                        treeViewer.add(root, filesOnly ? record.getChildren() : new Object[] { record });
+                    }
+                    break;
+                default:
+                    refreshes.add(markersByPackage ? record.getParent() : record);
+                    break;
+                }
+                if (isFile) {
+                    updates.add(record.getParent());
+                }
+            }
+
+            for (Object element : refreshes) {
+                treeViewer.refresh(element, true);
+            }
+            updates.removeAll(refreshes);
+            if (!updates.isEmpty()) {
+                treeViewer.update(updates.toArray(), null);
             }
+        } finally {
+            control.setRedraw(true);
         }
 
-        // perform changes
-        if (changes.hasChanges()) {
-            treeViewer.update(changes.changes.toArray(), null);
+        boolean done;
+        synchronized (viewerChanges) {
+            done = viewerChanges.isEmpty();
+            scheduleViewerUpdate();
         }
+        if (done) {
+            violationView.refreshMenu();
+        }
+    }
 
-        violationView.refresh();
+    /**
+     * A change of the model, that needs to be applied to the viewer.
+     */
+    private static final class ViewerChange {
+        static final int ADDED = 1;
+        static final int REMOVED = 2;
+        static final int CHANGED = 3;
+
+        final int kind;
+        final AbstractPMDRecord record;
+
+        ViewerChange(int kind, AbstractPMDRecord record) {
+            this.kind = kind;
+            this.record = record;
+        }
+    }
+
+    /**
+     * Updates the model with the collected marker deltas. As there is only one job, the
+     * model is never updated concurrently.
+     */
+    private class UpdateJob extends Job {
+        UpdateJob() {
+            super("Updating PMD Violations Overview");
+            setPriority(Job.DECORATE);
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            Set<IResource> changedFiles;
+            synchronized (pendingFiles) {
+                changedFiles = new LinkedHashSet<>(pendingFiles);
+                pendingFiles.clear();
+            }
+
+            ChangeEvaluator evaluator = changeEvaluator;
+            if (evaluator == null || changedFiles.isEmpty()) {
+                return Status.OK_STATUS;
+            }
+
+            long start = System.currentTimeMillis();
+            ChangeRecord<AbstractPMDRecord> changes = evaluator.changeRecordFor(changedFiles);
+            LOG.debug("Evaluated the marker changes of {} files in {}ms: {} additions, {} removals, {} changes",
+                    changedFiles.size(), System.currentTimeMillis() - start, changes.additions.size(),
+                    changes.removals.size(), changes.changes.size());
+
+            updateViewer(changes);
+            return Status.OK_STATUS;
+        }
     }
 }
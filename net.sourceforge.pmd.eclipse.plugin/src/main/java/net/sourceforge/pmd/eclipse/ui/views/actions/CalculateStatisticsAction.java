@@ -4,17 +4,16 @@
 
 package net.sourceforge.pmd.eclipse.ui.views.actions;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.jface.dialogs.ProgressMonitorDialog;
-import org.eclipse.jface.operation.IRunnableWithProgress;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.jface.viewers.ITreeContentProvider;
 import org.eclipse.jface.viewers.TreeViewer;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.swt.widgets.TreeItem;
 
 import net.sourceforge.pmd.eclipse.ui.PMDUiConstants;
 import net.sourceforge.pmd.eclipse.ui.model.AbstractPMDRecord;
+import net.sourceforge.pmd.eclipse.ui.model.CodeMetricsCache;
 import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
 import net.sourceforge.pmd.eclipse.ui.model.PackageRecord;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
@@ -45,69 +44,32 @@ public class CalculateStatisticsAction extends AbstractPMDAction {
     }
 
     /**
-     * Executes the Action.
+     * Executes the Action. The metrics of all the files of the view are queued for the
+     * background computation, the view is refreshed, as soon as they are available.
      */
     @Override
     public void run() {
-        try {
-            final ProgressMonitorDialog dialog = new ProgressMonitorDialog(Display.getDefault().getActiveShell());
-            dialog.setCancelable(true);
-
-            dialog.run(false, false, new IRunnableWithProgress() {
-                @Override
-                public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-                    final TreeItem[] items = getViewer().getTree().getItems();
-                    final int unitCount = calculateWorkUnits(items);
-                    monitor.beginTask(getString(StringKeys.MONITOR_CALC_STATS_TASK), unitCount);
-                    for (TreeItem item : items) {
-                        if (monitor.isCanceled()) {
-                            break;
-                        }
-                        if (item.getData() instanceof PackageRecord) {
-                            final PackageRecord record = (PackageRecord) item.getData();
-                            final AbstractPMDRecord[] children = record.getChildren();
-                            monitor.subTask(
-                                    getString(StringKeys.MONITOR_CALC_STATS_OF_PACKAGE) + ": " + record.getName());
-                            for (AbstractPMDRecord kid : children) {
-                                if (kid instanceof FileRecord) {
-                                    calculateFileRecord((FileRecord) kid);
-                                    monitor.worked(1);
-                                }
-                            }
-                        } else if (item.getData() instanceof FileRecord) {
-                            calculateFileRecord((FileRecord) item.getData());
-                            monitor.worked(1);
-                        }
-                    }
-
-                    getViewer().refresh(true);
+        // the tree is virtual, so the elements are taken from the content provider
+        // instead of the tree items, which might not have been created yet
+        final Object[] items = ((ITreeContentProvider) getViewer().getContentProvider())
+                .getElements(getViewer().getInput());
+        final List<IFile> files = new ArrayList<>();
+        for (Object item : items) {
+            if (item instanceof PackageRecord) {
+                for (AbstractPMDRecord kid : ((PackageRecord) item).getChildren()) {
+                    addFileOf(kid, files);
                 }
-            });
-        } catch (InvocationTargetException e) {
-            logErrorByKey(StringKeys.ERROR_INVOCATIONTARGET_EXCEPTION, e);
-        } catch (InterruptedException e) {
-            logErrorByKey(StringKeys.ERROR_INTERRUPTED_EXCEPTION, e);
-        }
-    }
-
-    private void calculateFileRecord(FileRecord fileRecord) {
-        if (fileRecord.getLOC() == 0) {
-            fileRecord.calculateLinesOfCode();
-            fileRecord.calculateNumberOfMethods();
+            } else {
+                addFileOf(item, files);
+            }
         }
+        CodeMetricsCache.getInstance().request(files);
     }
 
-    private int calculateWorkUnits(TreeItem[] items) {
-        int count = 0;
-        for (TreeItem item : items) {
-            Object data = item.getData();
-            if (data instanceof PackageRecord) {
-                count += ((PackageRecord) data).getChildren().length;
-            } else if (data instanceof FileRecord) {
-                count++;
-            }
+    private static void addFileOf(Object item, List<IFile> files) {
+        if (item instanceof FileRecord && ((FileRecord) item).getResource() instanceof IFile) {
+            files.add((IFile) ((FileRecord) item).getResource());
         }
-        return count;
     }
 
 }
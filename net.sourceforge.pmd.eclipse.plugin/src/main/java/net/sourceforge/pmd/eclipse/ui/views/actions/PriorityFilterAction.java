@@ -4,19 +4,12 @@
 
 package net.sourceforge.pmd.eclipse.ui.views.actions;
 
-import java.util.Set;
-
-import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.jface.action.Action;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.viewers.ViewerFilter;
 
 import net.sourceforge.pmd.RulePriority;
-import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.plugin.UISettings;
-import net.sourceforge.pmd.eclipse.runtime.builder.MarkerUtil;
-import net.sourceforge.pmd.eclipse.ui.model.RootRecord;
 import net.sourceforge.pmd.eclipse.ui.priority.PriorityDescriptor;
 import net.sourceforge.pmd.eclipse.ui.priority.PriorityDescriptorCache;
 import net.sourceforge.pmd.eclipse.ui.views.PriorityFilter;
@@ -114,11 +107,7 @@ public class PriorityFilterAction extends Action implements PriorityFilterChange
         } else if (overviewView != null) {
             overviewView.refresh();
         }
-
-        // refresh all resources to update the rule label decorator
-        RootRecord root = new RootRecord(ResourcesPlugin.getWorkspace().getRoot());
-        Set<IFile> files = MarkerUtil.allMarkedFiles(root);
-        PMDPlugin.getDefault().changedFiles(files);
+        // the rule label decorator listens to the priority filter itself
     }
 
     @Override
@@ -10,6 +10,7 @@ import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.viewers.IStructuredContentProvider;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.jface.viewers.TreeViewer;
@@ -44,6 +45,7 @@ import net.sourceforge.pmd.eclipse.ui.model.FileRecord;
 import net.sourceforge.pmd.eclipse.ui.preferences.AbstractStructuredContentProvider;
 import net.sourceforge.pmd.eclipse.ui.preferences.br.BasicTableManager;
 import net.sourceforge.pmd.eclipse.ui.views.AbstractStructureInspectorPage;
+import net.sourceforge.pmd.eclipse.ui.views.ast.CompilationUnitCache.CompilationUnitListener;
 import net.sourceforge.pmd.lang.ast.AbstractNode;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.ast.ParseException;
@@ -69,6 +71,16 @@ public class ASTViewPage extends AbstractStructureInspectorPage {
     private ASTPainterHelper helper;
     private ASTContentProvider contentProvider;
 
+    /**
+     * Evaluates the query, when the tree of the current content has been parsed.
+     */
+    private final CompilationUnitListener xpathEvaluation = new CompilationUnitListener() {
+        @Override
+        public void compilationUnitParsed(IDocument document, Node compilationUnit) {
+            evaluateXPath(document, compilationUnit);
+        }
+    };
+
     // private static Set<String> keywords = new HashSet<String>();
 
     private static Set<Class<?>> hiddenNodeTypes;
@@ -250,9 +262,19 @@ public class ASTViewPage extends AbstractStructureInspectorPage {
             return;
         }
 
+        requestCompilationUnit(xpathEvaluation);
+    }
+
+    private void evaluateXPath(IDocument document, Node compilationUnit) {
+        if (compilationUnit == null || textEditor == null || document != getDocument()
+                || resultsViewer.getTable().isDisposed()) {
+            return;
+        }
+
         List<Node> results = null;
         try {
-            results = XPathEvaluator.INSTANCE.evaluate(getDocument().get(), xpathField.getText(),
+            // the tree has been requested from the cache with this language version
+            results = XPathEvaluator.INSTANCE.evaluate(compilationUnit, getLanguageVersion(), xpathField.getText(),
                     XPathVersion.XPATH_2_0.getXmlName() // TODO derive from future combo widget
             );
         } catch (ParseException pe) {
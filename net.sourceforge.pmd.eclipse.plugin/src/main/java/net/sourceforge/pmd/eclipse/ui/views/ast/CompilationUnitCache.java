@@ -0,0 +1,205 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.views.ast;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.swt.widgets.Display;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.ast.Node;
+
+/**
+ * Cache of the abstract syntax trees of the documents, that are shown by the AST view, the dataflow
+ * view and the XPath evaluator. These share the same parsed tree.
+ *
+ * <p>A tree is valid for the modification stamp of the document and the language version, it has
+ * been parsed with. Missing or outdated trees are parsed by a background job, the listener is
+ * notified in the UI thread, when the tree is available. Only the last tree of a document is kept,
+ * and the documents are only weakly referenced.
+ */
+public final class CompilationUnitCache {
+    private static final Logger LOG = LoggerFactory.getLogger(CompilationUnitCache.class);
+
+    private static final CompilationUnitCache INSTANCE = new CompilationUnitCache();
+
+    private final Map<IDocument, Entry> entries = new WeakHashMap<>();
+    private final Map<IDocument, Request> pendingRequests = new LinkedHashMap<>();
+    private final Job parseJob = new ParseJob();
+
+    private CompilationUnitCache() {
+        // singleton
+    }
+
+    public static CompilationUnitCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Notified in the UI thread, when a requested tree has been parsed.
+     */
+    public interface CompilationUnitListener {
+        void compilationUnitParsed(IDocument document, Node compilationUnit);
+    }
+
+    /**
+     * @return the tree of the current content of the document or <code>null</code>,
+     *         if it has not been parsed yet
+     */
+    public synchronized Node getIfCurrent(IDocument document, LanguageVersion version) {
+        Entry entry = entries.get(document);
+        return entry != null && entry.isCurrent(stampOf(document), version) ? entry.compilationUnit : null;
+    }
+
+    /**
+     * Requests the tree of the current content of the document. If the tree is cached,
+     * the listener is notified right away, otherwise after the document has been parsed
+     * in the background. Must be called in the UI thread.
+     */
+    public void request(IDocument document, LanguageVersion version, CompilationUnitListener listener) {
+        Node compilationUnit = getIfCurrent(document, version);
+        if (compilationUnit != null) {
+            listener.compilationUnitParsed(document, compilationUnit);
+            return;
+        }
+
+        // the content is copied here, as the document must not be read by the background job
+        long stamp = stampOf(document);
+        synchronized (this) {
+            Request request = pendingRequests.get(document);
+            if (request == null || request.stamp != stamp || !version.equals(request.version)) {
+                Request newRequest = new Request(document, stamp, version, document.get());
+                if (request != null) {
+                    newRequest.listeners.addAll(request.listeners);
+                }
+                request = newRequest;
+                pendingRequests.put(document, request);
+            }
+            if (!request.listeners.contains(listener)) {
+                request.listeners.add(listener);
+            }
+        }
+        parseJob.schedule();
+    }
+
+    /**
+     * Forgets the pending requests and the cached tree of a document.
+     */
+    public synchronized void remove(IDocument document) {
+        pendingRequests.remove(document);
+        entries.remove(document);
+    }
+
+    public void dispose() {
+        synchronized (this) {
+            pendingRequests.clear();
+            entries.clear();
+        }
+        parseJob.cancel();
+    }
+
+    private synchronized void put(IDocument document, Entry entry) {
+        entries.put(document, entry);
+    }
+
+    private synchronized Request nextRequest() {
+        Iterator<Request> iterator = pendingRequests.values().iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        Request request = iterator.next();
+        iterator.remove();
+        return request;
+    }
+
+    private static long stampOf(IDocument document) {
+        return document instanceof IDocumentExtension4 ? ((IDocumentExtension4) document).getModificationStamp()
+                : IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
+
+    private static void fireParsed(final Request request, final Node compilationUnit) {
+        Display.getDefault().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                for (CompilationUnitListener listener : request.listeners) {
+                    listener.compilationUnitParsed(request.document, compilationUnit);
+                }
+            }
+        });
+    }
+
+    private static final class Entry {
+        private final long stamp;
+        private final LanguageVersion version;
+        private final Node compilationUnit;
+
+        Entry(long stamp, LanguageVersion version, Node compilationUnit) {
+            this.stamp = stamp;
+            this.version = version;
+            this.compilationUnit = compilationUnit;
+        }
+
+        boolean isCurrent(long currentStamp, LanguageVersion currentVersion) {
+            return currentStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP && currentStamp == stamp
+                    && currentVersion.equals(version);
+        }
+    }
+
+    private static final class Request {
+        private final IDocument document;
+        private final long stamp;
+        private final LanguageVersion version;
+        private final String source;
+        private final List<CompilationUnitListener> listeners = new ArrayList<>(2);
+
+        Request(IDocument document, long stamp, LanguageVersion version, String source) {
+            this.document = document;
+            this.stamp = stamp;
+            this.version = version;
+            this.source = source;
+        }
+    }
+
+    /**
+     * Parses the requested documents one after another.
+     */
+    private class ParseJob extends Job {
+        ParseJob() {
+            super("PMD abstract syntax tree");
+            setPriority(Job.SHORT);
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            Request request = nextRequest();
+            while (request != null && !monitor.isCanceled()) {
+                try {
+                    Node compilationUnit = XPathEvaluator.INSTANCE.getCompilationUnit(request.source,
+                            request.version);
+                    put(request.document, new Entry(request.stamp, request.version, compilationUnit));
+                    fireParsed(request, compilationUnit);
+                } catch (RuntimeException e) {
+                    LOG.warn("Could not parse the document: {}", e.toString());
+                }
+                request = nextRequest();
+            }
+            return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+        }
+    }
+}
@@ -4,13 +4,10 @@
 
 package net.sourceforge.pmd.eclipse.ui.views.ast;
 
+import java.util.Collections;
 import java.util.List;
 
-import net.sourceforge.pmd.PMDConfiguration;
-import net.sourceforge.pmd.PmdAnalysis;
-import net.sourceforge.pmd.RuleSet;
-import net.sourceforge.pmd.eclipse.ui.actions.RuleSetUtil;
-import net.sourceforge.pmd.eclipse.util.internal.SpyingRule;
+import net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisSession;
 import net.sourceforge.pmd.eclipse.util.internal.SpyingXPathRule;
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
@@ -30,50 +27,55 @@ public final class XPathEvaluator {
     }
 
     public Node getCompilationUnit(String source) {
-        PMDConfiguration configuration = new PMDConfiguration();
-        configuration.setIgnoreIncrementalAnalysis(true);
-        configuration.setForceLanguageVersion(getLanguageVersion());
-
-        SpyingRule rule = new SpyingRule();
-        rule.setLanguage(getLanguageVersion().getLanguage());
-        RuleSet ruleset = RuleSetUtil.newSingle(rule);
-
-        try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
-            pmd.addRuleSet(ruleset);
-            pmd.files().addSourceFile(source, "[snippet]");
-            pmd.performAnalysis();
-        }
+        return getCompilationUnit(source, getLanguageVersion());
+    }
 
-        return rule.getRootNode();
+    /**
+     * Parses the source with the given language version. The source is processed like
+     * for an analysis, so that the tree contains the symbols, types and the dataflow.
+     * Use the {@link CompilationUnitCache} to parse the content of a document.
+     *
+     * @return the root node or <code>null</code>, if the source could not be parsed
+     */
+    public Node getCompilationUnit(String source, LanguageVersion languageVersion) {
+        return AnalysisSession.forLanguageVersion(languageVersion).parse(source, "[snippet]");
     }
 
-    private LanguageVersion getLanguageVersion() {
+    public LanguageVersion getLanguageVersion() {
         return LanguageRegistry.getLanguage(JavaLanguageModule.NAME).getDefaultVersion();
     }
 
+    /**
+     * Parses the source and executes the query against it.
+     * 
+     * @see #evaluate(Node, LanguageVersion, String, String)
+     */
+    public List<Node> evaluate(String source, String xpathQuery, String xpathVersion) {
+        LanguageVersion languageVersion = getLanguageVersion();
+        Node compilationUnit = getCompilationUnit(source, languageVersion);
+        if (compilationUnit == null) {
+            return Collections.emptyList();
+        }
+        return evaluate(compilationUnit, languageVersion, xpathQuery, xpathVersion);
+    }
+
     /**
      * Builds a temporary XPathRule using the query provided and executes it
-     * against the source. Returns a list of nodes detailing any issues found
-     * with it.
+     * against an already parsed tree. Returns a list of nodes detailing any
+     * issues found with it. The rule is applied by the analysis session of the
+     * language version, the tree has been parsed with.
      * 
-     * @param source
+     * @param compilationUnit
+     * @param languageVersion the language version, the tree has been parsed with
      * @param xpathQuery
      * @param xpathVersion
      * @return
      */
-    public List<Node> evaluate(String source, String xpathQuery, String xpathVersion) {
-        SpyingXPathRule xpathRule = new SpyingXPathRule(XPathVersion.ofId(xpathVersion), xpathQuery, getLanguageVersion().getLanguage());
-        RuleSet ruleSet = RuleSetUtil.newSingle(xpathRule);
-
-        PMDConfiguration configuration = new PMDConfiguration();
-        configuration.setIgnoreIncrementalAnalysis(true);
-        configuration.setForceLanguageVersion(getLanguageVersion());
-        try (PmdAnalysis pmd = PmdAnalysis.create(configuration)) {
-            pmd.addRuleSet(ruleSet);
-            pmd.files().addSourceFile(source, "[snippet]");
-            pmd.performAnalysis();
-        }
-
+    public List<Node> evaluate(Node compilationUnit, LanguageVersion languageVersion, String xpathQuery,
+            String xpathVersion) {
+        SpyingXPathRule xpathRule = new SpyingXPathRule(XPathVersion.ofId(xpathVersion), xpathQuery,
+                languageVersion.getLanguage());
+        AnalysisSession.forLanguageVersion(languageVersion).apply(xpathRule, compilationUnit);
         return xpathRule.getResult();
     }
 }
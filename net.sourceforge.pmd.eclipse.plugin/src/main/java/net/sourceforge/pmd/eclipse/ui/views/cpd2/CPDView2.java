@@ -4,18 +4,12 @@
 
 package net.sourceforge.pmd.eclipse.ui.views.cpd2;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.StringTokenizer;
 
+import org.eclipse.jface.viewers.ILazyTreeContentProvider;
 import org.eclipse.jface.viewers.IStructuredSelection;
-import org.eclipse.jface.viewers.TreeNode;
-import org.eclipse.jface.viewers.TreeNodeContentProvider;
 import org.eclipse.jface.viewers.TreeViewer;
+import org.eclipse.jface.viewers.Viewer;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.KeyAdapter;
 import org.eclipse.swt.events.KeyEvent;
@@ -38,21 +32,27 @@ import org.eclipse.ui.part.ViewPart;
 import net.sourceforge.pmd.cpd.Match;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.runtime.PMDRuntimeConstants;
+import net.sourceforge.pmd.eclipse.runtime.cmd.ContinuousCpd;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
-import net.sourceforge.pmd.eclipse.util.internal.StringUtil;
 
 /**
  * An updated view for Cut & Paste Detector that shows the results in a tree
  * table with the file matches as columns at the root level with actual code
  * snippets that span all columns beneath them. Clicking on the class names
  * brings up the relevant sections in the code editor.
+ *
+ * <p>The tree is virtual: the matches are kept in a {@link CpdResultStore}, and
+ * the rows and the source code snippets are only created, when they are shown.
+ *
+ * <p>The results of the continuous CPD are shown, unless the results of an
+ * on demand CPD run are shown. These are shown until they all have been removed.
  * 
  * @author Brian Remedios
  */
 public class CPDView2 extends ViewPart implements IPropertyListener {
 
     private TreeViewer treeViewer;
-    private TreeNodeContentProvider contentProvider;
+    private ResultContentProvider contentProvider;
     private CPDViewLabelProvider2 labelProvider;
     private int[] columnWidths;
 
@@ -60,28 +60,16 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
     private Listener resizeListener;
     private Color classColor;
     private Color packageColor;
-    private Map<String, int[]> nameWidthsByName;
+    private CpdResultStore store = CpdResultStore.of(null);
+    private CpdResultStore continuousStore = CpdResultStore.of(null);
+    private boolean showsOnDemandResults;
+    private int[][] nameWidthsByFile = new int[0][];
     private TreeColumn messageColumn; // we adjust the width of this one
 
     private static final int SPAN_COLUMN_WIDTH = 50;
-    private static final int MAX_MATCHES = 100;
     private static final int X_GAP = 6;
-    private static final String TAB_EQUIVALENT = "    "; // tab char == 4 spaces
     public static final int SOURCE_COLUMN_IDX = 1;
 
-    private static List<Match> asList(Iterator<Match> matchIter) {
-        List<Match> matches = new ArrayList<>(MAX_MATCHES);
-
-        for (int count = 0; matchIter.hasNext() && count < MAX_MATCHES; count++) {
-            matches.add(matchIter.next());
-        }
-
-        Collections.sort(matches, Match.MATCHES_COMPARATOR);
-        Collections.reverse(matches);
-
-        return matches;
-    }
-
     public static String[] partsOf(String fullName) {
 
         int pos = fullName.lastIndexOf('.');
@@ -89,34 +77,10 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
         return new String[] { fullName.substring(0, pos + 1), fullName.substring(pos + 1) };
     }
 
-    public static String[] sourceLinesFrom(Match match, boolean trimLeadingWhitespace) {
-
-        final String text = match.getSourceCodeSlice().replaceAll("\t", TAB_EQUIVALENT);
-        final StringTokenizer lines = new StringTokenizer(text, "\n");
-
-        List<String> sourceLines = new ArrayList<>();
-
-        while (lines.hasMoreTokens()) {
-            String line = lines.nextToken();
-            sourceLines.add(line);
-        }
-
-        String[] lineArr = new String[sourceLines.size()];
-        lineArr = sourceLines.toArray(lineArr);
-
-        if (trimLeadingWhitespace) {
-            int trimDepth = StringUtil.maxCommonLeadingWhitespaceForAll(lineArr);
-            if (trimDepth > 0) {
-                lineArr = StringUtil.trimStartOn(lineArr, trimDepth);
-            }
-        }
-        return lineArr;
-    }
-
     @Override
     public void init(IViewSite site) throws PartInitException {
         super.init(site);
-        contentProvider = new TreeNodeContentProvider();
+        contentProvider = new ResultContentProvider();
         labelProvider = new CPDViewLabelProvider2();
 
         measureListener = new Listener() {
@@ -135,8 +99,6 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
                 treeViewer.refresh();
             }
         };
-
-        nameWidthsByName = new HashMap<>();
     }
 
     public int widthOf(int columnIndex) {
@@ -158,7 +120,7 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
 
     @Override
     public void createPartControl(Composite parent) {
-        int treeStyle = SWT.H_SCROLL | SWT.V_SCROLL | SWT.MULTI | SWT.FULL_SELECTION;
+        int treeStyle = SWT.H_SCROLL | SWT.V_SCROLL | SWT.MULTI | SWT.FULL_SELECTION | SWT.VIRTUAL;
         treeViewer = new TreeViewer(parent, treeStyle);
         treeViewer.setUseHashlookup(true);
         Tree tree = treeViewer.getTree();
@@ -182,6 +144,14 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
         Display disp = tree.getDisplay();
         classColor = disp.getSystemColor(SWT.COLOR_BLUE);
         packageColor = disp.getSystemColor(SWT.COLOR_GRAY);
+
+        ContinuousCpd.getInstance().addPropertyListener(this);
+    }
+
+    @Override
+    public void dispose() {
+        ContinuousCpd.getInstance().removePropertyListener(this);
+        super.dispose();
     }
 
     protected void addDeleteListener(Control control) {
@@ -195,11 +165,16 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
         });
     }
 
-    // TODO fix - not deleting 'model' elements?
     private void removeSelectedItems() {
         IStructuredSelection selection = (IStructuredSelection) treeViewer.getSelection();
-        Object[] items = selection.toArray();
-        treeViewer.remove(items);
+        store.removeAll(selection.toList());
+        if (showsOnDemandResults && store.isEmpty()) {
+            // back to the results of the continuous CPD
+            showsOnDemandResults = false;
+            show(continuousStore);
+        } else {
+            treeViewer.setInput(store);
+        }
     }
 
     public int inColumn(Point point) {
@@ -219,16 +194,27 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
         return -1;
     }
 
-    public int[] widthsFor(String name) {
-        return nameWidthsByName.get(name);
+    /**
+     * @return the results, that are shown
+     */
+    public CpdResultStore getResultStore() {
+        return store;
+    }
+
+    /**
+     * @return the measured widths of the package and class name of a file or
+     *         <code>null</code>, if the name has not been painted yet
+     */
+    public int[] widthsFor(int fileIndex) {
+        return nameWidthsByFile[fileIndex];
     }
 
-    private void paintName(GC gc, int x, int y, String name, int rightEdge, int descent) {
-        String[] parts = partsOf(name);
+    private void paintName(GC gc, int x, int y, int fileIndex, int rightEdge, int descent) {
+        String[] parts = partsOf(store.displayNameOf(fileIndex));
         int packageWidth;
         int classWidth;
 
-        int[] widths = nameWidthsByName.get(name);
+        int[] widths = nameWidthsByFile[fileIndex];
 
         if (widths != null) {
             packageWidth = widths[0];
@@ -237,7 +223,7 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
             gc.setFont(treeViewer.getTree().getFont());
             packageWidth = gc.stringExtent(parts[0]).x;
             classWidth = gc.stringExtent(parts[1]).x;
-            nameWidthsByName.put(name, new int[] { packageWidth, classWidth });
+            nameWidthsByFile[fileIndex] = new int[] { packageWidth, classWidth };
         }
 
         int drawX = x + rightEdge - classWidth - X_GAP;
@@ -266,22 +252,19 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
                     return;
                 }
 
-                Object item = ((TreeNode) event.item.getData()).getValue();
-
-                String[] names;
-                if (item instanceof Match) {
-                    names = CPDViewLabelProvider2.sourcesFor((Match) item);
-                } else {
+                Object item = event.item.getData();
+                if (!(item instanceof CpdResultStore.Result)) {
                     return;
                 }
+                CpdResultStore.Result result = (CpdResultStore.Result) item;
 
                 int descent = event.gc.getFontMetrics().getDescent();
                 int colWidth = widthOf(SOURCE_COLUMN_IDX);
-                int cellWidth = colWidth / names.length;
+                int cellWidth = colWidth / result.getMarkCount();
 
-                for (int i = 0; i < names.length; i++) {
+                for (int i = 0; i < result.getMarkCount(); i++) {
                     int rightEdge = colWidth - (cellWidth * i);
-                    paintName(event.gc, event.x, event.y, names[i], rightEdge, descent);
+                    paintName(event.gc, event.x, event.y, result.getFileIndex(i), rightEdge, descent);
                 }
             }
         };
@@ -348,44 +331,32 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
      *            CPD Command that contain the matches from the CPD
      */
     public void setData(Iterator<Match> matches) {
-        List<TreeNode> elements = new ArrayList<>();
-        if (matches != null) {
-            for (Match match : asList(matches)) {
-                // create a treenode for the match and add to the list
-                TreeNode matchNode = new TreeNode(match);
-                elements.add(matchNode);
-
-                String[] lines = sourceLinesFrom(match, true);
-                TreeNode[] children = new TreeNode[lines.length];
-
-                for (int j = 0; j < lines.length; j++) {
-                    String line = lines[j];
-                    if (line == null) {
-                        System.out.println();
-                    }
-                    children[j] = new TreeNode(line);
-                    children[j].setParent(matchNode);
-                }
-                matchNode.setChildren(children);
-            }
-        }
+        showsOnDemandResults = true;
+        show(CpdResultStore.of(matches));
+    }
 
-        // set the children of the rootnode: the matches
-        treeViewer.setInput(elements.toArray(new TreeNode[0]));
+    private void show(CpdResultStore results) {
+        store = results;
+        nameWidthsByFile = new int[store.fileCount()][];
+        treeViewer.setInput(store);
     }
 
     /**
      * After the CPD command is executed, it will trigger an propertyChanged
-     * event.
+     * event. The continuous CPD triggers an update event with the current
+     * matches, whenever files have been changed. These are only shown, while
+     * no results of the CPD command are shown.
      */
     @Override
     public void propertyChanged(Object source, int propId) {
-        if (propId == PMDRuntimeConstants.PROPERTY_CPD && source instanceof Iterator<?>) {
-            Iterator<Match> iter = (Iterator<Match>) source;
-            // after setdata(iter) iter.hasNext will always return false
-            boolean hasResults = iter.hasNext();
-            setData(iter);
-            if (!hasResults) {
+        if (propId == PMDRuntimeConstants.PROPERTY_CPD_UPDATE && source instanceof Iterator<?>) {
+            continuousStore = CpdResultStore.of((Iterator<Match>) source);
+            if (!showsOnDemandResults && !treeViewer.getControl().isDisposed()) {
+                show(continuousStore);
+            }
+        } else if (propId == PMDRuntimeConstants.PROPERTY_CPD && source instanceof Iterator<?>) {
+            setData((Iterator<Match>) source);
+            if (store.isEmpty()) {
                 // no entries
                 MessageBox box = new MessageBox(this.treeViewer.getControl().getShell());
                 box.setText(getString(StringKeys.DIALOG_CPD_NORESULTS_HEADER));
@@ -394,4 +365,55 @@ public class CPDView2 extends ViewPart implements IPropertyListener {
             }
         }
     }
+
+    /**
+     * Provides the results of the store and the source lines of a result on demand.
+     */
+    private class ResultContentProvider implements ILazyTreeContentProvider {
+
+        @Override
+        public void updateElement(Object parent, int index) {
+            if (parent instanceof CpdResultStore) {
+                CpdResultStore.Result result = ((CpdResultStore) parent).get(index);
+                treeViewer.replace(parent, index, result);
+                treeViewer.setChildCount(result, result.getLineCount());
+            } else if (parent instanceof CpdResultStore.Result) {
+                CpdResultStore.SourceLine sourceLine = new CpdResultStore.SourceLine(store,
+                        (CpdResultStore.Result) parent, index);
+                treeViewer.replace(parent, index, sourceLine);
+                treeViewer.setChildCount(sourceLine, 0);
+            }
+        }
+
+        @Override
+        public void updateChildCount(Object element, int currentChildCount) {
+            int count = 0;
+            if (element instanceof CpdResultStore) {
+                count = ((CpdResultStore) element).size();
+            } else if (element instanceof CpdResultStore.Result) {
+                count = ((CpdResultStore.Result) element).getLineCount();
+            }
+            if (count != currentChildCount) {
+                treeViewer.setChildCount(element, count);
+            }
+        }
+
+        @Override
+        public Object getParent(Object element) {
+            if (element instanceof CpdResultStore.SourceLine) {
+                return ((CpdResultStore.SourceLine) element).getResult();
+            }
+            return element instanceof CpdResultStore.Result ? store : null;
+        }
+
+        @Override
+        public void dispose() {
+            // nothing to dispose
+        }
+
+        @Override
+        public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+            // the store is immutable, but for removed results
+        }
+    }
 }
@@ -15,14 +15,12 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jface.viewers.ITableLabelProvider;
 import org.eclipse.jface.viewers.LabelProvider;
-import org.eclipse.jface.viewers.TreeNode;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.ide.IDE.SharedImages;
 
 import net.sourceforge.pmd.cpd.Mark;
 import net.sourceforge.pmd.cpd.Match;
-import net.sourceforge.pmd.cpd.TokenEntry;
 
 /**
  * 
@@ -36,16 +34,13 @@ public class CPDViewLabelProvider2 extends LabelProvider implements ITableLabelP
     public Image getColumnImage(Object element, int columnIndex) {
         Image image = null;
 
-        final TreeNode node = (TreeNode) element;
-        final Object value = node.getValue();
-
         // the second Column gets an Image depending on,
-        // if the Element is a Match or TokenEntry
+        // if the Element is a result or a source line
         if (columnIndex == 0) {
-            if (value instanceof Match) {
+            if (element instanceof CpdResultStore.Result) {
                 // image =
                 // PlatformUI.getWorkbench().getSharedImages().getImage(ISharedImages.IMG_OBJS_ERROR_TSK);
-            } else if (value instanceof TokenEntry) {
+            } else if (element instanceof CpdResultStore.SourceLine) {
                 image = PlatformUI.getWorkbench().getSharedImages().getImage(SharedImages.IMG_OPEN_MARKER);
             }
         }
@@ -56,11 +51,9 @@ public class CPDViewLabelProvider2 extends LabelProvider implements ITableLabelP
         return image;
     }
 
-    private int lineCountFor(TreeNode node) {
-        Object source = node.getValue();
-
-        if (source instanceof Match) {
-            return node.getChildren().length;
+    private int lineCountFor(Object element) {
+        if (element instanceof CpdResultStore.Result) {
+            return ((CpdResultStore.Result) element).getLineCount();
         }
 
         return -1;
@@ -113,26 +106,24 @@ public class CPDViewLabelProvider2 extends LabelProvider implements ITableLabelP
 
     @Override
     public String getColumnText(Object element, int columnIndex) {
-        final TreeNode node = (TreeNode) element;
-        final Object value = node.getValue();
         String result = "";
 
         switch (columnIndex) {
         case 0:
-            int count = lineCountFor(node);
+            int count = lineCountFor(element);
             if (count > 0) {
                 result = Integer.toString(count);
             }
             break;
         // show the source
         case 1:
-            if (value instanceof String) {
-                result = String.valueOf(value);
+            if (element instanceof CpdResultStore.SourceLine) {
+                result = ((CpdResultStore.SourceLine) element).getText();
                 if (result.endsWith("\r")) {
                     result = result.substring(0, result.length() - 1);
                 }
             }
-            if (value instanceof Match) {
+            if (element instanceof CpdResultStore.Result) {
                 // do nothing, let the painter show it
             }
             break;
@@ -10,7 +10,6 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
-import org.eclipse.jface.viewers.TreeNode;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Cursor;
 import org.eclipse.swt.graphics.Point;
@@ -26,8 +25,6 @@ import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.ide.IDE;
 import org.eclipse.ui.texteditor.ITextEditor;
 
-import net.sourceforge.pmd.cpd.Mark;
-import net.sourceforge.pmd.cpd.Match;
 import net.sourceforge.pmd.eclipse.plugin.PMDPlugin;
 import net.sourceforge.pmd.eclipse.ui.nls.StringKeys;
 
@@ -53,9 +50,9 @@ public class CPDViewTooltipListener2 implements Listener {
     }
 
     // open file and jump to the startline
-    private void highlight(Match match, Mark entry) {
+    private void highlight(CpdResultStore.Result result, int mark) {
 
-        IPath path = Path.fromOSString(entry.getFilename());
+        IPath path = Path.fromOSString(view.getResultStore().fileNameOf(result.getFileIndex(mark)));
         IFile file = ResourcesPlugin.getWorkspace().getRoot().getFileForLocation(path);
         if (file == null) {
             return;
@@ -69,8 +66,8 @@ public class CPDViewTooltipListener2 implements Listener {
                 // select text
                 ITextEditor textEditor = (ITextEditor) part;
                 IDocument document = textEditor.getDocumentProvider().getDocument(textEditor.getEditorInput());
-                int offset = document.getLineOffset(entry.getBeginLine() - 1);
-                int length = document.getLineOffset(entry.getBeginLine() - 1 + match.getLineCount()) - offset - 1;
+                int offset = document.getLineOffset(result.getBeginLine(mark) - 1);
+                int length = document.getLineOffset(result.getBeginLine(mark) - 1 + result.getLineCount()) - offset - 1;
                 textEditor.selectAndReveal(offset, length);
             }
         } catch (PartInitException | BadLocationException pie) {
@@ -78,44 +75,43 @@ public class CPDViewTooltipListener2 implements Listener {
         }
     }
 
-    private static Match matchAt(TreeItem treeItem) {
-        Object item = ((TreeNode) treeItem.getData()).getValue();
-        return item instanceof Match ? (Match) item : null;
+    private static CpdResultStore.Result resultAt(TreeItem treeItem) {
+        Object item = treeItem.getData();
+        return item instanceof CpdResultStore.Result ? (CpdResultStore.Result) item : null;
     }
 
-    private Mark itemAt(TreeItem treeItem, Point location) {
+    /**
+     * @return the index of the mark, whose class name is at the location, or -1
+     */
+    private int markAt(TreeItem treeItem, Point location) {
         if (treeItem == null) {
-            return null;
+            return -1;
         }
 
-        Object item = ((TreeNode) treeItem.getData()).getValue();
-
-        String[] names;
-        if (item instanceof Match) {
-            names = CPDViewLabelProvider2.sourcesFor((Match) item);
-        } else {
-            return null;
+        CpdResultStore.Result result = resultAt(treeItem);
+        if (result == null) {
+            return -1;
         }
 
         location.x -= view.widthOf(0); // subtract width of preceeding columns
 
         int colWidth = view.widthOf(CPDView2.SOURCE_COLUMN_IDX);
-        int cellWidth = colWidth / names.length;
+        int cellWidth = colWidth / result.getMarkCount();
 
-        for (int i = 0; i < names.length; i++) {
+        for (int i = 0; i < result.getMarkCount(); i++) {
             int rightEdge = colWidth - (cellWidth * i);
-            int[] widths = view.widthsFor(names[i]);
+            int[] widths = view.widthsFor(result.getFileIndex(i));
             if (widths == null) {
                 continue;
             }
             int classWidth = widths[1];
             if (location.x > rightEdge - classWidth // right of the start?
                     && location.x < rightEdge) { // left of the end?
-                return CPDViewLabelProvider2.entriesFor((Match) item)[i];
+                return i;
             }
         }
 
-        return null;
+        return -1;
     }
 
     @Override
@@ -130,15 +126,15 @@ public class CPDViewTooltipListener2 implements Listener {
         }
 
         TreeItem item = tree.getItem(location);
-        Mark entry = itemAt(item, location);
-        if (entry == null) {
+        int mark = markAt(item, location);
+        if (mark < 0) {
             shell.setCursor(normalCursor);
             return;
         }
 
         switch (event.type) {
         case SWT.MouseDown:
-            highlight(matchAt(item), entry);
+            highlight(resultAt(item), mark);
             break;
         case SWT.MouseMove:
         case SWT.MouseHover:
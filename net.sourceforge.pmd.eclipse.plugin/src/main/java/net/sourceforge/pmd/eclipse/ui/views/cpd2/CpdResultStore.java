@@ -0,0 +1,327 @@
+/**
+ * BSD-style license; for more info see http://pmd.sourceforge.net/license.html
+ */
+
+package net.sourceforge.pmd.eclipse.ui.views.cpd2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.sourceforge.pmd.cpd.Mark;
+import net.sourceforge.pmd.cpd.Match;
+
+/**
+ * The matches of a CPD run, as shown by the {@link CPDView2}.
+ *
+ * <p>The matches are not kept, as they hold the token entries and the source code of the files. A
+ * {@link Result} only refers to the files by index and to the duplicated code by its begin line and
+ * line count. The results are sorted once by a precomputed key: the largest duplicates first. The source
+ * code of a result is read, when it is shown, and only the source of the recently shown results is
+ * cached.
+ *
+ * <p>The store is used by the UI thread only.
+ */
+public final class CpdResultStore {
+    private static final Logger LOG = LoggerFactory.getLogger(CpdResultStore.class);
+
+    /**
+     * The number of results, whose source lines are kept.
+     */
+    private static final int CACHED_SOURCES = 200;
+
+    private static final String TAB_EQUIVALENT = "    "; // tab char == 4 spaces
+
+    private static final Comparator<Result> SORT_KEY_COMPARATOR = new Comparator<Result>() {
+        @Override
+        public int compare(Result result1, Result result2) {
+            return Long.compare(result2.sortKey, result1.sortKey);
+        }
+    };
+
+    private final List<String> fileNames = new ArrayList<>();
+    private final Map<String, Integer> fileIndexes = new HashMap<>();
+    private String[] displayNames;
+    private Result[] results;
+
+    private final Map<Result, String[]> sourceLines = new LinkedHashMap<Result, String[]>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Result, String[]> eldest) {
+            return size() > CACHED_SOURCES;
+        }
+    };
+
+    private CpdResultStore() {
+        // use of(Iterator)
+    }
+
+    /**
+     * Converts all the given matches into results.
+     *
+     * @param matches the matches, may be <code>null</code>
+     */
+    public static CpdResultStore of(Iterator<Match> matches) {
+        CpdResultStore store = new CpdResultStore();
+        List<Result> results = new ArrayList<>();
+        while (matches != null && matches.hasNext()) {
+            results.add(store.resultOf(matches.next()));
+        }
+        store.results = results.toArray(new Result[0]);
+        Arrays.sort(store.results, SORT_KEY_COMPARATOR);
+        store.displayNames = new String[store.fileNames.size()];
+        return store;
+    }
+
+    private Result resultOf(Match match) {
+        Mark[] marks = CPDViewLabelProvider2.entriesFor(match);
+        int[] files = new int[marks.length];
+        int[] beginLines = new int[marks.length];
+        for (int i = 0; i < marks.length; i++) {
+            files[i] = fileIndexOf(marks[i].getFilename());
+            beginLines[i] = marks[i].getBeginLine();
+        }
+        return new Result(match.getTokenCount(), match.getLineCount(), files, beginLines);
+    }
+
+    private int fileIndexOf(String fileName) {
+        Integer index = fileIndexes.get(fileName);
+        if (index == null) {
+            index = fileNames.size();
+            fileNames.add(fileName);
+            fileIndexes.put(fileName, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the number of results
+     */
+    public int size() {
+        return results.length;
+    }
+
+    public boolean isEmpty() {
+        return results.length == 0;
+    }
+
+    /**
+     * @param index the index of the result in the sort order
+     */
+    public Result get(int index) {
+        return results[index];
+    }
+
+    /**
+     * @return the number of distinct files of the results
+     */
+    public int fileCount() {
+        return fileNames.size();
+    }
+
+    /**
+     * @return the location of a file in the file system
+     */
+    public String fileNameOf(int fileIndex) {
+        return fileNames.get(fileIndex);
+    }
+
+    /**
+     * @return the project relative path of a file without extension and with dots as separators
+     */
+    public String displayNameOf(int fileIndex) {
+        if (displayNames[fileIndex] == null) {
+            IPath path = Path.fromOSString(fileNames.get(fileIndex));
+            IResource resource = ResourcesPlugin.getWorkspace().getRoot().getFileForLocation(path);
+            displayNames[fileIndex] = resource == null ? "?"
+                    : resource.getProjectRelativePath().removeFileExtension().toString()
+                        .replace(IPath.SEPARATOR, '.');
+        }
+        return displayNames[fileIndex];
+    }
+
+    /**
+     * Removes the given results. Other elements are ignored.
+     */
+    public void removeAll(Collection<?> removed) {
+        Set<Object> removedResults = new HashSet<>(removed);
+        List<Result> remaining = new ArrayList<>(results.length);
+        for (Result result : results) {
+            if (!removedResults.contains(result)) {
+                remaining.add(result);
+            }
+        }
+        results = remaining.toArray(new Result[0]);
+        sourceLines.keySet().removeAll(removedResults);
+    }
+
+    /**
+     * Reads the duplicated source code of a result from its first file. The tabs are replaced and the
+     * common leading whitespace is removed.
+     *
+     * @return the source lines, at most the line count of the result
+     */
+    public String[] sourceLinesOf(Result result) {
+        String[] lines = sourceLines.get(result);
+        if (lines == null) {
+            lines = readSourceLines(fileNames.get(result.files[0]), result.beginLines[0], result.lineCount);
+            sourceLines.put(result, lines);
+        }
+        return lines;
+    }
+
+    private static String[] readSourceLines(String fileName, int beginLine, int lineCount) {
+        List<String> lines = new ArrayList<>(lineCount);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(Paths.get(fileName)), charsetOf(fileName)))) {
+            String line = reader.readLine();
+            for (int lineNumber = 1; line != null && lineNumber < beginLine + lineCount; lineNumber++) {
+                if (lineNumber >= beginLine) {
+                    lines.add(line.replace("\t", TAB_EQUIVALENT));
+                }
+                line = reader.readLine();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read the duplicated code of {}: {}", fileName, e.toString());
+        }
+        return trimCommonIndentation(lines.toArray(new String[0]));
+    }
+
+    private static Charset charsetOf(String fileName) {
+        IFile file = ResourcesPlugin.getWorkspace().getRoot().getFileForLocation(Path.fromOSString(fileName));
+        try {
+            return Charset.forName(file != null ? file.getCharset() : ResourcesPlugin.getEncoding());
+        } catch (CoreException | IllegalArgumentException e) {
+            return Charset.defaultCharset();
+        }
+    }
+
+    /**
+     * Removes the leading whitespace, that all the lines with code have in common.
+     */
+    private static String[] trimCommonIndentation(String[] lines) {
+        int depth = Integer.MAX_VALUE;
+        for (String line : lines) {
+            int indentation = 0;
+            while (indentation < line.length() && Character.isWhitespace(line.charAt(indentation))) {
+                indentation++;
+            }
+            if (indentation < line.length()) {
+                depth = Math.min(depth, indentation);
+            }
+        }
+        if (depth == Integer.MAX_VALUE || depth == 0) {
+            return lines;
+        }
+        String[] trimmed = new String[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            trimmed[i] = lines[i].length() > depth ? lines[i].substring(depth) : "";
+        }
+        return trimmed;
+    }
+
+    /**
+     * A match of CPD: the same code in two or more places. The places are kept as file index and begin line.
+     */
+    public static final class Result {
+        private final int tokenCount;
+        private final int lineCount;
+        private final int[] files;
+        private final int[] beginLines;
+        private final long sortKey;
+
+        Result(int tokenCount, int lineCount, int[] files, int[] beginLines) {
+            this.tokenCount = tokenCount;
+            this.lineCount = lineCount;
+            this.files = files;
+            this.beginLines = beginLines;
+            // the most tokens first, then the most places
+            this.sortKey = (long) tokenCount << 16 | Math.min(files.length, 0xFFFF);
+        }
+
+        public int getTokenCount() {
+            return tokenCount;
+        }
+
+        public int getLineCount() {
+            return lineCount;
+        }
+
+        /**
+         * @return the number of places of the duplicated code
+         */
+        public int getMarkCount() {
+            return files.length;
+        }
+
+        public int getFileIndex(int mark) {
+            return files[mark];
+        }
+
+        public int getBeginLine(int mark) {
+            return beginLines[mark];
+        }
+    }
+
+    /**
+     * A line of the duplicated code of a result, that is read when it is shown.
+     */
+    public static final class SourceLine {
+        private final CpdResultStore store;
+        private final Result result;
+        private final int index;
+
+        public SourceLine(CpdResultStore store, Result result, int index) {
+            this.store = store;
+            this.result = result;
+            this.index = index;
+        }
+
+        public Result getResult() {
+            return result;
+        }
+
+        public String getText() {
+            String[] lines = store.sourceLinesOf(result);
+            return index < lines.length ? lines[index] : "";
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SourceLine)) {
+                return false;
+            }
+            SourceLine other = (SourceLine) obj;
+            return result == other.result && index == other.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(result) * 31 + index;
+        }
+    }
+}
@@ -5,7 +5,9 @@
 
 package net.sourceforge.pmd.eclipse.util.internal;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 
 public final class IOUtil {
@@ -22,4 +24,15 @@ public final class IOUtil {
         }
         return sb.toString();
     }
+
+    public static byte[] toByteArray(InputStream input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(8192, input.available()));
+        byte[] buffer = new byte[8192];
+        int count = input.read(buffer);
+        while (count > -1) {
+            out.write(buffer, 0, count);
+            count = input.read(buffer);
+        }
+        return out.toByteArray();
+    }
 }
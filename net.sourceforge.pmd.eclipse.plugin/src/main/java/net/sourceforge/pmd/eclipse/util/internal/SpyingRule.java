@@ -11,13 +11,21 @@ import net.sourceforge.pmd.RuleContext;
 import net.sourceforge.pmd.lang.ast.Node;
 import net.sourceforge.pmd.lang.rule.AbstractRule;
 
+/**
+ * Keeps the root node of the processed tree. The rule requests all the processing
+ * stages (symbols, types and dataflow), so that the tree is the same as for the rules.
+ * The rule must be applied directly, e.g. by an
+ * {@link net.sourceforge.pmd.eclipse.runtime.cmd.AnalysisSession}, as an analysis
+ * would apply a copy of the rule.
+ */
 public class SpyingRule extends AbstractRule {
 
-    private static Node rootNode;
+    private Node rootNode;
 
     @SuppressWarnings("deprecation")
     public SpyingRule() {
         setUsesDFA();
+        setUsesTypeResolution();
     }
 
     @Override
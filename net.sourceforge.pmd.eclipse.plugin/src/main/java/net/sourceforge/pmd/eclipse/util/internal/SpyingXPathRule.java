@@ -15,7 +15,7 @@ import net.sourceforge.pmd.lang.rule.xpath.XPathVersion;
 
 public class SpyingXPathRule extends XPathRule {
 
-    private static List<Node> result = new ArrayList<>();
+    private final List<Node> result = new ArrayList<>();
 
     @SuppressWarnings("deprecation")
     public SpyingXPathRule() {